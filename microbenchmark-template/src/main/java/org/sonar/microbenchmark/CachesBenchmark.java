@@ -0,0 +1,133 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.microbenchmark;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.api.utils.internal.DefaultTempFolder;
+import org.sonar.batch.bootstrap.BootstrapProperties;
+import org.sonar.batch.index.Cache;
+import org.sonar.batch.index.Caches;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the storages of batch caches (see {@link Caches#STORAGE_PROP_KEY})
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+public class CachesBenchmark {
+
+  private static final int NB_COMPONENTS = 1000;
+  private static final int NB_METRICS = 20;
+
+  @Param({"persistit", "heap", "mmap"})
+  public String storage;
+
+  File tempDir;
+  Caches caches;
+  Cache<String> cache;
+  String value = "value of measure";
+
+  @Setup(Level.Iteration)
+  public void setup() throws Exception {
+    tempDir = Files.createTempDirectory("caches").toFile();
+    caches = new Caches(new DefaultTempFolder(tempDir), new BootstrapProperties(ImmutableMap.of(Caches.STORAGE_PROP_KEY, storage)));
+    cache = caches.createCache("measures");
+    fill();
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    caches.stop();
+    FileUtils.deleteQuietly(tempDir);
+  }
+
+  @Benchmark
+  public void put() {
+    fill();
+  }
+
+  @Benchmark
+  public int get() {
+    int found = 0;
+    for (int component = 0; component < NB_COMPONENTS; component++) {
+      for (int metric = 0; metric < NB_METRICS; metric++) {
+        if (cache.get("component" + component, metric) != null) {
+          found++;
+        }
+      }
+    }
+    return found;
+  }
+
+  @Benchmark
+  public int iterateGroup() {
+    int count = 0;
+    for (int component = 0; component < NB_COMPONENTS; component += 10) {
+      for (String v : cache.values("component" + component)) {
+        count += v.length();
+      }
+    }
+    return count;
+  }
+
+  private void fill() {
+    for (int component = 0; component < NB_COMPONENTS; component++) {
+      for (int metric = 0; metric < NB_METRICS; metric++) {
+        cache.put("component" + component, metric, value);
+      }
+    }
+  }
+
+  /**
+   * You can this benchmark with maven command-line (see run.sh) or by executing this method
+   * in IDE
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(CachesBenchmark.class.getSimpleName())
+      .build();
+    new Runner(opt).run();
+  }
+}
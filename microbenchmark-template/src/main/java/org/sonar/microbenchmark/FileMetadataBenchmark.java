@@ -0,0 +1,279 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.microbenchmark;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.FileMetadata;
+import org.sonar.api.batch.fs.internal.FileMetadata.CharHandler;
+import org.sonar.api.batch.fs.internal.FileMetadata.LineHashConsumer;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares computation of file metadata and line hashes with the previous handlers, which
+ * stored line offsets in boxed integers and created a string per line before hashing.
+ * The previous handlers are copied below and both implementations are executed through
+ * the same loop {@link FileMetadata#readFile(File, java.nio.charset.Charset, CharHandler...)},
+ * so that only the handlers differ.
+ * <p/>
+ * Run with the GC profiler in order to compare allocation rates:
+ * <pre>java -jar target/microbenchmark.jar FileMetadataBenchmark -prof gc</pre>
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+public class FileMetadataBenchmark {
+
+  @Param({"10", "1000", "100000"})
+  public int linesNumber;
+
+  File file;
+  DefaultInputFile inputFile;
+  FileMetadata fileMetadata = new FileMetadata();
+
+  @Setup
+  public void setup() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < linesNumber; i++) {
+      sb.append("    private String field").append(i).append(" = \"caf\u00e9 \u20ac\"; // comment\n");
+    }
+    file = File.createTempFile("microbenchmark", ".java");
+    FileUtils.write(file, sb.toString(), StandardCharsets.UTF_8);
+    inputFile = new DefaultInputFile("foo", file.getName());
+    inputFile.setModuleBaseDir(file.getParentFile().toPath());
+    inputFile.setCharset(StandardCharsets.UTF_8);
+  }
+
+  @TearDown
+  public void tearDown() {
+    FileUtils.deleteQuietly(file);
+  }
+
+  @Benchmark
+  public Object readMetadata() throws Exception {
+    return fileMetadata.readMetadata(file, StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public Object legacyReadMetadata() throws Exception {
+    LegacyLineCounter lineCounter = new LegacyLineCounter();
+    LegacyFileHashComputer fileHashComputer = new LegacyFileHashComputer();
+    LegacyLineOffsetCounter lineOffsetCounter = new LegacyLineOffsetCounter();
+    FileMetadata.readFile(file, StandardCharsets.UTF_8, lineCounter, fileHashComputer, lineOffsetCounter);
+    return new Object[] {lineCounter.lines, lineCounter.nonBlankLines, fileHashComputer.getHash(), lineOffsetCounter.originalLineOffsets,
+      lineOffsetCounter.lastValidOffset};
+  }
+
+  @Benchmark
+  public void computeLineHashes(Blackhole blackhole) throws Exception {
+    FileMetadata.computeLineHashesForIssueTracking(inputFile, new BlackholeConsumer(blackhole));
+  }
+
+  @Benchmark
+  public void legacyComputeLineHashes(Blackhole blackhole) throws Exception {
+    FileMetadata.readFile(file, StandardCharsets.UTF_8, new LegacyLineHashComputer(new BlackholeConsumer(blackhole)));
+  }
+
+  private static class BlackholeConsumer implements LineHashConsumer {
+    private final Blackhole blackhole;
+
+    BlackholeConsumer(Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void consume(int lineIdx, byte[] hash) {
+      blackhole.consume(hash);
+    }
+  }
+
+  /**
+   * Previous implementation, unchanged except logging of invalid characters
+   */
+  private static class LegacyLineCounter extends CharHandler {
+    private int lines = 1;
+    private int nonBlankLines = 0;
+    private boolean blankLine = true;
+    private boolean alreadyLoggedInvalidCharacter = false;
+
+    @Override
+    protected void handleAll(char c) {
+      if (!alreadyLoggedInvalidCharacter && c == '\ufffd') {
+        alreadyLoggedInvalidCharacter = true;
+      }
+    }
+
+    @Override
+    protected void newLine() {
+      lines++;
+      if (!blankLine) {
+        nonBlankLines++;
+      }
+      blankLine = true;
+    }
+
+    @Override
+    protected void handleIgnoreEoL(char c) {
+      if (!Character.isWhitespace(c)) {
+        blankLine = false;
+      }
+    }
+
+    @Override
+    protected void eof() {
+      if (!blankLine) {
+        nonBlankLines++;
+      }
+    }
+  }
+
+  /**
+   * Previous implementation: a string is built then encoded for each line
+   */
+  private static class LegacyFileHashComputer extends CharHandler {
+    private MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
+    private StringBuilder sb = new StringBuilder();
+
+    @Override
+    protected void handleIgnoreEoL(char c) {
+      sb.append(c);
+    }
+
+    @Override
+    protected void newLine() {
+      sb.append('\n');
+      globalMd5Digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+      sb.setLength(0);
+    }
+
+    @Override
+    protected void eof() {
+      if (sb.length() > 0) {
+        globalMd5Digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    public String getHash() {
+      return Hex.encodeHexString(globalMd5Digest.digest());
+    }
+  }
+
+  /**
+   * Previous implementation: a string is built then encoded for each line
+   */
+  private static class LegacyLineHashComputer extends CharHandler {
+    private final MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
+    private final StringBuilder sb = new StringBuilder();
+    private final LineHashConsumer consumer;
+    private int line = 1;
+
+    LegacyLineHashComputer(LineHashConsumer consumer) {
+      this.consumer = consumer;
+    }
+
+    @Override
+    protected void handleIgnoreEoL(char c) {
+      if (!Character.isWhitespace(c)) {
+        sb.append(c);
+      }
+    }
+
+    @Override
+    protected void newLine() {
+      consumer.consume(line, sb.length() > 0 ? lineMd5Digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) : null);
+      sb.setLength(0);
+      line++;
+    }
+
+    @Override
+    protected void eof() {
+      if (this.line > 0) {
+        consumer.consume(line, sb.length() > 0 ? lineMd5Digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) : null);
+      }
+    }
+  }
+
+  /**
+   * Previous implementation: offsets of lines are boxed in a list
+   */
+  private static class LegacyLineOffsetCounter extends CharHandler {
+    private int currentOriginalOffset = 0;
+    private List<Integer> originalLineOffsets = new ArrayList<>();
+    private int lastValidOffset = 0;
+
+    LegacyLineOffsetCounter() {
+      originalLineOffsets.add(0);
+    }
+
+    @Override
+    protected void handleAll(char c) {
+      currentOriginalOffset++;
+    }
+
+    @Override
+    protected void newLine() {
+      originalLineOffsets.add(currentOriginalOffset);
+    }
+
+    @Override
+    protected void eof() {
+      lastValidOffset = currentOriginalOffset;
+    }
+  }
+
+  /**
+   * You can this benchmark with maven command-line (see run.sh) or by executing this method
+   * in IDE
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(FileMetadataBenchmark.class.getSimpleName())
+      .build();
+    new Runner(opt).run();
+  }
+}
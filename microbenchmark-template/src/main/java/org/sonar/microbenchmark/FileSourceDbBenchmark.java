@@ -20,6 +20,8 @@
 package org.sonar.microbenchmark;
 
 import com.google.protobuf.CodedOutputStream;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.apache.commons.lang.RandomStringUtils;
 import org.openjdk.jmh.annotations.Benchmark;
 import org.openjdk.jmh.annotations.BenchmarkMode;
@@ -36,8 +38,10 @@ import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.source.db.FileSourceDb;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -62,6 +66,8 @@ public class FileSourceDbBenchmark {
 
   List<FileSourceDb.Line> lines = new ArrayList<>();
   FileSourceDb.Data data;
+  byte[] legacyBinaryData;
+  byte[] chunkedBinaryData;
 
   @Setup
   public void setup() throws Exception {
@@ -83,6 +89,8 @@ public class FileSourceDbBenchmark {
         .build());
     }
     data = builder.build();
+    legacyBinaryData = legacy_encode();
+    chunkedBinaryData = FileSourceDto.encodeSourceData(data);
   }
 
   @Benchmark
@@ -138,6 +146,51 @@ public class FileSourceDbBenchmark {
     return byteOutput.toByteArray().length;
   }
 
+  @Benchmark
+  public byte[] legacy_encode() throws Exception {
+    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
+    LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput);
+    data.writeTo(compressedOutput);
+    compressedOutput.close();
+    return byteOutput.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] chunked_encode() throws Exception {
+    return FileSourceDto.encodeSourceData(data);
+  }
+
+  @Benchmark
+  public int legacy_decode() throws Exception {
+    return FileSourceDb.Data.parseFrom(new LZ4BlockInputStream(new ByteArrayInputStream(legacyBinaryData))).getLinesCount();
+  }
+
+  @Benchmark
+  public int chunked_decode() throws Exception {
+    return FileSourceDto.decodeSourceData(chunkedBinaryData).getLinesCount();
+  }
+
+  /**
+   * Lines displayed when scrolling in the middle of the file, with legacy format
+   */
+  @Benchmark
+  public int legacy_decode_range() throws Exception {
+    int count = 0;
+    int from = linesNumber / 2;
+    for (FileSourceDb.Line line : FileSourceDb.Data.parseFrom(new LZ4BlockInputStream(new ByteArrayInputStream(legacyBinaryData))).getLinesList()) {
+      if (line.getLine() >= from && line.getLine() < from + 50) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int chunked_decode_range() throws Exception {
+    int from = linesNumber / 2;
+    return FileSourceDto.decodeSourceData(chunkedBinaryData, from, from + 49).getLinesCount();
+  }
+
   /**
    * You can this benchmark with maven command-line (see run.sh) or by executing this method
    * in IDE
@@ -0,0 +1,122 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.microbenchmark;
+
+import org.apache.commons.lang.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.sonar.api.utils.text.JsonWriter;
+import org.sonar.server.es.JsonDocBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of the JSON source of a document of index sourcelines, as done by
+ * SourceLineResultSetIterator
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@BenchmarkMode(Mode.Throughput)
+public class JsonDocBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int sourceLength;
+
+  String source;
+  List<Integer> duplications = Arrays.asList(1, 2);
+
+  @Setup
+  public void setup() throws Exception {
+    source = StringUtils.repeat("aé\"", sourceLength / 3 + 1);
+  }
+
+  @Benchmark
+  public byte[] jsonWriter() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    JsonWriter writer = JsonWriter.of(new OutputStreamWriter(bytes, StandardCharsets.UTF_8)).setSerializeNulls(true);
+    writer.beginObject();
+    writer.prop("projectUuid", "PROJECT_UUID");
+    writer.prop("fileUuid", "FILE_UUID");
+    writer.prop("line", 42);
+    writer.prop("updatedAt", "2015-04-01T12:00:00.000+0200");
+    writer.prop("scmRevision", "a1b2c3d4e5f6");
+    writer.prop("scmAuthor", "simon");
+    writer.prop("scmDate", "2015-03-01T12:00:00.000+0200");
+    writer.prop("utLineHits", 3);
+    writer.name("utConditions").valueObject(null);
+    writer.prop("highlighting", "0,6,k;7,13,c");
+    writer.name("duplications").valueObject(duplications);
+    writer.prop("source", source);
+    writer.endObject().close();
+    return bytes.toByteArray();
+  }
+
+  @Benchmark
+  public byte[] jsonDocBuilder() throws Exception {
+    return JsonDocBuilder.get()
+      .beginObject()
+      .prop("projectUuid", "PROJECT_UUID")
+      .prop("fileUuid", "FILE_UUID")
+      .prop("line", 42)
+      .prop("updatedAt", "2015-04-01T12:00:00.000+0200")
+      .prop("scmRevision", "a1b2c3d4e5f6")
+      .prop("scmAuthor", "simon")
+      .prop("scmDate", "2015-03-01T12:00:00.000+0200")
+      .prop("utLineHits", 3)
+      .prop("utConditions", (Integer) null)
+      .prop("highlighting", "0,6,k;7,13,c")
+      .name("duplications").value(duplications)
+      .prop("source", source)
+      .endObject()
+      .build();
+  }
+
+  /**
+   * You can this benchmark with maven command-line (see run.sh) or by executing this method
+   * in IDE
+   */
+  public static void main(String[] args) throws RunnerException {
+    Options opt = new OptionsBuilder()
+      .include(JsonDocBenchmark.class.getSimpleName())
+      .build();
+    new Runner(opt).run();
+  }
+}
@@ -60,6 +60,7 @@ public abstract class AbstractNewCoverageFileAnalyzer implements Decorator {
   private final List<PeriodStruct> structs;
   private final ReportPublisher publishReportJob;
   private final ResourceCache resourceCache;
+  private BatchReportReader reader;
 
   public AbstractNewCoverageFileAnalyzer(TimeMachineConfiguration timeMachineConfiguration, ReportPublisher publishReportJob, ResourceCache resourceCache) {
     this(Lists.<PeriodStruct>newArrayList(), publishReportJob, resourceCache);
@@ -121,9 +122,29 @@ public abstract class AbstractNewCoverageFileAnalyzer implements Decorator {
     }
   }
 
+  /**
+   * Report is opened once per module, when decorators are executed. At that time sensors
+   * have already written the changesets of all the files of the module.
+   */
+  private BatchReportReader reader() {
+    if (reader == null) {
+      reader = new BatchReportReader(publishReportJob.getReportDir());
+    }
+    return reader;
+  }
+
+  /**
+   * Closes the report at the end of the analysis of module
+   */
+  public void stop() {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
   private boolean parse(DecoratorContext context) {
-    BatchReportReader reader = new BatchReportReader(publishReportJob.getReportDir());
-    BatchReport.Changesets componentScm = reader.readChangesets(resourceCache.get(context.getResource()).batchId());
+    BatchReport.Changesets componentScm = reader().readChangesets(resourceCache.get(context.getResource()).batchId());
     Measure hitsByLineMeasure = context.getMeasure(getCoverageLineHitsDataMetric());
 
     if (componentScm != null && hitsByLineMeasure != null && hitsByLineMeasure.hasData()) {
@@ -47,6 +47,7 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -58,6 +59,7 @@ public class NewCoverageFileAnalyzerTest {
   private DecoratorContext context;
   private NewCoverageFileAnalyzer decorator;
   private BatchReportWriter writer;
+  private ReportPublisher publishReportJob;
 
   @Before
   public void prepare() throws Exception {
@@ -69,7 +71,7 @@ public class NewCoverageFileAnalyzerTest {
     List<AbstractNewCoverageFileAnalyzer.PeriodStruct> structs = Arrays.asList(
       new AbstractNewCoverageFileAnalyzer.PeriodStruct(1, newDate("2009-12-25")),
       new AbstractNewCoverageFileAnalyzer.PeriodStruct(3, newDate("2011-02-18")));
-    ReportPublisher publishReportJob = mock(ReportPublisher.class);
+    publishReportJob = mock(ReportPublisher.class);
     java.io.File reportBaseDir = temp.newFolder();
     when(publishReportJob.getReportDir()).thenReturn(reportBaseDir);
     writer = new BatchReportWriter(reportBaseDir);
@@ -77,6 +79,18 @@ public class NewCoverageFileAnalyzerTest {
 
   }
 
+  @Test
+  public void open_report_once_per_module() {
+    when(context.getMeasure(CoreMetrics.COVERAGE_LINE_HITS_DATA))
+      .thenReturn(new Measure(CoreMetrics.COVERAGE_LINE_HITS_DATA, "1=10"));
+
+    decorator.doDecorate(context);
+    decorator.doDecorate(context);
+    decorator.stop();
+
+    verify(publishReportJob, times(1)).getReportDir();
+  }
+
   @Test
   public void shouldDoNothingIfNoScmData() {
     when(context.getMeasure(CoreMetrics.COVERAGE_LINE_HITS_DATA))
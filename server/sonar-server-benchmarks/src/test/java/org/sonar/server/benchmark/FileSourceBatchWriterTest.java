@@ -0,0 +1,116 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.benchmark;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.api.utils.internal.Uuids;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.persistence.DbTester;
+import org.sonar.core.persistence.MyBatis;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.source.db.FileSourceBatchWriter;
+import org.sonar.server.source.db.FileSourceDao;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the insertion of rows of FILE_SOURCES with one commit per row and with {@link FileSourceBatchWriter}
+ */
+public class FileSourceBatchWriterTest {
+
+  public static final Logger LOGGER = LoggerFactory.getLogger("perfTestFileSourceBatchWriter");
+
+  public static final int NUMBER_OF_FILES = 2000;
+  public static final int BINARY_DATA_SIZE = 50 * 1024;
+  public static final String PROJECT_UUID = Uuids.create();
+
+  @Rule
+  public DbTester dbTester = new DbTester();
+
+  @Rule
+  public Benchmark benchmark = new Benchmark();
+
+  @Test
+  public void benchmark() {
+    byte[] binaryData = new byte[BINARY_DATA_SIZE];
+    new Random().nextBytes(binaryData);
+    FileSourceDao dao = new FileSourceDao(dbTester.myBatis());
+
+    long commitPerRowDuration = insertWithCommitPerRow(dao, binaryData);
+    dbTester.truncateTables();
+    long batchDuration = insertWithBatchWriter(dao, binaryData);
+
+    LOGGER.info(String.format("%d file sources inserted in %d ms with one commit per row, in %d ms with batch writer",
+      NUMBER_OF_FILES, commitPerRowDuration, batchDuration));
+    benchmark.expectBetween("Duration to insert FILE_SOURCES with batch writer", batchDuration, 0L, commitPerRowDuration);
+  }
+
+  private long insertWithCommitPerRow(FileSourceDao dao, byte[] binaryData) {
+    DbSession session = dbTester.myBatis().openSession(false);
+    try {
+      long start = System.currentTimeMillis();
+      for (int i = 0; i < NUMBER_OF_FILES; i++) {
+        dao.insert(session, newDto(binaryData));
+        session.commit();
+      }
+      long duration = System.currentTimeMillis() - start;
+      assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(NUMBER_OF_FILES);
+      return duration;
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private long insertWithBatchWriter(FileSourceDao dao, byte[] binaryData) {
+    DbSession session = dbTester.myBatis().openSession(true);
+    try {
+      long start = System.currentTimeMillis();
+      FileSourceBatchWriter writer = new FileSourceBatchWriter(dao, session);
+      for (int i = 0; i < NUMBER_OF_FILES; i++) {
+        writer.insert(newDto(binaryData));
+      }
+      writer.flush();
+      long duration = System.currentTimeMillis() - start;
+      assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(NUMBER_OF_FILES);
+      return duration;
+    } finally {
+      MyBatis.closeQuietly(session);
+    }
+  }
+
+  private static FileSourceDto newDto(byte[] binaryData) {
+    long now = System.currentTimeMillis();
+    return new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(Uuids.create())
+      .setDataType(FileSourceDto.Type.SOURCE)
+      .setBinaryData(binaryData)
+      .setDataHash("data_hash")
+      .setSrcHash("src_hash")
+      .setLineHashes("line_hashes")
+      .setCreatedAt(now)
+      .setUpdatedAt(now);
+  }
+}
@@ -25,7 +25,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.db.DbClient;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.source.db.FileSourceDao;
 import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.source.index.*;
 import org.sonar.server.tester.ServerTester;
@@ -42,6 +45,7 @@ import static org.assertj.core.api.Assertions.assertThat;
  *   <li>size of ES data directory</li>
  *   <li>time to request index</li>
  * </ul>
+ * Both storages {@link SourceLineStorage#LINES} (default) and {@link SourceLineStorage#FILES} are measured.
  */
 public class SourceIndexBenchmarkTest {
 
@@ -90,8 +94,42 @@ public class SourceIndexBenchmarkTest {
     benchmark.expectBetween("ES dir size (b)", dirSize, 172L * FileUtils.ONE_MB, 182L * FileUtils.ONE_MB);
   }
 
+  @Test
+  public void benchmark_file_storage() throws Exception {
+    ServerTester fileTester = new ServerTester().setProperty(SourceLineStorage.PROPERTY, "files");
+    fileTester.start();
+    try {
+      LOGGER.info("Populate table FILE_SOURCES");
+      FileSourceDao dao = fileTester.get(DbClient.class).fileSourceDao();
+      SourceIterator files = new SourceIterator(FILES, LINES_PER_FILE);
+      for (int i = 0; i < FILES; i++) {
+        dao.insert(files.nextDto());
+      }
+
+      LOGGER.info("Indexing files");
+      long start = System.currentTimeMillis();
+      fileTester.get(SourceLineIndexer.class).index();
+      long period = System.currentTimeMillis() - start;
+      long nbLines = FILES * LINES_PER_FILE;
+      long throughputPerSecond = 1000L * nbLines / period;
+      LOGGER.info(String.format("%d lines of %d files indexed in %d ms (%d lines/second)", nbLines, FILES, period, throughputPerSecond));
+
+      fileTester.get(EsClient.class).prepareOptimize(SourceLineIndexDefinition.INDEX).setWaitForMerge(true).get();
+      long dirSize = FileUtils.sizeOfDirectory(fileTester.getEsServerHolder().getHomeDir());
+      LOGGER.info(String.format("ES dir: " + FileUtils.byteCountToDisplaySize(dirSize)));
+      benchmark.expectBetween("ES dir size with file storage (b)", dirSize, 0L, 10L * FileUtils.ONE_MB);
+
+      benchmarkQueries(fileTester.get(SourceLineIndex.class));
+    } finally {
+      fileTester.stop();
+    }
+  }
+
   private void benchmarkQueries() {
-    SourceLineIndex index = tester.get(SourceLineIndex.class);
+    benchmarkQueries(tester.get(SourceLineIndex.class));
+  }
+
+  private void benchmarkQueries(SourceLineIndex index) {
     for (int i = 1; i <= 100; i++) {
       long start = System.currentTimeMillis();
       List<SourceLineDoc> result = index.getLines("FILE" + i, 20, 150);
@@ -128,6 +166,25 @@ public class SourceIndexBenchmarkTest {
     public FileSourcesUpdaterHelper.Row next() {
       String projectUuid = "P" + currentProject;
       String fileUuid = "FILE" + count.get();
+      return SourceLineResultSetIterator.toRow(projectUuid, fileUuid, new Date(), nextData());
+    }
+
+    /**
+     * Same data as {@link #next()}, but to be inserted in db table FILE_SOURCES
+     */
+    FileSourceDto nextDto() {
+      long now = System.currentTimeMillis();
+      FileSourceDto dto = new FileSourceDto()
+        .setProjectUuid("P" + currentProject)
+        .setFileUuid("FILE" + count.get())
+        .setDataType(FileSourceDto.Type.SOURCE)
+        .setDataHash("49d7230271f2bd24c759e54bcd66547d")
+        .setCreatedAt(now)
+        .setUpdatedAt(now);
+      return dto.setSourceData(nextData());
+    }
+
+    private FileSourceDb.Data nextData() {
       dataBuilder.clear();
 
       for (int indexLine = 1; indexLine <= nbLinesPerFile; indexLine++) {
@@ -155,7 +212,7 @@ public class SourceIndexBenchmarkTest {
       if (count.get() % 500 == 0) {
         currentProject++;
       }
-      return SourceLineResultSetIterator.toRow(projectUuid, fileUuid, new Date(), dataBuilder.build());
+      return dataBuilder.build();
     }
 
     @Override
@@ -20,40 +20,31 @@
 
 package org.sonar.server.batch;
 
-import org.sonar.api.resources.Scopes;
+import com.google.protobuf.CodedOutputStream;
 import org.sonar.api.server.ws.Request;
 import org.sonar.api.server.ws.Response;
 import org.sonar.api.server.ws.WebService;
+import org.sonar.api.web.UserRole;
 import org.sonar.batch.protocol.input.BatchInput;
 import org.sonar.core.component.ComponentDto;
 import org.sonar.core.permission.GlobalPermissions;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 import org.sonar.server.db.DbClient;
-import org.sonar.server.issue.index.IssueDoc;
-import org.sonar.server.issue.index.IssueIndex;
 import org.sonar.server.plugins.MimeTypes;
 import org.sonar.server.user.UserSession;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-
-import static com.google.common.collect.Maps.newHashMap;
 
 public class IssuesAction implements BatchWsAction {
 
   private static final String PARAM_KEY = "key";
 
   private final DbClient dbClient;
-  private final IssueIndex issueIndex;
   private final UserSession userSession;
 
-  public IssuesAction(DbClient dbClient, IssueIndex issueIndex, UserSession userSession) {
+  public IssuesAction(DbClient dbClient, UserSession userSession) {
     this.dbClient = dbClient;
-    this.issueIndex = issueIndex;
     this.userSession = userSession;
   }
 
@@ -81,73 +72,36 @@ public class IssuesAction implements BatchWsAction {
     DbSession session = dbClient.openSession(false);
     try {
       ComponentDto component = dbClient.componentDao().selectByKey(session, moduleKey);
-      Map<String, String> keysByUUid = keysByUUid(session, component);
+      if (!userSession.hasProjectPermissionByUuid(UserRole.USER, component.projectUuid())) {
+        // same as issues that are not visible in the issues index
+        return;
+      }
 
-      BatchInput.ServerIssue.Builder issueBuilder = BatchInput.ServerIssue.newBuilder();
-      for (Iterator<IssueDoc> issueDocIterator = issueIndex.selectIssuesForBatch(component); issueDocIterator.hasNext();) {
-        handleIssue(issueDocIterator.next(), issueBuilder, keysByUUid, response.stream().output());
+      // Issues are streamed from a cursor on db, as the issues of large projects can't be kept in memory.
+      // A single coded stream is used for all the issues. Message#writeDelimitedTo(OutputStream) would allocate
+      // a new buffer for each issue.
+      CodedOutputStream output = CodedOutputStream.newInstance(response.stream().output());
+      ServerIssueResultSetIterator issues = ServerIssueResultSetIterator.create(dbClient, session.getConnection(), component);
+      try {
+        while (issues.hasNext()) {
+          writeIssue(issues.next(), output);
+        }
+      } finally {
+        issues.close();
       }
+      output.flush();
     } finally {
       MyBatis.closeQuietly(session);
     }
   }
 
-  private void handleIssue(IssueDoc issue, BatchInput.ServerIssue.Builder issueBuilder, Map<String, String> keysByUUid, OutputStream out) {
-    issueBuilder.setKey(issue.key());
-    issueBuilder.setModuleKey(keysByUUid.get(issue.moduleUuid()));
-    String path = issue.filePath();
-    if (path != null) {
-      issueBuilder.setPath(path);
-    }
-    issueBuilder.setRuleRepository(issue.ruleKey().repository());
-    issueBuilder.setRuleKey(issue.ruleKey().rule());
-    String checksum = issue.checksum();
-    if (checksum != null) {
-      issueBuilder.setChecksum(checksum);
-    }
-    String assigneeLogin = issue.assignee();
-    if (assigneeLogin != null) {
-      issueBuilder.setAssigneeLogin(assigneeLogin);
-    }
-    Integer line = issue.line();
-    if (line != null) {
-      issueBuilder.setLine(line);
-    }
-    String message = issue.message();
-    if (message != null) {
-      issueBuilder.setMsg(message);
-    }
-    issueBuilder.setSeverity(org.sonar.batch.protocol.Constants.Severity.valueOf(issue.severity()));
-    issueBuilder.setManualSeverity(issue.isManualSeverity());
-    issueBuilder.setStatus(issue.status());
-    String resolution = issue.resolution();
-    if (resolution != null) {
-      issueBuilder.setResolution(resolution);
-    }
-    issueBuilder.setCreationDate(issue.creationDate().getTime());
+  private static void writeIssue(BatchInput.ServerIssue issue, CodedOutputStream out) {
     try {
-      issueBuilder.build().writeDelimitedTo(out);
+      // same format as Message#writeDelimitedTo(OutputStream)
+      out.writeRawVarint32(issue.getSerializedSize());
+      issue.writeTo(out);
     } catch (IOException e) {
       throw new IllegalStateException("Unable to serialize issue", e);
     }
-    issueBuilder.clear();
-  }
-
-  private Map<String, String> keysByUUid(DbSession session, ComponentDto component) {
-    Map<String, String> keysByUUid = newHashMap();
-    if (Scopes.PROJECT.equals(component.scope())) {
-      List<ComponentDto> modulesTree = dbClient.componentDao().selectDescendantModules(session, component.uuid());
-      for (ComponentDto componentDto : modulesTree) {
-        keysByUUid.put(componentDto.uuid(), componentDto.key());
-      }
-    } else {
-      String moduleUuid = component.moduleUuid();
-      if (moduleUuid == null) {
-        throw new IllegalArgumentException(String.format("The component '%s' has no module uuid", component.uuid()));
-      }
-      ComponentDto module = dbClient.componentDao().selectByUuid(session, moduleUuid);
-      keysByUUid.put(module.uuid(), module.key());
-    }
-    return keysByUUid;
   }
 }
@@ -0,0 +1,157 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.batch;
+
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.resources.Scopes;
+import org.sonar.batch.protocol.Constants;
+import org.sonar.batch.protocol.input.BatchInput;
+import org.sonar.core.component.ComponentDto;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.db.ResultSetIterator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.sonar.core.component.ComponentDto.MODULE_UUID_PATH_SEP;
+import static org.sonar.server.db.migrations.SqlUtil.getInt;
+import static org.sonar.server.db.migrations.SqlUtil.getLong;
+
+/**
+ * Scrolls over the non-closed issues of a project, a module or a file and reads only the fields
+ * sent to batch. The keys of modules are loaded by the same request, so nothing is requested
+ * for each issue.
+ */
+class ServerIssueResultSetIterator extends ResultSetIterator<BatchInput.ServerIssue> {
+
+  private static final String[] FIELDS = {
+    // column 1
+    "i.kee",
+    "p.kee",
+    "p.scope",
+    "p.path",
+    "m.kee",
+    "r.plugin_name",
+    "r.plugin_rule_key",
+    "i.checksum",
+    "i.assignee",
+    "i.line",
+
+    // column 11
+    "i.message",
+    "i.severity",
+    "i.manual_severity",
+    "i.status",
+    "i.resolution",
+    "i.issue_creation_date"
+  };
+
+  private static final String SQL_ALL = "select " + StringUtils.join(FIELDS, ",") + " from issues i " +
+    "inner join rules r on r.id=i.rule_id " +
+    "inner join projects p on p.uuid=i.component_uuid " +
+    "left outer join projects m on m.uuid=p.module_uuid " +
+    "where i.status<>'CLOSED'";
+
+  private static final String SQL_MODULE = SQL_ALL + " and i.project_uuid=? and p.module_uuid_path like ? escape '/'";
+
+  private static final String SQL_FILE = SQL_ALL + " and i.component_uuid=?";
+
+  private final BatchInput.ServerIssue.Builder issueBuilder = BatchInput.ServerIssue.newBuilder();
+
+  private ServerIssueResultSetIterator(PreparedStatement stmt) throws SQLException {
+    super(stmt);
+  }
+
+  static ServerIssueResultSetIterator create(DbClient dbClient, Connection connection, ComponentDto component) {
+    try {
+      PreparedStatement stmt;
+      switch (component.scope()) {
+        case Scopes.PROJECT:
+          // the project or a module, and its sub-modules
+          stmt = dbClient.newScrollingSelectStatement(connection, SQL_MODULE);
+          stmt.setString(1, component.projectUuid());
+          stmt.setString(2, "%" + MODULE_UUID_PATH_SEP + escapeLike(component.uuid()) + MODULE_UUID_PATH_SEP + "%");
+          break;
+        case Scopes.FILE:
+          stmt = dbClient.newScrollingSelectStatement(connection, SQL_FILE);
+          stmt.setString(1, component.uuid());
+          break;
+        default:
+          throw new IllegalStateException(String.format("Component of scope '%s' is not allowed", component.scope()));
+      }
+      return new ServerIssueResultSetIterator(stmt);
+    } catch (SQLException e) {
+      throw new IllegalStateException("Fail to prepare SQL request to select issues of " + component.key(), e);
+    }
+  }
+
+  private static String escapeLike(String s) {
+    return StringUtils.replace(StringUtils.replace(StringUtils.replace(s, "/", "//"), "%", "/%"), "_", "/_");
+  }
+
+  @Override
+  protected BatchInput.ServerIssue read(ResultSet rs) throws SQLException {
+    issueBuilder.clear();
+    issueBuilder.setKey(rs.getString(1));
+    String scope = rs.getString(3);
+    if (Scopes.PROJECT.equals(scope)) {
+      // issue on a module. Its path is the relative path of module, which is not sent to batch
+      issueBuilder.setModuleKey(rs.getString(2));
+    } else {
+      issueBuilder.setModuleKey(rs.getString(5));
+      String path = rs.getString(4);
+      if (path != null) {
+        issueBuilder.setPath(path);
+      }
+    }
+    issueBuilder.setRuleRepository(rs.getString(6));
+    issueBuilder.setRuleKey(rs.getString(7));
+    String checksum = rs.getString(8);
+    if (checksum != null) {
+      issueBuilder.setChecksum(checksum);
+    }
+    String assigneeLogin = rs.getString(9);
+    if (assigneeLogin != null) {
+      issueBuilder.setAssigneeLogin(assigneeLogin);
+    }
+    Integer line = getInt(rs, 10);
+    if (line != null) {
+      issueBuilder.setLine(line);
+    }
+    String message = rs.getString(11);
+    if (message != null) {
+      issueBuilder.setMsg(message);
+    }
+    issueBuilder.setSeverity(Constants.Severity.valueOf(rs.getString(12)));
+    issueBuilder.setManualSeverity(rs.getBoolean(13));
+    issueBuilder.setStatus(rs.getString(14));
+    String resolution = rs.getString(15);
+    if (resolution != null) {
+      issueBuilder.setResolution(resolution);
+    }
+    Long creationDate = getLong(rs, 16);
+    if (creationDate != null) {
+      issueBuilder.setCreationDate(creationDate);
+    }
+    return issueBuilder.build();
+  }
+}
@@ -31,6 +31,7 @@ import org.sonar.core.purge.IdUuidPair;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.issue.index.IssueAuthorizationIndexer;
 import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.measure.MeasureFilterCache;
 import org.sonar.server.source.index.SourceLineIndexer;
 import org.sonar.server.test.index.TestIndexer;
 
@@ -45,15 +46,17 @@ public class ComponentCleanerService {
   private final SourceLineIndexer sourceLineIndexer;
   private final TestIndexer testIndexer;
   private final ResourceTypes resourceTypes;
+  private final MeasureFilterCache measureFilterCache;
 
   public ComponentCleanerService(DbClient dbClient, IssueAuthorizationIndexer issueAuthorizationIndexer, IssueIndexer issueIndexer,
-    SourceLineIndexer sourceLineIndexer, TestIndexer testIndexer, ResourceTypes resourceTypes) {
+    SourceLineIndexer sourceLineIndexer, TestIndexer testIndexer, ResourceTypes resourceTypes, MeasureFilterCache measureFilterCache) {
     this.dbClient = dbClient;
     this.issueAuthorizationIndexer = issueAuthorizationIndexer;
     this.issueIndexer = issueIndexer;
     this.sourceLineIndexer = sourceLineIndexer;
     this.testIndexer = testIndexer;
     this.resourceTypes = resourceTypes;
+    this.measureFilterCache = measureFilterCache;
   }
 
   public void delete(DbSession dbSession, List<ComponentDto> projects) {
@@ -78,6 +81,7 @@ public class ComponentCleanerService {
     }
     dbClient.purgeDao().deleteResourceTree(dbSession, new IdUuidPair(project.getId(), project.uuid()));
     dbSession.commit();
+    measureFilterCache.invalidateProject(project.getId());
 
     deleteFromIndices(project.uuid());
   }
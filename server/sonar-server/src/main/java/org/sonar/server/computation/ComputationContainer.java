@@ -71,10 +71,9 @@ public class ComputationContainer {
     try {
       child.getComponentByType(ComputationService.class).process(item);
     } finally {
+      // also removes the child from its parent. Other children, created by
+      // concurrent computation workers, are kept.
       child.stopComponents();
-      // TODO not possible to have multiple children -> will be
-      // a problem when we will have multiple concurrent computation workers
-      container.removeChild();
     }
   }
 }
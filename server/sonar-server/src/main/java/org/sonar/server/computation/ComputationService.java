@@ -26,7 +26,6 @@ import org.apache.commons.lang.ArrayUtils;
 import org.sonar.api.ServerSide;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.TempFolder;
-import org.sonar.api.utils.ZipUtils;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
@@ -46,7 +45,6 @@ import org.sonar.server.properties.ProjectSettingsFactory;
 import javax.annotation.Nullable;
 
 import java.io.File;
-import java.io.IOException;
 
 import static org.sonar.api.utils.DateUtils.formatDateTimeNullSafe;
 import static org.sonar.api.utils.DateUtils.longToDate;
@@ -81,11 +79,13 @@ public class ComputationService {
       "Analysis of project %s (report %d)", item.dto.getProjectKey(), item.dto.getId()));
 
     ComponentDto project = null;
+    BatchReportReader reader = null;
+    File workDir = tempFolder.newDir();
 
     try {
       project = loadProject(item);
-      File reportDir = extractReportInDir(item);
-      BatchReportReader reader = new BatchReportReader(reportDir);
+      // entries are read directly from the zip. Only reports in container format are extracted into workDir.
+      reader = BatchReportReader.fromZip(item.zipFile, workDir);
       if (isSnapshotMissing(item, reader.readMetadata().getSnapshotId())) {
         return;
       }
@@ -103,25 +103,21 @@ public class ComputationService {
       item.dto.setStatus(FAILED);
       throw Throwables.propagate(e);
     } finally {
+      closeQuietly(reader);
+      FileUtils.deleteQuietly(workDir);
       item.dto.setFinishedAt(system.now());
       saveActivity(item.dto, project);
       profiler.stopInfo();
     }
   }
 
-  private File extractReportInDir(ReportQueue.Item item) {
-    File dir = tempFolder.newDir();
-    try {
-      Profiler profiler = Profiler.createIfDebug(LOG).start();
-      ZipUtils.unzip(item.zipFile, dir);
-      if (profiler.isDebugEnabled()) {
-        String message = String.format("Report extracted | size=%s | project=%s",
-          FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(dir)), item.dto.getProjectKey());
-        profiler.stopDebug(message);
+  private static void closeQuietly(@Nullable BatchReportReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (Exception e) {
+        LOG.warn("Fail to close analysis report", e);
       }
-      return dir;
-    } catch (IOException e) {
-      throw new IllegalStateException(String.format("Fail to unzip %s into %s", item.zipFile, dir), e);
     }
   }
 
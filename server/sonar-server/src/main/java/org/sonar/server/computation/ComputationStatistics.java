@@ -0,0 +1,102 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation;
+
+import org.sonar.api.ServerSide;
+import org.sonar.api.utils.System2;
+import org.sonar.core.computation.db.AnalysisReportDto;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the analysis reports processed by the computation workers since server startup.
+ * Updated concurrently by workers and read by web services.
+ */
+@ServerSide
+public class ComputationStatistics {
+
+  private final System2 system;
+  private final AtomicInteger activeWorkers = new AtomicInteger(0);
+  private final AtomicLong startedReports = new AtomicLong(0L);
+  private final AtomicLong processedReports = new AtomicLong(0L);
+  private final AtomicLong totalWaitMs = new AtomicLong(0L);
+  private final AtomicLong maxWaitMs = new AtomicLong(0L);
+  private final AtomicLong totalDurationMs = new AtomicLong(0L);
+
+  public ComputationStatistics(System2 system) {
+    this.system = system;
+  }
+
+  /**
+   * Called by a worker when it starts processing a report popped from the queue.
+   * @return the timestamp of start, to be given to {@link #onReportFinished(long)}
+   */
+  public long onReportStarted(AnalysisReportDto report) {
+    activeWorkers.incrementAndGet();
+    startedReports.incrementAndGet();
+    long now = system.now();
+    Long createdAt = report.getCreatedAt();
+    if (createdAt != null) {
+      long waitMs = Math.max(0L, now - createdAt);
+      totalWaitMs.addAndGet(waitMs);
+      updateMax(maxWaitMs, waitMs);
+    }
+    return now;
+  }
+
+  public void onReportFinished(long startedAt) {
+    totalDurationMs.addAndGet(Math.max(0L, system.now() - startedAt));
+    processedReports.incrementAndGet();
+    activeWorkers.decrementAndGet();
+  }
+
+  public int getActiveWorkers() {
+    return activeWorkers.get();
+  }
+
+  public long getProcessedReports() {
+    return processedReports.get();
+  }
+
+  public long getMaxWaitMs() {
+    return maxWaitMs.get();
+  }
+
+  public long getAverageWaitMs() {
+    return average(totalWaitMs.get(), startedReports.get());
+  }
+
+  public long getAverageDurationMs() {
+    return average(totalDurationMs.get(), processedReports.get());
+  }
+
+  private static long average(long total, long count) {
+    return count == 0L ? 0L : (total / count);
+  }
+
+  private static void updateMax(AtomicLong max, long value) {
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+}
@@ -21,6 +21,7 @@
 package org.sonar.server.computation;
 
 import com.google.common.annotations.VisibleForTesting;
+import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
@@ -33,36 +34,55 @@ public class ComputationThread implements Runnable {
 
   private final ReportQueue queue;
   private final ComputationContainer container;
+  private final ComputationStatistics statistics;
 
-  public ComputationThread(ReportQueue queue) {
-    this.queue = queue;
-    this.container = new ComputationContainer();
+  public ComputationThread(ReportQueue queue, ComputationStatistics statistics) {
+    this(queue, new ComputationContainer(), statistics);
   }
 
   @VisibleForTesting
   ComputationThread(ReportQueue queue, ComputationContainer container) {
+    this(queue, container, new ComputationStatistics(System2.INSTANCE));
+  }
+
+  @VisibleForTesting
+  ComputationThread(ReportQueue queue, ComputationContainer container, ComputationStatistics statistics) {
     this.queue = queue;
     this.container = container;
+    this.statistics = statistics;
   }
 
   @Override
   public void run() {
+    process();
+  }
+
+  /**
+   * Pops at most one report from the queue and integrates it.
+   * @return true if a report has been popped, so that caller can immediately check
+   * if other reports are waiting in the queue.
+   */
+  public boolean process() {
     ReportQueue.Item item = null;
     try {
       item = queue.pop();
     } catch (Exception e) {
       LOG.error("Failed to pop the queue of analysis reports", e);
     }
-    if (item != null) {
-      try {
-        container.execute(item);
-      } catch (Throwable e) {
-        LOG.error(String.format(
-          "Failed to process analysis report %d of project %s", item.dto.getId(), item.dto.getProjectKey()), e);
-      } finally {
-        removeSilentlyFromQueue(item);
-      }
+    if (item == null) {
+      return false;
+    }
+    long startedAt = statistics.onReportStarted(item.dto);
+    try {
+      container.execute(item);
+    } catch (Throwable e) {
+      LOG.error(String.format(
+        "Failed to process analysis report %d of project %s", item.dto.getId(), item.dto.getProjectKey()), e);
+    } finally {
+      statistics.onReportFinished(startedAt);
+      removeSilentlyFromQueue(item);
     }
+    return true;
   }
 
   private void removeSilentlyFromQueue(ReportQueue.Item item) {
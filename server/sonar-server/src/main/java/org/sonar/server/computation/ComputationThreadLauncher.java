@@ -23,38 +23,53 @@ package org.sonar.server.computation;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.picocontainer.Startable;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
 import org.sonar.api.platform.ServerStartHandler;
+import org.sonar.api.utils.log.Loggers;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Starts the pool of computation workers. Each worker pops reports from the queue until it is empty, then
+ * waits for the next periodic check or for an explicit call to {@link #startAnalysisTaskNow()}.
+ * Reports of a same project are never processed concurrently, see {@link ReportQueue#pop()}.
+ */
 public class ComputationThreadLauncher implements Startable, ServerStartHandler {
 
   public static final String THREAD_NAME_PREFIX = "computation-";
 
+  /**
+   * Number of reports that can be processed concurrently
+   */
+  public static final String PROPERTY_WORKERS = "sonar.computation.workers";
+  public static final int DEFAULT_WORKERS = 1;
+
   private final ReportQueue queue;
+  private final ComputationStatistics statistics;
+  private final int workers;
   private final ScheduledExecutorService executorService;
+  private final AtomicInteger pendingWakeUps = new AtomicInteger(0);
 
   private final long delayBetweenTasks;
   private final long delayForFirstStart;
   private final TimeUnit timeUnit;
 
-  public ComputationThreadLauncher(ReportQueue queue) {
-    this.queue = queue;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(newThreadFactory());
-
-    this.delayBetweenTasks = 10;
-    this.delayForFirstStart = 0;
-    this.timeUnit = TimeUnit.SECONDS;
+  public ComputationThreadLauncher(ReportQueue queue, ComputationStatistics statistics, Settings settings) {
+    this(queue, statistics, workers(settings), 0, 10, TimeUnit.SECONDS);
   }
 
   @VisibleForTesting
-  ComputationThreadLauncher(ReportQueue queue, long delayForFirstStart, long delayBetweenTasks, TimeUnit timeUnit) {
+  ComputationThreadLauncher(ReportQueue queue, ComputationStatistics statistics, int workers, long delayForFirstStart, long delayBetweenTasks,
+    TimeUnit timeUnit) {
     this.queue = queue;
-    this.executorService = Executors.newSingleThreadScheduledExecutor(newThreadFactory());
+    this.statistics = statistics;
+    this.workers = workers;
+    this.executorService = Executors.newScheduledThreadPool(workers, newThreadFactory());
 
     this.delayBetweenTasks = delayBetweenTasks;
     this.delayForFirstStart = delayForFirstStart;
@@ -71,17 +86,56 @@ public class ComputationThreadLauncher implements Startable, ServerStartHandler
     executorService.shutdown();
   }
 
+  public int getWorkers() {
+    return workers;
+  }
+
+  /**
+   * Wakes up an idle worker, if any. Does not wait for the end of processing.
+   */
   public void startAnalysisTaskNow() {
-    executorService.execute(new ComputationThread(queue));
+    // no need to enqueue more wake-ups than the number of workers able to consume them
+    if (pendingWakeUps.incrementAndGet() <= workers) {
+      executorService.execute(new Worker(true));
+    } else {
+      pendingWakeUps.decrementAndGet();
+    }
   }
 
   @Override
   public void onServerStart(Server server) {
-    executorService.scheduleAtFixedRate(new ComputationThread(queue), delayForFirstStart, delayBetweenTasks, timeUnit);
+    Loggers.get(getClass()).info(String.format("Start %d computation worker(s)", workers));
+    for (int i = 0; i < workers; i++) {
+      executorService.scheduleWithFixedDelay(new Worker(false), delayForFirstStart, delayBetweenTasks, timeUnit);
+    }
   }
 
   private ThreadFactory newThreadFactory() {
     return new ThreadFactoryBuilder()
       .setNameFormat(THREAD_NAME_PREFIX + "%d").setPriority(Thread.MIN_PRIORITY).build();
   }
+
+  private static int workers(Settings settings) {
+    int workers = settings.getInt(PROPERTY_WORKERS);
+    return workers > 0 ? workers : DEFAULT_WORKERS;
+  }
+
+  private class Worker implements Runnable {
+    private final boolean wakeUp;
+
+    Worker(boolean wakeUp) {
+      this.wakeUp = wakeUp;
+    }
+
+    @Override
+    public void run() {
+      if (wakeUp) {
+        pendingWakeUps.decrementAndGet();
+      }
+      ComputationThread thread = new ComputationThread(queue, statistics);
+      while (!executorService.isShutdown() && thread.process()) {
+        // drain the queue
+      }
+    }
+  }
 }
@@ -104,8 +104,12 @@ public class ReportQueue {
     }
   }
 
+  /**
+   * Books the oldest pending report whose project is not already being processed.
+   * Pops are serialized so that concurrent workers never book two reports of the same project.
+   */
   @CheckForNull
-  public Item pop() {
+  public synchronized Item pop() {
     DbSession session = dbClient.openSession(false);
     try {
       AnalysisReportDto dto = dao().pop(session);
@@ -65,12 +65,16 @@ public class AnalysisReportDao implements DaoComponent {
   @CheckForNull
   public AnalysisReportDto pop(DbSession session) {
     List<Long> reportIds = mapper(session).selectAvailables(PENDING, WORKING);
-    if (reportIds.isEmpty()) {
-      return null;
+    while (!reportIds.isEmpty()) {
+      AnalysisReportDto report = tryToPop(session, reportIds.get(0));
+      if (report != null) {
+        return report;
+      }
+      // report has been booked in the meantime by another server, so the other reports of its project
+      // are not available anymore
+      reportIds = mapper(session).selectAvailables(PENDING, WORKING);
     }
-
-    long reportId = reportIds.get(0);
-    return tryToPop(session, reportId);
+    return null;
   }
 
   @VisibleForTesting
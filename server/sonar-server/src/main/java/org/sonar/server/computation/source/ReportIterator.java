@@ -45,6 +45,14 @@ public class ReportIterator<E> extends CloseableIterator<E> {
     }
   }
 
+  /**
+   * @param stream stream of delimited messages, closed by {@link #close()}
+   */
+  public ReportIterator(InputStream stream, Parser<E> parser) {
+    this.parser = parser;
+    this.stream = stream;
+  }
+
   @Override
   protected E doNext() {
     try {
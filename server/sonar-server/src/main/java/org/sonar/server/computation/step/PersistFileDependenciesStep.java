@@ -32,7 +32,7 @@ import org.sonar.server.computation.ComputationContext;
 import org.sonar.server.computation.source.ReportIterator;
 import org.sonar.server.db.DbClient;
 
-import java.io.File;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -77,7 +77,7 @@ public class PersistFileDependenciesStep implements ComputationStep {
   }
 
   private void processFileDependenciesReport(FileDependenciesContext fileDependenciesContext, BatchReport.Component component){
-    File fileDependencyReport = fileDependenciesContext.context.getReportReader().readFileDependencies(component.getRef());
+    InputStream fileDependencyReport = fileDependenciesContext.context.getReportReader().readFileDependencies(component.getRef());
     if (fileDependencyReport != null) {
       ReportIterator<BatchReport.FileDependency> fileDependenciesIterator = new ReportIterator<>(fileDependencyReport, BatchReport.FileDependency.PARSER);
       try {
@@ -20,9 +20,11 @@
 
 package org.sonar.server.computation.step;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
 import org.apache.ibatis.session.ResultContext;
@@ -46,24 +48,50 @@ import org.sonar.server.computation.source.ReportIterator;
 import org.sonar.server.computation.source.ScmLineReader;
 import org.sonar.server.computation.source.SymbolsLineReader;
 import org.sonar.server.db.DbClient;
-import org.sonar.server.source.db.FileSourceDb;
+import org.sonar.server.source.db.FileSourceBatchWriter;
+import org.sonar.server.source.db.SourceDataCache;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Source data of files is computed, encoded and hashed by a pool of threads, while the results are persisted
+ * in the order of the component tree by the thread executing the step.
+ */
 public class PersistFileSourcesStep implements ComputationStep {
 
+  /**
+   * Maximum number of threads computing file source data
+   */
+  static final int MAX_THREADS = 4;
+
   private final DbClient dbClient;
   private final System2 system2;
+  private final SourceDataCache sourceDataCache;
+  private final int threads;
+
+  public PersistFileSourcesStep(DbClient dbClient, System2 system2, SourceDataCache sourceDataCache) {
+    this(dbClient, system2, sourceDataCache, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+  }
 
-  public PersistFileSourcesStep(DbClient dbClient, System2 system2) {
+  @VisibleForTesting
+  PersistFileSourcesStep(DbClient dbClient, System2 system2, SourceDataCache sourceDataCache, int threads) {
     this.dbClient = dbClient;
     this.system2 = system2;
+    this.sourceDataCache = sourceDataCache;
+    this.threads = threads;
   }
 
   @Override
@@ -74,8 +102,11 @@ public class PersistFileSourcesStep implements ComputationStep {
   @Override
   public void execute(ComputationContext context) {
     int rootComponentRef = context.getReportMetadata().getRootComponentRef();
-    // Don't use batch insert for file_sources since keeping all data in memory can produce OOM for big files
-    DbSession session = dbClient.openSession(false);
+    // Batch is flushed according to the size of binary data rather than the number of rows, so that big files can't produce OOM
+    DbSession session = dbClient.openSession(true);
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat("file-sources-%d").setDaemon(true).build());
+    List<String> updatedFileUuids = new ArrayList<>();
     try {
       final Map<String, FileSourceDto> previousFileSourcesByUuid = new HashMap<>();
       session.select("org.sonar.core.source.db.FileSourceMapper.selectHashesForProject", ImmutableMap.of("projectUuid", context.getProject().uuid(), "dataType", Type.SOURCE),
@@ -87,9 +118,19 @@ public class PersistFileSourcesStep implements ComputationStep {
           }
         });
 
-      recursivelyProcessComponent(new FileSourcesContext(session, context, previousFileSourcesByUuid), rootComponentRef);
+      FileSourceBatchWriter writer = new FileSourceBatchWriter(dbClient.fileSourceDao(), session);
+      FileSourcesContext fileSourcesContext = new FileSourcesContext(writer, context, previousFileSourcesByUuid, executor, updatedFileUuids);
+      recursivelyProcessComponent(fileSourcesContext, rootComponentRef);
+      while (!fileSourcesContext.pendingFiles.isEmpty()) {
+        persistNextSource(fileSourcesContext);
+      }
+      writer.flush();
     } finally {
+      executor.shutdownNow();
       MyBatis.closeQuietly(session);
+      // cached data of the files is obsolete only once the new data is committed. The writer commits
+      // intermediate batches, so the files must be invalidated even if the step fails.
+      sourceDataCache.invalidate(updatedFileUuids);
     }
   }
 
@@ -97,18 +138,11 @@ public class PersistFileSourcesStep implements ComputationStep {
     BatchReportReader reportReader = fileSourcesContext.context.getReportReader();
     BatchReport.Component component = reportReader.readComponent(componentRef);
     if (component.getType().equals(Constants.ComponentType.FILE)) {
-      LineIterator linesIterator = sourceLinesIterator(reportReader.readFileSource(componentRef));
-      LineReaders lineReaders = new LineReaders(reportReader, componentRef);
-      try {
-        ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(linesIterator, lineReaders.readers(), component.getLines());
-        ComputeFileSourceData.Data fileSourceData = computeFileSourceData.compute();
-        persistSource(fileSourcesContext, fileSourceData, component);
-      } catch (Exception e) {
-        throw new IllegalStateException(String.format("Cannot persist sources of %s", component.getPath()), e);
-      } finally {
-        linesIterator.close();
-        lineReaders.close();
+      // Bound the number of computed sources waiting to be persisted
+      if (fileSourcesContext.pendingFiles.size() >= 2 * threads) {
+        persistNextSource(fileSourcesContext);
       }
+      fileSourcesContext.pendingFiles.add(fileSourcesContext.executor.submit(new ComputeSource(reportReader, component)));
     }
 
     for (Integer childRef : component.getChildRefList()) {
@@ -116,21 +150,34 @@ public class PersistFileSourcesStep implements ComputationStep {
     }
   }
 
-  private static LineIterator sourceLinesIterator(File file) {
+  private void persistNextSource(FileSourcesContext fileSourcesContext) {
+    Future<FileSource> future = fileSourcesContext.pendingFiles.remove();
     try {
-      return IOUtils.lineIterator(FileUtils.openInputStream(file), StandardCharsets.UTF_8);
-    } catch (IOException e) {
-      throw new IllegalStateException("Fail to traverse file: " + file, e);
+      persistSource(fileSourcesContext, future.get());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while computing file sources", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new IllegalStateException(e.getCause());
     }
   }
 
-  private void persistSource(FileSourcesContext fileSourcesContext, ComputeFileSourceData.Data fileSourceData, BatchReport.Component component) {
-    FileSourceDb.Data fileData = fileSourceData.getFileSourceData();
+  private static LineIterator sourceLinesIterator(InputStream source) {
+    try {
+      return IOUtils.lineIterator(source, StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      IOUtils.closeQuietly(source);
+      throw new IllegalStateException("Fail to traverse source", e);
+    }
+  }
 
-    byte[] data = FileSourceDto.encodeSourceData(fileData);
-    String dataHash = DigestUtils.md5Hex(data);
-    String srcHash = fileSourceData.getSrcHash();
-    String lineHashes = fileSourceData.getLineHashes();
+  private void persistSource(FileSourcesContext fileSourcesContext, FileSource fileSource) {
+    BatchReport.Component component = fileSource.component;
+    byte[] data = fileSource.data;
+    String dataHash = fileSource.dataHash;
+    String srcHash = fileSource.srcHash;
+    String lineHashes = fileSource.lineHashes;
     FileSourceDto previousDto = fileSourcesContext.previousFileSourcesByUuid.get(component.getUuid());
 
     if (previousDto == null) {
@@ -144,8 +191,8 @@ public class PersistFileSourcesStep implements ComputationStep {
         .setLineHashes(lineHashes)
         .setCreatedAt(system2.now())
         .setUpdatedAt(system2.now());
-      dbClient.fileSourceDao().insert(fileSourcesContext.session, dto);
-      fileSourcesContext.session.commit();
+      fileSourcesContext.writer.insert(dto);
+      fileSourcesContext.updatedFileUuids.add(component.getUuid());
     } else {
       // Update only if data_hash has changed or if src_hash is missing (progressive migration)
       boolean binaryDataUpdated = !dataHash.equals(previousDto.getDataHash());
@@ -160,21 +207,80 @@ public class PersistFileSourcesStep implements ComputationStep {
         if (binaryDataUpdated) {
           previousDto.setUpdatedAt(system2.now());
         }
-        dbClient.fileSourceDao().update(previousDto);
-        fileSourcesContext.session.commit();
+        fileSourcesContext.writer.update(previousDto);
+        fileSourcesContext.updatedFileUuids.add(component.getUuid());
       }
     }
   }
 
+  /**
+   * Computes, encodes and hashes the source data of a file. Executed by the thread pool of the step.
+   */
+  private static class ComputeSource implements Callable<FileSource> {
+    private final BatchReportReader reportReader;
+    private final BatchReport.Component component;
+
+    ComputeSource(BatchReportReader reportReader, BatchReport.Component component) {
+      this.reportReader = reportReader;
+      this.component = component;
+    }
+
+    @Override
+    public FileSource call() {
+      int componentRef = component.getRef();
+      LineIterator linesIterator = null;
+      LineReaders lineReaders = null;
+      try {
+        linesIterator = sourceLinesIterator(reportReader.readFileSource(componentRef));
+        lineReaders = new LineReaders(reportReader, componentRef);
+        ComputeFileSourceData computeFileSourceData = new ComputeFileSourceData(linesIterator, lineReaders.readers(), component.getLines());
+        ComputeFileSourceData.Data fileSourceData = computeFileSourceData.compute();
+        byte[] data = FileSourceDto.encodeSourceData(fileSourceData.getFileSourceData());
+        return new FileSource(component, data, DigestUtils.md5Hex(data), fileSourceData.getSrcHash(), fileSourceData.getLineHashes());
+      } catch (Exception e) {
+        throw new IllegalStateException(String.format("Cannot persist sources of %s", component.getPath()), e);
+      } finally {
+        if (linesIterator != null) {
+          linesIterator.close();
+        }
+        if (lineReaders != null) {
+          lineReaders.close();
+        }
+      }
+    }
+  }
+
+  private static class FileSource {
+    private final BatchReport.Component component;
+    private final byte[] data;
+    private final String dataHash;
+    private final String srcHash;
+    private final String lineHashes;
+
+    FileSource(BatchReport.Component component, byte[] data, String dataHash, String srcHash, String lineHashes) {
+      this.component = component;
+      this.data = data;
+      this.dataHash = dataHash;
+      this.srcHash = srcHash;
+      this.lineHashes = lineHashes;
+    }
+  }
+
   private static class FileSourcesContext {
-    DbSession session;
+    FileSourceBatchWriter writer;
     ComputationContext context;
     Map<String, FileSourceDto> previousFileSourcesByUuid;
+    ExecutorService executor;
+    Queue<Future<FileSource>> pendingFiles = new ArrayDeque<>();
+    List<String> updatedFileUuids;
 
-    public FileSourcesContext(DbSession session, ComputationContext context, Map<String, FileSourceDto> previousFileSourcesByUuid) {
+    public FileSourcesContext(FileSourceBatchWriter writer, ComputationContext context, Map<String, FileSourceDto> previousFileSourcesByUuid,
+      ExecutorService executor, List<String> updatedFileUuids) {
       this.context = context;
       this.previousFileSourcesByUuid = previousFileSourcesByUuid;
-      this.session = session;
+      this.writer = writer;
+      this.executor = executor;
+      this.updatedFileUuids = updatedFileUuids;
     }
   }
 
@@ -183,30 +289,35 @@ public class PersistFileSourcesStep implements ComputationStep {
     private final List<ReportIterator> iterators = new ArrayList<>();
 
     LineReaders(BatchReportReader reportReader, int componentRef) {
-      File coverageFile = reportReader.readComponentCoverage(componentRef);
-      BatchReport.Changesets scmReport = reportReader.readChangesets(componentRef);
-      File highlightingFile = reportReader.readComponentSyntaxHighlighting(componentRef);
-      List<BatchReport.Symbols.Symbol> symbols = reportReader.readComponentSymbols(componentRef);
-      List<BatchReport.Duplication> duplications = reportReader.readComponentDuplications(componentRef);
-
-      if (coverageFile != null) {
-        ReportIterator<BatchReport.Coverage> coverageReportIterator = new ReportIterator<>(coverageFile, BatchReport.Coverage.PARSER);
-        iterators.add(coverageReportIterator);
-        readers.add(new CoverageLineReader(coverageReportIterator));
-      }
-      if (scmReport != null) {
-        readers.add(new ScmLineReader(scmReport));
-      }
-      if (highlightingFile != null) {
-        ReportIterator<BatchReport.SyntaxHighlighting> syntaxHighlightingReportIterator = new ReportIterator<>(highlightingFile, BatchReport.SyntaxHighlighting.PARSER);
-        iterators.add(syntaxHighlightingReportIterator);
-        readers.add(new HighlightingLineReader(syntaxHighlightingReportIterator));
-      }
-      if (!duplications.isEmpty()) {
-        readers.add(new DuplicationLineReader(duplications));
-      }
-      if (!symbols.isEmpty()) {
-        readers.add(new SymbolsLineReader(symbols));
+      try {
+        InputStream coverageStream = reportReader.readComponentCoverage(componentRef);
+        if (coverageStream != null) {
+          ReportIterator<BatchReport.Coverage> coverageReportIterator = new ReportIterator<>(coverageStream, BatchReport.Coverage.PARSER);
+          iterators.add(coverageReportIterator);
+          readers.add(new CoverageLineReader(coverageReportIterator));
+        }
+        BatchReport.Changesets scmReport = reportReader.readChangesets(componentRef);
+        if (scmReport != null) {
+          readers.add(new ScmLineReader(scmReport));
+        }
+        InputStream highlightingStream = reportReader.readComponentSyntaxHighlighting(componentRef);
+        if (highlightingStream != null) {
+          ReportIterator<BatchReport.SyntaxHighlighting> syntaxHighlightingReportIterator = new ReportIterator<>(highlightingStream, BatchReport.SyntaxHighlighting.PARSER);
+          iterators.add(syntaxHighlightingReportIterator);
+          readers.add(new HighlightingLineReader(syntaxHighlightingReportIterator));
+        }
+        List<BatchReport.Duplication> duplications = reportReader.readComponentDuplications(componentRef);
+        if (!duplications.isEmpty()) {
+          readers.add(new DuplicationLineReader(duplications));
+        }
+        List<BatchReport.Symbols.Symbol> symbols = reportReader.readComponentSymbols(componentRef);
+        if (!symbols.isEmpty()) {
+          readers.add(new SymbolsLineReader(symbols));
+        }
+      } catch (RuntimeException e) {
+        // streams opened before the failure would leak as the instance is never returned to caller
+        close();
+        throw e;
       }
     }
 
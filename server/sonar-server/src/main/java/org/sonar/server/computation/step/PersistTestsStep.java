@@ -45,7 +45,7 @@ import org.sonar.server.db.DbClient;
 import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.source.db.FileSourceDb.Test.TestStatus;
 
-import java.io.File;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -163,11 +163,11 @@ public class PersistTestsStep implements ComputationStep {
 
   private Multimap<String, FileSourceDb.Test.Builder> buildDbTests(TestContext context, BatchReport.Component component) {
     Multimap<String, FileSourceDb.Test.Builder> tests = ArrayListMultimap.create();
-    File testsFile = context.reader.readTests(component.getRef());
-    if (testsFile == null) {
+    InputStream testsStream = context.reader.readTests(component.getRef());
+    if (testsStream == null) {
       return tests;
     }
-    ReportIterator<BatchReport.Test> testIterator = new ReportIterator<>(testsFile, BatchReport.Test.PARSER);
+    ReportIterator<BatchReport.Test> testIterator = new ReportIterator<>(testsStream, BatchReport.Test.PARSER);
     try {
       while (testIterator.hasNext()) {
         BatchReport.Test batchTest = testIterator.next();
@@ -201,12 +201,12 @@ public class PersistTestsStep implements ComputationStep {
    */
   private Table<String, String, FileSourceDb.Test.CoveredFile.Builder> loadCoverageDetails(int testFileRef, TestContext context) {
     Table<String, String, FileSourceDb.Test.CoveredFile.Builder> nameToCoveredFiles = HashBasedTable.create();
-    File coverageDetailsFile = context.reader.readCoverageDetails(testFileRef);
-    if (coverageDetailsFile == null) {
+    InputStream coverageDetailsStream = context.reader.readCoverageDetails(testFileRef);
+    if (coverageDetailsStream == null) {
       return nameToCoveredFiles;
     }
 
-    ReportIterator<BatchReport.CoverageDetail> coverageIterator = new ReportIterator<>(coverageDetailsFile, BatchReport.CoverageDetail.PARSER);
+    ReportIterator<BatchReport.CoverageDetail> coverageIterator = new ReportIterator<>(coverageDetailsStream, BatchReport.CoverageDetail.PARSER);
     try {
       while (coverageIterator.hasNext()) {
         BatchReport.CoverageDetail batchCoverageDetail = coverageIterator.next();
@@ -27,15 +27,18 @@ import org.sonar.core.persistence.MyBatis;
 import org.sonar.server.component.db.SnapshotDao;
 import org.sonar.server.computation.ComputationContext;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.measure.MeasureFilterCache;
 
 import java.util.List;
 
 public class SwitchSnapshotStep implements ComputationStep {
 
   private final DbClient dbClient;
+  private final MeasureFilterCache measureFilterCache;
 
-  public SwitchSnapshotStep(DbClient dbClient) {
+  public SwitchSnapshotStep(DbClient dbClient, MeasureFilterCache measureFilterCache) {
     this.dbClient = dbClient;
+    this.measureFilterCache = measureFilterCache;
   }
 
   @Override
@@ -79,5 +82,6 @@ public class SwitchSnapshotStep implements ComputationStep {
     boolean isLast = dao.isLast(snapshot, previousLastSnapshot);
     dao.updateSnapshotAndChildrenLastFlagAndStatus(session, snapshot, isLast, SnapshotDto.STATUS_PROCESSED);
     session.commit();
+    measureFilterCache.invalidateProject(snapshot.getRootProjectId());
   }
 }
@@ -0,0 +1,106 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation.ws;
+
+import org.sonar.api.server.ws.Request;
+import org.sonar.api.server.ws.Response;
+import org.sonar.api.server.ws.WebService;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.text.JsonWriter;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.server.computation.ComputationStatistics;
+import org.sonar.server.computation.ComputationThreadLauncher;
+import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.user.UserSession;
+
+import java.util.List;
+
+import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
+import static org.sonar.core.computation.db.AnalysisReportDto.Status.WORKING;
+
+/**
+ * @since 5.2
+ */
+public class QueueStatsAction implements ComputationWsAction {
+
+  private final ReportQueue queue;
+  private final ComputationThreadLauncher launcher;
+  private final ComputationStatistics statistics;
+  private final UserSession userSession;
+  private final System2 system;
+
+  public QueueStatsAction(ReportQueue queue, ComputationThreadLauncher launcher, ComputationStatistics statistics, UserSession userSession, System2 system) {
+    this.queue = queue;
+    this.launcher = launcher;
+    this.statistics = statistics;
+    this.userSession = userSession;
+    this.system = system;
+  }
+
+  @Override
+  public void define(WebService.NewController controller) {
+    controller
+      .createAction("queue_stats")
+      .setDescription("Size of the queue of analysis reports and activity of the computation workers since server startup. " +
+        "Durations are in milliseconds.")
+      .setSince("5.2")
+      .setInternal(true)
+      .setHandler(this);
+  }
+
+  @Override
+  public void handle(Request request, Response response) {
+    userSession.checkGlobalPermission(GlobalPermissions.SYSTEM_ADMIN);
+
+    List<AnalysisReportDto> reports = queue.all();
+    int pending = 0;
+    int working = 0;
+    Long oldestPendingCreatedAt = null;
+    for (AnalysisReportDto report : reports) {
+      if (report.getStatus() == PENDING) {
+        pending++;
+        Long createdAt = report.getCreatedAt();
+        if (createdAt != null && (oldestPendingCreatedAt == null || createdAt < oldestPendingCreatedAt)) {
+          oldestPendingCreatedAt = createdAt;
+        }
+      } else if (report.getStatus() == WORKING) {
+        working++;
+      }
+    }
+
+    JsonWriter json = response.newJsonWriter().beginObject();
+    json.name("queue").beginObject()
+      .prop("pending", pending)
+      .prop("working", working)
+      .prop("oldestPendingWaitTime", oldestPendingCreatedAt == null ? 0L : Math.max(0L, system.now() - oldestPendingCreatedAt))
+      .endObject();
+    json.name("workers").beginObject()
+      .prop("total", launcher.getWorkers())
+      .prop("active", statistics.getActiveWorkers())
+      .prop("processedReports", statistics.getProcessedReports())
+      .prop("averageWaitTime", statistics.getAverageWaitMs())
+      .prop("maxWaitTime", statistics.getMaxWaitMs())
+      .prop("averageDuration", statistics.getAverageDurationMs())
+      .endObject();
+    json.endObject().close();
+  }
+}
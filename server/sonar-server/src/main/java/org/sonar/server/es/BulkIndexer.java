@@ -20,7 +20,11 @@
 package org.sonar.server.es;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.settings.get.GetSettingsResponse;
@@ -35,23 +39,30 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.unit.ByteSizeUnit;
 import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.EsRejectedExecutionException;
+import org.elasticsearch.rest.RestStatus;
 import org.elasticsearch.search.SearchHit;
 import org.picocontainer.Startable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.server.util.ProgressLogger;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Helper to bulk requests in an efficient way :
  * <ul>
- *   <li>bulk request is sent on the wire when its size is higher than 5Mb</li>
+ *   <li>bulk request is sent on the wire when its size is higher than 1Mb</li>
  *   <li>on large table indexing, replicas and automatic refresh can be temporarily disabled</li>
  *   <li>index refresh is optional (enabled by default)</li>
+ *   <li>documents rejected by Elasticsearch because of saturation are indexed again after a delay</li>
+ *   <li>in adaptive mode, size of bulk requests and concurrency are tuned from response times and rejections</li>
  * </ul>
  */
 public class BulkIndexer implements Startable {
@@ -60,44 +71,68 @@ public class BulkIndexer implements Startable {
   private static final long FLUSH_BYTE_SIZE = new ByteSizeValue(1, ByteSizeUnit.MB).bytes();
   private static final String REFRESH_INTERVAL_SETTING = "index.refresh_interval";
   private static final String ALREADY_STARTED_MESSAGE = "Bulk indexing is already started";
+  static final int MAX_ATTEMPTS = 5;
 
   private final EsClient client;
   private final String indexName;
   private boolean large = false;
   private long flushByteSize = FLUSH_BYTE_SIZE;
   private boolean disableRefresh = false;
+  private boolean adaptive = false;
   private BulkRequestBuilder bulkRequest = null;
   private Map<String, Object> largeInitialSettings = null;
   private final AtomicLong counter = new AtomicLong(0L);
+  private final AtomicLong byteCounter = new AtomicLong(0L);
   private final int concurrentRequests;
-  private final Semaphore semaphore;
+  private final BulkIndexerStats stats;
   private final ProgressLogger progress;
+  private BulkThrottle throttle = null;
+  private ScheduledExecutorService retryExecutor = null;
 
   public BulkIndexer(EsClient client, String indexName) {
     this.client = client;
     this.indexName = indexName;
+    this.stats = client.getBulkIndexerStats();
     this.progress = new ProgressLogger(String.format("Progress[BulkIndexer[%s]]", indexName), counter, LOGGER)
-      .setPluralLabel("requests");
+      .setPluralLabel("requests")
+      .setDetails(new ProgressDetails());
 
     this.concurrentRequests = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
-    this.semaphore = new Semaphore(concurrentRequests);
   }
 
   /**
    * Large indexing is an heavy operation that populates an index generally from scratch. Replicas and
    * automatic refresh are disabled during bulk indexing and lucene segments are optimized at the end.
+   * It also enables the adaptive mode, see {@link #setAdaptive(boolean)}.
    */
   public BulkIndexer setLarge(boolean b) {
     Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
     this.large = b;
+    this.adaptive = b;
     return this;
   }
 
+  /**
+   * Size of bulk requests. In adaptive mode, it is the initial size, that can then be
+   * decreased down to 1/4 or increased up to 8 times.
+   */
   public BulkIndexer setFlushByteSize(long flushByteSize) {
+    Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
     this.flushByteSize = flushByteSize;
     return this;
   }
 
+  /**
+   * In adaptive mode, size of bulk requests and the number of concurrent requests are tuned
+   * from response times and rejections of Elasticsearch. Disabled by default, except
+   * for large indexing.
+   */
+  public BulkIndexer setAdaptive(boolean b) {
+    Preconditions.checkState(bulkRequest == null, ALREADY_STARTED_MESSAGE);
+    this.adaptive = b;
+    return this;
+  }
+
   /**
    * By default refresh of index is executed in method {@link #stop()}. Set to true
    * to disable refresh.
@@ -130,13 +165,15 @@ public class BulkIndexer implements Startable {
       updateSettings(bulkSettings);
     }
     bulkRequest = client.prepareBulk().setRefresh(false);
+    throttle = new BulkThrottle(concurrentRequests, flushByteSize, adaptive);
     counter.set(0L);
+    byteCounter.set(0L);
     progress.start();
   }
 
   public void add(ActionRequest request) {
     bulkRequest.request().add(request);
-    if (bulkRequest.request().estimatedSizeInBytes() >= flushByteSize) {
+    if (bulkRequest.request().estimatedSizeInBytes() >= throttle.flushByteSize()) {
       executeBulk();
     }
   }
@@ -186,11 +223,14 @@ public class BulkIndexer implements Startable {
       executeBulk();
     }
     try {
-      if (semaphore.tryAcquire(concurrentRequests, 10, TimeUnit.MINUTES)) {
-        semaphore.release(concurrentRequests);
+      if (!throttle.awaitTermination(TimeUnit.MINUTES.toMillis(10))) {
+        LOGGER.error("Elasticsearch bulk requests still being executed after 10 minutes");
       }
     } catch (InterruptedException e) {
-      throw new IllegalStateException("Elasticsearch bulk requests still being executed after 10 minutes", e);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for Elasticsearch bulk requests", e);
+    } finally {
+      shutdownRetries();
     }
     progress.stop();
 
@@ -217,37 +257,133 @@ public class BulkIndexer implements Startable {
   private void executeBulk() {
     final BulkRequestBuilder req = this.bulkRequest;
     this.bulkRequest = client.prepareBulk().setRefresh(false);
-    semaphore.acquireUninterruptibly();
-    req.execute(new BulkResponseActionListener(req));
+    throttle.acquire();
+    execute(req, 1);
+  }
+
+  /**
+   * The throttle must be acquired before calling this method. It is released when response is received.
+   */
+  private void execute(BulkRequestBuilder req, int attempt) {
+    stats.onRequestStarted();
+    req.execute(new BulkResponseActionListener(req, attempt));
+  }
+
+  private void scheduleRetry(List<ActionRequest> requests, final int attempt) {
+    final BulkRequestBuilder req = client.prepareBulk().setRefresh(false);
+    for (ActionRequest request : requests) {
+      req.request().add(request);
+    }
+    throttle.retryScheduled();
+    retryExecutor().schedule(new Runnable() {
+      @Override
+      public void run() {
+        throttle.acquireRetry();
+        execute(req, attempt);
+      }
+    }, BulkThrottle.backoffMs(attempt - 1), TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized ScheduledExecutorService retryExecutor() {
+    if (retryExecutor == null) {
+      retryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+        .setNameFormat(String.format("BulkIndexer[%s]-retries-%%d", indexName))
+        .setDaemon(true)
+        .build());
+    }
+    return retryExecutor;
+  }
+
+  private synchronized void shutdownRetries() {
+    if (retryExecutor != null) {
+      retryExecutor.shutdownNow();
+      retryExecutor = null;
+    }
+  }
+
+  private static boolean isRejection(Throwable e) {
+    return ExceptionsHelper.unwrapCause(e) instanceof EsRejectedExecutionException;
   }
 
   private class BulkResponseActionListener implements ActionListener<BulkResponse> {
     private final BulkRequestBuilder req;
+    private final int attempt;
+    private final long bytes;
+    private final long startedAt;
 
-    public BulkResponseActionListener(BulkRequestBuilder req) {
+    public BulkResponseActionListener(BulkRequestBuilder req, int attempt) {
       this.req = req;
+      this.attempt = attempt;
+      this.bytes = req.request().estimatedSizeInBytes();
+      this.startedAt = System.currentTimeMillis();
     }
 
     @Override
     public void onResponse(BulkResponse response) {
-      semaphore.release();
-      counter.addAndGet(response.getItems().length);
-
-      for (BulkItemResponse item : response.getItems()) {
-        if (item.isFailed()) {
-          StringBuilder sb = new StringBuilder();
-          String msg = sb
-            .append("index [").append(item.getIndex()).append("], type [").append(item.getType()).append("], id [").append(item.getId())
-            .append("], message [").append(item.getFailureMessage()).append("]").toString();
-          LOGGER.error(msg);
+      try {
+        List<ActionRequest> rejected = new ArrayList<>();
+        long failures = 0L;
+        for (BulkItemResponse item : response.getItems()) {
+          if (item.isFailed()) {
+            if (attempt < MAX_ATTEMPTS && item.getFailure().getStatus() == RestStatus.TOO_MANY_REQUESTS) {
+              rejected.add(req.request().requests().get(item.getItemId()));
+            } else {
+              failures++;
+              StringBuilder sb = new StringBuilder();
+              String msg = sb
+                .append("index [").append(item.getIndex()).append("], type [").append(item.getType()).append("], id [").append(item.getId())
+                .append("], message [").append(item.getFailureMessage()).append("]").toString();
+              LOGGER.error(msg);
+            }
+          }
         }
+        long processed = response.getItems().length - rejected.size();
+        counter.addAndGet(processed);
+        byteCounter.addAndGet(bytes);
+        stats.onRequestCompleted(bytes, processed - failures, failures);
+        if (rejected.isEmpty()) {
+          throttle.onResponse(System.currentTimeMillis() - startedAt);
+        } else {
+          throttle.onRejection();
+          stats.onRejection(rejected.size());
+          scheduleRetry(rejected, attempt + 1);
+        }
+      } finally {
+        throttle.release();
       }
     }
 
     @Override
     public void onFailure(Throwable e) {
-      semaphore.release();
-      LOGGER.error("Fail to execute bulk index request: " + req, e);
+      try {
+        if (attempt < MAX_ATTEMPTS && isRejection(e)) {
+          stats.onRequestCompleted(bytes, 0L, 0L);
+          throttle.onRejection();
+          stats.onRejection(req.request().numberOfActions());
+          scheduleRetry(req.request().requests(), attempt + 1);
+        } else {
+          stats.onRequestCompleted(bytes, 0L, req.request().numberOfActions());
+          LOGGER.error("Fail to execute bulk index request: " + req, e);
+        }
+      } finally {
+        throttle.release();
+      }
+    }
+  }
+
+  /**
+   * Details of progress logs: throughput in bytes, state of the throttle
+   */
+  private class ProgressDetails implements Supplier<String> {
+    private long previousBytes = 0L;
+
+    @Override
+    public String get() {
+      long bytes = byteCounter.get();
+      long bytesPerSecond = 1000 * (bytes - previousBytes) / progress.getPeriodMs();
+      previousBytes = bytes;
+      return String.format("%s/sec, %d in-flight requests, bulk size %s, concurrency %d", FileUtils.byteCountToDisplaySize(bytesPerSecond),
+        throttle.inFlight(), FileUtils.byteCountToDisplaySize(throttle.flushByteSize()), throttle.concurrency());
     }
   }
 }
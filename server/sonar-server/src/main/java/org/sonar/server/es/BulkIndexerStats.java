@@ -0,0 +1,90 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of all the {@link BulkIndexer} connected to the same {@link EsClient}. They
+ * are exported by {@link org.sonar.server.platform.monitoring.EsMonitor}. Thread-safe.
+ */
+public class BulkIndexerStats {
+
+  private final AtomicLong indexedDocuments = new AtomicLong(0L);
+  private final AtomicLong sentBytes = new AtomicLong(0L);
+  private final AtomicInteger inFlightRequests = new AtomicInteger(0);
+  private final AtomicLong rejections = new AtomicLong(0L);
+  private final AtomicLong retriedDocuments = new AtomicLong(0L);
+  private final AtomicLong failedDocuments = new AtomicLong(0L);
+
+  void onRequestStarted() {
+    inFlightRequests.incrementAndGet();
+  }
+
+  void onRequestCompleted(long bytes, long documents, long failures) {
+    inFlightRequests.decrementAndGet();
+    sentBytes.addAndGet(bytes);
+    indexedDocuments.addAndGet(documents);
+    failedDocuments.addAndGet(failures);
+  }
+
+  void onRejection(long retriedDocs) {
+    rejections.incrementAndGet();
+    retriedDocuments.addAndGet(retriedDocs);
+  }
+
+  /**
+   * Number of documents successfully indexed or deleted
+   */
+  public long getIndexedDocuments() {
+    return indexedDocuments.get();
+  }
+
+  /**
+   * Estimated size of the bulk requests that have been executed
+   */
+  public long getSentBytes() {
+    return sentBytes.get();
+  }
+
+  public int getInFlightRequests() {
+    return inFlightRequests.get();
+  }
+
+  /**
+   * Number of bulk requests that have been fully or partially rejected by Elasticsearch
+   * because its bulk thread pool was saturated
+   */
+  public long getRejections() {
+    return rejections.get();
+  }
+
+  public long getRetriedDocuments() {
+    return retriedDocuments.get();
+  }
+
+  /**
+   * Number of documents that could not be indexed. Failures are logged.
+   */
+  public long getFailedDocuments() {
+    return failedDocuments.get();
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Limits the number of concurrent bulk requests of a {@link BulkIndexer}. In adaptive mode, the size
+ * of bulk requests and the concurrency are tuned from the responses of Elasticsearch :
+ * <ul>
+ *   <li>size of bulk requests is increased while responses are fast, and decreased when they are slow</li>
+ *   <li>size and concurrency are halved when Elasticsearch rejects requests, then concurrency is progressively
+ *   increased again</li>
+ * </ul>
+ */
+class BulkThrottle {
+
+  static final long TARGET_RESPONSE_TIME_MS = 1000L;
+  static final int SUCCESSES_BEFORE_INCREASING_CONCURRENCY = 10;
+  private static final long INITIAL_BACKOFF_MS = 100L;
+  private static final long MAX_BACKOFF_MS = 10000L;
+
+  private final boolean adaptive;
+  private final int maxConcurrency;
+  private final long minFlushByteSize;
+  private final long maxFlushByteSize;
+  private int concurrency;
+  private long flushByteSize;
+  private int inFlight = 0;
+  private int pendingRetries = 0;
+  private int successes = 0;
+
+  BulkThrottle(int maxConcurrency, long flushByteSize, boolean adaptive) {
+    this.adaptive = adaptive;
+    this.maxConcurrency = maxConcurrency;
+    this.concurrency = maxConcurrency;
+    this.flushByteSize = flushByteSize;
+    this.minFlushByteSize = Math.max(1L, flushByteSize / 4);
+    this.maxFlushByteSize = flushByteSize * 8;
+  }
+
+  /**
+   * Blocks until a new request is allowed to be executed
+   */
+  synchronized void acquire() {
+    boolean interrupted = false;
+    while (inFlight >= concurrency) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    inFlight++;
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  synchronized void release() {
+    inFlight--;
+    notifyAll();
+  }
+
+  /**
+   * A request is going to be executed again after a delay. It must then be acquired with {@link #acquireRetry()}.
+   */
+  synchronized void retryScheduled() {
+    pendingRetries++;
+  }
+
+  synchronized void acquireRetry() {
+    acquire();
+    pendingRetries--;
+  }
+
+  /**
+   * @return false if requests are still being executed when timeout is reached
+   */
+  synchronized boolean awaitTermination(long timeoutMs) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (inFlight > 0 || pendingRetries > 0) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0L) {
+        return false;
+      }
+      wait(remaining);
+    }
+    return true;
+  }
+
+  synchronized void onResponse(long responseTimeMs) {
+    if (!adaptive) {
+      return;
+    }
+    if (responseTimeMs <= TARGET_RESPONSE_TIME_MS) {
+      flushByteSize = Math.min(maxFlushByteSize, flushByteSize + flushByteSize / 4);
+      successes++;
+      if (successes >= SUCCESSES_BEFORE_INCREASING_CONCURRENCY && concurrency < maxConcurrency) {
+        concurrency++;
+        successes = 0;
+        notifyAll();
+      }
+    } else if (responseTimeMs > 2 * TARGET_RESPONSE_TIME_MS) {
+      flushByteSize = Math.max(minFlushByteSize, flushByteSize - flushByteSize / 4);
+      successes = 0;
+    }
+  }
+
+  synchronized void onRejection() {
+    successes = 0;
+    if (adaptive) {
+      concurrency = Math.max(1, concurrency / 2);
+      flushByteSize = Math.max(minFlushByteSize, flushByteSize / 2);
+    }
+  }
+
+  synchronized long flushByteSize() {
+    return flushByteSize;
+  }
+
+  synchronized int concurrency() {
+    return concurrency;
+  }
+
+  synchronized int inFlight() {
+    return inFlight;
+  }
+
+  @VisibleForTesting
+  synchronized int pendingRetries() {
+    return pendingRetries;
+  }
+
+  /**
+   * Delay before executing again the requests rejected at the given attempt (starting from 1)
+   */
+  static long backoffMs(int attempt) {
+    return Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(attempt - 1, 16));
+  }
+}
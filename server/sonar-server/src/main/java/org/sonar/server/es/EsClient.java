@@ -79,6 +79,7 @@ public class EsClient implements Startable {
 
   public static final Logger LOGGER = Loggers.get("es");
   private final Client client;
+  private final BulkIndexerStats bulkIndexerStats = new BulkIndexerStats();
 
   public EsClient(SearchClient deprecatedClient) {
     this.client = deprecatedClient;
@@ -88,6 +89,13 @@ public class EsClient implements Startable {
     this.client = client;
   }
 
+  /**
+   * Statistics of the {@link BulkIndexer} connected to this client
+   */
+  public BulkIndexerStats getBulkIndexerStats() {
+    return bulkIndexerStats;
+  }
+
   public RefreshRequestBuilder prepareRefresh(String... indices) {
     return new ProxyRefreshRequestBuilder(client).setIndices(indices);
   }
@@ -0,0 +1,373 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import org.elasticsearch.common.joda.time.format.DateTimeFormatter;
+import org.elasticsearch.common.joda.time.format.ISODateTimeFormat;
+
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writes the JSON source of documents to be indexed directly as UTF-8 bytes. Contrary to
+ * {@link org.sonar.api.utils.text.JsonWriter}, that requires a stream, an encoder and a writer per document,
+ * the internal buffer is recycled between documents, so the only allocation is the resulting byte array.
+ * <p/>
+ * Instances are not thread-safe. Use {@link #get()} to get the builder of the current thread :
+ * <pre>
+ *   byte[] source = JsonDocBuilder.get().beginObject().prop("key", key).endObject().build();
+ *   new UpdateRequest(index, type, key).doc(source).upsert(source);
+ * </pre>
+ * Null values are written.
+ */
+public class JsonDocBuilder {
+
+  private static final int INITIAL_CAPACITY = 4096;
+
+  /**
+   * Buffers bigger than this size are not kept between documents
+   */
+  private static final int MAX_RECYCLED_CAPACITY = 1024 * 1024;
+
+  private static final DateTimeFormatter DATE_PRINTER = ISODateTimeFormat.dateTime().withZoneUTC();
+  private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+  private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+  private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+  private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+  private static final ThreadLocal<JsonDocBuilder> BUILDERS = new ThreadLocal<JsonDocBuilder>() {
+    @Override
+    protected JsonDocBuilder initialValue() {
+      return new JsonDocBuilder();
+    }
+  };
+
+  private byte[] buffer = new byte[INITIAL_CAPACITY];
+  private int length = 0;
+
+  // true if next value is the first one of an object or array, or the value of a property
+  private boolean noSeparator = true;
+
+  JsonDocBuilder() {
+    // use get()
+  }
+
+  /**
+   * The builder of the current thread, ready to write a new document
+   */
+  public static JsonDocBuilder get() {
+    JsonDocBuilder builder = BUILDERS.get();
+    builder.reset();
+    return builder;
+  }
+
+  public JsonDocBuilder beginObject() {
+    separator();
+    write('{');
+    noSeparator = true;
+    return this;
+  }
+
+  public JsonDocBuilder endObject() {
+    write('}');
+    noSeparator = false;
+    return this;
+  }
+
+  public JsonDocBuilder beginArray() {
+    separator();
+    write('[');
+    noSeparator = true;
+    return this;
+  }
+
+  public JsonDocBuilder endArray() {
+    write(']');
+    noSeparator = false;
+    return this;
+  }
+
+  public JsonDocBuilder name(String name) {
+    separator();
+    writeString(name);
+    write(':');
+    noSeparator = true;
+    return this;
+  }
+
+  public JsonDocBuilder prop(String name, @Nullable String value) {
+    return name(name).value(value);
+  }
+
+  public JsonDocBuilder prop(String name, @Nullable Number value) {
+    return name(name).value(value);
+  }
+
+  public JsonDocBuilder prop(String name, long value) {
+    return name(name).value(value);
+  }
+
+  public JsonDocBuilder prop(String name, boolean value) {
+    return name(name).value(value);
+  }
+
+  public JsonDocBuilder prop(String name, @Nullable Date value) {
+    return name(name).value(value);
+  }
+
+  public JsonDocBuilder value(@Nullable String value) {
+    separator();
+    if (value == null) {
+      write(NULL);
+    } else {
+      writeString(value);
+    }
+    return this;
+  }
+
+  public JsonDocBuilder value(long value) {
+    separator();
+    writeLong(value);
+    return this;
+  }
+
+  public JsonDocBuilder value(boolean value) {
+    separator();
+    write(value ? TRUE : FALSE);
+    return this;
+  }
+
+  public JsonDocBuilder value(@Nullable Number value) {
+    separator();
+    if (value == null) {
+      write(NULL);
+    } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+      writeLong(value.longValue());
+    } else {
+      writeAscii(value.toString());
+    }
+    return this;
+  }
+
+  /**
+   * Dates are formatted as ISO date times in UTC, as Elasticsearch does
+   */
+  public JsonDocBuilder value(@Nullable Date value) {
+    if (value == null) {
+      separator();
+      write(NULL);
+      return this;
+    }
+    return value(DATE_PRINTER.print(value.getTime()));
+  }
+
+  /**
+   * Supports the values of {@link org.sonar.server.search.BaseDoc} : strings, numbers, booleans, dates,
+   * iterables and maps of these types.
+   */
+  @SuppressWarnings("unchecked")
+  public JsonDocBuilder value(@Nullable Object value) {
+    if (value == null || value instanceof String) {
+      return value((String) value);
+    }
+    if (value instanceof Number) {
+      return value((Number) value);
+    }
+    if (value instanceof Boolean) {
+      return value(((Boolean) value).booleanValue());
+    }
+    if (value instanceof Date) {
+      return value((Date) value);
+    }
+    if (value instanceof Map) {
+      return object((Map<String, ?>) value);
+    }
+    if (value instanceof Iterable) {
+      beginArray();
+      for (Object o : (Iterable) value) {
+        value(o);
+      }
+      return endArray();
+    }
+    if (value instanceof Enum) {
+      return value(((Enum) value).name());
+    }
+    throw new IllegalArgumentException("Unsupported type of value: " + value.getClass());
+  }
+
+  /**
+   * Writes the map as a JSON object
+   */
+  public JsonDocBuilder object(Map<String, ?> fields) {
+    beginObject();
+    for (Map.Entry<String, ?> entry : fields.entrySet()) {
+      name(entry.getKey()).value(entry.getValue());
+    }
+    return endObject();
+  }
+
+  /**
+   * Copy of the document. The builder can then be used for a new document.
+   */
+  public byte[] build() {
+    byte[] result = Arrays.copyOf(buffer, length);
+    reset();
+    return result;
+  }
+
+  int capacity() {
+    return buffer.length;
+  }
+
+  private void reset() {
+    length = 0;
+    noSeparator = true;
+    if (buffer.length > MAX_RECYCLED_CAPACITY) {
+      buffer = new byte[INITIAL_CAPACITY];
+    }
+  }
+
+  private void separator() {
+    if (noSeparator) {
+      noSeparator = false;
+    } else {
+      write(',');
+    }
+  }
+
+  private void writeString(String s) {
+    // worst case is 6 bytes per char (unicode escape sequence)
+    ensureCapacity(2 + 6 * s.length());
+    buffer[length++] = '"';
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        writeAsciiChar(c);
+      } else if (c < 0x800) {
+        buffer[length++] = (byte) (0xc0 | (c >> 6));
+        buffer[length++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(i + 1));
+        i++;
+        buffer[length++] = (byte) (0xf0 | (codePoint >> 18));
+        buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        buffer[length++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else if (Character.isSurrogate(c)) {
+        // malformed surrogate pair
+        writeUnicodeEscape(c);
+      } else {
+        buffer[length++] = (byte) (0xe0 | (c >> 12));
+        buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+        buffer[length++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+    buffer[length++] = '"';
+  }
+
+  private void writeAsciiChar(char c) {
+    switch (c) {
+      case '"':
+      case '\\':
+        buffer[length++] = '\\';
+        buffer[length++] = (byte) c;
+        break;
+      case '\n':
+        buffer[length++] = '\\';
+        buffer[length++] = 'n';
+        break;
+      case '\r':
+        buffer[length++] = '\\';
+        buffer[length++] = 'r';
+        break;
+      case '\t':
+        buffer[length++] = '\\';
+        buffer[length++] = 't';
+        break;
+      default:
+        if (c < 0x20) {
+          writeUnicodeEscape(c);
+        } else {
+          buffer[length++] = (byte) c;
+        }
+    }
+  }
+
+  private void writeUnicodeEscape(char c) {
+    buffer[length++] = '\\';
+    buffer[length++] = 'u';
+    buffer[length++] = HEX[(c >> 12) & 0xf];
+    buffer[length++] = HEX[(c >> 8) & 0xf];
+    buffer[length++] = HEX[(c >> 4) & 0xf];
+    buffer[length++] = HEX[c & 0xf];
+  }
+
+  private void writeLong(long value) {
+    if (value == Long.MIN_VALUE) {
+      writeAscii(Long.toString(value));
+      return;
+    }
+    ensureCapacity(20);
+    long l = value;
+    if (l < 0) {
+      buffer[length++] = '-';
+      l = -l;
+    }
+    int start = length;
+    do {
+      buffer[length++] = (byte) ('0' + (l % 10));
+      l /= 10;
+    } while (l != 0);
+    // digits have been written in reverse order
+    for (int i = start, j = length - 1; i < j; i++, j--) {
+      byte tmp = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = tmp;
+    }
+  }
+
+  private void writeAscii(String s) {
+    ensureCapacity(s.length());
+    for (int i = 0; i < s.length(); i++) {
+      buffer[length++] = (byte) s.charAt(i);
+    }
+  }
+
+  private void write(char c) {
+    ensureCapacity(1);
+    buffer[length++] = (byte) c;
+  }
+
+  private void write(byte[] bytes) {
+    ensureCapacity(bytes.length);
+    System.arraycopy(bytes, 0, buffer, length, bytes.length);
+    length += bytes.length;
+  }
+
+  private void ensureCapacity(int additional) {
+    int required = length + additional;
+    if (required > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(required, 2 * buffer.length));
+    }
+  }
+}
@@ -0,0 +1,187 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline used when (re-)indexing large tables. Elements of the source iterator (generally rows
+ * of a scrolled JDBC result set) are read by a dedicated thread and converted by a pool of threads,
+ * so that conversion (decoding of binary data, serialization to JSON...) does not slow down
+ * the thread that feeds {@link BulkIndexer}.
+ * <ul>
+ *   <li>order of elements is kept</li>
+ *   <li>the number of elements being converted is bounded, so memory is under control when the consumer
+ *   is slower than the reader</li>
+ *   <li>the source iterator is consumed by the reader thread only. It must be closed by the caller
+ *   after this iterator. {@link #close()} waits for the reader thread to stop, so the source iterator
+ *   is not read anymore when it is closed</li>
+ * </ul>
+ */
+public class ParallelConvertingIterator<S, T> implements Iterator<T>, Closeable {
+
+  public static final int DEFAULT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+  private static final Logger LOGGER = Loggers.get(ParallelConvertingIterator.class);
+  private static final int PENDING_ELEMENTS_PER_THREAD = 8;
+  private static final long READER_TERMINATION_TIMEOUT_SECONDS = 60L;
+  private static final Future<?> END = Futures.immediateFuture(null);
+
+  private final ExecutorService readerExecutor;
+  private final ExecutorService converterExecutor;
+  private final BlockingQueue<Future<?>> pendingElements;
+  private Future<?> nextElement = null;
+  private boolean ended = false;
+
+  /**
+   * @param name prefix of the names of threads
+   * @param converter must be thread-safe
+   */
+  public ParallelConvertingIterator(String name, Iterator<S> source, Function<S, T> converter, int threads) {
+    Preconditions.checkArgument(threads > 0, "Number of threads must be positive: %s", threads);
+    this.pendingElements = new ArrayBlockingQueue<>(PENDING_ELEMENTS_PER_THREAD * threads);
+    this.readerExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+      .setNameFormat(name + "-reader-%d")
+      .setDaemon(true)
+      .build());
+    this.converterExecutor = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+      .setNameFormat(name + "-converter-%d")
+      .setDaemon(true)
+      .build());
+    readerExecutor.submit(new Reader(source, converter));
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (nextElement == null && !ended) {
+      Future<?> element = take();
+      if (element == END) {
+        ended = true;
+        close();
+      } else {
+        nextElement = element;
+      }
+    }
+    return nextElement != null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Future<?> element = nextElement;
+    nextElement = null;
+    try {
+      return (T) element.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while converting elements", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new IllegalStateException("Fail to convert element", e.getCause());
+    }
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void close() {
+    readerExecutor.shutdownNow();
+    converterExecutor.shutdownNow();
+    try {
+      // the reader thread may be blocked in the source iterator, for example when fetching rows
+      if (!readerExecutor.awaitTermination(READER_TERMINATION_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOGGER.warn("Reader thread of elements is not stopped after {} seconds", READER_TERMINATION_TIMEOUT_SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private Future<?> take() {
+    try {
+      return pendingElements.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while reading elements", e);
+    }
+  }
+
+  private class Reader implements Runnable {
+    private final Iterator<S> source;
+    private final Function<S, T> converter;
+
+    Reader(Iterator<S> source, Function<S, T> converter) {
+      this.source = source;
+      this.converter = converter;
+    }
+
+    @Override
+    public void run() {
+      Future<?> last = END;
+      try {
+        while (source.hasNext()) {
+          final S element = source.next();
+          pendingElements.put(converterExecutor.submit(new Callable<T>() {
+            @Override
+            public T call() {
+              return converter.apply(element);
+            }
+          }));
+        }
+      } catch (InterruptedException e) {
+        // iterator is closed
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        // failure is raised by the consumer
+        last = Futures.immediateFailedFuture(e);
+      }
+      try {
+        pendingElements.put(last);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -19,6 +19,8 @@
  */
 package org.sonar.server.issue.index;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 import org.apache.commons.dbutils.DbUtils;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.update.UpdateRequest;
@@ -29,12 +31,26 @@ import org.sonar.server.db.DbClient;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.JsonDocBuilder;
+import org.sonar.server.es.ParallelConvertingIterator;
+
+import javax.annotation.Nonnull;
 
 import java.sql.Connection;
 import java.util.Iterator;
 
 public class IssueIndexer extends BaseIndexer {
 
+  /**
+   * Serialization of documents to JSON is the most expensive part of indexing. It is thread-safe.
+   */
+  private static final Function<IssueDoc, IssueRequest> TO_REQUEST = new Function<IssueDoc, IssueRequest>() {
+    @Override
+    public IssueRequest apply(@Nonnull IssueDoc issue) {
+      return new IssueRequest(newUpsertRequest(issue), issue.getTechnicalUpdateDate().getTime());
+    }
+  };
+
   private final DbClient dbClient;
 
   public IssueIndexer(DbClient dbClient, EsClient esClient) {
@@ -61,12 +77,23 @@ public class IssueIndexer extends BaseIndexer {
   private long doIndex(BulkIndexer bulk, long lastUpdatedAt) {
     DbSession dbSession = dbClient.openSession(false);
     Connection dbConnection = dbSession.getConnection();
-    long maxDate;
     try {
       IssueResultSetIterator rowIt = IssueResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt);
-      maxDate = doIndex(bulk, rowIt);
-      rowIt.close();
-      return maxDate;
+      try {
+        if (lastUpdatedAt == 0L) {
+          // large indexing: documents are serialized by several threads
+          ParallelConvertingIterator<IssueDoc, IssueRequest> requestIt = new ParallelConvertingIterator<>("issues-indexer", rowIt,
+            TO_REQUEST, ParallelConvertingIterator.DEFAULT_THREADS);
+          try {
+            return doIndexRequests(bulk, requestIt);
+          } finally {
+            requestIt.close();
+          }
+        }
+        return doIndex(bulk, rowIt);
+      } finally {
+        rowIt.close();
+      }
 
     } finally {
       DbUtils.closeQuietly(dbConnection);
@@ -75,14 +102,18 @@ public class IssueIndexer extends BaseIndexer {
   }
 
   private long doIndex(BulkIndexer bulk, Iterator<IssueDoc> issues) {
+    return doIndexRequests(bulk, Iterators.transform(issues, TO_REQUEST));
+  }
+
+  private static long doIndexRequests(BulkIndexer bulk, Iterator<IssueRequest> requests) {
     bulk.start();
     long maxDate = 0L;
-    while (issues.hasNext()) {
-      IssueDoc issue = issues.next();
-      bulk.add(newUpsertRequest(issue));
+    while (requests.hasNext()) {
+      IssueRequest request = requests.next();
+      bulk.add(request.updateRequest);
 
       // it's more efficient to sort programmatically than in SQL on some databases (MySQL for instance)
-      maxDate = Math.max(maxDate, issue.getTechnicalUpdateDate().getTime());
+      maxDate = Math.max(maxDate, request.technicalUpdateDate);
     }
     bulk.stop();
     return maxDate;
@@ -108,17 +139,28 @@ public class IssueIndexer extends BaseIndexer {
     return bulk;
   }
 
-  private UpdateRequest newUpsertRequest(IssueDoc issue) {
+  private static UpdateRequest newUpsertRequest(IssueDoc issue) {
     String projectUuid = issue.projectUuid();
 
     // type of parent doc is "authorization"
     issue.setField("_parent", projectUuid);
 
+    // fields are serialized once, instead of once for doc and once for upsert
+    byte[] jsonDoc = JsonDocBuilder.get().object(issue.getFields()).build();
     return new UpdateRequest(IssueIndexDefinition.INDEX, IssueIndexDefinition.TYPE_ISSUE, issue.key())
       .routing(projectUuid)
       .parent(projectUuid)
-      .doc(issue.getFields())
-      .upsert(issue.getFields());
+      .doc(jsonDoc)
+      .upsert(jsonDoc);
   }
 
+  private static class IssueRequest {
+    private final UpdateRequest updateRequest;
+    private final long technicalUpdateDate;
+
+    IssueRequest(UpdateRequest updateRequest, long technicalUpdateDate) {
+      this.updateRequest = updateRequest;
+      this.technicalUpdateDate = technicalUpdateDate;
+    }
+  }
 }
@@ -0,0 +1,131 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.measure;
+
+import com.google.common.base.Predicate;
+import com.google.common.cache.CacheStats;
+import org.sonar.api.ServerSide;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.System2;
+import org.sonar.server.util.cache.WeightedLruCache;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps in memory the rows returned by the recently executed measure filters, so that dashboards do not
+ * execute the same SQL requests on each page view. Rows only change when a new analysis is available,
+ * so entries are invalidated when the last snapshot of a project is switched (see {@link #invalidateProject(long)}).
+ * Entries also expire after one hour, as a few other changes (deletion or renaming of projects for example)
+ * can alter results.
+ */
+@ServerSide
+public class MeasureFilterCache {
+
+  /**
+   * Maximum size of cache, in megabytes. Zero disables the cache.
+   */
+  public static final String PROPERTY_MAX_SIZE = "sonar.measureFilter.cacheSizeInMb";
+  static final int DEFAULT_MAX_SIZE_IN_MB = 16;
+  static final long EXPIRATION_IN_MINUTES = 60L;
+
+  // approximation of memory footprint of a MeasureFilterRow and of its reference in list
+  private static final int ROW_WEIGHT_IN_BYTES = 80;
+
+  private static final WeightedLruCache.Weigher<String, Entry> WEIGHER = new WeightedLruCache.Weigher<String, Entry>() {
+    @Override
+    public int weigh(String key, Entry entry) {
+      return 2 * key.length() + ROW_WEIGHT_IN_BYTES * entry.rows.size();
+    }
+  };
+
+  private final WeightedLruCache<String, Entry> cache;
+
+  public MeasureFilterCache(Settings settings) {
+    this(1024L * 1024L * (settings.hasKey(PROPERTY_MAX_SIZE) ? settings.getInt(PROPERTY_MAX_SIZE) : DEFAULT_MAX_SIZE_IN_MB));
+  }
+
+  MeasureFilterCache(long maxSizeInBytes) {
+    if (maxSizeInBytes < 0L) {
+      throw new IllegalArgumentException("Size of cache of measure filters must be positive: " + maxSizeInBytes);
+    }
+    this.cache = new WeightedLruCache<>(maxSizeInBytes, TimeUnit.MINUTES.toMillis(EXPIRATION_IN_MINUTES), WEIGHER, System2.INSTANCE);
+  }
+
+  /**
+   * Rows of filter, or {@code null} if not in cache
+   */
+  @CheckForNull
+  public List<MeasureFilterRow> get(String key) {
+    Entry entry = cache.getIfPresent(key);
+    return entry == null ? null : entry.rows;
+  }
+
+  /**
+   * @param rootProjectId id of the project that the filter is restricted to, or {@code null} if the filter
+   *                      can return components of any project.
+   */
+  public void put(String key, @Nullable Long rootProjectId, List<MeasureFilterRow> rows) {
+    cache.put(key, new Entry(rootProjectId, Collections.unmodifiableList(rows)));
+  }
+
+  /**
+   * Invalidates the filters that can return components of the given project, including all the filters
+   * that are not restricted to a project.
+   */
+  public void invalidateProject(final long rootProjectId) {
+    cache.invalidateIf(new Predicate<Entry>() {
+      @Override
+      public boolean apply(Entry entry) {
+        return entry.rootProjectId == null || entry.rootProjectId == rootProjectId;
+      }
+    });
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public long maxSizeInBytes() {
+    return cache.maxWeight();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  private static class Entry {
+    private final Long rootProjectId;
+    private final List<MeasureFilterRow> rows;
+
+    private Entry(@Nullable Long rootProjectId, List<MeasureFilterRow> rows) {
+      this.rootProjectId = rootProjectId;
+      this.rows = rows;
+    }
+  }
+}
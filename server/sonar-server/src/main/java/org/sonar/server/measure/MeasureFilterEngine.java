@@ -20,27 +20,41 @@
 package org.sonar.server.measure;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableSet;
 import org.sonar.api.ServerSide;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
+import org.sonar.core.component.SnapshotDto;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 @ServerSide
 public class MeasureFilterEngine {
 
   private static final Logger LOG = Loggers.get("MeasureFilter");
 
+  // criteria used only by the pagination done in Ruby
+  private static final Set<String> PAGINATION_CRITERIA = ImmutableSet.of("page", "pageSize");
+
   private final MeasureFilterFactory factory;
   private final MeasureFilterExecutor executor;
+  private final MeasureFilterCache cache;
 
-  public MeasureFilterEngine(MeasureFilterFactory factory, MeasureFilterExecutor executor) {
+  public MeasureFilterEngine(MeasureFilterFactory factory, MeasureFilterExecutor executor, MeasureFilterCache cache) {
     this.executor = executor;
     this.factory = factory;
+    this.cache = cache;
+  }
+
+  MeasureFilterEngine(MeasureFilterFactory factory, MeasureFilterExecutor executor) {
+    this(factory, executor, new MeasureFilterCache(0L));
   }
 
   public MeasureFilterResult execute(Map<String, Object> filterMap, @Nullable Long userId) {
@@ -52,7 +66,16 @@ public class MeasureFilterEngine {
     try {
       profiler.addContext("request", context.getData());
       MeasureFilter filter = factory.create(filterMap);
-      List<MeasureFilterRow> rows = executor.execute(filter, context);
+      String cacheKey = cacheKey(filterMap, filter);
+      List<MeasureFilterRow> rows = cacheKey == null ? null : cache.get(cacheKey);
+      profiler.addContext("cached", rows != null);
+      if (rows == null) {
+        rows = executor.execute(filter, context);
+        if (cacheKey != null) {
+          SnapshotDto baseSnapshot = context.getBaseSnapshot();
+          cache.put(cacheKey, baseSnapshot == null ? null : baseSnapshot.getRootProjectId(), rows);
+        }
+      }
       result.setRows(rows);
 
     } catch (NumberFormatException e) {
@@ -67,4 +90,27 @@ public class MeasureFilterEngine {
     }
     return result;
   }
+
+  /**
+   * Key of filter in cache, or {@code null} if the filter must not be cached. Filters on favourites
+   * are not cached as their results change when users flag components, not only on new analysis.
+   */
+  @CheckForNull
+  private static String cacheKey(Map<String, Object> filterMap, MeasureFilter filter) {
+    if (filter.isOnFavourites()) {
+      return null;
+    }
+    Map<String, Object> criteria = new TreeMap<>(filterMap);
+    criteria.keySet().removeAll(PAGINATION_CRITERIA);
+    StringBuilder key = new StringBuilder();
+    key.append(criteria);
+    // ages in days are relative to the current date
+    if (filter.getFromDate() != null) {
+      key.append("|from=").append(filter.getFromDate().getTime());
+    }
+    if (filter.getToDate() != null) {
+      key.append("|to=").append(filter.getToDate().getTime());
+    }
+    return key.toString();
+  }
 }
@@ -89,7 +89,7 @@ class MeasureFilterSort {
   }
 
   String column() {
-    // only numeric metrics can be sorted by database, else results are sorted programmatically.
+    // only numeric, date and alert values are sorted by database, text values are sorted programmatically.
     String column;
     switch (field) {
       case KEY:
@@ -31,6 +31,7 @@ import org.sonar.core.persistence.Database;
 import org.sonar.core.persistence.dialect.MsSql;
 import org.sonar.core.persistence.dialect.Oracle;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.sql.Connection;
@@ -46,6 +47,9 @@ class MeasureFilterSql {
   private final Database database;
   private final MeasureFilter filter;
   private final MeasureFilterContext context;
+  private final RowProcessor rowProcessor;
+  @Nullable
+  private final String orderBy;
   private final String sql;
   private final List<Long> dateParameters = Lists.newArrayList();
 
@@ -53,9 +57,35 @@ class MeasureFilterSql {
     this.database = database;
     this.filter = filter;
     this.context = context;
+    this.rowProcessor = newRowProcessor(filter.sort());
+    this.orderBy = rowProcessor.sqlOrderBy(filter.sort().column(), filter.sort().isAsc());
     this.sql = generateSql();
   }
 
+  private static RowProcessor newRowProcessor(MeasureFilterSort sort) {
+    RowProcessor rowProcessor;
+    if (sort.isOnNumericMeasure()) {
+      rowProcessor = new NumericSortRowProcessor();
+    } else if (sort.isOnDate()) {
+      rowProcessor = new DateSortRowProcessor();
+    } else if (sort.isOnTime()) {
+      rowProcessor = new LongSortRowProcessor();
+    } else if (sort.isOnAlert()) {
+      rowProcessor = new AlertSortRowProcessor();
+    } else {
+      rowProcessor = new TextSortRowProcessor();
+    }
+    return rowProcessor;
+  }
+
+  /**
+   * Nulls are sorted last whatever the direction, as done by the in-memory orderings. NULLS LAST
+   * is not used as it's not supported by MySQL and MsSQL.
+   */
+  private static String nullsLastOrderBy(String column, boolean ascending) {
+    return "CASE WHEN " + column + " IS NULL THEN 1 ELSE 0 END, " + column + (ascending ? " ASC" : " DESC");
+  }
+
   private static void appendInStatement(List<String> values, StringBuilder to) {
     to.append(" (");
     for (int i = 0; i < values.size(); i++) {
@@ -101,9 +131,10 @@ class MeasureFilterSql {
   }
 
   List<MeasureFilterRow> execute(Connection connection) throws SQLException {
-    PreparedStatement statement = connection.prepareStatement(sql);
+    PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
     ResultSet rs = null;
     try {
+      statement.setFetchSize(database.getDialect().getScrollDefaultFetchSize());
       for (int index = 0; index < dateParameters.size(); index++) {
         statement.setLong(index + 1, dateParameters.get(index));
       }
@@ -152,6 +183,12 @@ class MeasureFilterSql {
       condition.appendSqlCondition(sb, index);
     }
 
+    if (orderBy != null) {
+      // rows with the same sort value are ordered by snapshot, so that pages of results do not depend
+      // on the execution plan
+      sb.append(" ORDER BY ").append(orderBy).append(", s.id");
+    }
+
     return sb.toString();
   }
 
@@ -234,23 +271,14 @@ class MeasureFilterSql {
 
   List<MeasureFilterRow> process(ResultSet rs) throws SQLException {
     List<MeasureFilterRow> rows = Lists.newArrayList();
-    RowProcessor rowProcessor;
-    if (filter.sort().isOnNumericMeasure()) {
-      rowProcessor = new NumericSortRowProcessor();
-    } else if (filter.sort().isOnDate()) {
-      rowProcessor = new DateSortRowProcessor();
-    } else if (filter.sort().isOnTime()) {
-      rowProcessor = new LongSortRowProcessor();
-    } else if (filter.sort().isOnAlert()) {
-      rowProcessor = new AlertSortRowProcessor();
-    } else {
-      rowProcessor = new TextSortRowProcessor();
-    }
-
     while (rs.next()) {
       rows.add(rowProcessor.fetch(rs));
     }
 
+    if (orderBy != null) {
+      // rows are already sorted by database
+      return rows;
+    }
     return rowProcessor.sort(rows, filter.sort().isAsc());
   }
 
@@ -274,6 +302,15 @@ class MeasureFilterSql {
 
     abstract MeasureFilterRow fetch(ResultSet rs) throws SQLException;
 
+    /**
+     * ORDER BY clause sorting rows as {@link #sortFieldOrdering(boolean)} does, or null if rows
+     * can't be sorted by database the same way on all the supported dialects.
+     */
+    @CheckForNull
+    String sqlOrderBy(String column, boolean ascending) {
+      return null;
+    }
+
     final List<MeasureFilterRow> sort(List<MeasureFilterRow> rows, boolean ascending) {
       Ordering<MeasureFilterRow> ordering = sortFieldOrdering(ascending).onResultOf(sortFieldFunction());
       return ordering.immutableSortedCopy(rows);
@@ -309,6 +346,11 @@ class MeasureFilterSql {
   }
 
   static class AlertSortRowProcessor extends TextSortRowProcessor {
+    @Override
+    String sqlOrderBy(String column, boolean ascending) {
+      return "CASE " + column + " WHEN 'OK' THEN 0 WHEN 'WARN' THEN 1 WHEN 'ERROR' THEN 2 ELSE -1 END" + (ascending ? " ASC" : " DESC");
+    }
+
     @Override
     Function sortFieldFunction() {
       return new Function<MeasureFilterRow, Integer>() {
@@ -330,6 +372,11 @@ class MeasureFilterSql {
   }
 
   static class NumericSortRowProcessor extends RowProcessor {
+    @Override
+    String sqlOrderBy(String column, boolean ascending) {
+      return nullsLastOrderBy(column, ascending);
+    }
+
     @Override
     MeasureFilterRow fetch(ResultSet rs) throws SQLException {
       MeasureFilterRow row = new MeasureFilterRow(rs.getLong(1), rs.getLong(2), rs.getLong(3));
@@ -357,6 +404,11 @@ class MeasureFilterSql {
   }
 
   static class DateSortRowProcessor extends RowProcessor {
+    @Override
+    String sqlOrderBy(String column, boolean ascending) {
+      return nullsLastOrderBy(column, ascending);
+    }
+
     @Override
     MeasureFilterRow fetch(ResultSet rs) throws SQLException {
       MeasureFilterRow row = new MeasureFilterRow(rs.getLong(1), rs.getLong(2), rs.getLong(3));
@@ -381,6 +433,11 @@ class MeasureFilterSql {
   }
 
   static class LongSortRowProcessor extends RowProcessor {
+    @Override
+    String sqlOrderBy(String column, boolean ascending) {
+      return nullsLastOrderBy(column, ascending);
+    }
+
     @Override
     MeasureFilterRow fetch(ResultSet rs) throws SQLException {
       MeasureFilterRow row = new MeasureFilterRow(rs.getLong(1), rs.getLong(2), rs.getLong(3));
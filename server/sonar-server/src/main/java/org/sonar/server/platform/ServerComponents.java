@@ -112,6 +112,7 @@ import org.sonar.server.project.ws.GhostsAction;
 import org.sonar.server.project.ws.ProjectsWs;
 import org.sonar.server.project.ws.ProvisionedAction;
 import org.sonar.server.component.ws.ResourcesWs;
+import org.sonar.server.computation.ComputationStatistics;
 import org.sonar.server.computation.ComputationThreadLauncher;
 import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.computation.ReportQueueCleaner;
@@ -120,6 +121,7 @@ import org.sonar.server.computation.ws.ComputationWs;
 import org.sonar.server.computation.ws.HistoryAction;
 import org.sonar.server.computation.ws.IsQueueEmptyWs;
 import org.sonar.server.computation.ws.QueueAction;
+import org.sonar.server.computation.ws.QueueStatsAction;
 import org.sonar.server.computation.ws.SubmitReportAction;
 import org.sonar.server.config.ws.PropertiesWs;
 import org.sonar.server.dashboard.db.DashboardDao;
@@ -190,6 +192,7 @@ import org.sonar.server.issue.ws.IssueActionsWriter;
 import org.sonar.server.issue.ws.IssuesWs;
 import org.sonar.server.issue.ws.SetTagsAction;
 import org.sonar.server.language.ws.LanguageWs;
+import org.sonar.server.measure.MeasureFilterCache;
 import org.sonar.server.measure.MeasureFilterEngine;
 import org.sonar.server.measure.MeasureFilterExecutor;
 import org.sonar.server.measure.MeasureFilterFactory;
@@ -207,8 +210,10 @@ import org.sonar.server.permission.ws.PermissionsWs;
 import org.sonar.server.platform.monitoring.DatabaseMonitor;
 import org.sonar.server.platform.monitoring.EsMonitor;
 import org.sonar.server.platform.monitoring.JvmPropertiesMonitor;
+import org.sonar.server.platform.monitoring.MeasureFilterCacheMonitor;
 import org.sonar.server.platform.monitoring.PluginsMonitor;
 import org.sonar.server.platform.monitoring.SonarQubeMonitor;
+import org.sonar.server.platform.monitoring.SourceDataCacheMonitor;
 import org.sonar.server.platform.monitoring.SystemMonitor;
 import org.sonar.server.platform.ws.L10nWs;
 import org.sonar.server.platform.ws.MigrateDbSystemAction;
@@ -320,6 +325,7 @@ import org.sonar.server.search.SearchClient;
 import org.sonar.server.source.HtmlSourceDecorator;
 import org.sonar.server.source.SourceService;
 import org.sonar.server.source.db.FileSourceDao;
+import org.sonar.server.source.db.SourceDataCache;
 import org.sonar.server.source.index.SourceLineIndex;
 import org.sonar.server.source.index.SourceLineIndexDefinition;
 import org.sonar.server.source.index.SourceLineIndexer;
@@ -704,6 +710,7 @@ class ServerComponents {
     pico.addSingleton(MeasureFilterFactory.class);
     pico.addSingleton(MeasureFilterExecutor.class);
     pico.addSingleton(MeasureFilterEngine.class);
+    pico.addSingleton(MeasureFilterCache.class);
     pico.addSingleton(DefaultMetricFinder.class);
     pico.addSingleton(ServerLifecycleNotifier.class);
     pico.addSingleton(TimeMachineWs.class);
@@ -876,6 +883,7 @@ class ServerComponents {
     pico.addSingleton(IndexAction.class);
     pico.addSingleton(ScmAction.class);
     pico.addSingleton(SourceLineIndexDefinition.class);
+    pico.addSingleton(SourceDataCache.class);
     pico.addSingleton(SourceLineIndex.class);
     pico.addSingleton(SourceLineIndexer.class);
 
@@ -938,7 +946,9 @@ class ServerComponents {
       EsMonitor.class,
       PluginsMonitor.class,
       JvmPropertiesMonitor.class,
-      DatabaseMonitor.class
+      DatabaseMonitor.class,
+      SourceDataCacheMonitor.class,
+      MeasureFilterCacheMonitor.class
       ));
 
     // Plugins WS
@@ -956,10 +966,12 @@ class ServerComponents {
 
     // Compute engine
     pico.addSingleton(ReportQueue.class);
+    pico.addSingleton(ComputationStatistics.class);
     pico.addSingleton(ComputationThreadLauncher.class);
     pico.addSingleton(ComputationWs.class);
     pico.addSingleton(IsQueueEmptyWs.class);
     pico.addSingleton(QueueAction.class);
+    pico.addSingleton(QueueStatsAction.class);
     pico.addSingleton(HistoryAction.class);
     pico.addSingleton(DefaultPeriodCleaner.class);
     pico.addSingleton(DefaultPurgeTask.class);
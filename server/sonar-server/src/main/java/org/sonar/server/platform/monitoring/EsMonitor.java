@@ -64,6 +64,36 @@ public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
     return clusterStats().getNodesStats().getCounts().getTotal();
   }
 
+  @Override
+  public long getBulkIndexedDocuments() {
+    return esClient.getBulkIndexerStats().getIndexedDocuments();
+  }
+
+  @Override
+  public long getBulkSentBytes() {
+    return esClient.getBulkIndexerStats().getSentBytes();
+  }
+
+  @Override
+  public int getBulkInFlightRequests() {
+    return esClient.getBulkIndexerStats().getInFlightRequests();
+  }
+
+  @Override
+  public long getBulkRejections() {
+    return esClient.getBulkIndexerStats().getRejections();
+  }
+
+  @Override
+  public long getBulkRetriedDocuments() {
+    return esClient.getBulkIndexerStats().getRetriedDocuments();
+  }
+
+  @Override
+  public long getBulkFailedDocuments() {
+    return esClient.getBulkIndexerStats().getFailedDocuments();
+  }
+
   @Override
   public LinkedHashMap<String, Object> attributes() {
     LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
@@ -71,6 +101,18 @@ public class EsMonitor extends BaseMonitorMBean implements EsMonitorMBean {
     attributes.put("Indices", indexAttributes());
     attributes.put("Number of Nodes", getNumberOfNodes());
     attributes.put("Nodes", nodeAttributes());
+    attributes.put("Bulk Indexing", bulkAttributes());
+    return attributes;
+  }
+
+  private LinkedHashMap<String, Object> bulkAttributes() {
+    LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("Indexed Documents", getBulkIndexedDocuments());
+    attributes.put("Sent Size", byteCountToDisplaySize(getBulkSentBytes()));
+    attributes.put("In-flight Requests", getBulkInFlightRequests());
+    attributes.put("Rejections", getBulkRejections());
+    attributes.put("Retried Documents", getBulkRetriedDocuments());
+    attributes.put("Failed Documents", getBulkFailedDocuments());
     return attributes;
   }
 
@@ -27,4 +27,10 @@ package org.sonar.server.platform.monitoring;
 public interface EsMonitorMBean {
   String getState();
   int getNumberOfNodes();
+  long getBulkIndexedDocuments();
+  long getBulkSentBytes();
+  int getBulkInFlightRequests();
+  long getBulkRejections();
+  long getBulkRetriedDocuments();
+  long getBulkFailedDocuments();
 }
@@ -0,0 +1,55 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import com.google.common.cache.CacheStats;
+import org.sonar.server.measure.MeasureFilterCache;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Efficiency of the cache of measure filter results used by dashboards
+ */
+public class MeasureFilterCacheMonitor implements Monitor {
+
+  private final MeasureFilterCache cache;
+
+  public MeasureFilterCacheMonitor(MeasureFilterCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public String name() {
+    return "Measure Filter Cache";
+  }
+
+  @Override
+  public LinkedHashMap<String, Object> attributes() {
+    CacheStats stats = cache.stats();
+    LinkedHashMap<String, Object> attributes = new LinkedHashMap<>();
+    attributes.put("Max Size (MB)", cache.maxSizeInBytes() / (1024L * 1024L));
+    attributes.put("Filters", cache.size());
+    attributes.put("Hits", stats.hitCount());
+    attributes.put("Misses", stats.missCount());
+    attributes.put("Hit Rate (%)", Math.round(100.0 * stats.hitRate()));
+    attributes.put("Evictions", stats.evictionCount());
+    return attributes;
+  }
+}
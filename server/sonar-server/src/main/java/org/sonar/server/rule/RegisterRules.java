@@ -21,9 +21,11 @@ package org.sonar.server.rule;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.apache.commons.lang.ObjectUtils;
 import org.apache.commons.lang.StringUtils;
@@ -45,7 +47,9 @@ import org.sonar.core.rule.RuleDto.Format;
 import org.sonar.core.rule.RuleParamDto;
 import org.sonar.core.technicaldebt.db.CharacteristicDao;
 import org.sonar.core.technicaldebt.db.CharacteristicDto;
+import org.sonar.core.template.LoadedTemplateDto;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.platform.ServerImpl;
 import org.sonar.server.qualityprofile.RuleActivator;
 import org.sonar.server.startup.RegisterDebtModel;
 
@@ -63,26 +67,33 @@ public class RegisterRules implements Startable {
 
   private static final Logger LOG = Loggers.get(RegisterRules.class);
 
+  private static final String FINGERPRINT_SEPARATOR = ":";
+  // size of column LOADED_TEMPLATES.KEE
+  private static final int MAX_FINGERPRINT_LENGTH = 200;
+
   private final RuleDefinitionsLoader defLoader;
   private final RuleActivator ruleActivator;
   private final DbClient dbClient;
   private final Languages languages;
+  private final ServerImpl server;
   private final CharacteristicDao characteristicDao;
 
   /**
    * @param registerDebtModel used only to be started after init of the technical debt model
    */
-  public RegisterRules(RuleDefinitionsLoader defLoader, RuleActivator ruleActivator, DbClient dbClient, Languages languages, RegisterDebtModel registerDebtModel) {
-    this(defLoader, ruleActivator, dbClient, languages);
+  public RegisterRules(RuleDefinitionsLoader defLoader, RuleActivator ruleActivator, DbClient dbClient, Languages languages, ServerImpl server,
+    RegisterDebtModel registerDebtModel) {
+    this(defLoader, ruleActivator, dbClient, languages, server);
   }
 
   @VisibleForTesting
   RegisterRules(RuleDefinitionsLoader defLoader, RuleActivator ruleActivator,
-    DbClient dbClient, Languages languages) {
+    DbClient dbClient, Languages languages, ServerImpl server) {
     this.defLoader = defLoader;
     this.ruleActivator = ruleActivator;
     this.dbClient = dbClient;
     this.languages = languages;
+    this.server = server;
     this.characteristicDao = dbClient.debtCharacteristicDao();
   }
 
@@ -92,16 +103,20 @@ public class RegisterRules implements Startable {
     DbSession session = dbClient.openSession(false);
     try {
       Map<RuleKey, RuleDto> allRules = loadRules(session);
+      Multimap<Integer, RuleParamDto> allParams = loadParams(session);
       Map<String, CharacteristicDto> allCharacteristics = loadCharacteristics(session);
+      Map<String, LoadedTemplateDto> fingerprints = loadFingerprints(session);
+      // rules are registered again after each upgrade of server, as registration itself may have changed
+      String serverVersion = server.getVersion() + FINGERPRINT_SEPARATOR + server.getImplementationBuild();
 
       RulesDefinition.Context context = defLoader.load();
-      for (RulesDefinition.ExtendedRepository repoDef : getRepositories(context)) {
-        if (languages.get(repoDef.language()) != null) {
-          for (RulesDefinition.Rule ruleDef : repoDef.rules()) {
-            registerRule(ruleDef, allRules, allCharacteristics, session);
-          }
-          session.commit();
-        }
+      for (Map.Entry<String, List<RulesDefinition.ExtendedRepository>> repoDefs : getRepositoriesByKey(context).entrySet()) {
+        registerRepository(repoDefs.getKey(), repoDefs.getValue(), fingerprints.remove(repoDefs.getKey()), serverVersion, allRules, allParams, allCharacteristics,
+          session);
+      }
+      // repositories that are not registered anymore
+      for (LoadedTemplateDto fingerprint : fingerprints.values()) {
+        dbClient.loadedTemplateDao().delete(session, LoadedTemplateDto.RULES_REPOSITORY_TYPE, fingerprint.getKey());
       }
       List<RuleDto> activeRules = processRemainingDbRules(allRules.values(), session);
       removeActiveRulesOnStillExistingRepositories(session, activeRules, context);
@@ -117,7 +132,60 @@ public class RegisterRules implements Startable {
     // nothing
   }
 
-  private void registerRule(RulesDefinition.Rule ruleDef, Map<RuleKey, RuleDto> allRules, Map<String, CharacteristicDto> allCharacteristics, DbSession session) {
+  private void registerRepository(String repoKey, List<RulesDefinition.ExtendedRepository> repoDefs, @Nullable LoadedTemplateDto previousFingerprint,
+    String serverVersion, Map<RuleKey, RuleDto> allRules, Multimap<Integer, RuleParamDto> allParams, Map<String, CharacteristicDto> allCharacteristics, DbSession session) {
+    Profiler profiler = Profiler.createIfDebug(LOG).start();
+    String fingerprint = repoKey + FINGERPRINT_SEPARATOR + RuleRepositoryFingerprint.compute(serverVersion, repoDefs, allCharacteristics);
+    if (previousFingerprint != null && fingerprint.equals(previousFingerprint.getKey()) && areRulesUpToDate(repoDefs, allRules)) {
+      for (RulesDefinition.ExtendedRepository repoDef : repoDefs) {
+        for (RulesDefinition.Rule ruleDef : repoDef.rules()) {
+          allRules.remove(RuleKey.of(repoKey, ruleDef.key()));
+        }
+      }
+      profiler.stopDebug(String.format("Rules of repository %s are unchanged", repoKey));
+      return;
+    }
+
+    boolean registered = false;
+    for (RulesDefinition.ExtendedRepository repoDef : repoDefs) {
+      if (languages.get(repoDef.language()) != null) {
+        for (RulesDefinition.Rule ruleDef : repoDef.rules()) {
+          registerRule(ruleDef, allRules, allParams, allCharacteristics, session);
+        }
+        registered = true;
+      }
+    }
+    if (previousFingerprint != null) {
+      dbClient.loadedTemplateDao().delete(session, LoadedTemplateDto.RULES_REPOSITORY_TYPE, previousFingerprint.getKey());
+    }
+    if (registered && fingerprint.length() <= MAX_FINGERPRINT_LENGTH) {
+      dbClient.loadedTemplateDao().insert(new LoadedTemplateDto(fingerprint, LoadedTemplateDto.RULES_REPOSITORY_TYPE), session);
+    }
+    session.commit();
+    profiler.stopDebug(String.format("Register rules of repository %s", repoKey));
+  }
+
+  /**
+   * Rules can be disabled in db while their definitions did not change, for example when
+   * the plugin is uninstalled then installed again.
+   */
+  private boolean areRulesUpToDate(List<RulesDefinition.ExtendedRepository> repoDefs, Map<RuleKey, RuleDto> allRules) {
+    for (RulesDefinition.ExtendedRepository repoDef : repoDefs) {
+      if (languages.get(repoDef.language()) == null) {
+        return false;
+      }
+      for (RulesDefinition.Rule ruleDef : repoDef.rules()) {
+        RuleDto rule = allRules.get(RuleKey.of(repoDef.key(), ruleDef.key()));
+        if (rule == null || rule.getStatus() != ruleDef.status()) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private void registerRule(RulesDefinition.Rule ruleDef, Map<RuleKey, RuleDto> allRules, Multimap<Integer, RuleParamDto> allParams,
+    Map<String, CharacteristicDto> allCharacteristics, DbSession session) {
     RuleKey ruleKey = RuleKey.of(ruleDef.repository().key(), ruleDef.key());
 
     RuleDto rule = allRules.containsKey(ruleKey) ? allRules.remove(ruleKey) : createRuleDto(ruleDef, session);
@@ -140,7 +208,7 @@ public class RegisterRules implements Startable {
       dbClient.ruleDao().update(session, rule);
     }
 
-    mergeParams(ruleDef, rule, session);
+    mergeParams(ruleDef, rule, allParams.get(rule.getId()), session);
   }
 
   private Map<RuleKey, RuleDto> loadRules(DbSession session) {
@@ -151,6 +219,22 @@ public class RegisterRules implements Startable {
     return rules;
   }
 
+  private Multimap<Integer, RuleParamDto> loadParams(DbSession session) {
+    Multimap<Integer, RuleParamDto> params = ArrayListMultimap.create();
+    for (RuleParamDto param : dbClient.ruleDao().findAllRuleParams(session)) {
+      params.put(param.getRuleId(), param);
+    }
+    return params;
+  }
+
+  private Map<String, LoadedTemplateDto> loadFingerprints(DbSession session) {
+    Map<String, LoadedTemplateDto> fingerprints = new HashMap<>();
+    for (LoadedTemplateDto fingerprint : dbClient.loadedTemplateDao().selectByType(session, LoadedTemplateDto.RULES_REPOSITORY_TYPE)) {
+      fingerprints.put(StringUtils.substringBeforeLast(fingerprint.getKey(), FINGERPRINT_SEPARATOR), fingerprint);
+    }
+    return fingerprints;
+  }
+
   private Map<String, CharacteristicDto> loadCharacteristics(DbSession session) {
     Map<String, CharacteristicDto> characteristics = new HashMap<>();
     for (CharacteristicDto characteristicDto : characteristicDao.selectEnabledCharacteristics(session)) {
@@ -181,16 +265,22 @@ public class RegisterRules implements Startable {
     return characteristicDto;
   }
 
-  private List<RulesDefinition.ExtendedRepository> getRepositories(RulesDefinition.Context context) {
-    List<RulesDefinition.ExtendedRepository> repositories = new ArrayList<>();
+  /**
+   * Repositories grouped with their extensions
+   */
+  private Map<String, List<RulesDefinition.ExtendedRepository>> getRepositoriesByKey(RulesDefinition.Context context) {
+    Map<String, List<RulesDefinition.ExtendedRepository>> repositories = new LinkedHashMap<>();
     for (RulesDefinition.Repository repoDef : context.repositories()) {
-      repositories.add(repoDef);
+      List<RulesDefinition.ExtendedRepository> repoDefs = new ArrayList<>();
+      repoDefs.add(repoDef);
+      repositories.put(repoDef.key(), repoDefs);
     }
     for (RulesDefinition.ExtendedRepository extendedRepoDef : context.extendedRepositories()) {
-      if (context.repository(extendedRepoDef.key()) == null) {
+      List<RulesDefinition.ExtendedRepository> repoDefs = repositories.get(extendedRepoDef.key());
+      if (repoDefs == null) {
         LOG.warn(String.format("Extension is ignored, repository %s does not exist", extendedRepoDef.key()));
       } else {
-        repositories.add(extendedRepoDef);
+        repoDefs.add(extendedRepoDef);
       }
     }
     return repositories;
@@ -312,8 +402,7 @@ public class RegisterRules implements Startable {
     return changed;
   }
 
-  private void mergeParams(RulesDefinition.Rule ruleDef, RuleDto rule, DbSession session) {
-    List<RuleParamDto> paramDtos = dbClient.ruleDao().findRuleParamsByRuleKey(session, rule.getKey());
+  private void mergeParams(RulesDefinition.Rule ruleDef, RuleDto rule, Collection<RuleParamDto> paramDtos, DbSession session) {
     Map<String, RuleParamDto> existingParamsByName = Maps.newHashMap();
 
     for (RuleParamDto paramDto : paramDtos) {
@@ -0,0 +1,125 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.rule;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.codec.binary.Hex;
+import org.sonar.api.server.debt.DebtRemediationFunction;
+import org.sonar.api.server.rule.RulesDefinition;
+import org.sonar.core.technicaldebt.db.CharacteristicDto;
+
+import javax.annotation.Nullable;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static java.util.Collections.sort;
+
+/**
+ * MD5 hash of the definitions of a rule repository, including its extensions and the technical
+ * debt characteristics that its rules are linked to. The version of server is part of the hash,
+ * so that all rules are registered again after an upgrade. Rules do not need to be registered again
+ * as long as this hash does not change.
+ */
+class RuleRepositoryFingerprint {
+
+  private static final byte SEPARATOR = 0;
+
+  private final MessageDigest digest;
+
+  private RuleRepositoryFingerprint() {
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 algorithm is not available", e);
+    }
+  }
+
+  static String compute(String serverVersion, Collection<? extends RulesDefinition.ExtendedRepository> repositories,
+    Map<String, CharacteristicDto> characteristics) {
+    RuleRepositoryFingerprint fingerprint = new RuleRepositoryFingerprint();
+    fingerprint.add(serverVersion);
+    for (RulesDefinition.ExtendedRepository repository : repositories) {
+      fingerprint.add(repository.key()).add(repository.language());
+      List<RulesDefinition.Rule> rules = new ArrayList<>(repository.rules());
+      sort(rules, RuleKeyComparator.INSTANCE);
+      for (RulesDefinition.Rule rule : rules) {
+        fingerprint.addRule(rule, characteristics);
+      }
+    }
+    return Hex.encodeHexString(fingerprint.digest.digest());
+  }
+
+  private void addRule(RulesDefinition.Rule rule, Map<String, CharacteristicDto> characteristics) {
+    add(rule.key()).add(rule.name()).add(rule.htmlDescription()).add(rule.markdownDescription()).add(rule.severity())
+      .add(rule.internalKey()).add(String.valueOf(rule.template())).add(rule.status().name()).add(rule.effortToFixDescription());
+    for (String tag : new TreeSet<>(rule.tags())) {
+      add(tag);
+    }
+    String subCharacteristic = rule.debtSubCharacteristic();
+    add(subCharacteristic);
+    if (subCharacteristic != null) {
+      CharacteristicDto characteristic = characteristics.get(subCharacteristic);
+      add(characteristic == null ? null : String.valueOf(characteristic.getId()));
+      add(characteristic == null ? null : String.valueOf(characteristic.getParentId()));
+    }
+    DebtRemediationFunction function = rule.debtRemediationFunction();
+    if (function != null) {
+      add(function.type().name()).add(function.coefficient()).add(function.offset());
+    }
+    List<RulesDefinition.Param> params = new ArrayList<>(rule.params());
+    sort(params, ParamKeyComparator.INSTANCE);
+    for (RulesDefinition.Param param : params) {
+      add(param.key()).add(param.type().toString()).add(param.description()).add(param.defaultValue());
+    }
+  }
+
+  private RuleRepositoryFingerprint add(@Nullable String value) {
+    if (value != null) {
+      digest.update(value.getBytes(Charsets.UTF_8));
+    }
+    digest.update(SEPARATOR);
+    return this;
+  }
+
+  private enum RuleKeyComparator implements Comparator<RulesDefinition.Rule> {
+    INSTANCE;
+
+    @Override
+    public int compare(RulesDefinition.Rule r1, RulesDefinition.Rule r2) {
+      return r1.key().compareTo(r2.key());
+    }
+  }
+
+  private enum ParamKeyComparator implements Comparator<RulesDefinition.Param> {
+    INSTANCE;
+
+    @Override
+    public int compare(RulesDefinition.Param p1, RulesDefinition.Param p2) {
+      return p1.key().compareTo(p2.key());
+    }
+  }
+}
@@ -19,6 +19,7 @@
  */
 package org.sonar.server.search;
 
+import com.google.common.annotations.VisibleForTesting;
 import org.elasticsearch.action.ActionRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequest;
 import org.elasticsearch.action.admin.indices.refresh.RefreshRequestBuilder;
@@ -34,16 +35,15 @@ import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.cluster.WorkQueue;
 import org.sonar.core.platform.ComponentContainer;
 import org.sonar.server.search.action.IndexAction;
+import org.sonar.server.search.action.RefreshIndex;
+import org.sonar.server.search.action.UpsertDto;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
 
 @ServerSide
 public class IndexQueue implements WorkQueue<IndexAction<?>> {
@@ -53,18 +53,17 @@ public class IndexQueue implements WorkQueue<IndexAction<?>> {
 
   private static final Logger LOGGER = Loggers.get(IndexQueue.class);
 
-  private static final Integer CONCURRENT_NORMALIZATION_FACTOR = 1;
-
   public IndexQueue(SearchClient searchClient, ComponentContainer container) {
     this.searchClient = searchClient;
     this.container = container;
   }
 
   @Override
-  public void enqueue(List<IndexAction<?>> actions) {
-    if (actions.isEmpty()) {
+  public void enqueue(List<IndexAction<?>> actionsToEnqueue) {
+    if (actionsToEnqueue.isEmpty()) {
       return;
     }
+    List<IndexAction<?>> actions = coalesce(actionsToEnqueue);
     boolean refreshRequired = false;
 
     Map<String, Index> indexes = getIndexMap();
@@ -96,6 +95,45 @@ public class IndexQueue implements WorkQueue<IndexAction<?>> {
     }
   }
 
+  /**
+   * Removes the upserts of DTOs that are followed by another upsert of the same document, without any
+   * other action on this document in-between. Only the last upsert needs to be normalized and sent to
+   * Elasticsearch.
+   */
+  @VisibleForTesting
+  static List<IndexAction<?>> coalesce(List<IndexAction<?>> actions) {
+    Map<String, Integer> lastActionIndexByDoc = new HashMap<>();
+    boolean[] overridden = new boolean[actions.size()];
+    int overriddenCount = 0;
+    for (int i = 0; i < actions.size(); i++) {
+      IndexAction<?> action = actions.get(i);
+      if (action instanceof RefreshIndex) {
+        continue;
+      }
+      String doc = action.getIndexType() + "|" + action.getKey();
+      Integer previousIndex = lastActionIndexByDoc.put(doc, i);
+      if (previousIndex != null && isOverriddenBy(actions.get(previousIndex), action)) {
+        overridden[previousIndex] = true;
+        overriddenCount++;
+      }
+    }
+    if (overriddenCount == 0) {
+      return actions;
+    }
+    List<IndexAction<?>> result = new ArrayList<>(actions.size() - overriddenCount);
+    for (int i = 0; i < actions.size(); i++) {
+      if (!overridden[i]) {
+        result.add(actions.get(i));
+      }
+    }
+    return result;
+  }
+
+  private static boolean isOverriddenBy(IndexAction<?> previous, IndexAction<?> next) {
+    // the refresh requested by the previous upsert must not be lost
+    return previous instanceof UpsertDto && next instanceof UpsertDto && (next.needsRefresh() || !previous.needsRefresh());
+  }
+
   private void refreshRequiredIndex(Set<String> indices) {
     if (!indices.isEmpty()) {
       RefreshRequestBuilder refreshRequest = searchClient.prepareRefresh(indices.toArray(new String[indices.size()]))
@@ -112,11 +150,9 @@ public class IndexQueue implements WorkQueue<IndexAction<?>> {
   private void processActionsIntoQueries(BulkRequestBuilder bulkRequestBuilder, List<IndexAction<?>> actions) {
     try {
       boolean hasInlineRefreshRequest = false;
-      ExecutorService executorService = Executors.newFixedThreadPool(CONCURRENT_NORMALIZATION_FACTOR);
-      // invokeAll() blocks until ALL tasks submitted to executor complete
-      List<Future<List<? extends ActionRequest>>> requests = (List) executorService.invokeAll(actions, 20, TimeUnit.MINUTES);
-      for (Future<List<? extends ActionRequest>> updates : requests) {
-        for (ActionRequest update : updates.get()) {
+      // normalization is executed by the caller thread, which waits for the bulk request anyway
+      for (IndexAction<?> action : actions) {
+        for (ActionRequest update : action.call()) {
 
           if (IndexRequest.class.isAssignableFrom(update.getClass())) {
             bulkRequestBuilder.add((IndexRequest) update);
@@ -131,7 +167,6 @@ public class IndexQueue implements WorkQueue<IndexAction<?>> {
           }
         }
       }
-      executorService.shutdown();
       bulkRequestBuilder.setRefresh(hasInlineRefreshRequest);
     } catch (Exception e) {
       throw new IllegalStateException("Could not execute normalization for stack", e);
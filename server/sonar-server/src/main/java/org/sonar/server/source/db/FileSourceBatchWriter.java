@@ -0,0 +1,97 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.source.db;
+
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.source.db.FileSourceDto;
+
+/**
+ * Writes rows of FILE_SOURCES in JDBC batches. As the binary data of a single file can be big, the pending
+ * statements are flushed and committed as soon as the accumulated size of binary data exceeds a given limit,
+ * instead of waiting for a given number of rows.
+ * <p/>
+ * The session should be a batch session (see {@link org.sonar.core.persistence.MyBatis#openSession(boolean)}).
+ * Closing the session remains the responsibility of the caller.
+ */
+public class FileSourceBatchWriter {
+
+  /**
+   * Maximum size in bytes of the binary data kept in the pending batch
+   */
+  public static final long DEFAULT_MAX_BATCH_BYTES = 8L * 1024 * 1024;
+
+  private final FileSourceDao dao;
+  private final DbSession session;
+  private final long maxBatchBytes;
+  private long pendingBytes = 0L;
+  private int pendingRows = 0;
+
+  public FileSourceBatchWriter(FileSourceDao dao, DbSession session) {
+    this(dao, session, DEFAULT_MAX_BATCH_BYTES);
+  }
+
+  public FileSourceBatchWriter(FileSourceDao dao, DbSession session, long maxBatchBytes) {
+    if (maxBatchBytes <= 0L) {
+      throw new IllegalArgumentException("Maximum size of batch must be strictly positive: " + maxBatchBytes);
+    }
+    this.dao = dao;
+    this.session = session;
+    this.maxBatchBytes = maxBatchBytes;
+  }
+
+  public void insert(FileSourceDto dto) {
+    dao.insert(session, dto);
+    increment(dto);
+  }
+
+  public void update(FileSourceDto dto) {
+    dao.update(session, dto);
+    increment(dto);
+  }
+
+  /**
+   * Executes and commits the pending statements
+   */
+  public void flush() {
+    if (pendingRows > 0) {
+      session.commit();
+      pendingBytes = 0L;
+      pendingRows = 0;
+    }
+  }
+
+  long getPendingBytes() {
+    return pendingBytes;
+  }
+
+  int getPendingRows() {
+    return pendingRows;
+  }
+
+  private void increment(FileSourceDto dto) {
+    byte[] binaryData = dto.getBinaryData();
+    pendingBytes += binaryData == null ? 0 : binaryData.length;
+    pendingRows++;
+    if (pendingBytes >= maxBatchBytes) {
+      flush();
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source.db;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheStats;
+import org.sonar.api.ServerSide;
+import org.sonar.api.config.Settings;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.db.DbClient;
+import org.sonar.server.util.cache.WeightedLruCache;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Collection;
+
+/**
+ * Keeps in memory the decoded source data of the files that have been recently requested, so that
+ * web services do not read and decode the same blobs of table FILE_SOURCES again and again. The size
+ * of the cache is bounded by an estimation of the heap used by decoded data, as the number of lines of files is
+ * unbounded.
+ * <p/>
+ * Entries are invalidated when the sources of files are persisted (see {@link #invalidate(Collection)}). Data
+ * loaded while being invalidated is not cached, so obsolete data can not be kept once the new rows are committed.
+ */
+@ServerSide
+public class SourceDataCache {
+
+  /**
+   * Maximum size of cache, in megabytes. Zero disables the cache.
+   */
+  public static final String PROPERTY_MAX_SIZE = "sonar.sourceData.cacheSizeInMb";
+  static final int DEFAULT_MAX_SIZE_IN_MB = 32;
+
+  /**
+   * Estimated heap used by a decoded line besides its chars: the message with its fields, its strings and lists
+   */
+  static final int LINE_OVERHEAD_IN_BYTES = 200;
+
+  private static final WeightedLruCache.Weigher<String, Optional<Source>> WEIGHER = new WeightedLruCache.Weigher<String, Optional<Source>>() {
+    @Override
+    public int weigh(String fileUuid, Optional<Source> source) {
+      return source.isPresent() ? source.get().weight() : fileUuid.length();
+    }
+  };
+
+  private final DbClient dbClient;
+  private final WeightedLruCache<String, Optional<Source>> cache;
+  private final Function<String, Optional<Source>> loader = new Function<String, Optional<Source>>() {
+    @Override
+    public Optional<Source> apply(String fileUuid) {
+      FileSourceDto dto = dbClient.fileSourceDao().selectSource(fileUuid);
+      return dto == null ? Optional.<Source>absent() : Optional.of(new Source(dto, dto.getSourceData()));
+    }
+  };
+
+  public SourceDataCache(DbClient dbClient, Settings settings) {
+    this(dbClient, 1024L * 1024L * (settings.hasKey(PROPERTY_MAX_SIZE) ? settings.getInt(PROPERTY_MAX_SIZE) : DEFAULT_MAX_SIZE_IN_MB));
+  }
+
+  SourceDataCache(DbClient dbClient, long maxSizeInBytes) {
+    if (maxSizeInBytes < 0L) {
+      throw new IllegalArgumentException("Size of cache of source data must be positive: " + maxSizeInBytes);
+    }
+    this.dbClient = dbClient;
+    this.cache = new WeightedLruCache<>(maxSizeInBytes, WEIGHER);
+  }
+
+  /**
+   * Source data of file, loaded from db if not already in cache. Returns {@code null} if the file has no sources.
+   */
+  @CheckForNull
+  public Source get(String fileUuid) {
+    return cache.get(fileUuid, loader).orNull();
+  }
+
+  /**
+   * Source data of file, containing at least the lines between {@code fromLine} and {@code toLine}. If the file
+   * is not in cache, then only the chunks of these lines are decoded and the cache is not populated. That's
+   * why it should be used only for lookups of a few lines.
+   */
+  @CheckForNull
+  public Source getRange(String fileUuid, int fromLine, int toLine) {
+    Source source = getIfPresent(fileUuid);
+    if (source == null) {
+      FileSourceDto dto = dbClient.fileSourceDao().selectSource(fileUuid);
+      if (dto != null) {
+        source = new Source(dto, dto.getSourceData(fromLine, toLine));
+      }
+    }
+    return source;
+  }
+
+  /**
+   * Source data of file, only if it's already in cache. The database is not requested.
+   */
+  @CheckForNull
+  public Source getIfPresent(String fileUuid) {
+    Optional<Source> source = cache.getIfPresent(fileUuid);
+    return source == null ? null : source.orNull();
+  }
+
+  public void invalidate(Collection<String> fileUuids) {
+    cache.invalidateAll(fileUuids);
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public boolean isEnabled() {
+    return cache.maxWeight() > 0L;
+  }
+
+  public long maxSizeInBytes() {
+    return cache.maxWeight();
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  /**
+   * Immutable row of FILE_SOURCES, with decoded data
+   */
+  public static class Source {
+    private final String projectUuid;
+    private final String fileUuid;
+    private final long updatedAt;
+    private final String dataHash;
+    private final FileSourceDb.Data data;
+    private final String lineHashes;
+    private final int weight;
+
+    Source(FileSourceDto dto, FileSourceDb.Data data) {
+      this.projectUuid = dto.getProjectUuid();
+      this.fileUuid = dto.getFileUuid();
+      this.updatedAt = dto.getUpdatedAt();
+      this.dataHash = dto.getDataHash();
+      this.data = data;
+      this.lineHashes = dto.getLineHashes();
+      this.weight = estimateWeight(data, lineHashes);
+    }
+
+    /**
+     * Decoded strings are UTF-16 chars, so they take about twice their serialized size, to which is added
+     * the overhead of each line.
+     */
+    static int estimateWeight(FileSourceDb.Data data, @Nullable String lineHashes) {
+      long weight = 2L * data.getSerializedSize() + (long) LINE_OVERHEAD_IN_BYTES * data.getLinesCount()
+        + 2L * (lineHashes == null ? 0 : lineHashes.length());
+      return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    public String getProjectUuid() {
+      return projectUuid;
+    }
+
+    public String getFileUuid() {
+      return fileUuid;
+    }
+
+    public long getUpdatedAt() {
+      return updatedAt;
+    }
+
+    public String getDataHash() {
+      return dataHash;
+    }
+
+    public FileSourceDb.Data getData() {
+      return data;
+    }
+
+    @CheckForNull
+    public String getLineHashes() {
+      return lineHashes;
+    }
+
+    int weight() {
+      return weight;
+    }
+  }
+}
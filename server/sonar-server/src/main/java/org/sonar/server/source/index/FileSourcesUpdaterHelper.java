@@ -23,11 +23,13 @@ package org.sonar.server.source.index;
 import com.google.common.base.Joiner;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.db.ResultSetIterator;
 
 import javax.annotation.Nullable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
@@ -79,6 +81,59 @@ public class FileSourcesUpdaterHelper {
     return sql.toString();
   }
 
+  /**
+   * Row of table FILE_SOURCES whose binary data is not decoded yet. Decoding can then
+   * be executed by another thread than the one scrolling the result set.
+   */
+  public static class BinaryRow {
+    private final String projectUuid, fileUuid;
+    private final long updatedAt;
+    private final byte[] binaryData;
+
+    public BinaryRow(String projectUuid, String fileUuid, long updatedAt, byte[] binaryData) {
+      this.projectUuid = projectUuid;
+      this.fileUuid = fileUuid;
+      this.updatedAt = updatedAt;
+      this.binaryData = binaryData;
+    }
+
+    public String getProjectUuid() {
+      return projectUuid;
+    }
+
+    public String getFileUuid() {
+      return fileUuid;
+    }
+
+    public long getUpdatedAt() {
+      return updatedAt;
+    }
+
+    public byte[] getBinaryData() {
+      return binaryData;
+    }
+  }
+
+  public static class BinaryRowIterator extends ResultSetIterator<BinaryRow> {
+
+    public static BinaryRowIterator create(DbClient dbClient, Connection connection, String dataType, long afterDate, @Nullable String projectUuid) {
+      try {
+        return new BinaryRowIterator(preparedStatementToSelectFileSources(dbClient, connection, dataType, afterDate, projectUuid));
+      } catch (SQLException e) {
+        throw new IllegalStateException("Fail to prepare SQL request to select file sources of type " + dataType, e);
+      }
+    }
+
+    private BinaryRowIterator(PreparedStatement stmt) throws SQLException {
+      super(stmt);
+    }
+
+    @Override
+    protected BinaryRow read(ResultSet rs) throws SQLException {
+      return new BinaryRow(rs.getString(1), rs.getString(2), rs.getLong(3), rs.getBytes(4));
+    }
+  }
+
   public static class Row {
     private final String fileUuid, projectUuid;
     private final long updatedAt;
@@ -20,15 +20,21 @@
 package org.sonar.server.source.index;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.search.SearchHit;
 import org.elasticsearch.search.sort.SortOrder;
+import org.sonar.api.config.Settings;
 import org.sonar.server.es.BaseIndex;
 import org.sonar.server.es.EsClient;
 import org.sonar.server.exceptions.NotFoundException;
+import org.sonar.server.source.db.FileSourceDb;
+import org.sonar.server.source.db.SourceDataCache;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
 import java.util.Date;
 import java.util.List;
 
@@ -38,8 +44,21 @@ public class SourceLineIndex extends BaseIndex {
 
   private static final int MAX_RESULT = 500000;
 
+  private final SourceDataCache sourceDataCache;
+  private final SourceLineStorage storage;
+
+  public SourceLineIndex(EsClient esClient, SourceDataCache sourceDataCache, Settings settings) {
+    this(esClient, sourceDataCache, SourceLineStorage.from(settings));
+  }
+
   public SourceLineIndex(EsClient esClient) {
+    this(esClient, null, SourceLineStorage.LINES);
+  }
+
+  SourceLineIndex(EsClient esClient, @Nullable SourceDataCache sourceDataCache, SourceLineStorage storage) {
     super(esClient);
+    this.sourceDataCache = sourceDataCache;
+    this.storage = storage;
   }
 
   /**
@@ -61,6 +80,10 @@ public class SourceLineIndex extends BaseIndex {
       size = MAX_RESULT;
     }
     int toLimited = size + from - 1;
+    SourceDataCache.Source source = loadSourceForRange(fileUuid);
+    if (storage == SourceLineStorage.FILES || source != null) {
+      return toDocs(source, from, toLimited);
+    }
 
     for (SearchHit hit : getClient().prepareSearch(SourceLineIndexDefinition.INDEX)
       .setTypes(SourceLineIndexDefinition.TYPE)
@@ -79,9 +102,13 @@ public class SourceLineIndex extends BaseIndex {
   }
 
   /**
-   * Get lines of code for file with UUID <code>fileUuid</code>.
+   * Get lines of code for file with UUID <code>fileUuid</code>. All the lines are returned, so they are loaded
+   * through the cache of source data when it is enabled.
    */
   public List<SourceLineDoc> getLines(String fileUuid) {
+    if (storage == SourceLineStorage.FILES || (sourceDataCache != null && sourceDataCache.isEnabled())) {
+      return toDocs(sourceDataCache.get(fileUuid), 1, Integer.MAX_VALUE);
+    }
     List<SourceLineDoc> lines = Lists.newArrayList();
 
     for (SearchHit hit : getClient().prepareSearch(SourceLineIndexDefinition.INDEX)
@@ -98,6 +125,20 @@ public class SourceLineIndex extends BaseIndex {
 
   public SourceLineDoc getLine(String fileUuid, int line) {
     checkArgument(line > 0, "Line should be greater than 0");
+    if (storage == SourceLineStorage.FILES) {
+      List<SourceLineDoc> lines = toDocs(sourceDataCache.getRange(fileUuid, line, line), line, line);
+      if (lines.size() == 1) {
+        return lines.get(0);
+      }
+      throw new NotFoundException(String.format("No source found on line %s for file '%s'", line, fileUuid));
+    }
+    SourceDataCache.Source cachedSource = sourceDataCache == null ? null : sourceDataCache.getIfPresent(fileUuid);
+    if (cachedSource != null) {
+      List<SourceLineDoc> lines = toDocs(cachedSource, line, line);
+      if (lines.size() == 1) {
+        return lines.get(0);
+      }
+    }
     SearchRequestBuilder request = getClient().prepareSearch(SourceLineIndexDefinition.INDEX)
       .setTypes(SourceLineIndexDefinition.TYPE)
       .setSize(1)
@@ -132,4 +173,55 @@ public class SourceLineIndex extends BaseIndex {
 
     return null;
   }
+
+  /**
+   * Lines are not indexed when storage is {@link SourceLineStorage#FILES}, so source data is loaded from
+   * db table FILE_SOURCES. When they are indexed, the lines are read from cache only if the file has already
+   * been loaded, for example by {@link #getLines(String)}, so that requesting a few lines of a big file
+   * does not read and decode its whole blob. Returns {@code null} if lines must be searched in index.
+   */
+  @CheckForNull
+  private SourceDataCache.Source loadSourceForRange(String fileUuid) {
+    if (storage == SourceLineStorage.FILES) {
+      return sourceDataCache.get(fileUuid);
+    }
+    return sourceDataCache == null ? null : sourceDataCache.getIfPresent(fileUuid);
+  }
+
+  private static List<SourceLineDoc> toDocs(@Nullable SourceDataCache.Source source, int from, int to) {
+    List<SourceLineDoc> lines = Lists.newArrayList();
+    if (source != null) {
+      Date updatedAt = new Date(source.getUpdatedAt());
+      for (FileSourceDb.Line line : source.getData().getLinesList()) {
+        if (line.getLine() >= from && line.getLine() <= to) {
+          lines.add(toDoc(source.getProjectUuid(), source.getFileUuid(), updatedAt, line));
+        }
+      }
+    }
+    return lines;
+  }
+
+  static SourceLineDoc toDoc(String projectUuid, String fileUuid, Date updatedAt, FileSourceDb.Line line) {
+    return new SourceLineDoc(Maps.<String, Object>newHashMapWithExpectedSize(22))
+      .setProjectUuid(projectUuid)
+      .setFileUuid(fileUuid)
+      .setLine(line.getLine())
+      .setUpdateDate(updatedAt)
+      .setScmRevision(line.hasScmRevision() ? line.getScmRevision() : null)
+      .setScmAuthor(line.hasScmAuthor() ? line.getScmAuthor() : null)
+      .setScmDate(line.hasScmDate() ? new Date(line.getScmDate()) : null)
+      .setUtLineHits(line.hasUtLineHits() ? line.getUtLineHits() : null)
+      .setUtConditions(line.hasUtConditions() ? line.getUtConditions() : null)
+      .setUtCoveredConditions(line.hasUtCoveredConditions() ? line.getUtCoveredConditions() : null)
+      .setItLineHits(line.hasItLineHits() ? line.getItLineHits() : null)
+      .setItConditions(line.hasItConditions() ? line.getItConditions() : null)
+      .setItCoveredConditions(line.hasItCoveredConditions() ? line.getItCoveredConditions() : null)
+      .setOverallLineHits(line.hasOverallLineHits() ? line.getOverallLineHits() : null)
+      .setOverallConditions(line.hasOverallConditions() ? line.getOverallConditions() : null)
+      .setOverallCoveredConditions(line.hasOverallCoveredConditions() ? line.getOverallCoveredConditions() : null)
+      .setHighlighting(line.hasHighlighting() ? line.getHighlighting() : null)
+      .setSymbols(line.hasSymbols() ? line.getSymbols() : null)
+      .setDuplications(line.getDuplicationList())
+      .setSource(line.hasSource() ? line.getSource() : null);
+  }
 }
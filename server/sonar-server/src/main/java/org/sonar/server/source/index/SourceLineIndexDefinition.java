@@ -67,6 +67,13 @@ public class SourceLineIndexDefinition implements IndexDefinition {
     mapping.setAttribute("_routing", ImmutableMap.of("required", true, "path", FIELD_PROJECT_UUID));
     mapping.stringFieldBuilder(FIELD_PROJECT_UUID).build();
     mapping.stringFieldBuilder(FIELD_FILE_UUID).build();
+    if (SourceLineStorage.from(settings) == SourceLineStorage.FILES) {
+      // one document per file, with only the fields used by searches. Field
+      // FIELD_SCM_DATE is the most recent SCM date of the lines of the file.
+      mapping.createDateTimeField(FIELD_SCM_DATE);
+      mapping.createDateTimeField(FIELD_UPDATED_AT);
+      return;
+    }
     mapping.createIntegerField(FIELD_LINE);
     mapping.stringFieldBuilder(FIELD_SCM_REVISION).disableSearch().build();
     mapping.stringFieldBuilder(FIELD_SCM_AUTHOR).disableSearch().build();
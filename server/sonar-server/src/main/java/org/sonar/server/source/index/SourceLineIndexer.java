@@ -19,15 +19,23 @@
  */
 package org.sonar.server.source.index;
 
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.sonar.api.config.Settings;
 import org.sonar.core.persistence.DbSession;
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.ParallelConvertingIterator;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper.BinaryRow;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper.BinaryRowIterator;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper.Row;
 
 import javax.annotation.Nullable;
 
@@ -44,10 +52,20 @@ import static org.sonar.server.source.index.SourceLineIndexDefinition.FIELD_PROJ
 public class SourceLineIndexer extends BaseIndexer {
 
   private final DbClient dbClient;
+  private final SourceLineStorage storage;
+
+  public SourceLineIndexer(DbClient dbClient, EsClient esClient, Settings settings) {
+    this(dbClient, esClient, SourceLineStorage.from(settings));
+  }
 
   public SourceLineIndexer(DbClient dbClient, EsClient esClient) {
+    this(dbClient, esClient, SourceLineStorage.LINES);
+  }
+
+  SourceLineIndexer(DbClient dbClient, EsClient esClient, SourceLineStorage storage) {
     super(esClient, 0L, SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE, SourceLineIndexDefinition.FIELD_UPDATED_AT);
     this.dbClient = dbClient;
+    this.storage = storage;
   }
 
   public void index(final String projectUuid){
@@ -71,10 +89,24 @@ public class SourceLineIndexer extends BaseIndexer {
     DbSession dbSession = dbClient.openSession(false);
     Connection dbConnection = dbSession.getConnection();
     try {
-      SourceLineResultSetIterator rowIt = SourceLineResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt, projectUuid);
-      long maxUpdatedAt = doIndex(bulk, rowIt);
-      rowIt.close();
-      return maxUpdatedAt;
+      BinaryRowIterator rowIt = BinaryRowIterator.create(dbClient, dbConnection, FileSourceDto.Type.SOURCE, lastUpdatedAt, projectUuid);
+      Function<BinaryRow, Row> converter = storage == SourceLineStorage.FILES ?
+        SourceLineResultSetIterator.BINARY_ROW_TO_FILE_CONVERTER : SourceLineResultSetIterator.BINARY_ROW_CONVERTER;
+      try {
+        if (lastUpdatedAt == 0L) {
+          // large indexing: binary data is decoded by several threads
+          ParallelConvertingIterator<BinaryRow, Row> docIt = new ParallelConvertingIterator<>("sourcelines-indexer", rowIt,
+            converter, ParallelConvertingIterator.DEFAULT_THREADS);
+          try {
+            return doIndex(bulk, docIt);
+          } finally {
+            docIt.close();
+          }
+        }
+        return doIndex(bulk, Iterators.transform(rowIt, converter));
+      } finally {
+        rowIt.close();
+      }
 
     } finally {
       dbSession.close();
@@ -91,7 +123,9 @@ public class SourceLineIndexer extends BaseIndexer {
     bulk.start();
     while (dbRows.hasNext()) {
       FileSourcesUpdaterHelper.Row row = dbRows.next();
-      addDeleteRequestsForLinesGreaterThan(bulk, row);
+      if (storage == SourceLineStorage.LINES) {
+        addDeleteRequestsForLinesGreaterThan(bulk, row);
+      }
       for (UpdateRequest updateRequest : row.getUpdateRequests()) {
         bulk.add(updateRequest);
       }
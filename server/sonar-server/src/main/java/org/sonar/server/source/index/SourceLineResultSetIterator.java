@@ -19,25 +19,25 @@
  */
 package org.sonar.server.source.index;
 
+import com.google.common.base.Function;
 import org.elasticsearch.action.update.UpdateRequest;
-import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.db.ResultSetIterator;
 import org.sonar.server.es.EsUtils;
+import org.sonar.server.es.JsonDocBuilder;
 import org.sonar.server.source.db.FileSourceDb;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.Date;
 
+import static org.sonar.server.source.index.FileSourcesUpdaterHelper.BinaryRow;
 import static org.sonar.server.source.index.FileSourcesUpdaterHelper.Row;
 
 /**
@@ -55,6 +55,28 @@ public class SourceLineResultSetIterator extends ResultSetIterator<FileSourcesUp
     }
   }
 
+  /**
+   * Decodes the rows read by {@link FileSourcesUpdaterHelper.BinaryRowIterator}. It is thread-safe.
+   */
+  public static final Function<BinaryRow, Row> BINARY_ROW_CONVERTER = new Function<BinaryRow, Row>() {
+    @Override
+    public Row apply(@Nonnull BinaryRow row) {
+      FileSourceDb.Data data = FileSourceDto.decodeSourceData(row.getBinaryData());
+      return toRow(row.getProjectUuid(), row.getFileUuid(), new Date(row.getUpdatedAt()), data);
+    }
+  };
+
+  /**
+   * Same as {@link #BINARY_ROW_CONVERTER} when storage is {@link SourceLineStorage#FILES}. It is thread-safe.
+   */
+  public static final Function<BinaryRow, Row> BINARY_ROW_TO_FILE_CONVERTER = new Function<BinaryRow, Row>() {
+    @Override
+    public Row apply(@Nonnull BinaryRow row) {
+      FileSourceDb.Data data = FileSourceDto.decodeSourceData(row.getBinaryData());
+      return toFileRow(row.getProjectUuid(), row.getFileUuid(), new Date(row.getUpdatedAt()), data);
+    }
+  };
+
   private SourceLineResultSetIterator(PreparedStatement stmt) throws SQLException {
     super(stmt);
   }
@@ -68,96 +90,76 @@ public class SourceLineResultSetIterator extends ResultSetIterator<FileSourcesUp
     return toRow(projectUuid, fileUuid, updatedAt, data);
   }
 
+  /**
+   * Convert protobuf message to the single document of the file, when storage is {@link SourceLineStorage#FILES}
+   */
+  public static Row toFileRow(String projectUuid, String fileUuid, Date updatedAt, FileSourceDb.Data data) {
+    Row result = new Row(projectUuid, fileUuid, updatedAt.getTime());
+    Long lastScmDate = null;
+    for (FileSourceDb.Line line : data.getLinesList()) {
+      if (line.hasScmDate() && (lastScmDate == null || line.getScmDate() > lastScmDate)) {
+        lastScmDate = line.getScmDate();
+      }
+    }
+    byte[] jsonDoc = JsonDocBuilder.get()
+      .beginObject()
+      .prop(SourceLineIndexDefinition.FIELD_PROJECT_UUID, projectUuid)
+      .prop(SourceLineIndexDefinition.FIELD_FILE_UUID, fileUuid)
+      .prop(SourceLineIndexDefinition.FIELD_UPDATED_AT, EsUtils.formatDateTime(updatedAt))
+      .prop(SourceLineIndexDefinition.FIELD_SCM_DATE, EsUtils.formatDateTime(lastScmDate == null ? null : new Date(lastScmDate)))
+      .endObject()
+      .build();
+    result.getUpdateRequests().add(new UpdateRequest(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE, fileUuid)
+      .routing(projectUuid)
+      .doc(jsonDoc)
+      .upsert(jsonDoc));
+    return result;
+  }
+
   /**
    * Convert protobuf message to data required for Elasticsearch indexing
    */
   public static Row toRow(String projectUuid, String fileUuid, Date updatedAt, FileSourceDb.Data data) {
     Row result = new Row(projectUuid, fileUuid, updatedAt.getTime());
     for (FileSourceDb.Line line : data.getLinesList()) {
-      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-
       // all the fields must be present, even if value is null
-      JsonWriter writer = JsonWriter.of(new OutputStreamWriter(bytes, StandardCharsets.UTF_8)).setSerializeNulls(true);
-      writer.beginObject();
-      writer.prop(SourceLineIndexDefinition.FIELD_PROJECT_UUID, projectUuid);
-      writer.prop(SourceLineIndexDefinition.FIELD_FILE_UUID, fileUuid);
-      writer.prop(SourceLineIndexDefinition.FIELD_LINE, line.getLine());
-      writer.prop(SourceLineIndexDefinition.FIELD_UPDATED_AT, EsUtils.formatDateTime(updatedAt));
-      writer.prop(SourceLineIndexDefinition.FIELD_SCM_REVISION, line.getScmRevision());
-      writer.prop(SourceLineIndexDefinition.FIELD_SCM_AUTHOR, line.getScmAuthor());
-      writer.prop(SourceLineIndexDefinition.FIELD_SCM_DATE, EsUtils.formatDateTime(line.hasScmDate() ? new Date(line.getScmDate()) : null));
-
-      // unit tests
-      if (line.hasUtLineHits()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_UT_LINE_HITS, line.getUtLineHits());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_UT_LINE_HITS).valueObject(null);
-      }
-      if (line.hasUtConditions()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_UT_CONDITIONS, line.getUtConditions());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_UT_CONDITIONS).valueObject(null);
-      }
-      if (line.hasUtCoveredConditions()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_UT_COVERED_CONDITIONS, line.getUtCoveredConditions());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_UT_COVERED_CONDITIONS).valueObject(null);
-      }
+      byte[] jsonDoc = JsonDocBuilder.get()
+        .beginObject()
+        .prop(SourceLineIndexDefinition.FIELD_PROJECT_UUID, projectUuid)
+        .prop(SourceLineIndexDefinition.FIELD_FILE_UUID, fileUuid)
+        .prop(SourceLineIndexDefinition.FIELD_LINE, line.getLine())
+        .prop(SourceLineIndexDefinition.FIELD_UPDATED_AT, EsUtils.formatDateTime(updatedAt))
+        .prop(SourceLineIndexDefinition.FIELD_SCM_REVISION, line.getScmRevision())
+        .prop(SourceLineIndexDefinition.FIELD_SCM_AUTHOR, line.getScmAuthor())
+        .prop(SourceLineIndexDefinition.FIELD_SCM_DATE, EsUtils.formatDateTime(line.hasScmDate() ? new Date(line.getScmDate()) : null))
 
-      // IT
-      if (line.hasItLineHits()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_IT_LINE_HITS, line.getItLineHits());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_IT_LINE_HITS).valueObject(null);
-      }
-      if (line.hasItConditions()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_IT_CONDITIONS, line.getItConditions());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_IT_CONDITIONS).valueObject(null);
-      }
-      if (line.hasItCoveredConditions()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_IT_COVERED_CONDITIONS, line.getItCoveredConditions());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_IT_COVERED_CONDITIONS).valueObject(null);
-      }
+        // unit tests
+        .prop(SourceLineIndexDefinition.FIELD_UT_LINE_HITS, line.hasUtLineHits() ? line.getUtLineHits() : null)
+        .prop(SourceLineIndexDefinition.FIELD_UT_CONDITIONS, line.hasUtConditions() ? line.getUtConditions() : null)
+        .prop(SourceLineIndexDefinition.FIELD_UT_COVERED_CONDITIONS, line.hasUtCoveredConditions() ? line.getUtCoveredConditions() : null)
 
-      // Overall coverage
-      if (line.hasOverallLineHits()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_OVERALL_LINE_HITS, line.getOverallLineHits());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_OVERALL_LINE_HITS).valueObject(null);
-      }
-      if (line.hasOverallConditions()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_OVERALL_CONDITIONS, line.getOverallConditions());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_OVERALL_CONDITIONS).valueObject(null);
-      }
-      if (line.hasOverallCoveredConditions()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_OVERALL_COVERED_CONDITIONS, line.getOverallCoveredConditions());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_OVERALL_COVERED_CONDITIONS).valueObject(null);
-      }
+        // IT
+        .prop(SourceLineIndexDefinition.FIELD_IT_LINE_HITS, line.hasItLineHits() ? line.getItLineHits() : null)
+        .prop(SourceLineIndexDefinition.FIELD_IT_CONDITIONS, line.hasItConditions() ? line.getItConditions() : null)
+        .prop(SourceLineIndexDefinition.FIELD_IT_COVERED_CONDITIONS, line.hasItCoveredConditions() ? line.getItCoveredConditions() : null)
 
-      if (line.hasHighlighting()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_HIGHLIGHTING, line.getHighlighting());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_HIGHLIGHTING).valueObject(null);
-      }
-      if (line.hasSymbols()) {
-        writer.prop(SourceLineIndexDefinition.FIELD_SYMBOLS, line.getSymbols());
-      } else {
-        writer.name(SourceLineIndexDefinition.FIELD_SYMBOLS).valueObject(null);
-      }
-      writer.name(SourceLineIndexDefinition.FIELD_DUPLICATIONS).valueObject(line.getDuplicationList());
-      writer.prop(SourceLineIndexDefinition.FIELD_SOURCE, line.hasSource() ? line.getSource() : null);
-      writer.endObject().close();
+        // Overall coverage
+        .prop(SourceLineIndexDefinition.FIELD_OVERALL_LINE_HITS, line.hasOverallLineHits() ? line.getOverallLineHits() : null)
+        .prop(SourceLineIndexDefinition.FIELD_OVERALL_CONDITIONS, line.hasOverallConditions() ? line.getOverallConditions() : null)
+        .prop(SourceLineIndexDefinition.FIELD_OVERALL_COVERED_CONDITIONS, line.hasOverallCoveredConditions() ? line.getOverallCoveredConditions() : null)
+
+        .prop(SourceLineIndexDefinition.FIELD_HIGHLIGHTING, line.hasHighlighting() ? line.getHighlighting() : null)
+        .prop(SourceLineIndexDefinition.FIELD_SYMBOLS, line.hasSymbols() ? line.getSymbols() : null)
+        .name(SourceLineIndexDefinition.FIELD_DUPLICATIONS).value(line.getDuplicationList())
+        .prop(SourceLineIndexDefinition.FIELD_SOURCE, line.hasSource() ? line.getSource() : null)
+        .endObject()
+        .build();
 
       // This is an optimization to reduce memory consumption and multiple conversions from Map to JSON.
       // UpdateRequest#doc() and #upsert() take the same parameter values, so:
       // - passing the same Map would execute two JSON serializations
       // - Map is a useless temporarily structure: read JDBC result set -> convert to map -> convert to JSON. Generating
       // directly JSON from result set is more efficient.
-      byte[] jsonDoc = bytes.toByteArray();
       UpdateRequest updateRequest = new UpdateRequest(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE, SourceLineIndexDefinition.docKey(fileUuid, line.getLine()))
         .routing(projectUuid)
         .doc(jsonDoc)
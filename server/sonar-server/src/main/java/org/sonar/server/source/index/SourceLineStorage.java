@@ -0,0 +1,55 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source.index;
+
+import org.apache.commons.lang.StringUtils;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
+
+import java.util.Locale;
+
+/**
+ * How source lines are stored in the index {@link SourceLineIndexDefinition#INDEX}. Changing the storage changes
+ * the definition of the index, so it is re-created and populated again from db table FILE_SOURCES at next server startup.
+ */
+public enum SourceLineStorage {
+
+  /**
+   * One document per line, including all the fields (source, SCM, coverage...). Lines are loaded from Elasticsearch.
+   */
+  LINES,
+
+  /**
+   * One document per file, with searchable fields only. Lines are loaded from db table FILE_SOURCES. Size of
+   * index and duration of indexing are drastically reduced.
+   */
+  FILES;
+
+  public static final String PROPERTY = "sonar.sourceLines.storage";
+
+  public static SourceLineStorage from(Settings settings) {
+    String value = StringUtils.defaultIfBlank(settings.getString(PROPERTY), LINES.name());
+    try {
+      return valueOf(value.toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException e) {
+      throw MessageException.of(String.format("Unsupported value of property %s: %s. Supported values are: lines, files", PROPERTY, value));
+    }
+  }
+}
@@ -29,6 +29,7 @@ import org.sonar.api.web.UserRole;
 import org.sonar.core.component.ComponentDto;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.source.db.SourceDataCache;
 import org.sonar.server.user.UserSession;
 
 import java.io.IOException;
@@ -39,10 +40,12 @@ import java.nio.charset.StandardCharsets;
 public class HashAction implements SourcesWsAction {
 
   private final DbClient dbClient;
+  private final SourceDataCache sourceDataCache;
   private final UserSession userSession;
 
-  public HashAction(DbClient dbClient, UserSession userSession) {
+  public HashAction(DbClient dbClient, SourceDataCache sourceDataCache, UserSession userSession) {
     this.dbClient = dbClient;
+    this.sourceDataCache = sourceDataCache;
     this.userSession = userSession;
   }
 
@@ -72,6 +75,12 @@ public class HashAction implements SourcesWsAction {
       response.stream().setMediaType("text/plain");
       OutputStreamWriter writer = new OutputStreamWriter(response.stream().output(), StandardCharsets.UTF_8);
       try {
+        // line hashes are not worth loading the whole source data into cache, but they are used when already loaded
+        SourceDataCache.Source cachedSource = sourceDataCache.getIfPresent(component.uuid());
+        if (cachedSource != null && cachedSource.getLineHashes() != null) {
+          writer.write(cachedSource.getLineHashes());
+          return;
+        }
         HashFunction hashFunction = new HashFunction(writer, componentKey);
         dbClient.fileSourceDao().readLineHashesStream(session, component.uuid(), hashFunction);
         if (!hashFunction.hasData()) {
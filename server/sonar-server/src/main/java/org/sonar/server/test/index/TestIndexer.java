@@ -25,11 +25,16 @@ import org.elasticsearch.action.update.UpdateRequest;
 import org.elasticsearch.index.query.FilterBuilders;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.sonar.core.persistence.DbSession;
+import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.es.BaseIndexer;
 import org.sonar.server.es.BulkIndexer;
 import org.sonar.server.es.EsClient;
+import org.sonar.server.es.ParallelConvertingIterator;
 import org.sonar.server.source.index.FileSourcesUpdaterHelper;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper.BinaryRow;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper.BinaryRowIterator;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper.Row;
 
 import javax.annotation.Nullable;
 import java.sql.Connection;
@@ -73,10 +78,24 @@ public class TestIndexer extends BaseIndexer {
     DbSession dbSession = dbClient.openSession(false);
     Connection dbConnection = dbSession.getConnection();
     try {
+      if (lastUpdatedAt == 0L) {
+        // large indexing: binary data is decoded by several threads
+        BinaryRowIterator rowIt = BinaryRowIterator.create(dbClient, dbConnection, FileSourceDto.Type.TEST, lastUpdatedAt, projectUuid);
+        ParallelConvertingIterator<BinaryRow, Row> docIt = new ParallelConvertingIterator<>("tests-indexer", rowIt,
+          TestResultSetIterator.BINARY_ROW_CONVERTER, ParallelConvertingIterator.DEFAULT_THREADS);
+        try {
+          return doIndex(bulk, docIt);
+        } finally {
+          docIt.close();
+          rowIt.close();
+        }
+      }
       TestResultSetIterator rowIt = TestResultSetIterator.create(dbClient, dbConnection, lastUpdatedAt, projectUuid);
-      long maxUpdatedAt = doIndex(bulk, rowIt);
-      rowIt.close();
-      return maxUpdatedAt;
+      try {
+        return doIndex(bulk, rowIt);
+      } finally {
+        rowIt.close();
+      }
 
     } finally {
       dbSession.close();
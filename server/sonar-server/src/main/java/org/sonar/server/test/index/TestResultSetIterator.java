@@ -20,20 +20,20 @@
 
 package org.sonar.server.test.index;
 
+import com.google.common.base.Function;
 import org.elasticsearch.action.update.UpdateRequest;
-import org.sonar.api.utils.text.JsonWriter;
 import org.sonar.core.source.db.FileSourceDto;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.db.ResultSetIterator;
+import org.sonar.server.es.JsonDocBuilder;
 import org.sonar.server.source.db.FileSourceDb;
 import org.sonar.server.source.index.FileSourcesUpdaterHelper;
+import org.sonar.server.source.index.FileSourcesUpdaterHelper.BinaryRow;
 import org.sonar.server.source.index.FileSourcesUpdaterHelper.Row;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import java.io.ByteArrayOutputStream;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -69,6 +69,17 @@ public class TestResultSetIterator extends ResultSetIterator<Row> {
     }
   }
 
+  /**
+   * Decodes the rows read by {@link FileSourcesUpdaterHelper.BinaryRowIterator}. It is thread-safe.
+   */
+  public static final Function<BinaryRow, Row> BINARY_ROW_CONVERTER = new Function<BinaryRow, Row>() {
+    @Override
+    public Row apply(@Nonnull BinaryRow row) {
+      List<FileSourceDb.Test> tests = FileSourceDto.decodeTestData(row.getBinaryData());
+      return toRow(row.getProjectUuid(), row.getFileUuid(), new Date(row.getUpdatedAt()), tests);
+    }
+  };
+
   private TestResultSetIterator(PreparedStatement stmt) throws SQLException {
     super(stmt);
   }
@@ -88,36 +99,33 @@ public class TestResultSetIterator extends ResultSetIterator<Row> {
   public static Row toRow(String projectUuid, String fileUuid, Date updatedAt, List<FileSourceDb.Test> tests) {
     Row result = new Row(projectUuid, fileUuid, updatedAt.getTime());
     for (FileSourceDb.Test test : tests) {
-      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-
       // all the fields must be present, even if value is null
-      JsonWriter writer = JsonWriter.of(new OutputStreamWriter(bytes, StandardCharsets.UTF_8)).setSerializeNulls(true);
-      writer.beginObject();
-      writer.prop(FIELD_PROJECT_UUID, projectUuid);
-      writer.prop(FIELD_FILE_UUID, fileUuid);
-      writer.prop(FIELD_TEST_UUID, test.getUuid());
-      writer.prop(FIELD_NAME, test.getName());
-      writer.prop(FIELD_STATUS, test.hasStatus() ? test.getStatus().toString() : null);
-      writer.prop(FIELD_DURATION_IN_MS, test.hasExecutionTimeMs() ? test.getExecutionTimeMs() : null);
-      writer.prop(FIELD_MESSAGE, test.hasMsg() ? test.getMsg() : null);
-      writer.prop(FIELD_STACKTRACE, test.hasStacktrace() ? test.getStacktrace() : null);
-      writer.name(FIELD_COVERED_FILES);
-      writer.beginArray();
+      JsonDocBuilder builder = JsonDocBuilder.get()
+        .beginObject()
+        .prop(FIELD_PROJECT_UUID, projectUuid)
+        .prop(FIELD_FILE_UUID, fileUuid)
+        .prop(FIELD_TEST_UUID, test.getUuid())
+        .prop(FIELD_NAME, test.getName())
+        .prop(FIELD_STATUS, test.hasStatus() ? test.getStatus().toString() : null)
+        .prop(FIELD_DURATION_IN_MS, test.hasExecutionTimeMs() ? test.getExecutionTimeMs() : null)
+        .prop(FIELD_MESSAGE, test.hasMsg() ? test.getMsg() : null)
+        .prop(FIELD_STACKTRACE, test.hasStacktrace() ? test.getStacktrace() : null)
+        .name(FIELD_COVERED_FILES)
+        .beginArray();
       for (FileSourceDb.Test.CoveredFile coveredFile : test.getCoveredFileList()) {
-        writer.beginObject();
-        writer.prop(FIELD_COVERED_FILE_UUID, coveredFile.getFileUuid());
-        writer.name(FIELD_COVERED_FILE_LINES).valueObject(coveredFile.getCoveredLineList());
-        writer.endObject();
+        builder.beginObject()
+          .prop(FIELD_COVERED_FILE_UUID, coveredFile.getFileUuid())
+          .name(FIELD_COVERED_FILE_LINES).value(coveredFile.getCoveredLineList())
+          .endObject();
       }
-      writer.endArray();
-      writer.endObject().close();
+      builder.endArray().endObject();
 
       // This is an optimization to reduce memory consumption and multiple conversions from Map to JSON.
       // UpdateRequest#doc() and #upsert() take the same parameter values, so:
       // - passing the same Map would execute two JSON serializations
       // - Map is a useless temporarily structure: read JDBC result set -> convert to map -> convert to JSON. Generating
       // directly JSON from result set is more efficient.
-      byte[] jsonDoc = bytes.toByteArray();
+      byte[] jsonDoc = builder.build();
       UpdateRequest updateRequest = new UpdateRequest(INDEX, TYPE, test.getUuid())
         .routing(projectUuid)
         .doc(jsonDoc)
@@ -20,9 +20,12 @@
 package org.sonar.server.util;
 
 
+import com.google.common.base.Supplier;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 
+import javax.annotation.Nullable;
+
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicLong;
@@ -86,6 +89,14 @@ public class ProgressLogger {
     return task.pluralLabel;
   }
 
+  /**
+   * Optional details appended to logs, for example throughput in bytes
+   */
+  public ProgressLogger setDetails(@Nullable Supplier<String> details) {
+    task.details = details;
+    return this;
+  }
+
   public void log() {
     task.log();
   }
@@ -94,6 +105,7 @@ public class ProgressLogger {
     private final AtomicLong counter;
     private final Logger logger;
     private String pluralLabel = "rows";
+    private Supplier<String> details = null;
     private long previousCounter = 0L;
 
     private LoggerTimerTask(AtomicLong counter, Logger logger) {
@@ -108,7 +120,11 @@ public class ProgressLogger {
 
     private void log() {
       long current = counter.get();
-      logger.info(String.format("%d %s processed (%d items/sec)", current, pluralLabel, 1000 * (current-previousCounter) / periodMs));
+      String message = String.format("%d %s processed (%d items/sec)", current, pluralLabel, 1000 * (current-previousCounter) / periodMs);
+      if (details != null) {
+        message += " - " + details.get();
+      }
+      logger.info(message);
       previousCounter = current;
     }
   }
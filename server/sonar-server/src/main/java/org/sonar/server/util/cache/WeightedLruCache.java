@@ -0,0 +1,210 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.util.cache;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.cache.CacheStats;
+import org.sonar.api.utils.System2;
+
+import javax.annotation.CheckForNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe in-memory cache whose total weight of entries is bounded. The least recently used
+ * entries are evicted first. Entries can also expire after a given duration since they were written.
+ * Null values are not supported.
+ */
+public class WeightedLruCache<K, V> {
+
+  public interface Weigher<K, V> {
+    /**
+     * Weight of entry, for example an approximation of its memory footprint in bytes. Must not be negative.
+     */
+    int weigh(K key, V value);
+  }
+
+  private final long maxWeight;
+  private final long expirationInMs;
+  private final Weigher<K, V> weigher;
+  private final System2 system;
+
+  // access-ordered, so that the first entries are the least recently used
+  private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private long weight = 0L;
+  private long hitCount = 0L;
+  private long missCount = 0L;
+  private long loadCount = 0L;
+  private long totalLoadTimeInNanos = 0L;
+  private long evictionCount = 0L;
+  // incremented on each invalidation, so that values loaded concurrently to an invalidation are not cached
+  private long invalidationCount = 0L;
+
+  /**
+   * Cache without expiration
+   */
+  public WeightedLruCache(long maxWeight, Weigher<K, V> weigher) {
+    this(maxWeight, 0L, weigher, System2.INSTANCE);
+  }
+
+  /**
+   * @param expirationInMs duration after which entries expire. Zero means that entries never expire.
+   */
+  public WeightedLruCache(long maxWeight, long expirationInMs, Weigher<K, V> weigher, System2 system) {
+    if (maxWeight < 0L || expirationInMs < 0L) {
+      throw new IllegalArgumentException(String.format("Max weight and expiration must be positive: %d, %d", maxWeight, expirationInMs));
+    }
+    this.maxWeight = maxWeight;
+    this.expirationInMs = expirationInMs;
+    this.weigher = weigher;
+    this.system = system;
+  }
+
+  @CheckForNull
+  public synchronized V getIfPresent(K key) {
+    Entry<V> entry = entries.get(key);
+    if (entry != null && expirationInMs > 0L && system.now() - entry.writtenAt >= expirationInMs) {
+      remove(key);
+      entry = null;
+    }
+    if (entry == null) {
+      missCount++;
+      return null;
+    }
+    hitCount++;
+    return entry.value;
+  }
+
+  /**
+   * Value associated with key, loaded then cached if missing. The loader is called outside the lock
+   * of cache, so it can be called concurrently for the same key. If entries are invalidated while loading,
+   * then the loaded value is returned but not cached, as it may have been loaded before the change
+   * that triggered invalidation.
+   */
+  public V get(K key, Function<? super K, ? extends V> loader) {
+    long invalidationCountBeforeLoad;
+    synchronized (this) {
+      V value = getIfPresent(key);
+      if (value != null) {
+        return value;
+      }
+      invalidationCountBeforeLoad = invalidationCount;
+    }
+    long start = System.nanoTime();
+    V value = loader.apply(key);
+    if (value == null) {
+      throw new IllegalStateException("Loaded value must not be null: " + key);
+    }
+    synchronized (this) {
+      loadCount++;
+      totalLoadTimeInNanos += System.nanoTime() - start;
+      if (invalidationCount == invalidationCountBeforeLoad) {
+        put(key, value);
+      }
+    }
+    return value;
+  }
+
+  public synchronized void put(K key, V value) {
+    remove(key);
+    int entryWeight = weigher.weigh(key, value);
+    if (entryWeight > maxWeight) {
+      // too big to be kept
+      evictionCount++;
+      return;
+    }
+    entries.put(key, new Entry<>(value, entryWeight, system.now()));
+    weight += entryWeight;
+    Iterator<Map.Entry<K, Entry<V>>> it = entries.entrySet().iterator();
+    while (weight > maxWeight && it.hasNext()) {
+      weight -= it.next().getValue().weight;
+      it.remove();
+      evictionCount++;
+    }
+  }
+
+  public synchronized void invalidate(K key) {
+    invalidationCount++;
+    remove(key);
+  }
+
+  public synchronized void invalidateAll(Iterable<? extends K> keys) {
+    invalidationCount++;
+    for (K key : keys) {
+      remove(key);
+    }
+  }
+
+  public synchronized void invalidateIf(Predicate<? super V> predicate) {
+    invalidationCount++;
+    Iterator<Entry<V>> it = entries.values().iterator();
+    while (it.hasNext()) {
+      Entry<V> entry = it.next();
+      if (predicate.apply(entry.value)) {
+        weight -= entry.weight;
+        it.remove();
+      }
+    }
+  }
+
+  public synchronized void invalidateAll() {
+    invalidationCount++;
+    entries.clear();
+    weight = 0L;
+  }
+
+  public synchronized long size() {
+    return entries.size();
+  }
+
+  public synchronized long weight() {
+    return weight;
+  }
+
+  public long maxWeight() {
+    return maxWeight;
+  }
+
+  public synchronized CacheStats stats() {
+    return new CacheStats(hitCount, missCount, loadCount, 0L, totalLoadTimeInNanos, evictionCount);
+  }
+
+  private void remove(K key) {
+    Entry<V> entry = entries.remove(key);
+    if (entry != null) {
+      weight -= entry.weight;
+    }
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private final int weight;
+    private final long writtenAt;
+
+    private Entry(V value, int weight, long writtenAt) {
+      this.value = value;
+      this.weight = weight;
+      this.writtenAt = writtenAt;
+    }
+  }
+}
@@ -25,18 +25,48 @@ import org.sonar.api.utils.text.XmlWriter;
 import org.sonar.server.plugins.MimeTypes;
 
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
-
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response of Java web services. The output is buffered in memory, so that status and errors can be changed
+ * until the end of execution. When the response is bound to a {@link HttpServletResponse}, the outputs
+ * that are bigger than a buffer are streamed to the HTTP response, optionally compressed with gzip. In this
+ * case the status and media type can not be changed anymore once the buffer has been flushed.
+ */
 public class ServletResponse implements Response {
 
+  static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
   public static class ServletStream implements Stream {
+    private final HttpServletResponse target;
+    private final boolean gzip;
+    private final int bufferSize;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final OutputStream output = new StreamOutput();
+    private OutputStream committedOutput = null;
+    private boolean aborted = false;
     private String mediaType;
     private int httpStatus = 200;
-    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    ServletStream() {
+      this(null, false, DEFAULT_BUFFER_SIZE);
+    }
+
+    ServletStream(@Nullable HttpServletResponse target, boolean gzip, int bufferSize) {
+      this.target = target;
+      this.gzip = gzip;
+      this.bufferSize = bufferSize;
+    }
 
     @CheckForNull
     public String mediaType() {
@@ -64,17 +94,139 @@ public class ServletResponse implements Response {
       return output;
     }
 
+    /**
+     * Whether the output has been written to the HTTP response. If false, then the output
+     * is available through {@link #toByteArray()}.
+     */
+    public boolean isCommitted() {
+      return committedOutput != null;
+    }
+
+    public byte[] toByteArray() {
+      return buffer.toByteArray();
+    }
+
     public String outputAsString() {
-      return new String(output.toByteArray(), StandardCharsets.UTF_8);
+      return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
     }
 
     public ServletStream reset() {
-      output.reset();
+      if (isCommitted()) {
+        throw new IllegalStateException("Response is already committed");
+      }
+      buffer.reset();
+      return this;
+    }
+
+    /**
+     * Marks the response as failed. A committed output must then not be completed, otherwise the client
+     * would receive a truncated output with a successful status.
+     */
+    public ServletStream abort() {
+      this.aborted = true;
       return this;
     }
+
+    /**
+     * Completes the HTTP response if the output has been committed. The servlet output stream
+     * is not closed, as it's owned by the servlet container.
+     */
+    public void finish() throws IOException {
+      if (aborted) {
+        throw new IllegalStateException("Response has been aborted");
+      }
+      if (committedOutput instanceof GZIPOutputStream) {
+        ((GZIPOutputStream) committedOutput).finish();
+      }
+      if (committedOutput != null) {
+        committedOutput.flush();
+      }
+    }
+
+    private void commit() throws IOException {
+      target.setStatus(httpStatus);
+      if (mediaType != null) {
+        target.setContentType(mediaType);
+      }
+      OutputStream servletOutput = target.getOutputStream();
+      if (gzip) {
+        target.setHeader("Content-Encoding", "gzip");
+        target.setHeader("Vary", "Accept-Encoding");
+        committedOutput = new GZIPOutputStream(servletOutput, 8192);
+      } else {
+        committedOutput = servletOutput;
+      }
+      buffer.writeTo(committedOutput);
+      buffer.reset();
+    }
+
+    private class StreamOutput extends OutputStream {
+      @Override
+      public void write(int b) throws IOException {
+        if (committedOutput != null) {
+          committedOutput.write(b);
+        } else {
+          buffer.write(b);
+          commitIfFull();
+        }
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        if (committedOutput != null) {
+          committedOutput.write(b, off, len);
+        } else {
+          buffer.write(b, off, len);
+          commitIfFull();
+        }
+      }
+
+      @Override
+      public void flush() throws IOException {
+        // buffered output is kept in memory, as long as it's not full
+        if (committedOutput != null) {
+          committedOutput.flush();
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        flush();
+      }
+
+      private void commitIfFull() throws IOException {
+        if (target != null && buffer.size() >= bufferSize) {
+          commit();
+        }
+      }
+    }
+  }
+
+  private final ServletStream stream;
+
+  /**
+   * Response fully buffered in memory
+   */
+  public ServletResponse() {
+    this.stream = new ServletStream();
+  }
+
+  /**
+   * Response streamed to {@code httpResponse} when bigger than {@link #DEFAULT_BUFFER_SIZE}. Streamed
+   * output is compressed if the client accepts gzip encoding.
+   */
+  public ServletResponse(HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
+    this(httpResponse, acceptsGzip(httpRequest), DEFAULT_BUFFER_SIZE);
   }
 
-  private final ServletStream stream = new ServletStream();
+  ServletResponse(HttpServletResponse httpResponse, boolean gzip, int bufferSize) {
+    this.stream = new ServletStream(httpResponse, gzip, bufferSize);
+  }
+
+  private static boolean acceptsGzip(HttpServletRequest httpRequest) {
+    String acceptEncoding = httpRequest.getHeader("Accept-Encoding");
+    return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ENGLISH).contains("gzip");
+  }
 
   @Override
   public JsonWriter newJsonWriter() {
@@ -36,6 +36,7 @@ import org.sonar.server.user.UserSession;
 
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
@@ -87,14 +88,24 @@ public class WebServiceEngine implements Startable {
 
     } catch (IllegalArgumentException e) {
       // TODO replace by BadRequestException in Request#mandatoryParam()
-      sendErrors(response, 400, new Errors().add(Message.of(e.getMessage())));
+      sendErrors(request, response, 400, new Errors().add(Message.of(e.getMessage())), e);
     } catch (BadRequestException e) {
-      sendErrors(response, 400, e.errors());
+      sendErrors(request, response, 400, e.errors(), e);
     } catch (ServerException e) {
-      sendErrors(response, e.httpCode(), new Errors().add(Message.of(e.getMessage())));
+      sendErrors(request, response, e.httpCode(), new Errors().add(Message.of(e.getMessage())), e);
     } catch (Exception e) {
       Loggers.get(getClass()).error("Fail to process request " + request, e);
-      sendErrors(response, 500, new Errors().add(Message.of(e.getMessage())));
+      sendErrors(request, response, 500, new Errors().add(Message.of(e.getMessage())), e);
+    }
+    finish(request, response);
+  }
+
+  private static void finish(ValidatingRequest request, ServletResponse response) {
+    try {
+      response.stream().finish();
+    } catch (IOException e) {
+      // the client has probably closed the connection
+      Loggers.get(WebServiceEngine.class).debug("Fail to complete response of request " + request, e);
     }
   }
 
@@ -117,8 +128,15 @@ public class WebServiceEngine implements Startable {
     }
   }
 
-  private void sendErrors(ServletResponse response, int status, Errors errors) {
+  private void sendErrors(ValidatingRequest request, ServletResponse response, int status, Errors errors, Exception cause) {
     ServletResponse.ServletStream stream = response.stream();
+    if (stream.isCommitted()) {
+      // the beginning of the output has already been streamed with another status, errors can't be sent anymore.
+      // The response must not be completed, so failure is propagated to the servlet container that aborts it.
+      stream.abort();
+      throw new IllegalStateException(String.format("Fail to process request %s, response with status %d is already committed", request, stream.httpStatus()),
+        cause);
+    }
     stream.reset();
     stream.setStatus(status);
     stream.setMediaType(MimeTypes.JSON);
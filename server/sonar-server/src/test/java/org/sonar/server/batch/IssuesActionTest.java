@@ -26,40 +26,39 @@ import org.junit.ClassRule;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
-import org.sonar.api.config.Settings;
+import org.sonar.api.issue.Issue;
 import org.sonar.api.platform.Server;
-import org.sonar.api.security.DefaultGroups;
+import org.sonar.api.resources.Scopes;
+import org.sonar.api.rule.RuleKey;
 import org.sonar.api.utils.System2;
+import org.sonar.api.web.UserRole;
 import org.sonar.batch.protocol.Constants.Severity;
 import org.sonar.batch.protocol.input.BatchInput.ServerIssue;
 import org.sonar.core.component.ComponentDto;
+import org.sonar.core.issue.db.IssueDto;
 import org.sonar.core.permission.GlobalPermissions;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.DbTester;
+import org.sonar.core.rule.RuleDto;
 import org.sonar.server.component.ComponentTesting;
 import org.sonar.server.component.db.ComponentDao;
 import org.sonar.server.db.DbClient;
-import org.sonar.server.es.EsTester;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.issue.IssueTesting;
 import org.sonar.server.issue.db.IssueDao;
-import org.sonar.server.issue.index.IssueAuthorizationDao;
-import org.sonar.server.issue.index.IssueAuthorizationIndexer;
-import org.sonar.server.issue.index.IssueDoc;
-import org.sonar.server.issue.index.IssueIndex;
-import org.sonar.server.issue.index.IssueIndexDefinition;
-import org.sonar.server.issue.index.IssueIndexer;
+import org.sonar.server.rule.RuleTesting;
+import org.sonar.server.rule.db.RuleDao;
 import org.sonar.server.tester.UserSessionRule;
 import org.sonar.server.ws.WsTester;
 import org.sonar.test.DbTests;
 
-import javax.annotation.Nullable;
-
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
-import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
 import static org.mockito.Mockito.mock;
 
 @Category(DbTests.class)
@@ -71,34 +70,29 @@ public class IssuesActionTest {
 
   @ClassRule
   public static DbTester db = new DbTester();
-  @ClassRule
-  public static EsTester es = new EsTester().addDefinitions(new IssueIndexDefinition(new Settings()));
   @Rule
   public UserSessionRule userSessionRule = UserSessionRule.standalone();
 
-  IssueIndex issueIndex;
-  IssueIndexer issueIndexer;
-  IssueAuthorizationIndexer issueAuthorizationIndexer;
-  ComponentDao componentDao;
+  DbClient dbClient;
 
   WsTester tester;
 
   DbSession session;
 
+  RuleDto rule;
+
   IssuesAction issuesAction;
 
   @Before
   public void before() {
     db.truncateTables();
-    es.truncateIndices();
     this.session = db.myBatis().openSession(false);
 
-    componentDao = new ComponentDao();
-    DbClient dbClient = new DbClient(db.database(), db.myBatis(), new IssueDao(db.myBatis()), componentDao);
-    issueIndex = new IssueIndex(es.client(), System2.INSTANCE, userSessionRule);
-    issueIndexer = new IssueIndexer(null, es.client());
-    issueAuthorizationIndexer = new IssueAuthorizationIndexer(null, es.client());
-    issuesAction = new IssuesAction(dbClient, issueIndex, userSessionRule);
+    dbClient = new DbClient(db.database(), db.myBatis(), new IssueDao(db.myBatis()), new ComponentDao(), new RuleDao(System2.INSTANCE));
+    rule = RuleTesting.newDto(RuleKey.of("squid", "AvoidCycle"));
+    dbClient.ruleDao().insert(session, rule);
+    session.commit();
+    issuesAction = new IssuesAction(dbClient, userSessionRule);
 
     tester = new WsTester(new BatchWs(new BatchIndex(mock(Server.class)), issuesAction));
   }
@@ -113,11 +107,9 @@ public class IssuesActionTest {
     ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
     ComponentDto module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY);
     ComponentDto file = ComponentTesting.newFileDto(module, "CDEF").setKey(FILE_KEY).setPath(null);
-    componentDao.insert(session, project, module, file);
-    session.commit();
+    insertComponents(project, module, file);
 
-    indexIssues(IssueTesting.newDoc("EFGH", file)
-      .setRuleKey("squid:AvoidCycle")
+    insertIssues(IssueTesting.newDto(rule, file, project).setKee("EFGH")
       .setSeverity("BLOCKER")
       .setStatus("RESOLVED")
       .setResolution(null)
@@ -127,7 +119,7 @@ public class IssuesActionTest {
       .setChecksum(null)
       .setAssignee(null));
 
-    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+    logInWithBrowsePermission(project);
 
     WsTester.TestRequest request = tester.newGetRequest("batch", "issues").setParam("key", PROJECT_KEY);
 
@@ -152,21 +144,11 @@ public class IssuesActionTest {
     ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
     ComponentDto module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY);
     ComponentDto file = ComponentTesting.newFileDto(module, "CDEF").setKey(FILE_KEY).setPath("src/org/struts/Action.java");
-    componentDao.insert(session, project, module, file);
-    session.commit();
+    insertComponents(project, module, file);
 
-    indexIssues(IssueTesting.newDoc("EFGH", file)
-      .setRuleKey("squid:AvoidCycle")
-      .setSeverity("BLOCKER")
-      .setStatus("RESOLVED")
-      .setResolution("FALSE-POSITIVE")
-      .setManualSeverity(false)
-      .setMessage("Do not use this method")
-      .setLine(200)
-      .setChecksum("123456")
-      .setAssignee("john"));
+    insertIssues(newResolvedIssue(file, project));
 
-    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+    logInWithBrowsePermission(project);
 
     WsTester.TestRequest request = tester.newGetRequest("batch", "issues").setParam("key", PROJECT_KEY);
 
@@ -184,6 +166,7 @@ public class IssuesActionTest {
     assertThat(serverIssue.getManualSeverity()).isFalse();
     assertThat(serverIssue.getChecksum()).isEqualTo("123456");
     assertThat(serverIssue.getAssigneeLogin()).isEqualTo("john");
+    assertThat(serverIssue.hasCreationDate()).isTrue();
   }
 
   @Test
@@ -191,21 +174,11 @@ public class IssuesActionTest {
     ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
     ComponentDto module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY);
     ComponentDto file = ComponentTesting.newFileDto(module, "CDEF").setKey(FILE_KEY).setPath("src/org/struts/Action.java");
-    componentDao.insert(session, project, module, file);
-    session.commit();
+    insertComponents(project, module, file);
 
-    indexIssues(IssueTesting.newDoc("EFGH", file)
-      .setRuleKey("squid:AvoidCycle")
-      .setSeverity("BLOCKER")
-      .setStatus("RESOLVED")
-      .setResolution("FALSE-POSITIVE")
-      .setManualSeverity(false)
-      .setMessage("Do not use this method")
-      .setLine(200)
-      .setChecksum("123456")
-      .setAssignee("john"));
+    insertIssues(newResolvedIssue(file, project));
 
-    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+    logInWithBrowsePermission(project);
 
     WsTester.TestRequest request = tester.newGetRequest("batch", "issues").setParam("key", MODULE_KEY);
     ServerIssue serverIssue = ServerIssue.parseDelimitedFrom(new ByteArrayInputStream(request.execute().output()));
@@ -229,21 +202,11 @@ public class IssuesActionTest {
     ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
     ComponentDto module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY);
     ComponentDto file = ComponentTesting.newFileDto(module, "CDEF").setKey(FILE_KEY).setPath("src/org/struts/Action.java");
-    componentDao.insert(session, project, module, file);
-    session.commit();
+    insertComponents(project, module, file);
 
-    indexIssues(IssueTesting.newDoc("EFGH", file)
-      .setRuleKey("squid:AvoidCycle")
-      .setSeverity("BLOCKER")
-      .setStatus("RESOLVED")
-      .setResolution("FALSE-POSITIVE")
-      .setManualSeverity(false)
-      .setMessage("Do not use this method")
-      .setLine(200)
-      .setChecksum("123456")
-      .setAssignee("john"));
+    insertIssues(newResolvedIssue(file, project));
 
-    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+    logInWithBrowsePermission(project);
 
     WsTester.TestRequest request = tester.newGetRequest("batch", "issues").setParam("key", FILE_KEY);
     ServerIssue serverIssue = ServerIssue.parseDelimitedFrom(new ByteArrayInputStream(request.execute().output()));
@@ -266,21 +229,11 @@ public class IssuesActionTest {
   public void issues_attached_on_module() throws Exception {
     ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
     ComponentDto module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY);
-    componentDao.insert(session, project, module);
-    session.commit();
+    insertComponents(project, module);
 
-    indexIssues(IssueTesting.newDoc("EFGH", module)
-      .setRuleKey("squid:AvoidCycle")
-      .setSeverity("BLOCKER")
-      .setStatus("RESOLVED")
-      .setResolution("FALSE-POSITIVE")
-      .setManualSeverity(false)
-      .setMessage("Do not use this method")
-      .setLine(200)
-      .setChecksum("123456")
-      .setAssignee("john"));
+    insertIssues(newResolvedIssue(module, project));
 
-    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+    logInWithBrowsePermission(project);
 
     WsTester.TestRequest request = tester.newGetRequest("batch", "issues").setParam("key", MODULE_KEY);
     ServerIssue previousIssue = ServerIssue.parseDelimitedFrom(new ByteArrayInputStream(request.execute().output()));
@@ -305,21 +258,11 @@ public class IssuesActionTest {
     // File and module are removed
     ComponentDto module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY).setEnabled(false);
     ComponentDto file = ComponentTesting.newFileDto(module, "CDEF").setKey(FILE_KEY).setPath("src/org/struts/Action.java").setEnabled(false);
-    componentDao.insert(session, project, module, file);
-    session.commit();
+    insertComponents(project, module, file);
 
-    indexIssues(IssueTesting.newDoc("EFGH", file)
-      .setRuleKey("squid:AvoidCycle")
-      .setSeverity("BLOCKER")
-      .setStatus("RESOLVED")
-      .setResolution("FALSE-POSITIVE")
-      .setManualSeverity(false)
-      .setMessage("Do not use this method")
-      .setLine(200)
-      .setChecksum("123456")
-      .setAssignee("john"));
+    insertIssues(newResolvedIssue(file, project));
 
-    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+    logInWithBrowsePermission(project);
 
     WsTester.TestRequest request = tester.newGetRequest("batch", "issues").setParam("key", PROJECT_KEY);
     ServerIssue serverIssue = ServerIssue.parseDelimitedFrom(new ByteArrayInputStream(request.execute().output()));
@@ -328,6 +271,87 @@ public class IssuesActionTest {
     assertThat(serverIssue.getModuleKey()).isEqualTo(MODULE_KEY);
   }
 
+  @Test
+  public void return_non_closed_issues_of_component_and_its_sub_modules() throws Exception {
+    ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
+    ComponentDto module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY);
+    ComponentDto subModule = ComponentTesting.newModuleDto("CDEF", module).setKey("struts-sub");
+    ComponentDto file = ComponentTesting.newFileDto(subModule, "DEFG").setKey(FILE_KEY);
+    ComponentDto otherProject = ComponentTesting.newProjectDto("EFGH").setKey("other");
+    insertComponents(project, module, subModule, file, otherProject);
+
+    insertIssues(
+      IssueTesting.newDto(rule, module, project).setKee("ISSUE3"),
+      IssueTesting.newDto(rule, subModule, project).setKee("ISSUE5"),
+      IssueTesting.newDto(rule, file, project).setKee("ISSUE2"),
+      // Closed issue, should never be returned
+      IssueTesting.newDto(rule, file, project).setKee("CLOSED_ISSUE").setStatus(Issue.STATUS_CLOSED).setResolution(Issue.RESOLUTION_FIXED));
+
+    logInWithBrowsePermission(project, otherProject);
+
+    assertThat(issueKeys(PROJECT_KEY)).containsOnly("ISSUE3", "ISSUE5", "ISSUE2");
+    assertThat(issueKeys(MODULE_KEY)).containsOnly("ISSUE3", "ISSUE5", "ISSUE2");
+    assertThat(issueKeys("struts-sub")).containsOnly("ISSUE5", "ISSUE2");
+    assertThat(issueKeys(FILE_KEY)).containsOnly("ISSUE2");
+    assertThat(issueKeys("other")).isEmpty();
+  }
+
+  @Test
+  public void stream_many_issues() throws Exception {
+    ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
+    ComponentDto module = ComponentTesting.newModuleDto("BCDE", project).setKey(MODULE_KEY);
+    ComponentDto file = ComponentTesting.newFileDto(module, "CDEF").setKey(FILE_KEY).setPath("src/org/struts/Action.java");
+    insertComponents(project, module, file);
+
+    int nbIssues = 2500;
+    IssueDto[] issues = new IssueDto[nbIssues];
+    for (int i = 0; i < nbIssues; i++) {
+      issues[i] = IssueTesting.newDto(rule, file, project).setKee("ISSUE_" + i).setLine(i + 1);
+    }
+    insertIssues(issues);
+
+    logInWithBrowsePermission(project);
+    WsTester.TestRequest request = tester.newGetRequest("batch", "issues").setParam("key", PROJECT_KEY);
+
+    ByteArrayInputStream input = new ByteArrayInputStream(request.execute().output());
+    List<String> keys = new ArrayList<>();
+    ServerIssue serverIssue = ServerIssue.parseDelimitedFrom(input);
+    while (serverIssue != null) {
+      assertThat(serverIssue.getModuleKey()).isEqualTo(MODULE_KEY);
+      keys.add(serverIssue.getKey());
+      serverIssue = ServerIssue.parseDelimitedFrom(input);
+    }
+    assertThat(keys).hasSize(nbIssues).doesNotHaveDuplicates().contains("ISSUE_0", "ISSUE_2499");
+  }
+
+  @Test
+  public void return_only_issues_of_browsable_project() throws Exception {
+    ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
+    ComponentDto file = ComponentTesting.newFileDto(project, "CDEF").setKey(FILE_KEY);
+    insertComponents(project, file);
+    insertIssues(IssueTesting.newDto(rule, file, project).setKee("EFGH"));
+
+    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+
+    assertThat(issueKeys(PROJECT_KEY)).isEmpty();
+    assertThat(issueKeys(FILE_KEY)).isEmpty();
+  }
+
+  @Test
+  public void fail_on_directory() throws Exception {
+    ComponentDto project = ComponentTesting.newProjectDto("ABCD").setKey(PROJECT_KEY);
+    ComponentDto directory = ComponentTesting.newDirectory(project, "src/org/struts");
+    insertComponents(project, directory);
+    logInWithBrowsePermission(project);
+
+    try {
+      tester.newGetRequest("batch", "issues").setParam("key", directory.key()).execute();
+      failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Component of scope '" + Scopes.DIRECTORY + "' is not allowed");
+    }
+  }
+
   @Test(expected = ForbiddenException.class)
   public void fail_without_preview_permission() throws Exception {
     userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PROVISIONING);
@@ -336,14 +360,45 @@ public class IssuesActionTest {
     request.execute();
   }
 
-  private void indexIssues(IssueDoc... issues) {
-    issueIndexer.index(Arrays.asList(issues).iterator());
-    for (IssueDoc issue : issues) {
-      addIssueAuthorization(issue.projectUuid(), DefaultGroups.ANYONE, null);
+  private IssueDto newResolvedIssue(ComponentDto component, ComponentDto project) {
+    return IssueTesting.newDto(rule, component, project).setKee("EFGH")
+      .setSeverity("BLOCKER")
+      .setStatus("RESOLVED")
+      .setResolution("FALSE-POSITIVE")
+      .setManualSeverity(false)
+      .setMessage("Do not use this method")
+      .setLine(200)
+      .setChecksum("123456")
+      .setAssignee("john");
+  }
+
+  private void logInWithBrowsePermission(ComponentDto... projects) {
+    userSessionRule.login("henry").setGlobalPermissions(GlobalPermissions.PREVIEW_EXECUTION);
+    for (ComponentDto project : projects) {
+      userSessionRule.addProjectUuidPermissions(UserRole.USER, project.uuid());
+    }
+  }
+
+  private List<String> issueKeys(String componentKey) throws Exception {
+    ByteArrayInputStream input = new ByteArrayInputStream(tester.newGetRequest("batch", "issues").setParam("key", componentKey).execute().output());
+    List<String> keys = new ArrayList<>();
+    ServerIssue serverIssue = ServerIssue.parseDelimitedFrom(input);
+    while (serverIssue != null) {
+      keys.add(serverIssue.getKey());
+      serverIssue = ServerIssue.parseDelimitedFrom(input);
     }
+    return keys;
+  }
+
+  private void insertComponents(ComponentDto... components) {
+    dbClient.componentDao().insert(session, Arrays.asList(components));
+    session.commit();
   }
 
-  private void addIssueAuthorization(String projectUuid, @Nullable String group, @Nullable String user) {
-    issueAuthorizationIndexer.index(newArrayList(new IssueAuthorizationDao.Dto(projectUuid, 1).addGroup(group).addUser(user)));
+  private void insertIssues(IssueDto... issues) {
+    for (IssueDto issue : issues) {
+      dbClient.issueDao().insert(session, issue);
+    }
+    session.commit();
   }
 }
@@ -137,7 +137,7 @@ public class ComputationServiceTest {
       sut.process(new ReportQueue.Item(dto, zip));
       fail();
     } catch (IllegalStateException e) {
-      assertThat(e.getMessage()).startsWith("Fail to unzip " + zip.getAbsolutePath() + " into ");
+      assertThat(e.getMessage()).isEqualTo("Fail to open zipped analysis report: " + zip);
       assertThat(dto.getStatus()).isEqualTo(Status.FAILED);
       assertThat(dto.getFinishedAt()).isNotNull();
     }
@@ -27,10 +27,14 @@ import org.junit.Test;
 import org.junit.rules.DisableOnDebug;
 import org.junit.rules.TestRule;
 import org.junit.rules.Timeout;
+import org.sonar.api.config.Settings;
 import org.sonar.api.platform.Server;
+import org.sonar.api.utils.System2;
+import org.sonar.core.computation.db.AnalysisReportDto;
 
 import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.*;
 
 public class ComputationThreadLauncherTest {
@@ -40,6 +44,7 @@ public class ComputationThreadLauncherTest {
 
   ComputationThreadLauncher sut;
   ReportQueue queue;
+  ComputationStatistics statistics = new ComputationStatistics(System2.INSTANCE);
 
   @Before
   public void before() {
@@ -53,7 +58,7 @@ public class ComputationThreadLauncherTest {
 
   @Test
   public void call_findAndBook_when_launching_a_recurrent_task() throws Exception {
-    sut = new ComputationThreadLauncher(queue, 0, 1, TimeUnit.MILLISECONDS);
+    sut = new ComputationThreadLauncher(queue, statistics, 1, 0, 1, TimeUnit.MILLISECONDS);
 
     sut.onServerStart(mock(Server.class));
 
@@ -64,7 +69,7 @@ public class ComputationThreadLauncherTest {
 
   @Test
   public void call_findAndBook_when_executing_task_immediately() throws Exception {
-    sut = new ComputationThreadLauncher(queue, 1, 1, TimeUnit.HOURS);
+    sut = new ComputationThreadLauncher(queue, statistics, 1, 1, 1, TimeUnit.HOURS);
     sut.start();
 
     sut.startAnalysisTaskNow();
@@ -76,8 +81,32 @@ public class ComputationThreadLauncherTest {
 
   @Test
   public void test_real_constructor() throws Exception {
-    sut = new ComputationThreadLauncher(queue);
+    sut = new ComputationThreadLauncher(queue, statistics, new Settings());
     sut.start();
+
+    assertThat(sut.getWorkers()).isEqualTo(ComputationThreadLauncher.DEFAULT_WORKERS);
+  }
+
+  @Test
+  public void number_of_workers_is_configurable() throws Exception {
+    Settings settings = new Settings();
+    settings.setProperty(ComputationThreadLauncher.PROPERTY_WORKERS, 4);
+    sut = new ComputationThreadLauncher(queue, statistics, settings);
+
+    assertThat(sut.getWorkers()).isEqualTo(4);
+  }
+
+  @Test
+  public void drain_queue_without_waiting_for_next_check() throws Exception {
+    ReportQueue.Item item = new ReportQueue.Item(AnalysisReportDto.newForTests(1L), null);
+    when(queue.pop()).thenReturn(item, item, null);
+    sut = new ComputationThreadLauncher(queue, statistics, 2, 1, 1, TimeUnit.HOURS);
+
+    sut.startAnalysisTaskNow();
+
+    sleep();
+
+    verify(queue, times(3)).pop();
   }
 
   private void sleep() throws InterruptedException {
@@ -23,6 +23,7 @@ package org.sonar.server.computation;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.core.computation.db.AnalysisReportDto;
 
@@ -65,6 +66,19 @@ public class ComputationThreadTest {
     verify(container).execute(item);
   }
 
+  @Test
+  public void process_returns_true_if_report_has_been_popped() throws IOException {
+    ComputationStatistics statistics = new ComputationStatistics(System2.INSTANCE);
+    sut = new ComputationThread(queue, container, statistics);
+    ReportQueue.Item item = new ReportQueue.Item(AnalysisReportDto.newForTests(1L), temp.newFile());
+    when(queue.pop()).thenReturn(item, null);
+
+    assertThat(sut.process()).isTrue();
+    assertThat(sut.process()).isFalse();
+    assertThat(statistics.getProcessedReports()).isEqualTo(1L);
+    assertThat(statistics.getActiveWorkers()).isEqualTo(0);
+  }
+
   @Test
   public void handle_error_during_queue_pop() {
     when(queue.pop()).thenThrow(new IllegalStateException());
@@ -27,6 +27,8 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.api.utils.System2;
 import org.sonar.core.computation.db.AnalysisReportDto;
 import org.sonar.core.persistence.DbSession;
@@ -37,7 +39,9 @@ import org.sonar.test.DbTests;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
 import static org.sonar.core.computation.db.AnalysisReportDto.Status.WORKING;
@@ -138,6 +142,30 @@ public class AnalysisReportDaoTest {
     assertThat(nextAvailableReport.getProjectKey()).isEqualTo("P2");
   }
 
+  @Test
+  public void do_not_pop_other_report_of_project_booked_in_the_meantime() {
+    db.prepareDbUnit(getClass(), "pop_oldest_pending.xml");
+    sut = spy(sut);
+    doAnswer(new Answer<AnalysisReportDto>() {
+      @Override
+      public AnalysisReportDto answer(InvocationOnMock invocation) throws Throwable {
+        // report is booked by another server
+        DbSession otherSession = db.myBatis().openSession(false);
+        try {
+          new AnalysisReportDao(system2).tryToPop(otherSession, 3L);
+        } finally {
+          MyBatis.closeQuietly(otherSession);
+        }
+        return (AnalysisReportDto) invocation.callRealMethod();
+      }
+    }).when(sut).tryToPop(session, 3L);
+
+    AnalysisReportDto nextAvailableReport = sut.pop(session);
+
+    assertThat(nextAvailableReport).isNull();
+    assertThat(sut.selectById(session, 4L).getStatus()).isEqualTo(PENDING);
+  }
+
   @Test
   public void pop_null_if_no_pending_reports() {
     db.prepareDbUnit(getClass(), "pop_null_if_no_pending_reports.xml");
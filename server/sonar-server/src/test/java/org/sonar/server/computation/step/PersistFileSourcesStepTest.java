@@ -44,16 +44,25 @@ import org.sonar.server.computation.ComputationContext;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.source.db.FileSourceDao;
 import org.sonar.server.source.db.FileSourceDb;
+import org.sonar.server.source.db.SourceDataCache;
 import org.sonar.test.DbTests;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.failBecauseExceptionWasNotThrown;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @Category(DbTests.class)
@@ -78,6 +87,8 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
 
   System2 system2;
 
+  SourceDataCache sourceDataCache = mock(SourceDataCache.class);
+
   PersistFileSourcesStep sut;
 
   long now = 123456789L;
@@ -92,7 +103,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
 
     system2 = mock(System2.class);
     when(system2.now()).thenReturn(now);
-    sut = new PersistFileSourcesStep(dbClient, system2);
+    sut = new PersistFileSourcesStep(dbClient, system2, sourceDataCache);
   }
 
   @Override
@@ -127,6 +138,41 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(data.getLines(0).getSource()).isEqualTo("line1");
     assertThat(data.getLines(1).getLine()).isEqualTo(2);
     assertThat(data.getLines(1).getSource()).isEqualTo("line2");
+    verify(sourceDataCache).invalidate(Arrays.asList(FILE_UUID));
+  }
+
+  @Test
+  public void persist_sources_of_many_files_with_several_threads() throws Exception {
+    int nbFiles = 20;
+    BatchReportWriter writer = new BatchReportWriter(reportDir);
+    writer.writeMetadata(BatchReport.Metadata.newBuilder()
+      .setRootComponentRef(1)
+      .setProjectKey("PROJECT_KEY")
+      .build());
+    BatchReport.Component.Builder project = BatchReport.Component.newBuilder()
+      .setRef(1)
+      .setType(Constants.ComponentType.PROJECT)
+      .setUuid(PROJECT_UUID);
+    for (int fileRef = 2; fileRef < nbFiles + 2; fileRef++) {
+      project.addChildRef(fileRef);
+      writer.writeComponent(BatchReport.Component.newBuilder()
+        .setRef(fileRef)
+        .setType(Constants.ComponentType.FILE)
+        .setUuid("FILE_" + fileRef)
+        .setLines(1)
+        .build());
+      FileUtils.writeLines(writer.getFileStructure().fileFor(FileStructure.Domain.SOURCE, fileRef), Lists.newArrayList("line of " + fileRef));
+    }
+    writer.writeComponent(project.build());
+
+    sut = new PersistFileSourcesStep(dbClient, system2, sourceDataCache, 3);
+    sut.execute(new ComputationContext(new BatchReportReader(reportDir), ComponentTesting.newProjectDto(PROJECT_UUID)));
+
+    assertThat(dbTester.countRowsOfTable("file_sources")).isEqualTo(nbFiles);
+    for (int fileRef = 2; fileRef < nbFiles + 2; fileRef++) {
+      FileSourceDb.Data data = FileSourceDto.decodeSourceData(dbClient.fileSourceDao().selectSource("FILE_" + fileRef).getBinaryData());
+      assertThat(data.getLines(0).getSource()).isEqualTo("line of " + fileRef);
+    }
   }
 
   @Test
@@ -321,7 +367,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     long past = 150000L;
     String srcHash = "137f72c3708c6bd0de00a0e5a69c699b";
     String lineHashes = "137f72c3708c6bd0de00a0e5a69c699b";
-    String dataHash = "29f25900140c94db38035128cb6de6a2";
+    String dataHash = "5ff3927ed0d7fe1a4606ccc06bf79372";
 
     dbClient.fileSourceDao().insert(session, new FileSourceDto()
       .setProjectUuid(PROJECT_UUID)
@@ -351,6 +397,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getDataHash()).isEqualTo(dataHash);
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(past);
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(past);
+    verify(sourceDataCache).invalidate(Collections.<String>emptyList());
   }
 
   @Test
@@ -382,6 +429,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSource(FILE_UUID);
     assertThat(fileSourceDto.getCreatedAt()).isEqualTo(past);
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(now);
+    verify(sourceDataCache).invalidate(Arrays.asList(FILE_UUID));
   }
 
   @Test
@@ -394,7 +442,7 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
       .setDataType(Type.SOURCE)
       // Source hash is missing, update will be made
       .setLineHashes("137f72c3708c6bd0de00a0e5a69c699b")
-      .setDataHash("29f25900140c94db38035128cb6de6a2")
+      .setDataHash("5ff3927ed0d7fe1a4606ccc06bf79372")
       .setSourceData(FileSourceDb.Data.newBuilder()
         .addLines(FileSourceDb.Line.newBuilder()
           .setLine(1)
@@ -439,6 +487,69 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     }
   }
 
+  @Test
+  public void invalidate_cache_of_persisted_files_when_failing() throws Exception {
+    BatchReportWriter writer = new BatchReportWriter(reportDir);
+    writer.writeMetadata(BatchReport.Metadata.newBuilder()
+      .setRootComponentRef(1)
+      .setProjectKey("PROJECT_KEY")
+      .build());
+    writer.writeComponent(BatchReport.Component.newBuilder()
+      .setRef(1)
+      .setType(Constants.ComponentType.PROJECT)
+      .setUuid(PROJECT_UUID)
+      .addChildRef(2)
+      .addChildRef(3)
+      .build());
+    for (int fileRef = 2; fileRef <= 3; fileRef++) {
+      writer.writeComponent(BatchReport.Component.newBuilder()
+        .setRef(fileRef)
+        .setType(Constants.ComponentType.FILE)
+        .setUuid("FILE_" + fileRef)
+        .setPath("src/Foo" + fileRef + ".java")
+        .setLines(1)
+        .build());
+      FileUtils.writeLines(writer.getSourceFile(fileRef), Lists.newArrayList("line1"));
+    }
+    writer.writeComponentSyntaxHighlighting(3, newArrayList(BatchReport.SyntaxHighlighting.newBuilder()
+      .setRange(BatchReport.Range.newBuilder()
+        .setStartLine(1).setEndLine(1)
+        // Wrong offset -> fail
+        .setStartOffset(4).setEndOffset(2)
+        .build())
+      .setType(Constants.HighlightingType.ANNOTATION)
+      .build()
+      ));
+
+    try {
+      sut.execute(new ComputationContext(new BatchReportReader(reportDir), ComponentTesting.newProjectDto(PROJECT_UUID)));
+      failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Cannot persist sources of src/Foo3.java");
+    }
+
+    // data of first file may have been committed by an intermediate flush of batch
+    verify(sourceDataCache).invalidate(Arrays.asList("FILE_2"));
+  }
+
+  @Test
+  public void close_opened_streams_when_failing_to_read_report() throws Exception {
+    initBasicReport(1);
+    BatchReportReader reportReader = spy(new BatchReportReader(reportDir));
+    InputStream coverageStream = spy(new ByteArrayInputStream(new byte[0]));
+    doReturn(coverageStream).when(reportReader).readComponentCoverage(FILE_REF);
+    doThrow(new IllegalStateException("Fail to read changesets")).when(reportReader).readChangesets(FILE_REF);
+
+    try {
+      sut.execute(new ComputationContext(reportReader, ComponentTesting.newProjectDto(PROJECT_UUID)));
+      failBecauseExceptionWasNotThrown(IllegalStateException.class);
+    } catch (IllegalStateException e) {
+      assertThat(e.getCause()).hasMessage("Fail to read changesets");
+    }
+
+    verify(coverageStream).close();
+  }
+
   private BatchReportWriter initBasicReport(int numberOfLines) throws IOException {
     BatchReportWriter writer = new BatchReportWriter(reportDir);
     writer.writeMetadata(BatchReport.Metadata.newBuilder()
@@ -31,9 +31,11 @@ import org.sonar.core.persistence.DbTester;
 import org.sonar.server.component.db.SnapshotDao;
 import org.sonar.server.computation.ComputationContext;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.measure.MeasureFilterCache;
 import org.sonar.test.DbTests;
 
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @Category(DbTests.class)
@@ -42,6 +44,8 @@ public class SwitchSnapshotStepTest {
   @ClassRule
   public static DbTester db = new DbTester();
 
+  MeasureFilterCache measureFilterCache = mock(MeasureFilterCache.class);
+
   SwitchSnapshotStep sut;
 
   @Before
@@ -49,7 +53,7 @@ public class SwitchSnapshotStepTest {
     db.truncateTables();
     System2 system2 = mock(System2.class);
     when(system2.now()).thenReturn(DateUtils.parseDate("2011-09-29").getTime());
-    this.sut = new SwitchSnapshotStep(new DbClient(db.database(), db.myBatis(), new SnapshotDao(system2)));
+    this.sut = new SwitchSnapshotStep(new DbClient(db.database(), db.myBatis(), new SnapshotDao(system2)), measureFilterCache);
   }
 
   @Test
@@ -64,5 +68,6 @@ public class SwitchSnapshotStepTest {
     sut.execute(context);
 
     db.assertDbUnit(getClass(), "snapshots-result.xml", "snapshots");
+    verify(measureFilterCache).invalidateProject(123L);
   }
 }
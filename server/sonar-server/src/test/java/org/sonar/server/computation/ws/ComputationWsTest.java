@@ -23,6 +23,8 @@ package org.sonar.server.computation.ws;
 import org.junit.Test;
 import org.sonar.api.server.ws.WebService;
 import org.sonar.server.activity.index.ActivityIndex;
+import org.sonar.api.utils.System2;
+import org.sonar.server.computation.ComputationStatistics;
 import org.sonar.server.computation.ComputationThreadLauncher;
 import org.sonar.server.computation.ReportQueue;
 import org.sonar.server.user.UserSession;
@@ -36,7 +38,9 @@ public class ComputationWsTest {
   WsTester ws = new WsTester(new ComputationWs(
     new QueueAction(mock(ReportQueue.class)),
     new SubmitReportAction(mock(ReportQueue.class), mock(ComputationThreadLauncher.class), mock(UserSession.class)),
-    new HistoryAction(mock(ActivityIndex.class), mock(UserSession.class))));
+    new HistoryAction(mock(ActivityIndex.class), mock(UserSession.class)),
+    new QueueStatsAction(mock(ReportQueue.class), mock(ComputationThreadLauncher.class), mock(ComputationStatistics.class), mock(UserSession.class),
+      mock(System2.class))));
 
   @Test
   public void define() {
@@ -44,6 +48,6 @@ public class ComputationWsTest {
 
     assertThat(controller).isNotNull();
     assertThat(controller.description()).isNotEmpty();
-    assertThat(controller.actions()).hasSize(3);
+    assertThat(controller.actions()).hasSize(4);
   }
 }
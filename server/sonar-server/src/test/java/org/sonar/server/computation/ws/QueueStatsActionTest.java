@@ -0,0 +1,94 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.computation.ws;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+import org.sonar.core.computation.db.AnalysisReportDto;
+import org.sonar.core.permission.GlobalPermissions;
+import org.sonar.server.computation.ComputationStatistics;
+import org.sonar.server.computation.ComputationThreadLauncher;
+import org.sonar.server.computation.ReportQueue;
+import org.sonar.server.exceptions.ForbiddenException;
+import org.sonar.server.tester.UserSessionRule;
+import org.sonar.server.ws.WsTester;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sonar.core.computation.db.AnalysisReportDto.Status.PENDING;
+import static org.sonar.core.computation.db.AnalysisReportDto.Status.WORKING;
+
+public class QueueStatsActionTest {
+
+  @Rule
+  public UserSessionRule userSessionRule = UserSessionRule.standalone();
+
+  ReportQueue queue = mock(ReportQueue.class);
+  ComputationThreadLauncher launcher = mock(ComputationThreadLauncher.class);
+  System2 system = mock(System2.class);
+  ComputationStatistics statistics = new ComputationStatistics(system);
+  WsTester tester;
+
+  @Before
+  public void setUp() {
+    tester = new WsTester(new ComputationWs(new QueueStatsAction(queue, launcher, statistics, userSessionRule, system)));
+  }
+
+  @Test
+  public void return_queue_and_workers_stats() throws Exception {
+    userSessionRule.setGlobalPermissions(GlobalPermissions.SYSTEM_ADMIN);
+    when(launcher.getWorkers()).thenReturn(4);
+    when(queue.all()).thenReturn(Arrays.asList(
+      AnalysisReportDto.newForTests(1L).setProjectKey("P1").setStatus(WORKING).setCreatedAt(100L),
+      AnalysisReportDto.newForTests(2L).setProjectKey("P1").setStatus(PENDING).setCreatedAt(200L),
+      AnalysisReportDto.newForTests(3L).setProjectKey("P2").setStatus(PENDING).setCreatedAt(300L)));
+
+    // one report processed: waited 500ms and lasted 1s
+    when(system.now()).thenReturn(600L);
+    long startedAt = statistics.onReportStarted(AnalysisReportDto.newForTests(4L).setCreatedAt(100L));
+    when(system.now()).thenReturn(1600L);
+    statistics.onReportFinished(startedAt);
+
+    WsTester.Result result = tester.newGetRequest(ComputationWs.ENDPOINT, "queue_stats").execute();
+
+    result.assertJson("{" +
+      "\"queue\": {\"pending\": 2, \"working\": 1, \"oldestPendingWaitTime\": 1400}," +
+      "\"workers\": {\"total\": 4, \"active\": 0, \"processedReports\": 1, \"averageWaitTime\": 500, \"maxWaitTime\": 500, \"averageDuration\": 1000}" +
+      "}");
+  }
+
+  @Test(expected = ForbiddenException.class)
+  public void requires_admin_permission() throws Exception {
+    userSessionRule.setGlobalPermissions(GlobalPermissions.SCAN_EXECUTION);
+
+    tester.newGetRequest(ComputationWs.ENDPOINT, "queue_stats").execute();
+  }
+
+  @Test
+  public void define() {
+    assertThat(tester.controller(ComputationWs.ENDPOINT).action("queue_stats")).isNotNull();
+  }
+}
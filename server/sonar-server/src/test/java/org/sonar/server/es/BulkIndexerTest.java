@@ -125,6 +125,26 @@ public class BulkIndexerTest {
   }
 
 
+  @Test
+  public void update_statistics() {
+    BulkIndexerStats stats = esTester.client().getBulkIndexerStats();
+    long indexedDocuments = stats.getIndexedDocuments();
+
+    BulkIndexer indexer = new BulkIndexer(esTester.client(), FakeIndexDefinition.INDEX)
+      .setAdaptive(true)
+      .setFlushByteSize(500);
+    indexer.start();
+    for (int i = 0; i < 10; i++) {
+      indexer.add(newIndexRequest(i));
+    }
+    indexer.stop();
+
+    assertThat(count()).isEqualTo(10);
+    assertThat(stats.getIndexedDocuments()).isEqualTo(indexedDocuments + 10);
+    assertThat(stats.getSentBytes()).isGreaterThan(0L);
+    assertThat(stats.getInFlightRequests()).isEqualTo(0);
+  }
+
   private long count() {
     return esTester.countDocuments("fakes", "fake");
   }
@@ -0,0 +1,117 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BulkThrottleTest {
+
+  @Test
+  public void fixed_size_and_concurrency_if_not_adaptive() {
+    BulkThrottle throttle = new BulkThrottle(4, 1000L, false);
+
+    throttle.onResponse(10L);
+    throttle.onRejection();
+    throttle.onResponse(10000L);
+
+    assertThat(throttle.flushByteSize()).isEqualTo(1000L);
+    assertThat(throttle.concurrency()).isEqualTo(4);
+  }
+
+  @Test
+  public void increase_size_while_responses_are_fast() {
+    BulkThrottle throttle = new BulkThrottle(4, 1000L, true);
+
+    throttle.onResponse(10L);
+    assertThat(throttle.flushByteSize()).isEqualTo(1250L);
+
+    for (int i = 0; i < 100; i++) {
+      throttle.onResponse(10L);
+    }
+    // upper limit
+    assertThat(throttle.flushByteSize()).isEqualTo(8000L);
+  }
+
+  @Test
+  public void decrease_size_when_responses_are_slow() {
+    BulkThrottle throttle = new BulkThrottle(4, 1000L, true);
+
+    throttle.onResponse(3 * BulkThrottle.TARGET_RESPONSE_TIME_MS);
+    assertThat(throttle.flushByteSize()).isEqualTo(750L);
+
+    for (int i = 0; i < 100; i++) {
+      throttle.onResponse(3 * BulkThrottle.TARGET_RESPONSE_TIME_MS);
+    }
+    // lower limit
+    assertThat(throttle.flushByteSize()).isEqualTo(250L);
+  }
+
+  @Test
+  public void halve_concurrency_on_rejection_then_increase_it_progressively() {
+    BulkThrottle throttle = new BulkThrottle(4, 1000L, true);
+
+    throttle.onRejection();
+    assertThat(throttle.concurrency()).isEqualTo(2);
+    assertThat(throttle.flushByteSize()).isEqualTo(500L);
+    throttle.onRejection();
+    throttle.onRejection();
+    assertThat(throttle.concurrency()).isEqualTo(1);
+
+    for (int i = 0; i < BulkThrottle.SUCCESSES_BEFORE_INCREASING_CONCURRENCY; i++) {
+      throttle.onResponse(10L);
+    }
+    assertThat(throttle.concurrency()).isEqualTo(2);
+
+    for (int i = 0; i < 10 * BulkThrottle.SUCCESSES_BEFORE_INCREASING_CONCURRENCY; i++) {
+      throttle.onResponse(10L);
+    }
+    // upper limit
+    assertThat(throttle.concurrency()).isEqualTo(4);
+  }
+
+  @Test
+  public void wait_for_in_flight_requests_and_retries() throws Exception {
+    BulkThrottle throttle = new BulkThrottle(2, 1000L, true);
+    assertThat(throttle.awaitTermination(10L)).isTrue();
+
+    throttle.acquire();
+    throttle.retryScheduled();
+    assertThat(throttle.inFlight()).isEqualTo(1);
+    assertThat(throttle.awaitTermination(10L)).isFalse();
+
+    throttle.release();
+    assertThat(throttle.awaitTermination(10L)).isFalse();
+
+    throttle.acquireRetry();
+    assertThat(throttle.pendingRetries()).isEqualTo(0);
+    throttle.release();
+    assertThat(throttle.awaitTermination(10L)).isTrue();
+  }
+
+  @Test
+  public void exponential_backoff() {
+    assertThat(BulkThrottle.backoffMs(1)).isEqualTo(100L);
+    assertThat(BulkThrottle.backoffMs(2)).isEqualTo(200L);
+    assertThat(BulkThrottle.backoffMs(3)).isEqualTo(400L);
+    assertThat(BulkThrottle.backoffMs(100)).isEqualTo(10000L);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.collect.ImmutableMap;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class JsonDocBuilderTest {
+
+  @Test
+  public void write_properties() {
+    byte[] json = JsonDocBuilder.get()
+      .beginObject()
+      .prop("string", "foo")
+      .prop("nullString", (String) null)
+      .prop("int", 42)
+      .prop("negative", -1234567890123L)
+      .prop("zero", 0)
+      .prop("nullNumber", (Integer) null)
+      .prop("double", 3.5)
+      .prop("bool", true)
+      .prop("date", new Date(1_500_000_000_000L))
+      .name("array").value(Arrays.asList(1, 2, 3))
+      .name("emptyArray").beginArray().endArray()
+      .name("object").beginObject().prop("key", "value").endObject()
+      .endObject()
+      .build();
+
+    assertThat(new String(json, StandardCharsets.UTF_8)).isEqualTo("{\"string\":\"foo\",\"nullString\":null,\"int\":42,\"negative\":-1234567890123,\"zero\":0," +
+      "\"nullNumber\":null,\"double\":3.5,\"bool\":true,\"date\":\"2017-07-14T02:40:00.000Z\",\"array\":[1,2,3],\"emptyArray\":[]," +
+      "\"object\":{\"key\":\"value\"}}");
+  }
+
+  @Test
+  public void escape_and_encode_strings() {
+    String s = "quote\" backslash\\ tab\t newline\n control\u0001 accent é euro € clef 𝄞";
+    byte[] json = JsonDocBuilder.get().beginObject().prop("s", s).endObject().build();
+
+    assertThat(new String(json, StandardCharsets.UTF_8)).isEqualTo(
+      "{\"s\":\"quote\\\" backslash\\\\ tab\\t newline\\n control\\u0001 accent é euro € clef 𝄞\"}");
+    assertThat(XContentHelper.convertToMap(json, false).v2().get("s")).isEqualTo(s);
+  }
+
+  @Test
+  public void write_map_as_elasticsearch_does() {
+    Map<String, Object> fields = new LinkedHashMap<>();
+    fields.put("key", "ABCD");
+    fields.put("line", 12);
+    fields.put("effort", 1.5);
+    fields.put("manual", false);
+    fields.put("tags", Arrays.asList("security", "bug"));
+    fields.put("assignee", null);
+    fields.put("nested", ImmutableMap.of("a", 1L));
+    fields.put("updatedAt", new Date(1_500_000_000_000L));
+
+    byte[] json = JsonDocBuilder.get().object(fields).build();
+
+    Map<String, Object> parsed = XContentHelper.convertToMap(json, true).v2();
+    assertThat(parsed).containsOnlyKeys("key", "line", "effort", "manual", "tags", "assignee", "nested", "updatedAt");
+    assertThat(parsed.get("key")).isEqualTo("ABCD");
+    assertThat(parsed.get("line")).isEqualTo(12);
+    assertThat(parsed.get("effort")).isEqualTo(1.5);
+    assertThat(parsed.get("manual")).isEqualTo(false);
+    assertThat(parsed.get("tags")).isEqualTo(Arrays.asList("security", "bug"));
+    assertThat(parsed.get("assignee")).isNull();
+    assertThat(parsed.get("nested")).isEqualTo(ImmutableMap.of("a", 1));
+    assertThat(parsed.get("updatedAt")).isEqualTo("2017-07-14T02:40:00.000Z");
+  }
+
+  @Test
+  public void recycle_buffer_of_thread() {
+    JsonDocBuilder builder = JsonDocBuilder.get();
+    byte[] first = builder.beginObject().prop("key", "first").endObject().build();
+    byte[] second = JsonDocBuilder.get().beginObject().prop("key", "second").endObject().build();
+
+    assertThat(JsonDocBuilder.get()).isSameAs(builder);
+    // returned arrays are copies, they are not overridden by next documents
+    assertThat(new String(first, StandardCharsets.UTF_8)).isEqualTo("{\"key\":\"first\"}");
+    assertThat(new String(second, StandardCharsets.UTF_8)).isEqualTo("{\"key\":\"second\"}");
+  }
+
+  @Test
+  public void release_big_buffers() {
+    JsonDocBuilder builder = JsonDocBuilder.get();
+    char[] chars = new char[2 * 1024 * 1024];
+    Arrays.fill(chars, 'a');
+    byte[] json = builder.beginArray().value(new String(chars)).endArray().build();
+
+    assertThat(json).hasSize(chars.length + 4);
+    assertThat(builder.capacity()).isLessThan(1024 * 1024);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_on_unsupported_value() {
+    JsonDocBuilder.get().value(new Object());
+  }
+}
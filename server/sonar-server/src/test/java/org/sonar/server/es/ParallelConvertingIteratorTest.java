@@ -0,0 +1,166 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.base.Function;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class ParallelConvertingIteratorTest {
+
+  static final Function<Integer, String> TO_STRING = new Function<Integer, String>() {
+    @Override
+    public String apply(@Nonnull Integer input) {
+      return String.valueOf(input);
+    }
+  };
+
+  @Test
+  public void convert_elements_in_order() {
+    List<Integer> source = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      source.add(i);
+    }
+
+    ParallelConvertingIterator<Integer, String> it = new ParallelConvertingIterator<>("test", source.iterator(), TO_STRING, 4);
+
+    for (int i = 0; i < 1000; i++) {
+      assertThat(it.hasNext()).isTrue();
+      assertThat(it.next()).isEqualTo(String.valueOf(i));
+    }
+    assertThat(it.hasNext()).isFalse();
+    it.close();
+  }
+
+  @Test
+  public void empty_source() {
+    ParallelConvertingIterator<Integer, String> it = new ParallelConvertingIterator<>("test", Collections.<Integer>emptyIterator(), TO_STRING, 2);
+
+    assertThat(it.hasNext()).isFalse();
+    try {
+      it.next();
+      fail();
+    } catch (NoSuchElementException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void propagate_conversion_failure() {
+    Function<Integer, String> converter = new Function<Integer, String>() {
+      @Override
+      public String apply(@Nonnull Integer input) {
+        if (input == 2) {
+          throw new IllegalArgumentException("Bad element");
+        }
+        return String.valueOf(input);
+      }
+    };
+    ParallelConvertingIterator<Integer, String> it = new ParallelConvertingIterator<>("test", Lists.newArrayList(1, 2, 3).iterator(), converter, 2);
+
+    assertThat(it.next()).isEqualTo("1");
+    try {
+      it.next();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Bad element");
+    }
+    it.close();
+  }
+
+  @Test
+  public void propagate_read_failure() {
+    Iterator<Integer> source = new AbstractIterator<Integer>() {
+      int count = 0;
+
+      @Override
+      protected Integer computeNext() {
+        count++;
+        if (count > 2) {
+          throw new IllegalStateException("Fail to read row");
+        }
+        return count;
+      }
+    };
+    ParallelConvertingIterator<Integer, String> it = new ParallelConvertingIterator<>("test", source, TO_STRING, 2);
+
+    assertThat(it.next()).isEqualTo("1");
+    assertThat(it.next()).isEqualTo("2");
+    try {
+      it.hasNext();
+      it.next();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to read row");
+    }
+    it.close();
+  }
+
+  @Test
+  public void close_waits_for_reader_thread() throws Exception {
+    final CountDownLatch readingSecondElement = new CountDownLatch(1);
+    final AtomicBoolean reading = new AtomicBoolean(false);
+    Iterator<Integer> source = new AbstractIterator<Integer>() {
+      int count = 0;
+
+      @Override
+      protected Integer computeNext() {
+        count++;
+        if (count == 2) {
+          reading.set(true);
+          readingSecondElement.countDown();
+          // not interruptible, as when fetching rows from database
+          long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+          while (System.nanoTime() < end) {
+            // busy
+          }
+          reading.set(false);
+        }
+        return count;
+      }
+    };
+    ParallelConvertingIterator<Integer, String> it = new ParallelConvertingIterator<>("test", source, TO_STRING, 2);
+
+    assertThat(it.next()).isEqualTo("1");
+    readingSecondElement.await();
+    it.close();
+
+    assertThat(reading.get()).isFalse();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_no_threads() {
+    new ParallelConvertingIterator<>("test", Collections.<Integer>emptyIterator(), TO_STRING, 0);
+  }
+}
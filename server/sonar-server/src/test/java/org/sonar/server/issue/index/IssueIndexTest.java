@@ -21,7 +21,6 @@ package org.sonar.server.issue.index;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.Lists;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
@@ -35,7 +34,6 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
 import org.sonar.api.issue.Issue;
-import org.sonar.api.resources.Scopes;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.Severity;
 import org.sonar.api.security.DefaultGroups;
@@ -1212,93 +1210,6 @@ public class IssueIndexTest {
     assertThat(dates).containsOnly(null, today);
   }
 
-  @Test
-  public void search_issues_for_batch_return_needed_fields() {
-    ComponentDto project = ComponentTesting.newProjectDto("PROJECT");
-    ComponentDto file = ComponentTesting.newFileDto(project).setPath("src/File.xoo");
-
-    IssueDoc issue = IssueTesting.newDoc("ISSUE", file)
-      .setRuleKey("squid:S001")
-      .setChecksum("12345")
-      .setAssignee("john")
-      .setLine(11)
-      .setMessage("the message")
-      .setSeverity(Severity.BLOCKER)
-      .setManualSeverity(true)
-      .setStatus(Issue.STATUS_RESOLVED)
-      .setResolution(Issue.RESOLUTION_FIXED)
-      .setFuncCreationDate(new Date());
-    indexIssues(issue);
-
-    List<IssueDoc> issues = Lists.newArrayList(index.selectIssuesForBatch(file));
-    assertThat(issues).hasSize(1);
-    IssueDoc result = issues.get(0);
-    assertThat(result.key()).isEqualTo("ISSUE");
-    assertThat(result.moduleUuid()).isEqualTo("PROJECT");
-    assertThat(result.filePath()).isEqualTo("src/File.xoo");
-    assertThat(result.ruleKey()).isEqualTo(RuleKey.of("squid", "S001"));
-    assertThat(result.checksum()).isEqualTo("12345");
-    assertThat(result.assignee()).isEqualTo("john");
-    assertThat(result.line()).isEqualTo(11);
-    assertThat(result.message()).isEqualTo("the message");
-    assertThat(result.severity()).isEqualTo(Severity.BLOCKER);
-    assertThat(result.isManualSeverity()).isTrue();
-    assertThat(result.status()).isEqualTo(Issue.STATUS_RESOLVED);
-    assertThat(result.resolution()).isEqualTo(Issue.RESOLUTION_FIXED);
-    assertThat(result.creationDate()).isNotNull();
-  }
-
-  @Test
-  public void search_issues_for_batch() {
-    ComponentDto project = ComponentTesting.newProjectDto();
-    ComponentDto module = ComponentTesting.newModuleDto(project);
-    ComponentDto subModule = ComponentTesting.newModuleDto(module);
-    ComponentDto file = ComponentTesting.newFileDto(subModule);
-
-    indexIssues(
-      IssueTesting.newDoc("ISSUE3", module),
-      IssueTesting.newDoc("ISSUE5", subModule),
-      IssueTesting.newDoc("ISSUE2", file),
-      // Close Issue, should never be returned
-      IssueTesting.newDoc("CLOSE_ISSUE", file).setStatus(Issue.STATUS_CLOSED).setResolution(Issue.RESOLUTION_FIXED));
-
-    assertThat(Lists.newArrayList(index.selectIssuesForBatch(project))).hasSize(3);
-    assertThat(Lists.newArrayList(index.selectIssuesForBatch(module))).hasSize(3);
-    assertThat(Lists.newArrayList(index.selectIssuesForBatch(subModule))).hasSize(2);
-    assertThat(Lists.newArrayList(index.selectIssuesForBatch(file))).hasSize(1);
-    assertThat(Lists.newArrayList(index.selectIssuesForBatch(ComponentTesting.newProjectDto()))).isEmpty();
-  }
-
-  @Test
-  public void fail_to_search_issues_for_batch_on_not_allowed_scope() {
-    try {
-      index.selectIssuesForBatch(new ComponentDto().setScope(Scopes.DIRECTORY));
-      failBecauseExceptionWasNotThrown(IllegalStateException.class);
-    } catch (IllegalStateException e) {
-      assertThat(e).hasMessage("Component of scope 'DIR' is not allowed");
-    }
-  }
-
-  @Test
-  public void search_issues_for_batch_return_only_authorized_issues() {
-    ComponentDto project1 = ComponentTesting.newProjectDto().setKey("project1");
-    ComponentDto project2 = ComponentTesting.newProjectDto().setKey("project2");
-
-    ComponentDto file1 = ComponentTesting.newFileDto(project1).setKey("file1");
-    ComponentDto file2 = ComponentTesting.newFileDto(project2).setKey("file2");
-
-    // project1 can be seen by sonar-users
-    indexIssue(IssueTesting.newDoc("ISSUE1", file1), "sonar-users", null);
-    // project3 can be seen by nobody
-    indexIssue(IssueTesting.newDoc("ISSUE3", file2), null, null);
-
-    userSessionRule.setUserGroups("sonar-users");
-    assertThat(Lists.newArrayList(index.selectIssuesForBatch(project1))).hasSize(1);
-
-    userSessionRule.setUserGroups("another group");
-    assertThat(Lists.newArrayList(index.selectIssuesForBatch(project2))).isEmpty();
-  }
-
   private void indexIssues(IssueDoc... issues) {
     issueIndexer.index(Arrays.asList(issues).iterator());
     for (IssueDoc issue : issues) {
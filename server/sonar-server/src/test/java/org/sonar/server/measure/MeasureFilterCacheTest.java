@@ -0,0 +1,76 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.measure;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MeasureFilterCacheTest {
+
+  MeasureFilterCache cache = new MeasureFilterCache(new Settings());
+
+  @Test
+  public void get_and_put() {
+    List<MeasureFilterRow> rows = Arrays.asList(new MeasureFilterRow(1L, 2L, 3L));
+    assertThat(cache.get("{qualifiers=TRK}")).isNull();
+
+    cache.put("{qualifiers=TRK}", null, rows);
+
+    assertThat(cache.get("{qualifiers=TRK}")).containsExactlyElementsOf(rows);
+    assertThat(cache.size()).isEqualTo(1L);
+    assertThat(cache.stats().hitCount()).isEqualTo(1L);
+    assertThat(cache.stats().missCount()).isEqualTo(1L);
+    assertThat(cache.maxSizeInBytes()).isEqualTo(MeasureFilterCache.DEFAULT_MAX_SIZE_IN_MB * 1024L * 1024L);
+  }
+
+  @Test
+  public void invalidate_filters_on_project_and_filters_on_all_projects() {
+    cache.put("all", null, Arrays.asList(new MeasureFilterRow(1L, 2L, 3L)));
+    cache.put("project_3", 3L, Arrays.asList(new MeasureFilterRow(1L, 2L, 3L)));
+    cache.put("project_4", 4L, Arrays.asList(new MeasureFilterRow(5L, 6L, 4L)));
+
+    cache.invalidateProject(3L);
+
+    assertThat(cache.get("all")).isNull();
+    assertThat(cache.get("project_3")).isNull();
+    assertThat(cache.get("project_4")).isNotNull();
+
+    cache.invalidateAll();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  public void zero_size_disables_cache() {
+    MeasureFilterCache disabledCache = new MeasureFilterCache(0L);
+    disabledCache.put("{qualifiers=TRK}", null, Arrays.asList(new MeasureFilterRow(1L, 2L, 3L)));
+
+    assertThat(disabledCache.get("{qualifiers=TRK}")).isNull();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_negative_size() {
+    new MeasureFilterCache(-1L);
+  }
+}
@@ -23,7 +23,11 @@ import com.google.common.collect.ImmutableMap;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.junit.Test;
+import org.sonar.api.config.Settings;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -54,6 +58,41 @@ public class MeasureFilterEngineTest {
     }));
   }
 
+  @Test
+  public void reuse_cached_rows() throws Exception {
+    MeasureFilterFactory factory = mock(MeasureFilterFactory.class);
+    when(factory.create(anyMap())).thenReturn(new MeasureFilter());
+    MeasureFilterExecutor executor = mock(MeasureFilterExecutor.class);
+    List<MeasureFilterRow> rows = Arrays.asList(new MeasureFilterRow(1L, 2L, 3L));
+    when(executor.execute(any(MeasureFilter.class), any(MeasureFilterContext.class))).thenReturn(rows);
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new MeasureFilterCache(new Settings()));
+
+    MeasureFilterResult result = engine.execute(ImmutableMap.of("qualifiers", (Object) "TRK", "page", "1"), 50L);
+    assertThat(result.getRows()).containsExactlyElementsOf(rows);
+
+    // same filter, other page and other user
+    result = engine.execute(ImmutableMap.of("page", (Object) "2", "qualifiers", "TRK"), 51L);
+    assertThat(result.getRows()).containsExactlyElementsOf(rows);
+    verify(executor, times(1)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+
+    engine.execute(ImmutableMap.of("qualifiers", (Object) "BRC"), 50L);
+    verify(executor, times(2)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+  }
+
+  @Test
+  public void do_not_cache_filters_on_favourites() throws Exception {
+    MeasureFilterFactory factory = mock(MeasureFilterFactory.class);
+    when(factory.create(anyMap())).thenReturn(new MeasureFilter().setUserFavourites(true));
+    MeasureFilterExecutor executor = mock(MeasureFilterExecutor.class);
+    when(executor.execute(any(MeasureFilter.class), any(MeasureFilterContext.class))).thenReturn(Collections.<MeasureFilterRow>emptyList());
+    MeasureFilterEngine engine = new MeasureFilterEngine(factory, executor, new MeasureFilterCache(new Settings()));
+
+    engine.execute(ImmutableMap.of("onFavourites", (Object) "true"), 50L);
+    engine.execute(ImmutableMap.of("onFavourites", (Object) "true"), 50L);
+
+    verify(executor, times(2)).execute(any(MeasureFilter.class), any(MeasureFilterContext.class));
+  }
+
   @Test
   public void keep_error_but_do_not_fail() {
     Map<String, Object> filterMap = ImmutableMap.of("qualifiers", (Object) "TRK");
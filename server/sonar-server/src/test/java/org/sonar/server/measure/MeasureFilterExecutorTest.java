@@ -286,6 +286,27 @@ public class MeasureFilterExecutorTest {
     verifyPhpProject(rows.get(1));
   }
 
+  @Test
+  public void numeric_measures_are_sorted_by_database() throws SQLException {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    MeasureFilter filter = new MeasureFilter().setResourceQualifiers(Arrays.asList("CLA")).setSortOnMetric(METRIC_LINES).setSortAsc(false);
+    MeasureFilterContext context = new MeasureFilterContext();
+    executor.execute(filter, context);
+
+    assertThat(context.getSql()).contains("ORDER BY CASE WHEN pmsort.value IS NULL THEN 1 ELSE 0 END, pmsort.value DESC, s.id");
+  }
+
+  @Test
+  public void names_are_not_sorted_by_database() throws SQLException {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    MeasureFilter filter = new MeasureFilter().setResourceQualifiers(Arrays.asList("CLA")).setSortOn(MeasureFilterSort.Field.NAME);
+    MeasureFilterContext context = new MeasureFilterContext();
+    executor.execute(filter, context);
+
+    // case-insensitive sort is done in memory, as collations differ between databases
+    assertThat(context.getSql()).doesNotContain("ORDER BY");
+  }
+
   @Test
   public void sort_by_missing_numeric_measure() throws SQLException {
     db.prepareDbUnit(getClass(), "shared.xml");
@@ -78,4 +78,16 @@ public class EsMonitorTest {
     assertThat(indexAttributes.get("Shards")).isEqualTo(1);
     assertThat(indexAttributes.get("Store Size")).isNotNull();
   }
+
+  @Test
+  public void bulk_attributes() {
+    EsMonitor monitor = new EsMonitor(esTester.client());
+    LinkedHashMap<String, Object> attributes = monitor.attributes();
+    Map bulkAttributes = (Map) attributes.get("Bulk Indexing");
+
+    assertThat(bulkAttributes.get("Indexed Documents")).isEqualTo(monitor.getBulkIndexedDocuments());
+    assertThat(bulkAttributes.get("In-flight Requests")).isEqualTo(0);
+    assertThat(bulkAttributes.get("Rejections")).isEqualTo(0L);
+    assertThat(bulkAttributes.get("Sent Size")).isNotNull();
+  }
 }
@@ -0,0 +1,56 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import com.google.common.cache.CacheStats;
+import org.junit.Test;
+import org.sonar.server.measure.MeasureFilterCache;
+
+import java.util.LinkedHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MeasureFilterCacheMonitorTest {
+
+  MeasureFilterCache cache = mock(MeasureFilterCache.class);
+  MeasureFilterCacheMonitor sut = new MeasureFilterCacheMonitor(cache);
+
+  @Test
+  public void name() {
+    assertThat(sut.name()).isEqualTo("Measure Filter Cache");
+  }
+
+  @Test
+  public void attributes() {
+    when(cache.maxSizeInBytes()).thenReturn(16L * 1024L * 1024L);
+    when(cache.size()).thenReturn(4L);
+    when(cache.stats()).thenReturn(new CacheStats(30L, 10L, 0L, 0L, 0L, 2L));
+
+    LinkedHashMap<String, Object> attributes = sut.attributes();
+    assertThat(attributes).containsEntry("Max Size (MB)", 16L);
+    assertThat(attributes).containsEntry("Filters", 4L);
+    assertThat(attributes).containsEntry("Hits", 30L);
+    assertThat(attributes).containsEntry("Misses", 10L);
+    assertThat(attributes).containsEntry("Hit Rate (%)", 75L);
+    assertThat(attributes).containsEntry("Evictions", 2L);
+  }
+}
@@ -37,7 +37,9 @@ import org.sonar.core.qualityprofile.db.QualityProfileDao;
 import org.sonar.core.rule.RuleDto;
 import org.sonar.core.rule.RuleParamDto;
 import org.sonar.core.technicaldebt.db.CharacteristicDao;
+import org.sonar.core.template.LoadedTemplateDao;
 import org.sonar.server.db.DbClient;
+import org.sonar.server.platform.ServerImpl;
 import org.sonar.server.qualityprofile.RuleActivator;
 import org.sonar.server.qualityprofile.db.ActiveRuleDao;
 import org.sonar.server.rule.db.RuleDao;
@@ -56,6 +58,7 @@ public class RegisterRulesTest extends AbstractDaoTestCase {
   static final Date DATE3 = DateUtils.parseDateTime("2014-03-01T12:10:03+0100");
 
   RuleActivator ruleActivator = mock(RuleActivator.class);
+  ServerImpl server = mock(ServerImpl.class);
   System2 system;
   DbClient dbClient;
   DbSession dbSession;
@@ -67,8 +70,10 @@ public class RegisterRulesTest extends AbstractDaoTestCase {
     RuleDao ruleDao = new RuleDao(system);
     ActiveRuleDao activeRuleDao = new ActiveRuleDao(new QualityProfileDao(getMyBatis(), system), ruleDao, system);
     dbClient = new DbClient(getDatabase(), getMyBatis(), ruleDao, activeRuleDao,
-      new QualityProfileDao(getMyBatis(), system), new CharacteristicDao(getMyBatis()));
+      new QualityProfileDao(getMyBatis(), system), new CharacteristicDao(getMyBatis()), new LoadedTemplateDao(getMyBatis()));
     dbSession = dbClient.openSession(false);
+    when(server.getVersion()).thenReturn("5.1");
+    when(server.getImplementationBuild()).thenReturn("abcdef");
   }
 
   @After
@@ -116,6 +121,53 @@ public class RegisterRulesTest extends AbstractDaoTestCase {
     assertThat(rule1.getUpdatedAt()).isEqualTo(DATE1);
   }
 
+  @Test
+  public void skip_repository_when_definitions_are_unchanged() {
+    execute(new FakeRepositoryV1());
+
+    // change done in db only, it must not be overridden as long as definitions do not change
+    RuleKey ruleKey1 = RuleKey.of("fake", "rule1");
+    RuleDto rule1 = dbClient.ruleDao().getNullableByKey(dbSession, ruleKey1);
+    rule1.setName("Changed");
+    dbClient.ruleDao().update(dbSession, rule1);
+    dbSession.commit();
+
+    execute(new FakeRepositoryV1());
+    assertThat(dbClient.ruleDao().getNullableByKey(dbSession, ruleKey1).getName()).isEqualTo("Changed");
+    assertThat(dbClient.ruleDao().getNullableByKey(dbSession, RuleKey.of("fake", "rule2")).getStatus()).isEqualTo(RuleStatus.READY);
+
+    execute(new FakeRepositoryV2());
+    assertThat(dbClient.ruleDao().getNullableByKey(dbSession, ruleKey1).getName()).isEqualTo("One v2");
+  }
+
+  @Test
+  public void register_unchanged_repository_after_upgrade_of_server() {
+    execute(new FakeRepositoryV1());
+
+    RuleKey ruleKey1 = RuleKey.of("fake", "rule1");
+    RuleDto rule1 = dbClient.ruleDao().getNullableByKey(dbSession, ruleKey1);
+    rule1.setName("Changed");
+    dbClient.ruleDao().update(dbSession, rule1);
+    dbSession.commit();
+
+    when(server.getImplementationBuild()).thenReturn("123456");
+    execute(new FakeRepositoryV1());
+    assertThat(dbClient.ruleDao().getNullableByKey(dbSession, ruleKey1).getName()).isEqualTo("One");
+  }
+
+  @Test
+  public void register_unchanged_repository_when_rules_have_been_removed() {
+    execute(new FakeRepositoryV1());
+
+    // repository is uninstalled then installed again
+    execute();
+    assertThat(dbClient.ruleDao().getNullableByKey(dbSession, RuleKey.of("fake", "rule1")).getStatus()).isEqualTo(RuleStatus.REMOVED);
+    execute(new FakeRepositoryV1());
+
+    assertThat(dbClient.ruleDao().getNullableByKey(dbSession, RuleKey.of("fake", "rule1")).getStatus()).isEqualTo(RuleStatus.BETA);
+    assertThat(dbClient.ruleDao().getNullableByKey(dbSession, RuleKey.of("fake", "rule2")).getStatus()).isEqualTo(RuleStatus.READY);
+  }
+
   @Test
   public void update_and_remove_rules_on_changes() {
     execute(new FakeRepositoryV1());
@@ -216,7 +268,7 @@ public class RegisterRulesTest extends AbstractDaoTestCase {
     Languages languages = mock(Languages.class);
     when(languages.get("java")).thenReturn(mock(Language.class));
 
-    RegisterRules task = new RegisterRules(loader, ruleActivator, dbClient, languages);
+    RegisterRules task = new RegisterRules(loader, ruleActivator, dbClient, languages, server);
     task.start();
     // Execute a commit to refresh session state as the task is using its own session
     dbSession.commit();
@@ -0,0 +1,86 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.rule;
+
+import org.junit.Test;
+import org.sonar.api.server.rule.RulesDefinition;
+import org.sonar.core.technicaldebt.db.CharacteristicDto;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RuleRepositoryFingerprintTest {
+
+  static final String SERVER_VERSION = "5.1:abcdef";
+  static final Map<String, CharacteristicDto> NO_CHARACTERISTICS = Collections.emptyMap();
+
+  @Test
+  public void same_definitions_have_same_fingerprint() {
+    String fingerprint = RuleRepositoryFingerprint.compute(SERVER_VERSION, asList(repository("desc", "p1", "p2")), NO_CHARACTERISTICS);
+
+    assertThat(fingerprint).hasSize(32);
+    assertThat(RuleRepositoryFingerprint.compute(SERVER_VERSION, asList(repository("desc", "p2", "p1")), NO_CHARACTERISTICS)).isEqualTo(fingerprint);
+  }
+
+  @Test
+  public void fingerprint_changes_with_definitions() {
+    String fingerprint = RuleRepositoryFingerprint.compute(SERVER_VERSION, asList(repository("desc", "p1", "p2")), NO_CHARACTERISTICS);
+
+    assertThat(RuleRepositoryFingerprint.compute(SERVER_VERSION, asList(repository("other desc", "p1", "p2")), NO_CHARACTERISTICS)).isNotEqualTo(fingerprint);
+    assertThat(RuleRepositoryFingerprint.compute(SERVER_VERSION, asList(repository("desc", "p1")), NO_CHARACTERISTICS)).isNotEqualTo(fingerprint);
+  }
+
+  @Test
+  public void fingerprint_changes_with_server_version() {
+    String fingerprint = RuleRepositoryFingerprint.compute(SERVER_VERSION, asList(repository("desc", "p1", "p2")), NO_CHARACTERISTICS);
+
+    assertThat(RuleRepositoryFingerprint.compute("5.1:123456", asList(repository("desc", "p1", "p2")), NO_CHARACTERISTICS)).isNotEqualTo(fingerprint);
+    assertThat(RuleRepositoryFingerprint.compute("5.2:abcdef", asList(repository("desc", "p1", "p2")), NO_CHARACTERISTICS)).isNotEqualTo(fingerprint);
+  }
+
+  @Test
+  public void fingerprint_changes_with_characteristics() {
+    RulesDefinition.Context context = new RulesDefinition.Context();
+    RulesDefinition.NewRepository newRepository = context.createRepository("squid", "java");
+    newRepository.createRule("S1").setName("S1").setHtmlDescription("S1").setDebtSubCharacteristic("MEMORY_EFFICIENCY");
+    newRepository.done();
+    RulesDefinition.Repository repository = context.repository("squid");
+
+    String withoutCharacteristic = RuleRepositoryFingerprint.compute(SERVER_VERSION, asList(repository), NO_CHARACTERISTICS);
+    String withCharacteristic = RuleRepositoryFingerprint.compute(SERVER_VERSION, asList(repository),
+      Collections.singletonMap("MEMORY_EFFICIENCY", new CharacteristicDto().setId(2).setParentId(1).setKey("MEMORY_EFFICIENCY")));
+
+    assertThat(withCharacteristic).isNotEqualTo(withoutCharacteristic);
+  }
+
+  private static RulesDefinition.Repository repository(String description, String... params) {
+    RulesDefinition.Context context = new RulesDefinition.Context();
+    RulesDefinition.NewRepository newRepository = context.createRepository("squid", "java");
+    RulesDefinition.NewRule rule = newRepository.createRule("S1").setName("S1").setHtmlDescription(description);
+    for (String param : params) {
+      rule.createParam(param).setDefaultValue("default");
+    }
+    newRepository.done();
+    return context.repository("squid");
+  }
+}
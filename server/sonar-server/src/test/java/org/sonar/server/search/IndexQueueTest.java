@@ -0,0 +1,83 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.search;
+
+import org.junit.Test;
+import org.sonar.core.persistence.Dto;
+import org.sonar.server.search.action.DeleteKey;
+import org.sonar.server.search.action.IndexAction;
+import org.sonar.server.search.action.RefreshIndex;
+import org.sonar.server.search.action.UpsertDto;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexQueueTest {
+
+  @Test
+  public void coalesce_successive_upserts_of_same_document() {
+    IndexAction<?> upsertA1 = new UpsertDto<>("rules", new FakeDto("A"));
+    IndexAction<?> upsertB = new UpsertDto<>("rules", new FakeDto("B"));
+    IndexAction<?> upsertA2 = new UpsertDto<>("rules", new FakeDto("A"));
+    IndexAction<?> upsertA3 = new UpsertDto<>("rules", new FakeDto("A"));
+    IndexAction<?> upsertOtherTypeA = new UpsertDto<>("activeRules", new FakeDto("A"));
+
+    List<IndexAction<?>> actions = IndexQueue.coalesce(Arrays.<IndexAction<?>>asList(upsertA1, upsertB, upsertA2, upsertOtherTypeA, upsertA3));
+
+    assertThat(actions).containsExactly(upsertB, upsertOtherTypeA, upsertA3);
+  }
+
+  @Test
+  public void do_not_coalesce_upserts_separated_by_other_actions_on_same_document() {
+    IndexAction<?> upsertA1 = new UpsertDto<>("rules", new FakeDto("A"));
+    IndexAction<?> deleteA = new DeleteKey<>("rules", "A");
+    IndexAction<?> refresh = new RefreshIndex("rules");
+    IndexAction<?> upsertA2 = new UpsertDto<>("rules", new FakeDto("A"));
+
+    List<IndexAction<?>> actions = IndexQueue.coalesce(Arrays.<IndexAction<?>>asList(upsertA1, deleteA, refresh, upsertA2));
+
+    assertThat(actions).containsExactly(upsertA1, deleteA, refresh, upsertA2);
+  }
+
+  @Test
+  public void keep_upsert_requiring_refresh_when_followed_by_upsert_without_refresh() {
+    IndexAction<?> upsertWithRefresh = new UpsertDto<>("rules", new FakeDto("A"), true);
+    IndexAction<?> upsertWithoutRefresh = new UpsertDto<>("rules", new FakeDto("A"), false);
+
+    List<IndexAction<?>> actions = IndexQueue.coalesce(Arrays.<IndexAction<?>>asList(upsertWithRefresh, upsertWithoutRefresh));
+
+    assertThat(actions).containsExactly(upsertWithRefresh, upsertWithoutRefresh);
+  }
+
+  private static class FakeDto extends Dto<String> {
+    private final String key;
+
+    FakeDto(String key) {
+      this.key = key;
+    }
+
+    @Override
+    public String getKey() {
+      return key;
+    }
+  }
+}
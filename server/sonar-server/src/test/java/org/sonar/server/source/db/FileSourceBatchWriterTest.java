@@ -0,0 +1,99 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+
+package org.sonar.server.source.db;
+
+import org.junit.Test;
+import org.sonar.core.persistence.DbSession;
+import org.sonar.core.source.db.FileSourceDto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class FileSourceBatchWriterTest {
+
+  DbSession session = mock(DbSession.class);
+  FileSourceDao dao = mock(FileSourceDao.class);
+  FileSourceBatchWriter sut = new FileSourceBatchWriter(dao, session, 10L);
+
+  @Test
+  public void do_not_commit_until_max_size_is_reached() {
+    FileSourceDto dto1 = newDto(4);
+    FileSourceDto dto2 = newDto(5);
+    sut.insert(dto1);
+    sut.update(dto2);
+
+    verify(dao).insert(session, dto1);
+    verify(dao).update(session, dto2);
+    verify(session, never()).commit();
+    assertThat(sut.getPendingRows()).isEqualTo(2);
+    assertThat(sut.getPendingBytes()).isEqualTo(9L);
+  }
+
+  @Test
+  public void commit_when_max_size_is_reached() {
+    sut.insert(newDto(4));
+    sut.insert(newDto(6));
+
+    verify(session).commit();
+    assertThat(sut.getPendingRows()).isEqualTo(0);
+    assertThat(sut.getPendingBytes()).isEqualTo(0L);
+
+    sut.update(newDto(3));
+    assertThat(sut.getPendingRows()).isEqualTo(1);
+    assertThat(sut.getPendingBytes()).isEqualTo(3L);
+  }
+
+  @Test
+  public void commit_each_row_bigger_than_max_size() {
+    sut.insert(newDto(20));
+    sut.insert(newDto(30));
+
+    verify(session, times(2)).commit();
+  }
+
+  @Test
+  public void flush_commits_pending_rows() {
+    sut.insert(newDto(2));
+    sut.flush();
+
+    verify(session).commit();
+    assertThat(sut.getPendingRows()).isEqualTo(0);
+  }
+
+  @Test
+  public void flush_does_nothing_when_no_pending_rows() {
+    sut.flush();
+
+    verify(session, never()).commit();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_max_size_is_not_positive() {
+    new FileSourceBatchWriter(dao, session, 0L);
+  }
+
+  private static FileSourceDto newDto(int dataSize) {
+    return new FileSourceDto().setBinaryData(new byte[dataSize]);
+  }
+}
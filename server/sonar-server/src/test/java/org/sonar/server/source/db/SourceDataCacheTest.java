@@ -0,0 +1,159 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source.db;
+
+import org.junit.Test;
+import org.sonar.api.config.Settings;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.db.DbClient;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SourceDataCacheTest {
+
+  DbClient dbClient = mock(DbClient.class, RETURNS_DEEP_STUBS);
+
+  @Test
+  public void load_source_once() {
+    when(dbClient.fileSourceDao().selectSource("F1")).thenReturn(newDto("F1", 3));
+    SourceDataCache cache = new SourceDataCache(dbClient, new Settings());
+
+    SourceDataCache.Source source = cache.get("F1");
+    assertThat(source.getProjectUuid()).isEqualTo("P1");
+    assertThat(source.getFileUuid()).isEqualTo("F1");
+    assertThat(source.getUpdatedAt()).isEqualTo(1_500_000_000_000L);
+    assertThat(source.getDataHash()).isEqualTo("HASH");
+    assertThat(source.getLineHashes()).isEqualTo("LINE_HASHES");
+    assertThat(source.getData().getLinesCount()).isEqualTo(3);
+
+    assertThat(cache.get("F1")).isSameAs(source);
+    assertThat(cache.getIfPresent("F1")).isSameAs(source);
+    verify(dbClient.fileSourceDao()).selectSource("F1");
+    assertThat(cache.stats().hitCount()).isEqualTo(2);
+    assertThat(cache.stats().missCount()).isEqualTo(1);
+    assertThat(cache.maxSizeInBytes()).isEqualTo(SourceDataCache.DEFAULT_MAX_SIZE_IN_MB * 1024L * 1024L);
+  }
+
+  @Test
+  public void file_without_sources() {
+    SourceDataCache cache = new SourceDataCache(dbClient, new Settings());
+
+    assertThat(cache.get("unknown")).isNull();
+    assertThat(cache.get("unknown")).isNull();
+    assertThat(cache.getIfPresent("unknown")).isNull();
+    verify(dbClient.fileSourceDao()).selectSource("unknown");
+  }
+
+  @Test
+  public void get_if_present_does_not_request_db() {
+    SourceDataCache cache = new SourceDataCache(dbClient, new Settings());
+
+    assertThat(cache.getIfPresent("F1")).isNull();
+    verify(dbClient.fileSourceDao(), times(0)).selectSource("F1");
+  }
+
+  @Test
+  public void get_range_decodes_only_requested_lines_if_not_cached() {
+    when(dbClient.fileSourceDao().selectSource("F1")).thenReturn(newDto("F1", 1000));
+    SourceDataCache cache = new SourceDataCache(dbClient, new Settings());
+
+    SourceDataCache.Source range = cache.getRange("F1", 600, 601);
+    assertThat(range.getFileUuid()).isEqualTo("F1");
+    assertThat(range.getData().getLinesCount()).isEqualTo(2);
+    assertThat(range.getData().getLines(0).getLine()).isEqualTo(600);
+    // range is not cached
+    assertThat(cache.getIfPresent("F1")).isNull();
+
+    SourceDataCache.Source source = cache.get("F1");
+    assertThat(cache.getRange("F1", 600, 601)).isSameAs(source);
+    assertThat(cache.getRange("unknown", 1, 2)).isNull();
+  }
+
+  @Test
+  public void invalidate() {
+    when(dbClient.fileSourceDao().selectSource("F1")).thenReturn(newDto("F1", 3));
+    when(dbClient.fileSourceDao().selectSource("F2")).thenReturn(newDto("F2", 3));
+    SourceDataCache cache = new SourceDataCache(dbClient, new Settings());
+    cache.get("F1");
+    cache.get("F2");
+
+    cache.invalidate(Arrays.asList("F1"));
+    assertThat(cache.getIfPresent("F1")).isNull();
+    assertThat(cache.getIfPresent("F2")).isNotNull();
+
+    cache.invalidateAll();
+    assertThat(cache.size()).isZero();
+  }
+
+  @Test
+  public void size_is_bounded_by_weight_of_data() {
+    when(dbClient.fileSourceDao().selectSource("F1")).thenReturn(newDto("F1", 1000));
+    SourceDataCache cache = new SourceDataCache(dbClient, 100L);
+
+    assertThat(cache.get("F1")).isNotNull();
+    // too big to be kept
+    assertThat(cache.getIfPresent("F1")).isNull();
+    assertThat(cache.stats().evictionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void weight_estimates_heap_of_decoded_lines() {
+    FileSourceDto dto = newDto("F1", 1000);
+    FileSourceDb.Data data = dto.getSourceData();
+
+    int weight = SourceDataCache.Source.estimateWeight(data, dto.getLineHashes());
+    assertThat(weight).isGreaterThan(2 * data.getSerializedSize() + 1000 * SourceDataCache.LINE_OVERHEAD_IN_BYTES);
+    assertThat(SourceDataCache.Source.estimateWeight(data, null)).isEqualTo(weight - 2 * "LINE_HASHES".length());
+  }
+
+  @Test
+  public void max_size_is_configurable() {
+    Settings settings = new Settings();
+    settings.setProperty(SourceDataCache.PROPERTY_MAX_SIZE, "5");
+
+    assertThat(new SourceDataCache(dbClient, settings).maxSizeInBytes()).isEqualTo(5L * 1024L * 1024L);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_negative_max_size() {
+    new SourceDataCache(dbClient, -1L);
+  }
+
+  private static FileSourceDto newDto(String fileUuid, int lines) {
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int line = 1; line <= lines; line++) {
+      data.addLinesBuilder().setLine(line).setSource("line " + line);
+    }
+    return new FileSourceDto()
+      .setProjectUuid("P1")
+      .setFileUuid(fileUuid)
+      .setUpdatedAt(1_500_000_000_000L)
+      .setDataHash("HASH")
+      .setLineHashes("LINE_HASHES")
+      .setSourceData(data.build());
+  }
+}
@@ -46,6 +46,19 @@ public class SourceLineIndexDefinitionTest {
     assertThat(index.getSettings().get("index.number_of_replicas")).isEqualTo("0");
   }
 
+  @Test
+  public void define_file_storage() {
+    Settings settings = new Settings();
+    settings.setProperty(SourceLineStorage.PROPERTY, "files");
+    new SourceLineIndexDefinition(settings).define(context);
+
+    NewIndex.NewIndexType type = context.getIndices().get("sourcelines").getTypes().get("sourceline");
+    assertThat(type.getProperty(SourceLineIndexDefinition.FIELD_FILE_UUID)).isNotNull();
+    assertThat(type.getProperty(SourceLineIndexDefinition.FIELD_SCM_DATE)).isNotNull();
+    assertThat(type.getProperty(SourceLineIndexDefinition.FIELD_LINE)).isNull();
+    assertThat(type.getProperty(SourceLineIndexDefinition.FIELD_SOURCE)).isNull();
+  }
+
   @Test
   public void enable_cluster() {
     Settings settings = new Settings();
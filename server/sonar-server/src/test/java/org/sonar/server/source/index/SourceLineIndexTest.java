@@ -24,12 +24,23 @@ import org.junit.ClassRule;
 import org.junit.Test;
 import org.sonar.api.config.Settings;
 import org.sonar.api.utils.DateUtils;
+import org.sonar.core.source.db.FileSourceDto;
+import org.sonar.server.db.DbClient;
 import org.sonar.server.es.EsTester;
 import org.sonar.server.exceptions.NotFoundException;
+import org.sonar.server.source.db.FileSourceDb;
+import org.sonar.server.source.db.SourceDataCache;
 
 import java.util.Date;
+import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 public class SourceLineIndexTest {
 
@@ -133,6 +144,81 @@ public class SourceLineIndexTest {
     assertThat(returnedDate).isEqualTo(now);
   }
 
+  @Test
+  public void load_lines_from_db_with_file_storage() {
+    DbClient dbClient = mock(DbClient.class, RETURNS_DEEP_STUBS);
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int line = 1; line <= 3; line++) {
+      data.addLinesBuilder().setLine(line).setSource("line " + line).setScmAuthor("simon").setUtLineHits(2);
+    }
+    FileSourceDto dto = new FileSourceDto().setProjectUuid("P1").setFileUuid("F1").setUpdatedAt(1_500_000_000_000L).setSourceData(data.build());
+    when(dbClient.fileSourceDao().selectSource("F1")).thenReturn(dto);
+    index = new SourceLineIndex(es.client(), new SourceDataCache(dbClient, new Settings()), SourceLineStorage.FILES);
+
+    List<SourceLineDoc> lines = index.getLines("F1", 2, 10);
+    assertThat(lines).hasSize(2);
+    SourceLineDoc line = lines.get(0);
+    assertThat(line.projectUuid()).isEqualTo("P1");
+    assertThat(line.fileUuid()).isEqualTo("F1");
+    assertThat(line.line()).isEqualTo(2);
+    assertThat(line.source()).isEqualTo("line 2");
+    assertThat(line.scmAuthor()).isEqualTo("simon");
+    assertThat(line.scmDate()).isNull();
+    assertThat(line.utLineHits()).isEqualTo(2);
+    assertThat(line.itLineHits()).isNull();
+    assertThat(line.updateDate()).isEqualTo(new Date(1_500_000_000_000L));
+
+    assertThat(index.getLines("F1")).hasSize(3);
+    assertThat(index.getLine("F1", 3).source()).isEqualTo("line 3");
+    assertThat(index.getLines("unknown")).isEmpty();
+    // source data is read once from db
+    verify(dbClient.fileSourceDao()).selectSource("F1");
+  }
+
+  @Test
+  public void load_lines_through_cache_of_source_data_with_line_storage() throws Exception {
+    es.putDocuments(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE,
+      this.getClass(),
+      "file1_line1.json",
+      "file1_line2.json");
+    DbClient dbClient = mock(DbClient.class, RETURNS_DEEP_STUBS);
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int line = 1; line <= 3; line++) {
+      data.addLinesBuilder().setLine(line).setSource("line " + line);
+    }
+    FileSourceDto dto = new FileSourceDto().setProjectUuid("P1").setFileUuid("file1").setUpdatedAt(1_500_000_000_000L).setSourceData(data.build());
+    when(dbClient.fileSourceDao().selectSource("file1")).thenReturn(dto);
+    index = new SourceLineIndex(es.client(), new SourceDataCache(dbClient, new Settings()), SourceLineStorage.LINES);
+
+    // not in cache yet, so lines are searched in index
+    List<SourceLineDoc> lines = index.getLines("file1", 1, 2);
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0).source()).isEqualTo("// Empty");
+    verify(dbClient.fileSourceDao(), never()).selectSource("file1");
+
+    assertThat(index.getLines("file1")).hasSize(3);
+    lines = index.getLines("file1", 1, 2);
+    assertThat(lines).hasSize(2);
+    assertThat(lines.get(0).source()).isEqualTo("line 1");
+    assertThat(index.getLine("file1", 3).source()).isEqualTo("line 3");
+    // source data is read once from db
+    verify(dbClient.fileSourceDao()).selectSource("file1");
+  }
+
+  @Test
+  public void search_lines_in_index_if_cache_of_source_data_is_disabled() throws Exception {
+    es.putDocuments(SourceLineIndexDefinition.INDEX, SourceLineIndexDefinition.TYPE,
+      this.getClass(),
+      "file1_line1.json",
+      "file1_line2.json");
+    DbClient dbClient = mock(DbClient.class, RETURNS_DEEP_STUBS);
+    Settings settings = new Settings().setProperty(SourceDataCache.PROPERTY_MAX_SIZE, "0");
+    index = new SourceLineIndex(es.client(), new SourceDataCache(dbClient, settings), SourceLineStorage.LINES);
+
+    assertThat(index.getLines("file1", 1, 2)).hasSize(2);
+    verifyZeroInteractions(dbClient);
+  }
+
   @Test
   public void last_commit_null_when_not_found() {
     Date date = index.lastCommitDateOnProject("fake-project-uuid");
@@ -161,6 +161,26 @@ public class SourceLineIndexerTest {
       );
   }
 
+  @Test
+  public void index_one_document_per_file_with_file_storage() throws Exception {
+    db.prepareDbUnit(getClass(), "db.xml");
+
+    Connection connection = db.openConnection();
+    FileSourceTesting.updateDataColumn(connection, "FILE_UUID", FileSourceTesting.newRandomData(3).build());
+    connection.close();
+
+    indexer = new SourceLineIndexer(new DbClient(db.database(), db.myBatis()), es.client(), SourceLineStorage.FILES);
+    indexer.setEnabled(true);
+    indexer.index();
+
+    List<SearchHit> hits = getDocuments();
+    assertThat(hits).hasSize(1);
+    assertThat(hits.get(0).getId()).isEqualTo("FILE_UUID");
+    Map<String, Object> document = hits.get(0).getSource();
+    assertThat(document).containsKeys(FIELD_PROJECT_UUID, FIELD_FILE_UUID, SourceLineIndexDefinition.FIELD_SCM_DATE);
+    assertThat(document).doesNotContainKey(FIELD_SOURCE);
+  }
+
   @Test
   public void delete_file_uuid() throws Exception {
     indexLine("P1", "F1", 1);
@@ -0,0 +1,59 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.config.Settings;
+import org.sonar.api.utils.MessageException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceLineStorageTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  Settings settings = new Settings();
+
+  @Test
+  public void lines_by_default() {
+    assertThat(SourceLineStorage.from(settings)).isEqualTo(SourceLineStorage.LINES);
+  }
+
+  @Test
+  public void read_property() {
+    settings.setProperty(SourceLineStorage.PROPERTY, "files");
+    assertThat(SourceLineStorage.from(settings)).isEqualTo(SourceLineStorage.FILES);
+
+    settings.setProperty(SourceLineStorage.PROPERTY, "LINES");
+    assertThat(SourceLineStorage.from(settings)).isEqualTo(SourceLineStorage.LINES);
+  }
+
+  @Test
+  public void fail_if_unsupported_value() {
+    thrown.expect(MessageException.class);
+    thrown.expectMessage("Unsupported value of property sonar.sourceLines.storage: foo. Supported values are: lines, files");
+
+    settings.setProperty(SourceLineStorage.PROPERTY, "foo");
+    SourceLineStorage.from(settings);
+  }
+}
@@ -35,12 +35,15 @@ import org.sonar.server.db.DbClient;
 import org.sonar.server.exceptions.ForbiddenException;
 import org.sonar.server.exceptions.NotFoundException;
 import org.sonar.server.source.db.FileSourceDao;
+import org.sonar.server.source.db.SourceDataCache;
 import org.sonar.server.tester.UserSessionRule;
 import org.sonar.server.ws.WsTester;
 import org.sonar.test.DbTests;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 @Category(DbTests.class)
@@ -56,6 +59,8 @@ public class HashActionTest {
 
   DbSession session;
 
+  SourceDataCache sourceDataCache = mock(SourceDataCache.class);
+
   WsTester tester;
 
   @Before
@@ -65,7 +70,7 @@ public class HashActionTest {
 
     DbClient dbClient = new DbClient(db.database(), db.myBatis(), new FileSourceDao(db.myBatis()), new ComponentDao());
 
-    tester = new WsTester(new SourcesWs(new HashAction(dbClient, userSessionRule)));
+    tester = new WsTester(new SourcesWs(new HashAction(dbClient, sourceDataCache, userSessionRule)));
   }
 
   @After
@@ -82,6 +87,18 @@ public class HashActionTest {
     assertThat(request.execute().outputAsString()).isEqualTo("987654");
   }
 
+  @Test
+  public void show_hashes_from_cache() throws Exception {
+    db.prepareDbUnit(getClass(), "shared.xml");
+    userSessionRule.login("polop").addProjectUuidPermissions(UserRole.USER, PROJECT_UUID);
+    SourceDataCache.Source cachedSource = mock(SourceDataCache.Source.class);
+    when(cachedSource.getLineHashes()).thenReturn("123456");
+    when(sourceDataCache.getIfPresent("CDEF")).thenReturn(cachedSource);
+
+    WsTester.TestRequest request = tester.newGetRequest("api/sources", "hash").setParam("key", COMPONENT_KEY);
+    assertThat(request.execute().outputAsString()).isEqualTo("123456");
+  }
+
   @Test
   public void hashes_empty_if_no_source() throws Exception {
     db.prepareDbUnit(getClass(), "no_source.xml");
@@ -26,6 +26,7 @@ import org.sonar.api.server.ws.WebService;
 import org.sonar.server.db.DbClient;
 import org.sonar.server.source.HtmlSourceDecorator;
 import org.sonar.server.source.SourceService;
+import org.sonar.server.source.db.SourceDataCache;
 import org.sonar.server.source.index.SourceLineIndex;
 import org.sonar.server.tester.UserSessionRule;
 import org.sonar.server.ws.WsTester;
@@ -40,7 +41,7 @@ public class SourcesWsTest {
   ShowAction showAction = new ShowAction(mock(SourceService.class), mock(DbClient.class), userSessionRule);
   RawAction rawAction = new RawAction(mock(DbClient.class), mock(SourceService.class), userSessionRule);
   LinesAction linesAction = new LinesAction(mock(DbClient.class), mock(SourceLineIndex.class), mock(HtmlSourceDecorator.class), userSessionRule);
-  HashAction hashAction = new HashAction(mock(DbClient.class), userSessionRule);
+  HashAction hashAction = new HashAction(mock(DbClient.class), mock(SourceDataCache.class), userSessionRule);
   IndexAction indexAction = new IndexAction(mock(DbClient.class), mock(SourceService.class), userSessionRule);
   WsTester tester = new WsTester(new SourcesWs(showAction, rawAction, linesAction, hashAction, indexAction));
 
@@ -19,12 +19,14 @@
  */
 package org.sonar.server.util;
 
+import com.google.common.base.Suppliers;
 import org.junit.Test;
 import org.sonar.api.utils.log.Logger;
 
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.AdditionalMatchers.and;
 import static org.mockito.Mockito.*;
 
 public class ProgressLoggerTest {
@@ -46,6 +48,17 @@ public class ProgressLoggerTest {
     verify(logger).info(startsWith("43 rows processed"));
   }
 
+  @Test
+  public void append_details() {
+    Logger logger = mock(Logger.class);
+    ProgressLogger progress = new ProgressLogger("ProgressLoggerTest", new AtomicLong(42L), logger)
+      .setDetails(Suppliers.ofInstance("2 in-flight requests"));
+
+    progress.log();
+
+    verify(logger).info(and(startsWith("42 rows processed"), endsWith(" - 2 in-flight requests")));
+  }
+
   @Test
   public void create() {
     ProgressLogger progress = ProgressLogger.create(getClass(), new AtomicLong());
@@ -0,0 +1,168 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.util.cache;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import org.junit.Test;
+import org.sonar.api.utils.System2;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class WeightedLruCacheTest {
+
+  static final WeightedLruCache.Weigher<String, String> LENGTH_WEIGHER = new WeightedLruCache.Weigher<String, String>() {
+    @Override
+    public int weigh(String key, String value) {
+      return value.length();
+    }
+  };
+
+  System2 system = mock(System2.class);
+  WeightedLruCache<String, String> cache = new WeightedLruCache<>(10L, LENGTH_WEIGHER);
+
+  @Test
+  public void get_and_put() {
+    assertThat(cache.getIfPresent("a")).isNull();
+    cache.put("a", "AAA");
+
+    assertThat(cache.getIfPresent("a")).isEqualTo("AAA");
+    assertThat(cache.size()).isEqualTo(1L);
+    assertThat(cache.weight()).isEqualTo(3L);
+    assertThat(cache.maxWeight()).isEqualTo(10L);
+    assertThat(cache.stats().hitCount()).isEqualTo(1L);
+    assertThat(cache.stats().missCount()).isEqualTo(1L);
+
+    cache.put("a", "A");
+    assertThat(cache.getIfPresent("a")).isEqualTo("A");
+    assertThat(cache.weight()).isEqualTo(1L);
+  }
+
+  @Test
+  public void load_missing_values() {
+    Function<String, String> loader = mock(Function.class);
+    when(loader.apply("a")).thenReturn("AAA");
+
+    assertThat(cache.get("a", loader)).isEqualTo("AAA");
+    assertThat(cache.get("a", loader)).isEqualTo("AAA");
+
+    verify(loader, times(1)).apply("a");
+    assertThat(cache.stats().loadCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void do_not_cache_value_loaded_while_entries_are_invalidated() {
+    Function<String, String> loader = new Function<String, String>() {
+      @Override
+      public String apply(String key) {
+        // data is updated then invalidated by another thread while being loaded
+        cache.invalidate(key);
+        return "OLD";
+      }
+    };
+
+    assertThat(cache.get("a", loader)).isEqualTo("OLD");
+    assertThat(cache.getIfPresent("a")).isNull();
+    assertThat(cache.stats().loadCount()).isEqualTo(1L);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fail_if_loaded_value_is_null() {
+    cache.get("a", mock(Function.class));
+  }
+
+  @Test
+  public void evict_least_recently_used_entries() {
+    cache.put("a", "AAAA");
+    cache.put("b", "BBBB");
+    // a is now more recently used than b
+    cache.getIfPresent("a");
+
+    cache.put("c", "CCCC");
+
+    assertThat(cache.getIfPresent("a")).isEqualTo("AAAA");
+    assertThat(cache.getIfPresent("b")).isNull();
+    assertThat(cache.getIfPresent("c")).isEqualTo("CCCC");
+    assertThat(cache.weight()).isEqualTo(8L);
+    assertThat(cache.stats().evictionCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void do_not_keep_entries_heavier_than_max_weight() {
+    cache.put("a", "AAAAAAAAAAAA");
+
+    assertThat(cache.getIfPresent("a")).isNull();
+    assertThat(cache.weight()).isZero();
+    assertThat(cache.stats().evictionCount()).isEqualTo(1L);
+  }
+
+  @Test
+  public void expire_entries() {
+    WeightedLruCache<String, String> expiringCache = new WeightedLruCache<>(10L, 100L, LENGTH_WEIGHER, system);
+    when(system.now()).thenReturn(1000L);
+    expiringCache.put("a", "AAA");
+
+    when(system.now()).thenReturn(1099L);
+    assertThat(expiringCache.getIfPresent("a")).isEqualTo("AAA");
+
+    when(system.now()).thenReturn(1100L);
+    assertThat(expiringCache.getIfPresent("a")).isNull();
+    assertThat(expiringCache.weight()).isZero();
+  }
+
+  @Test
+  public void invalidate() {
+    cache.put("a", "A");
+    cache.put("b", "BB");
+    cache.put("c", "CCC");
+    cache.put("d", "DDDD");
+
+    cache.invalidate("a");
+    assertThat(cache.getIfPresent("a")).isNull();
+
+    cache.invalidateAll(Arrays.asList("b", "unknown"));
+    assertThat(cache.getIfPresent("b")).isNull();
+
+    cache.invalidateIf(new Predicate<String>() {
+      @Override
+      public boolean apply(String value) {
+        return value.startsWith("C");
+      }
+    });
+    assertThat(cache.getIfPresent("c")).isNull();
+    assertThat(cache.getIfPresent("d")).isEqualTo("DDDD");
+    assertThat(cache.weight()).isEqualTo(4L);
+
+    cache.invalidateAll();
+    assertThat(cache.size()).isZero();
+    assertThat(cache.weight()).isZero();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_negative_max_weight() {
+    new WeightedLruCache<>(-1L, LENGTH_WEIGHER);
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.ws;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonar.server.plugins.MimeTypes;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServletResponseTest {
+
+  HttpServletResponse httpResponse = mock(HttpServletResponse.class);
+  ByteArrayOutputStream httpOutput = new ByteArrayOutputStream();
+
+  @Before
+  public void setUp() throws Exception {
+    when(httpResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        httpOutput.write(b);
+      }
+    });
+  }
+
+  @Test
+  public void buffer_output_by_default() throws Exception {
+    ServletResponse response = new ServletResponse();
+    response.stream().setMediaType(MimeTypes.TXT);
+    write(response, "hello");
+
+    assertThat(response.stream().isCommitted()).isFalse();
+    assertThat(response.stream().outputAsString()).isEqualTo("hello");
+    assertThat(response.stream().toByteArray()).isEqualTo("hello".getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void keep_small_output_in_memory() throws Exception {
+    ServletResponse response = new ServletResponse(httpResponse, false, 10);
+    write(response, "hello");
+    response.stream().finish();
+
+    assertThat(response.stream().isCommitted()).isFalse();
+    assertThat(response.stream().outputAsString()).isEqualTo("hello");
+    verify(httpResponse, never()).getOutputStream();
+  }
+
+  @Test
+  public void stream_big_output() throws Exception {
+    ServletResponse response = new ServletResponse(httpResponse, false, 10);
+    response.stream().setMediaType(MimeTypes.TXT).setStatus(201);
+    write(response, "0123456789abcdef");
+    write(response, "ghij");
+    response.stream().finish();
+
+    assertThat(response.stream().isCommitted()).isTrue();
+    assertThat(new String(httpOutput.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("0123456789abcdefghij");
+    verify(httpResponse).setStatus(201);
+    verify(httpResponse).setContentType(MimeTypes.TXT);
+    verify(httpResponse, never()).setHeader("Content-Encoding", "gzip");
+  }
+
+  @Test
+  public void compress_streamed_output_if_accepted_by_client() throws Exception {
+    HttpServletRequest httpRequest = mock(HttpServletRequest.class);
+    when(httpRequest.getHeader("Accept-Encoding")).thenReturn("gzip, deflate");
+    ServletResponse response = new ServletResponse(httpRequest, httpResponse);
+    StringBuilder content = new StringBuilder();
+    while (content.length() <= ServletResponse.DEFAULT_BUFFER_SIZE) {
+      content.append("compress me ");
+    }
+    write(response, content.toString());
+    response.stream().finish();
+
+    assertThat(response.stream().isCommitted()).isTrue();
+    verify(httpResponse).setHeader("Content-Encoding", "gzip");
+    GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(httpOutput.toByteArray()));
+    assertThat(IOUtils.toString(input, StandardCharsets.UTF_8)).isEqualTo(content.toString());
+  }
+
+  @Test
+  public void fail_to_reset_committed_output() throws Exception {
+    ServletResponse response = new ServletResponse(httpResponse, false, 10);
+    write(response, "0123456789abcdef");
+
+    try {
+      response.stream().reset();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Response is already committed");
+    }
+  }
+
+  @Test
+  public void do_not_complete_aborted_output() throws Exception {
+    ServletResponse response = new ServletResponse(httpResponse, true, 10);
+    write(response, "0123456789abcdef");
+    response.stream().abort();
+
+    try {
+      response.stream().finish();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Response has been aborted");
+    }
+    // gzip trailer is not written
+    try {
+      IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(httpOutput.toByteArray())), StandardCharsets.UTF_8);
+      fail();
+    } catch (IOException e) {
+      // expected, compressed output is truncated
+    }
+  }
+
+  private static void write(ServletResponse response, String s) throws IOException {
+    OutputStream output = response.stream().output();
+    output.write(s.getBytes(StandardCharsets.UTF_8));
+    output.close();
+  }
+}
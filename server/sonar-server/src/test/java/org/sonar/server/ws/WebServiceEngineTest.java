@@ -38,13 +38,21 @@ import org.sonar.server.plugins.MimeTypes;
 import org.sonar.server.tester.UserSessionRule;
 
 import javax.annotation.Nullable;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Locale;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class WebServiceEngineTest {
@@ -239,6 +247,32 @@ public class WebServiceEngineTest {
     assertThat(response.stream().mediaType()).isEqualTo(MimeTypes.JSON);
   }
 
+  @Test
+  public void do_not_complete_response_if_failure_after_commit() throws Exception {
+    ValidatingRequest request = new SimpleRequest("GET");
+    HttpServletResponse httpResponse = mock(HttpServletResponse.class);
+    final ByteArrayOutputStream httpOutput = new ByteArrayOutputStream();
+    when(httpResponse.getOutputStream()).thenReturn(new ServletOutputStream() {
+      @Override
+      public void write(int b) {
+        httpOutput.write(b);
+      }
+    });
+    ServletResponse response = new ServletResponse(httpResponse, false, 10);
+
+    try {
+      engine.execute(request, response, "api/system", "fail_after_commit");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).contains("response with status 200 is already committed");
+      assertThat(e.getCause()).hasMessage("Unexpected");
+    }
+    assertThat(response.stream().isCommitted()).isTrue();
+    assertThat(new String(httpOutput.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("0123456789abcdef");
+    verify(httpResponse).setStatus(200);
+    verify(httpResponse, never()).setStatus(500);
+  }
+
   @Test
   public void bad_request_with_i18n_message() {
     userSessionRule.setLocale(Locale.ENGLISH);
@@ -325,6 +359,18 @@ public class WebServiceEngineTest {
             throw new IllegalStateException("Unexpected");
           }
         });
+      newController.createAction("fail_after_commit")
+        .setHandler(new RequestHandler() {
+          @Override
+          public void handle(Request request, Response response) {
+            try {
+              response.stream().output().write("0123456789abcdef".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+              throw new IllegalStateException(e);
+            }
+            throw new IllegalStateException("Unexpected");
+          }
+        });
       newController.createAction("fail_with_i18n_message")
         .setHandler(new RequestHandler() {
           @Override
@@ -29,14 +29,24 @@ class Api::JavaWsController < Api::ApiController
 
   def index
     ws_request = Java::OrgSonarServerWs::ServletRequest.new(servlet_request, params.to_java)
-    ws_response = Java::OrgSonarServerWs::ServletResponse.new()
+    servlet_response = request.env['java.servlet_response']
+    if servlet_response
+      # big responses are streamed by Java to HttpServletResponse
+      ws_response = Java::OrgSonarServerWs::ServletResponse.new(servlet_request, servlet_response)
+    else
+      ws_response = Java::OrgSonarServerWs::ServletResponse.new()
+    end
     engine = Java::OrgSonarServerPlatform::Platform.component(Java::OrgSonarServerWs::WebServiceEngine.java_class)
     engine.execute(ws_request, ws_response, params[:wspath], params[:wsaction])
 
-    # response is already written to HttpServletResponse
-    render :text => ws_response.stream().output().toByteArray(),
-           :status => ws_response.stream().httpStatus(),
-           :content_type => ws_response.stream().mediaType()
+    if ws_response.stream().isCommitted()
+      # response is already written to HttpServletResponse
+      render :text => ''
+    else
+      render :text => ws_response.stream().toByteArray(),
+             :status => ws_response.stream().httpStatus(),
+             :content_type => ws_response.stream().mediaType()
+    end
   end
 
   def redirect_to_ws_listing
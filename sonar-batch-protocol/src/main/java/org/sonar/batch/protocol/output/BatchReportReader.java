@@ -19,36 +19,92 @@
  */
 package org.sonar.batch.protocol.output;
 
-import org.sonar.batch.protocol.ProtobufUtil;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import org.apache.commons.io.IOUtils;
 import org.sonar.batch.protocol.output.BatchReport.Issues;
 
 import javax.annotation.CheckForNull;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collections;
 import java.util.List;
 
-public class BatchReportReader {
+import static org.sonar.batch.protocol.output.FileStructure.entryName;
 
-  private final FileStructure fileStructure;
+/**
+ * Reads an analysis report, whatever its storage (directory, zip file or container, see {@link ReportEntries}).
+ * Methods returning {@link InputStream} open a new stream that must be closed by caller.
+ */
+public class BatchReportReader implements Closeable {
+
+  private final ReportEntries entries;
 
+  /**
+   * Reads the report generated by {@link BatchReportWriter} in the given directory, whatever its {@link ReportFormat}
+   */
   public BatchReportReader(File dir) {
-    this.fileStructure = new FileStructure(dir);
+    this(ReportContainer.isContainer(dir) ? new ContainerReportEntries(dir) : new DirectoryReportEntries(dir));
+  }
+
+  public BatchReportReader(ReportEntries entries) {
+    this.entries = entries;
+  }
+
+  /**
+   * Reads the zip file generated by batch. Report in format {@link ReportFormat#FILES} is read without
+   * being extracted. Report in format {@link ReportFormat#CONTAINER} is made of two big files only,
+   * which are extracted into workDir in order to be memory-mapped.
+   */
+  public static BatchReportReader fromZip(File zip, File workDir) {
+    ZipReportEntries zipEntries = new ZipReportEntries(zip);
+    if (!zipEntries.exists(ReportContainer.INDEX_FILE)) {
+      return new BatchReportReader(zipEntries);
+    }
+    try {
+      extract(zipEntries, ReportContainer.INDEX_FILE, workDir);
+      extract(zipEntries, ReportContainer.DATA_FILE, workDir);
+    } finally {
+      zipEntries.close();
+    }
+    return new BatchReportReader(new ContainerReportEntries(workDir));
+  }
+
+  private static void extract(ReportEntries entries, String entryName, File toDir) {
+    InputStream input = entries.open(entryName);
+    if (input == null) {
+      throw new IllegalStateException("Missing entry in analysis report: " + entryName);
+    }
+    OutputStream output = null;
+    try {
+      output = new FileOutputStream(new File(toDir, entryName));
+      IOUtils.copyLarge(input, output);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to extract entry " + entryName + " of analysis report into " + toDir, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+      IOUtils.closeQuietly(output);
+    }
   }
 
   public BatchReport.Metadata readMetadata() {
-    File file = fileStructure.metadataFile();
-    if (!doesFileExists(file)) {
-      throw new IllegalStateException("Metadata file is missing in analysis report: " + file);
+    if (!entries.exists(FileStructure.METADATA_ENTRY)) {
+      throw new IllegalStateException("Metadata file is missing in analysis report: " + FileStructure.METADATA_ENTRY);
     }
-    return ProtobufUtil.readFile(file, BatchReport.Metadata.PARSER);
+    return read(FileStructure.METADATA_ENTRY, BatchReport.Metadata.PARSER);
   }
 
   public List<BatchReport.Measure> readComponentMeasures(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
-    if (doesFileExists(file)) {
+    String entry = entryName(FileStructure.Domain.MEASURES, componentRef);
+    if (entries.exists(entry)) {
       // all the measures are loaded in memory
-      BatchReport.Measures measures = ProtobufUtil.readFile(file, BatchReport.Measures.PARSER);
+      BatchReport.Measures measures = read(entry, BatchReport.Measures.PARSER);
       return measures.getMeasureList();
     }
     return Collections.emptyList();
@@ -56,131 +112,139 @@ public class BatchReportReader {
 
   @CheckForNull
   public BatchReport.Changesets readChangesets(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, componentRef);
-    if (doesFileExists(file)) {
-      return ProtobufUtil.readFile(file, BatchReport.Changesets.PARSER);
+    String entry = entryName(FileStructure.Domain.CHANGESETS, componentRef);
+    if (entries.exists(entry)) {
+      return read(entry, BatchReport.Changesets.PARSER);
     }
     return null;
   }
 
   public BatchReport.Component readComponent(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, componentRef);
-    if (!doesFileExists(file)) {
-      throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: " + file);
+    String entry = entryName(FileStructure.Domain.COMPONENT, componentRef);
+    if (!entries.exists(entry)) {
+      throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: " + entry);
     }
-    return ProtobufUtil.readFile(file, BatchReport.Component.PARSER);
+    return read(entry, BatchReport.Component.PARSER);
   }
 
   public List<BatchReport.Issue> readComponentIssues(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    if (doesFileExists(file)) {
+    String entry = entryName(FileStructure.Domain.ISSUES, componentRef);
+    if (entries.exists(entry)) {
       // all the issues are loaded in memory
-      BatchReport.Issues issues = ProtobufUtil.readFile(file, BatchReport.Issues.PARSER);
+      BatchReport.Issues issues = read(entry, BatchReport.Issues.PARSER);
       return issues.getIssueList();
     }
     return Collections.emptyList();
   }
 
   public Issues readDeletedComponentIssues(int deletedComponentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES_ON_DELETED, deletedComponentRef);
-    if (!doesFileExists(file)) {
+    String entry = entryName(FileStructure.Domain.ISSUES_ON_DELETED, deletedComponentRef);
+    if (!entries.exists(entry)) {
       throw new IllegalStateException("Unable to find report for deleted component #" + deletedComponentRef);
     }
     // all the issues are loaded in memory
-    return ProtobufUtil.readFile(file, Issues.PARSER);
+    return read(entry, Issues.PARSER);
   }
 
   public List<BatchReport.Duplication> readComponentDuplications(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
-    if (doesFileExists(file)) {
+    String entry = entryName(FileStructure.Domain.DUPLICATIONS, componentRef);
+    if (entries.exists(entry)) {
       // all the duplications are loaded in memory
-      BatchReport.Duplications duplications = ProtobufUtil.readFile(file, BatchReport.Duplications.PARSER);
+      BatchReport.Duplications duplications = read(entry, BatchReport.Duplications.PARSER);
       return duplications.getDuplicationList();
     }
     return Collections.emptyList();
   }
 
   public List<BatchReport.Symbols.Symbol> readComponentSymbols(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
-    if (doesFileExists(file)) {
+    String entry = entryName(FileStructure.Domain.SYMBOLS, componentRef);
+    if (entries.exists(entry)) {
       // all the symbols are loaded in memory
-      BatchReport.Symbols symbols = ProtobufUtil.readFile(file, BatchReport.Symbols.PARSER);
+      BatchReport.Symbols symbols = read(entry, BatchReport.Symbols.PARSER);
       return symbols.getSymbolList();
     }
     return Collections.emptyList();
   }
 
   public boolean hasSyntaxHighlighting(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    return file.exists();
+    return entries.exists(entryName(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef));
   }
 
+  /**
+   * @return stream of delimited {@link BatchReport.SyntaxHighlighting}, null if the file has no highlighting
+   */
   @CheckForNull
-  public File readComponentSyntaxHighlighting(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
-    if (doesFileExists(file)) {
-      return file;
-    }
-    return null;
+  public InputStream readComponentSyntaxHighlighting(int fileRef) {
+    return entries.open(entryName(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef));
   }
 
+  /**
+   * @return stream of delimited {@link BatchReport.Coverage}, null if the file has no coverage
+   */
   @CheckForNull
-  public File readComponentCoverage(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, fileRef);
-    if (doesFileExists(file)) {
-      return file;
+  public InputStream readComponentCoverage(int fileRef) {
+    return entries.open(entryName(FileStructure.Domain.COVERAGES, fileRef));
+  }
+
+  /**
+   * @return stream of the UTF-8 source code
+   */
+  public InputStream readFileSource(int fileRef) {
+    String entry = entryName(FileStructure.Domain.SOURCE, fileRef);
+    InputStream input = entries.open(entry);
+    if (input == null) {
+      throw new IllegalStateException("Unable to find source for file #" + fileRef + ". File does not exist: " + entry);
     }
-    return null;
-  }
-
-  public File readFileSource(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SOURCE, fileRef);
-    if (!doesFileExists(file)) {
-      throw new IllegalStateException("Unable to find source for file #" + fileRef + ". File does not exist: " + file);
-    }
-    return file;
+    return input;
   }
 
+  /**
+   * @return stream of delimited {@link BatchReport.Test}, null if the file has no tests
+   */
   @CheckForNull
-  public File readTests(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, testFileRef);
-    if (doesFileExists(file)) {
-      return file;
-    }
-
-    return null;
+  public InputStream readTests(int testFileRef) {
+    return entries.open(entryName(FileStructure.Domain.TESTS, testFileRef));
   }
 
+  /**
+   * @return stream of delimited {@link BatchReport.CoverageDetail}, null if the file has no coverage per test
+   */
   @CheckForNull
-  public File readCoverageDetails(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
-    if (doesFileExists(file)) {
-      return file;
-    }
-
-    return null;
+  public InputStream readCoverageDetails(int testFileRef) {
+    return entries.open(entryName(FileStructure.Domain.COVERAGE_DETAILS, testFileRef));
   }
 
+  /**
+   * @return stream of delimited {@link BatchReport.FileDependency}, null if the file has no dependencies
+   */
   @CheckForNull
-  public File readFileDependencies(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.FILE_DEPENDENCIES, fileRef);
-    if (doesFileExists(file)) {
-      return file;
-    }
-    return null;
+  public InputStream readFileDependencies(int fileRef) {
+    return entries.open(entryName(FileStructure.Domain.FILE_DEPENDENCIES, fileRef));
   }
 
   public List<BatchReport.ModuleDependencies.ModuleDependency> readModuleDependencies(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.MODULE_DEPENDENCIES, componentRef);
-    if (doesFileExists(file)) {
+    String entry = entryName(FileStructure.Domain.MODULE_DEPENDENCIES, componentRef);
+    if (entries.exists(entry)) {
       // all the module dependencies are loaded in memory
-      BatchReport.ModuleDependencies dependencies = ProtobufUtil.readFile(file, BatchReport.ModuleDependencies.PARSER);
+      BatchReport.ModuleDependencies dependencies = read(entry, BatchReport.ModuleDependencies.PARSER);
       return dependencies.getDepList();
     }
     return Collections.emptyList();
   }
 
-  private boolean doesFileExists(File file) {
-    return file.exists() && file.isFile();
+  @Override
+  public void close() {
+    entries.close();
+  }
+
+  private <T extends Message> T read(String entry, Parser<T> parser) {
+    InputStream input = entries.open(entry);
+    try {
+      return parser.parseFrom(input);
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException("Failed to read file: " + entry, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
   }
 }
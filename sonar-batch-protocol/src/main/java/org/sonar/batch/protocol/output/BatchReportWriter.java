@@ -19,61 +19,78 @@
  */
 package org.sonar.batch.protocol.output;
 
-import org.sonar.batch.protocol.ProtobufUtil;
+import com.google.protobuf.Message;
+import org.apache.commons.io.IOUtils;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
 
-public class BatchReportWriter {
+import static org.sonar.batch.protocol.output.FileStructure.entryName;
 
+public class BatchReportWriter implements Closeable {
+
+  private final ReportFormat format;
   private final FileStructure fileStructure;
+  private final ReportEntriesWriter entries;
 
   public BatchReportWriter(File dir) {
+    this(dir, ReportFormat.FILES);
+  }
+
+  public BatchReportWriter(File dir, ReportFormat format) {
     if (!dir.exists() && !dir.mkdirs()) {
       throw new IllegalStateException("Unable to create directory: " + dir);
     }
+    this.format = format;
     this.fileStructure = new FileStructure(dir);
+    this.entries = format == ReportFormat.CONTAINER ? new ContainerReportEntriesWriter(dir) : new DirectoryReportEntriesWriter(dir);
   }
 
+  public ReportFormat getFormat() {
+    return format;
+  }
+
+  /**
+   * Only relevant to the format {@link ReportFormat#FILES}
+   */
   public FileStructure getFileStructure() {
     return fileStructure;
   }
 
   public boolean hasComponentData(FileStructure.Domain domain, int componentRef) {
-    File file = fileStructure.fileFor(domain, componentRef);
-    return file.exists() && file.isFile();
+    return entries.exists(entryName(domain, componentRef));
   }
 
   /**
    * Metadata is mandatory
    */
   public void writeMetadata(BatchReport.Metadata metadata) {
-    ProtobufUtil.writeToFile(metadata, fileStructure.metadataFile());
+    write(FileStructure.METADATA_ENTRY, metadata);
   }
 
   public void writeComponent(BatchReport.Component component) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, component.getRef());
-    ProtobufUtil.writeToFile(component, file);
+    write(entryName(FileStructure.Domain.COMPONENT, component.getRef()), component);
   }
 
   public void writeComponentIssues(int componentRef, Iterable<BatchReport.Issue> issues) {
     BatchReport.Issues.Builder issuesBuilder = BatchReport.Issues.newBuilder();
     issuesBuilder.setComponentRef(componentRef);
     issuesBuilder.addAllIssue(issues);
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
-    ProtobufUtil.writeToFile(issuesBuilder.build(), file);
+    write(entryName(FileStructure.Domain.ISSUES, componentRef), issuesBuilder.build());
   }
 
   public void writeComponentMeasures(int componentRef, Iterable<BatchReport.Measure> measures) {
     BatchReport.Measures.Builder measuresBuilder = BatchReport.Measures.newBuilder();
     measuresBuilder.setComponentRef(componentRef);
     measuresBuilder.addAllMeasure(measures);
-    File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
-    ProtobufUtil.writeToFile(measuresBuilder.build(), file);
+    write(entryName(FileStructure.Domain.MEASURES, componentRef), measuresBuilder.build());
   }
 
   public void writeComponentChangesets(BatchReport.Changesets changesets) {
-    File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, changesets.getComponentRef());
-    ProtobufUtil.writeToFile(changesets, file);
+    write(entryName(FileStructure.Domain.CHANGESETS, changesets.getComponentRef()), changesets);
   }
 
   /**
@@ -85,65 +102,98 @@ public class BatchReportWriter {
     issuesBuilder.setComponentRef(componentRef);
     issuesBuilder.setComponentUuid(componentUuid);
     issuesBuilder.addAllIssue(issues);
-    File file = fileStructure.fileFor(FileStructure.Domain.ISSUES_ON_DELETED, componentRef);
-    ProtobufUtil.writeToFile(issuesBuilder.build(), file);
+    write(entryName(FileStructure.Domain.ISSUES_ON_DELETED, componentRef), issuesBuilder.build());
   }
 
   public void writeComponentDuplications(int componentRef, Iterable<BatchReport.Duplication> duplications) {
     BatchReport.Duplications.Builder builder = BatchReport.Duplications.newBuilder();
     builder.setComponentRef(componentRef);
     builder.addAllDuplication(duplications);
-    File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
-    ProtobufUtil.writeToFile(builder.build(), file);
+    write(entryName(FileStructure.Domain.DUPLICATIONS, componentRef), builder.build());
   }
 
   public void writeComponentSymbols(int componentRef, Iterable<BatchReport.Symbols.Symbol> symbols) {
     BatchReport.Symbols.Builder builder = BatchReport.Symbols.newBuilder();
     builder.setFileRef(componentRef);
     builder.addAllSymbol(symbols);
-    File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
-    ProtobufUtil.writeToFile(builder.build(), file);
+    write(entryName(FileStructure.Domain.SYMBOLS, componentRef), builder.build());
   }
 
   public void writeComponentSyntaxHighlighting(int componentRef, Iterable<BatchReport.SyntaxHighlighting> syntaxHighlightingRules) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    ProtobufUtil.writeMessagesToFile(syntaxHighlightingRules, file);
+    appendDelimited(entryName(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef), syntaxHighlightingRules);
   }
 
   public void writeComponentCoverage(int componentRef, Iterable<BatchReport.Coverage> coverageList) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef);
-    ProtobufUtil.writeMessagesToFile(coverageList, file);
+    appendDelimited(entryName(FileStructure.Domain.COVERAGES, componentRef), coverageList);
   }
 
   public void writeTests(int componentRef, Iterable<BatchReport.Test> tests) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, componentRef);
-    ProtobufUtil.writeMessagesToFile(tests, file);
+    appendDelimited(entryName(FileStructure.Domain.TESTS, componentRef), tests);
   }
 
   public void writeCoverageDetails(int componentRef, Iterable<BatchReport.CoverageDetail> tests) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, componentRef);
-    ProtobufUtil.writeMessagesToFile(tests, file);
+    appendDelimited(entryName(FileStructure.Domain.COVERAGE_DETAILS, componentRef), tests);
   }
 
   public void writeFileDependencies(int componentRef, Iterable<BatchReport.FileDependency> fileDependencies) {
-    File file = fileStructure.fileFor(FileStructure.Domain.FILE_DEPENDENCIES, componentRef);
-    ProtobufUtil.writeMessagesToFile(fileDependencies, file);
+    appendDelimited(entryName(FileStructure.Domain.FILE_DEPENDENCIES, componentRef), fileDependencies);
   }
 
   public void appendFileDependency(int componentRef, BatchReport.FileDependency fileDependency) {
-    File file = fileStructure.fileFor(FileStructure.Domain.FILE_DEPENDENCIES, componentRef);
-    ProtobufUtil.appendToFile(fileDependency, file);
+    appendDelimited(entryName(FileStructure.Domain.FILE_DEPENDENCIES, componentRef), Collections.singletonList(fileDependency));
   }
 
   public void writeModuleDependencies(int componentRef, Iterable<BatchReport.ModuleDependencies.ModuleDependency> dependencies) {
     BatchReport.ModuleDependencies.Builder builder = BatchReport.ModuleDependencies.newBuilder();
     builder.addAllDep(dependencies);
-    File file = fileStructure.fileFor(FileStructure.Domain.MODULE_DEPENDENCIES, componentRef);
-    ProtobufUtil.writeToFile(builder.build(), file);
+    write(entryName(FileStructure.Domain.MODULE_DEPENDENCIES, componentRef), builder.build());
   }
 
+  /**
+   * Only supported by the format {@link ReportFormat#FILES}. Use {@link #newSourceOutput(int)} for other formats.
+   */
   public File getSourceFile(int componentRef) {
+    if (format != ReportFormat.FILES) {
+      throw new IllegalStateException("Source files are not available in report format " + format);
+    }
     return fileStructure.fileFor(FileStructure.Domain.SOURCE, componentRef);
   }
 
+  /**
+   * Opens the UTF-8 source of a file for writing. Stream must be closed by caller.
+   */
+  public OutputStream newSourceOutput(int componentRef) {
+    return entries.create(entryName(FileStructure.Domain.SOURCE, componentRef));
+  }
+
+  @Override
+  public void close() {
+    entries.close();
+  }
+
+  private void write(String entryName, Message message) {
+    OutputStream out = entries.create(entryName);
+    try {
+      message.writeTo(out);
+      out.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write protocol buffer data to file " + entryName, e);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
+
+  private <MESSAGE extends Message> void appendDelimited(String entryName, Iterable<MESSAGE> messages) {
+    OutputStream out = entries.append(entryName);
+    try {
+      for (MESSAGE message : messages) {
+        message.writeDelimitedTo(out);
+      }
+      out.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to append protocol buffer data to file " + entryName, e);
+    } finally {
+      IOUtils.closeQuietly(out);
+    }
+  }
 }
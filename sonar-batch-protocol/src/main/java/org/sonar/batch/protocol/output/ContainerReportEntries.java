@@ -0,0 +1,187 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import org.apache.commons.io.IOUtils;
+
+import javax.annotation.CheckForNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a report in {@link ReportFormat#CONTAINER} format. The data file is memory-mapped, so opening an
+ * entry does not involve any system call nor copy.
+ * Entries written after the opening of the container are not visible.
+ */
+public class ContainerReportEntries implements ReportEntries {
+
+  /**
+   * A {@link MappedByteBuffer} can not exceed 2Gb, so big data files are mapped as several regions
+   */
+  private static final long REGION_SIZE = 1L << 30;
+
+  private final File dir;
+  private final Map<String, List<ReportContainer.Segment>> segmentsByEntry;
+  private final RandomAccessFile dataFile;
+  private final MappedByteBuffer[] regions;
+
+  public ContainerReportEntries(File dir) {
+    this.dir = dir;
+    this.segmentsByEntry = loadIndex(new File(dir, ReportContainer.INDEX_FILE));
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(new File(dir, ReportContainer.DATA_FILE), "r");
+      this.dataFile = raf;
+      this.regions = map(raf.getChannel());
+    } catch (IOException e) {
+      IOUtils.closeQuietly(raf);
+      throw new IllegalStateException("Fail to open report container " + dir, e);
+    }
+  }
+
+  private static Map<String, List<ReportContainer.Segment>> loadIndex(File indexFile) {
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+      return ReportContainer.readIndex(input);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to read index of report container " + indexFile, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private static MappedByteBuffer[] map(FileChannel channel) throws IOException {
+    long size = channel.size();
+    int nbRegions = (int) ((size + REGION_SIZE - 1) / REGION_SIZE);
+    MappedByteBuffer[] result = new MappedByteBuffer[nbRegions];
+    for (int i = 0; i < nbRegions; i++) {
+      long start = i * REGION_SIZE;
+      result[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+    }
+    return result;
+  }
+
+  @Override
+  public boolean exists(String entryName) {
+    return segmentsByEntry.containsKey(entryName);
+  }
+
+  @Override
+  @CheckForNull
+  public InputStream open(String entryName) {
+    List<ReportContainer.Segment> segments = segmentsByEntry.get(entryName);
+    if (segments == null) {
+      return null;
+    }
+    List<InputStream> parts = new ArrayList<>();
+    for (ReportContainer.Segment segment : segments) {
+      addParts(segment, parts);
+    }
+    if (parts.isEmpty()) {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+    if (parts.size() == 1) {
+      return parts.get(0);
+    }
+    return new SequenceInputStream(Collections.enumeration(parts));
+  }
+
+  private void addParts(ReportContainer.Segment segment, List<InputStream> parts) {
+    long offset = segment.offset;
+    long remaining = segment.length;
+    while (remaining > 0L) {
+      int regionIndex = (int) (offset / REGION_SIZE);
+      if (regionIndex >= regions.length) {
+        throw new IllegalStateException(String.format("Entry %s is out of the bounds of report container %s", segment.entryName, dir));
+      }
+      int regionOffset = (int) (offset % REGION_SIZE);
+      int length = (int) Math.min(remaining, REGION_SIZE - regionOffset);
+      ByteBuffer buffer = regions[regionIndex].duplicate();
+      buffer.position(regionOffset);
+      buffer.limit(regionOffset + length);
+      parts.add(new ByteBufferInputStream(buffer.slice()));
+      offset += length;
+      remaining -= length;
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      dataFile.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to close report container " + dir, e);
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      if (len == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override
+    public long skip(long n) {
+      int skipped = (int) Math.max(0L, Math.min(n, buffer.remaining()));
+      buffer.position(buffer.position() + skipped);
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Appends entries to the single data file of {@link ReportFormat#CONTAINER}. Data and index are flushed
+ * each time an entry is closed, so that the report can be read at any time.
+ * Only one entry can be written at a time.
+ */
+public class ContainerReportEntriesWriter implements ReportEntriesWriter {
+
+  private final File dir;
+  private final OutputStream data;
+  private final DataOutputStream index;
+  private final Set<String> entryNames = new HashSet<>();
+  private long position = 0L;
+  private EntryOutputStream current = null;
+  private boolean closed = false;
+
+  /**
+   * Creates a new container in the given directory. Existing container, if any, is overwritten.
+   */
+  public ContainerReportEntriesWriter(File dir) {
+    this.dir = dir;
+    OutputStream dataOutput = null;
+    try {
+      dataOutput = new BufferedOutputStream(new FileOutputStream(new File(dir, ReportContainer.DATA_FILE), false));
+      this.data = dataOutput;
+      this.index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, ReportContainer.INDEX_FILE), false)));
+      ReportContainer.writeHeader(index);
+      index.flush();
+    } catch (IOException e) {
+      IOUtils.closeQuietly(dataOutput);
+      throw new IllegalStateException("Unable to create report container in " + dir, e);
+    }
+  }
+
+  @Override
+  public boolean exists(String entryName) {
+    return entryNames.contains(entryName);
+  }
+
+  @Override
+  public OutputStream create(String entryName) {
+    return open(entryName, false);
+  }
+
+  @Override
+  public OutputStream append(String entryName) {
+    return open(entryName, true);
+  }
+
+  private OutputStream open(String entryName, boolean append) {
+    if (closed) {
+      throw new IllegalStateException("Report container is closed: " + dir);
+    }
+    if (current != null) {
+      throw new IllegalStateException(String.format("Can not write entry %s while entry %s is being written", entryName, current.entryName));
+    }
+    current = new EntryOutputStream(entryName, append, position);
+    return current;
+  }
+
+  private void onEntryClosed(EntryOutputStream entry) throws IOException {
+    current = null;
+    data.flush();
+    ReportContainer.writeSegment(index, new ReportContainer.Segment(entry.entryName, entry.append, entry.offset, position - entry.offset));
+    index.flush();
+    entryNames.add(entry.entryName);
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      try {
+        data.close();
+        index.close();
+      } catch (IOException e) {
+        throw new IllegalStateException("Unable to close report container " + dir, e);
+      } finally {
+        IOUtils.closeQuietly(data);
+        IOUtils.closeQuietly(index);
+      }
+    }
+  }
+
+  private class EntryOutputStream extends OutputStream {
+    private final String entryName;
+    private final boolean append;
+    private final long offset;
+    private boolean entryClosed = false;
+
+    EntryOutputStream(String entryName, boolean append, long offset) {
+      this.entryName = entryName;
+      this.append = append;
+      this.offset = offset;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      checkNotClosed();
+      data.write(b);
+      position++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      checkNotClosed();
+      data.write(b, off, len);
+      position += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+      data.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!entryClosed) {
+        entryClosed = true;
+        onEntryClosed(this);
+      }
+    }
+
+    private void checkNotClosed() throws IOException {
+      if (entryClosed) {
+        throw new IOException("Entry is closed: " + entryName);
+      }
+    }
+  }
+}
@@ -0,0 +1,68 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import javax.annotation.CheckForNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Report stored as one file per entry in a directory, as generated by {@link BatchReportWriter}
+ */
+public class DirectoryReportEntries implements ReportEntries {
+
+  private final File dir;
+
+  public DirectoryReportEntries(File dir) {
+    if (!dir.exists() || !dir.isDirectory()) {
+      throw new IllegalArgumentException("Directory of analysis report does not exist: " + dir);
+    }
+    this.dir = dir;
+  }
+
+  @Override
+  public boolean exists(String entryName) {
+    File file = new File(dir, entryName);
+    return file.exists() && file.isFile();
+  }
+
+  @Override
+  @CheckForNull
+  public InputStream open(String entryName) {
+    File file = new File(dir, entryName);
+    if (!file.exists() || !file.isFile()) {
+      return null;
+    }
+    try {
+      return new BufferedInputStream(new FileInputStream(file));
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read file: " + file, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    // nothing to do
+  }
+}
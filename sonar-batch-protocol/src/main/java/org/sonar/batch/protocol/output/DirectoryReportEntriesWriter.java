@@ -0,0 +1,68 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one file per entry, see {@link ReportFormat#FILES}
+ */
+public class DirectoryReportEntriesWriter implements ReportEntriesWriter {
+
+  private final File dir;
+
+  public DirectoryReportEntriesWriter(File dir) {
+    this.dir = dir;
+  }
+
+  @Override
+  public boolean exists(String entryName) {
+    File file = new File(dir, entryName);
+    return file.exists() && file.isFile();
+  }
+
+  @Override
+  public OutputStream create(String entryName) {
+    return open(entryName, false);
+  }
+
+  @Override
+  public OutputStream append(String entryName) {
+    return open(entryName, true);
+  }
+
+  private OutputStream open(String entryName, boolean append) {
+    File file = new File(dir, entryName);
+    try {
+      return new BufferedOutputStream(new FileOutputStream(file, append));
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to open file " + file, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    // nothing to do
+  }
+}
@@ -26,6 +26,8 @@ import java.io.File;
  */
 public class FileStructure {
 
+  public static final String METADATA_ENTRY = "metadata.pb";
+
   public enum Domain {
     ISSUES("issues-", Domain.PB),
     ISSUES_ON_DELETED("issues-deleted-", Domain.PB),
@@ -62,11 +64,18 @@ public class FileStructure {
   }
 
   public File metadataFile() {
-    return new File(dir, "metadata.pb");
+    return new File(dir, METADATA_ENTRY);
   }
 
   public File fileFor(Domain domain, int componentRef) {
-    return new File(dir, domain.filePrefix + componentRef + domain.fileSuffix);
+    return new File(dir, entryName(domain, componentRef));
+  }
+
+  /**
+   * Relative path of the file, as stored in the zipped report
+   */
+  public static String entryName(Domain domain, int componentRef) {
+    return domain.filePrefix + componentRef + domain.fileSuffix;
   }
 
 }
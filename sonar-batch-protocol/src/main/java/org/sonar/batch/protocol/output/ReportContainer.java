@@ -0,0 +1,118 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Layout of the {@link ReportFormat#CONTAINER} format. A report directory contains only two files:
+ * <ul>
+ *   <li>{@link #DATA_FILE}: the content of all the entries, appended one after the other</li>
+ *   <li>{@link #INDEX_FILE}: an append-only log of the segments of {@link #DATA_FILE} that have been written,
+ *   with the name of their entry (see {@link FileStructure#entryName(FileStructure.Domain, int)})</li>
+ * </ul>
+ * An entry can be made of several segments when data is appended to it. The index is replayed when
+ * the report is opened: a segment written with "append" flag set to false replaces the previous segments of the entry.
+ */
+public final class ReportContainer {
+
+  public static final String DATA_FILE = "report.data";
+  public static final String INDEX_FILE = "report.index";
+
+  static final int VERSION = 1;
+
+  private ReportContainer() {
+    // only static stuff
+  }
+
+  public static boolean isContainer(File dir) {
+    return new File(dir, INDEX_FILE).isFile() && new File(dir, DATA_FILE).isFile();
+  }
+
+  static void writeHeader(DataOutputStream index) throws IOException {
+    index.writeInt(VERSION);
+  }
+
+  static void writeSegment(DataOutputStream index, Segment segment) throws IOException {
+    index.writeUTF(segment.entryName);
+    index.writeBoolean(segment.append);
+    index.writeLong(segment.offset);
+    index.writeLong(segment.length);
+  }
+
+  /**
+   * Replays the index log
+   * @return the segments of each entry, in the order of writing
+   */
+  static Map<String, List<Segment>> readIndex(DataInputStream index) throws IOException {
+    int version = index.readInt();
+    if (version != VERSION) {
+      throw new IllegalStateException("Unsupported version of report container: " + version);
+    }
+    Map<String, List<Segment>> segmentsByEntry = new HashMap<>();
+    Segment segment = readSegment(index);
+    while (segment != null) {
+      List<Segment> segments = segmentsByEntry.get(segment.entryName);
+      if (segments == null || !segment.append) {
+        segments = new ArrayList<>();
+        segmentsByEntry.put(segment.entryName, segments);
+      }
+      segments.add(segment);
+      segment = readSegment(index);
+    }
+    return segmentsByEntry;
+  }
+
+  private static Segment readSegment(DataInputStream index) throws IOException {
+    String entryName;
+    try {
+      entryName = index.readUTF();
+    } catch (EOFException e) {
+      // end of log
+      return null;
+    }
+    boolean append = index.readBoolean();
+    long offset = index.readLong();
+    long length = index.readLong();
+    return new Segment(entryName, append, offset, length);
+  }
+
+  static class Segment {
+    final String entryName;
+    final boolean append;
+    final long offset;
+    final long length;
+
+    Segment(String entryName, boolean append, long offset, long length) {
+      this.entryName = entryName;
+      this.append = append;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+}
@@ -0,0 +1,46 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import java.io.Closeable;
+import java.io.OutputStream;
+
+/**
+ * Write access to the entries of an analysis report. See {@link ReportEntries} for read access.
+ */
+public interface ReportEntriesWriter extends Closeable {
+
+  boolean exists(String entryName);
+
+  /**
+   * Opens the entry for writing. Its previous content, if any, is replaced.
+   * Stream must be closed by caller.
+   */
+  OutputStream create(String entryName);
+
+  /**
+   * Opens the entry for writing. Data is appended to its previous content, if any.
+   * Stream must be closed by caller.
+   */
+  OutputStream append(String entryName);
+
+  @Override
+  void close();
+}
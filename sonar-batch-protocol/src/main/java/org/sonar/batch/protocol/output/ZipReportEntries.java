@@ -0,0 +1,78 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.protocol.output;
+
+import javax.annotation.CheckForNull;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Report read directly from the zip file sent by batch, without extracting it on disk.
+ * Entries are located through the central directory of the zip, so each of them is
+ * decompressed on demand only.
+ */
+public class ZipReportEntries implements ReportEntries {
+
+  private final File zip;
+  private final ZipFile zipFile;
+
+  public ZipReportEntries(File zip) {
+    this.zip = zip;
+    try {
+      this.zipFile = new ZipFile(zip);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to open zipped analysis report: " + zip, e);
+    }
+  }
+
+  @Override
+  public boolean exists(String entryName) {
+    ZipEntry entry = zipFile.getEntry(entryName);
+    return entry != null && !entry.isDirectory();
+  }
+
+  @Override
+  @CheckForNull
+  public InputStream open(String entryName) {
+    ZipEntry entry = zipFile.getEntry(entryName);
+    if (entry == null || entry.isDirectory()) {
+      return null;
+    }
+    try {
+      return new BufferedInputStream(zipFile.getInputStream(entry));
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read entry %s of zipped analysis report %s", entryName, zip), e);
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      zipFile.close();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to close zipped analysis report: " + zip, e);
+    }
+  }
+}
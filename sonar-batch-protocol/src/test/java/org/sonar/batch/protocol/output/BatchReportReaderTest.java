@@ -21,6 +21,7 @@ package org.sonar.batch.protocol.output;
 
 import com.google.common.collect.Lists;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -28,8 +29,13 @@ import org.junit.rules.TemporaryFolder;
 import org.sonar.batch.protocol.Constants;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -203,7 +209,7 @@ public class BatchReportReaderTest {
         .build()
       ));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readComponentSyntaxHighlighting(1))) {
+    try (InputStream inputStream = sut.readComponentSyntaxHighlighting(1)) {
       BatchReport.SyntaxHighlighting syntaxHighlighting = BatchReport.SyntaxHighlighting.PARSER.parseDelimitedFrom(inputStream);
       assertThat(syntaxHighlighting.getRange()).isNotNull();
       assertThat(syntaxHighlighting.getRange().getStartLine()).isEqualTo(1);
@@ -283,7 +289,7 @@ public class BatchReportReaderTest {
 
     sut = new BatchReportReader(dir);
 
-    try (InputStream inputStream = FileUtils.openInputStream(new BatchReportReader(dir).readComponentCoverage(1))) {
+    try (InputStream inputStream = new BatchReportReader(dir).readComponentCoverage(1)) {
       BatchReport.Coverage coverage = BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream);
       assertThat(coverage.getLine()).isEqualTo(1);
       assertThat(coverage.getConditions()).isEqualTo(1);
@@ -315,8 +321,42 @@ public class BatchReportReaderTest {
     File file = writer.getFileStructure().fileFor(FileStructure.Domain.SOURCE, 1);
     FileUtils.writeLines(file, Lists.newArrayList("line1", "line2"));
 
-    File sourceFile = new BatchReportReader(dir).readFileSource(1);
-    assertThat(sourceFile).isEqualTo(file);
+    try (InputStream inputStream = new BatchReportReader(dir).readFileSource(1)) {
+      assertThat(IOUtils.readLines(inputStream, StandardCharsets.UTF_8)).containsExactly("line1", "line2");
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fail_if_missing_source() {
+    sut.readFileSource(UNKNOWN_COMPONENT_REF);
+  }
+
+  @Test
+  public void read_zipped_report_without_extracting_it() throws Exception {
+    BatchReportWriter writer = new BatchReportWriter(dir);
+    writer.writeMetadata(BatchReport.Metadata.newBuilder().setProjectKey("PROJECT_A").setRootComponentRef(1).build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("src/main/java/Foo.java").build());
+    writer.writeComponentCoverage(1, Arrays.asList(BatchReport.Coverage.newBuilder().setLine(3).build()));
+    FileUtils.writeLines(writer.getSourceFile(1), Lists.newArrayList("line1", "line2"));
+    File zip = temp.newFile();
+    zipDir(dir, zip);
+    FileUtils.cleanDirectory(dir);
+
+    BatchReportReader zipReader = BatchReportReader.fromZip(zip, temp.newFolder());
+    try {
+      assertThat(zipReader.readMetadata().getProjectKey()).isEqualTo("PROJECT_A");
+      assertThat(zipReader.readComponent(1).getPath()).isEqualTo("src/main/java/Foo.java");
+      assertThat(zipReader.readComponentIssues(1)).isEmpty();
+      assertThat(zipReader.readComponentSyntaxHighlighting(1)).isNull();
+      try (InputStream inputStream = zipReader.readComponentCoverage(1)) {
+        assertThat(BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream).getLine()).isEqualTo(3);
+      }
+      try (InputStream inputStream = zipReader.readFileSource(1)) {
+        assertThat(IOUtils.readLines(inputStream, StandardCharsets.UTF_8)).containsExactly("line1", "line2");
+      }
+    } finally {
+      zipReader.close();
+    }
   }
 
   @Test
@@ -330,7 +370,7 @@ public class BatchReportReaderTest {
         .setStatus(Constants.TestStatus.OK)
         .build()));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readTests(1))) {
+    try (InputStream inputStream = sut.readTests(1)) {
       BatchReport.Test testResult = BatchReport.Test.PARSER.parseDelimitedFrom(inputStream);
       assertThat(testResult.getDurationInMs()).isEqualTo(60_000);
       assertThat(testResult.getStacktrace()).isEqualTo("stacktrace");
@@ -357,7 +397,7 @@ public class BatchReportReaderTest {
         .build()
       ));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readCoverageDetails(1))) {
+    try (InputStream inputStream = sut.readCoverageDetails(1)) {
       BatchReport.CoverageDetail coverageDetail = BatchReport.CoverageDetail.PARSER.parseDelimitedFrom(inputStream);
       assertThat(coverageDetail.getTestName()).isEqualTo("test-name");
       assertThat(coverageDetail.getCoveredFile(0).getFileRef()).isEqualTo(2);
@@ -380,7 +420,7 @@ public class BatchReportReaderTest {
         .build()
       ));
 
-    try (InputStream inputStream = FileUtils.openInputStream(sut.readFileDependencies(1))) {
+    try (InputStream inputStream = sut.readFileDependencies(1)) {
       BatchReport.FileDependency fileDependency = BatchReport.FileDependency.PARSER.parseDelimitedFrom(inputStream);
       assertThat(fileDependency.getToFileRef()).isEqualTo(5);
       assertThat(fileDependency.getWeight()).isEqualTo(20);
@@ -419,4 +459,65 @@ public class BatchReportReaderTest {
     assertThat(sut.readModuleDependencies(UNKNOWN_COMPONENT_REF)).isEmpty();
   }
 
+  @Test
+  public void read_report_container() throws Exception {
+    BatchReportWriter writer = new BatchReportWriter(dir, ReportFormat.CONTAINER);
+    writer.writeMetadata(BatchReport.Metadata.newBuilder().setProjectKey("PROJECT_A").setRootComponentRef(1).build());
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("src/main/java/Foo.java").build());
+    writer.writeComponentCoverage(1, Arrays.asList(BatchReport.Coverage.newBuilder().setLine(3).build()));
+    // coverage is appended
+    writer.writeComponentCoverage(1, Arrays.asList(BatchReport.Coverage.newBuilder().setLine(5).build()));
+    // component is overwritten
+    writer.writeComponent(BatchReport.Component.newBuilder().setRef(1).setPath("src/main/java/Bar.java").build());
+    try (OutputStream output = writer.newSourceOutput(1)) {
+      IOUtils.write("line1\nline2", output, StandardCharsets.UTF_8);
+    }
+    writer.close();
+    assertThat(dir.list()).containsOnly(ReportContainer.DATA_FILE, ReportContainer.INDEX_FILE);
+
+    BatchReportReader reader = new BatchReportReader(dir);
+    try {
+      assertThat(reader.readMetadata().getProjectKey()).isEqualTo("PROJECT_A");
+      assertThat(reader.readComponent(1).getPath()).isEqualTo("src/main/java/Bar.java");
+      assertThat(reader.readComponentMeasures(1)).isEmpty();
+      try (InputStream inputStream = reader.readComponentCoverage(1)) {
+        assertThat(BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream).getLine()).isEqualTo(3);
+        assertThat(BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream).getLine()).isEqualTo(5);
+        assertThat(BatchReport.Coverage.PARSER.parseDelimitedFrom(inputStream)).isNull();
+      }
+      try (InputStream inputStream = reader.readFileSource(1)) {
+        assertThat(IOUtils.readLines(inputStream, StandardCharsets.UTF_8)).containsExactly("line1", "line2");
+      }
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void read_zipped_report_container() throws Exception {
+    BatchReportWriter writer = new BatchReportWriter(dir, ReportFormat.CONTAINER);
+    writer.writeMetadata(BatchReport.Metadata.newBuilder().setProjectKey("PROJECT_A").setRootComponentRef(1).build());
+    writer.close();
+    File zip = temp.newFile();
+    zipDir(dir, zip);
+    File workDir = temp.newFolder();
+
+    BatchReportReader zipReader = BatchReportReader.fromZip(zip, workDir);
+    try {
+      assertThat(zipReader.readMetadata().getProjectKey()).isEqualTo("PROJECT_A");
+      assertThat(workDir.list()).containsOnly(ReportContainer.DATA_FILE, ReportContainer.INDEX_FILE);
+    } finally {
+      zipReader.close();
+    }
+  }
+
+  private static void zipDir(File dir, File zip) throws Exception {
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+      for (File file : dir.listFiles()) {
+        out.putNextEntry(new ZipEntry(file.getName()));
+        FileUtils.copyFile(file, out);
+        out.closeEntry();
+      }
+    }
+  }
 }
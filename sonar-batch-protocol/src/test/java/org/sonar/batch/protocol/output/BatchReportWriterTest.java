@@ -29,6 +29,7 @@ import org.sonar.batch.protocol.ProtobufUtil;
 import org.sonar.batch.protocol.output.BatchReport.Range;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -334,4 +335,37 @@ public class BatchReportWriterTest {
 
     assertThat(sut.hasComponentData(FileStructure.Domain.MODULE_DEPENDENCIES, 1)).isTrue();
   }
+
+  @Test
+  public void write_all_entries_in_a_single_container() throws Exception {
+    sut = new BatchReportWriter(dir, ReportFormat.CONTAINER);
+    assertThat(sut.hasComponentData(FileStructure.Domain.COMPONENT, 1)).isFalse();
+
+    sut.writeComponent(BatchReport.Component.newBuilder().setRef(1).build());
+    sut.writeComponent(BatchReport.Component.newBuilder().setRef(2).build());
+    sut.appendFileDependency(1, BatchReport.FileDependency.getDefaultInstance());
+    sut.close();
+
+    assertThat(sut.hasComponentData(FileStructure.Domain.COMPONENT, 1)).isTrue();
+    assertThat(sut.hasComponentData(FileStructure.Domain.COMPONENT, 2)).isTrue();
+    assertThat(sut.hasComponentData(FileStructure.Domain.FILE_DEPENDENCIES, 1)).isTrue();
+    assertThat(sut.hasComponentData(FileStructure.Domain.COMPONENT, 3)).isFalse();
+    assertThat(dir.list()).containsOnly(ReportContainer.DATA_FILE, ReportContainer.INDEX_FILE);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void container_does_not_support_concurrent_writes_of_entries() throws Exception {
+    sut = new BatchReportWriter(dir, ReportFormat.CONTAINER);
+
+    try (OutputStream output = sut.newSourceOutput(1)) {
+      sut.writeComponent(BatchReport.Component.newBuilder().setRef(1).build());
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void source_files_are_not_available_in_container() {
+    sut = new BatchReportWriter(dir, ReportFormat.CONTAINER);
+
+    sut.getSourceFile(1);
+  }
 }
@@ -21,11 +21,21 @@ package org.sonar.batch.cpd;
 
 import org.slf4j.Logger;
 import org.sonar.api.BatchSide;
+import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.sensor.SensorContext;
 
+import java.io.File;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+
 @BatchSide
 public abstract class CpdEngine {
 
+  /**
+   * Code that is not loaded from a jar file, for example in tests, can change between two executions
+   */
+  private static final String UNVERSIONED_CODE = "unversioned-" + System.currentTimeMillis();
+
   abstract boolean isLanguageSupported(String language);
 
   abstract void analyse(String language, SensorContext context);
@@ -42,6 +52,40 @@ public abstract class CpdEngine {
     }
   }
 
+  /**
+   * File storing the blocks of files of the given language, reused by next analyses when files do not change
+   */
+  protected static File blockCacheFile(FileSystem fs, String language) {
+    return new File(new File(fs.workDir(), "cpd"), "blocks-" + language + ".dat");
+  }
+
+  /**
+   * Fingerprint of blocks stored in {@link #blockCacheFile(FileSystem, String)}. It identifies the jar files of the
+   * given classes, so that blocks computed by other versions of SonarQube or of plugins are not reused.
+   */
+  protected static String blockCacheFingerprint(String prefix, Class<?>... codeClasses) {
+    StringBuilder fingerprint = new StringBuilder(prefix);
+    for (Class<?> codeClass : codeClasses) {
+      fingerprint.append('|').append(codeVersion(codeClass));
+    }
+    return fingerprint.toString();
+  }
+
+  private static String codeVersion(Class<?> codeClass) {
+    CodeSource codeSource = codeClass.getProtectionDomain().getCodeSource();
+    if (codeSource != null && codeSource.getLocation() != null) {
+      try {
+        File jar = new File(codeSource.getLocation().toURI());
+        if (jar.isFile()) {
+          return jar.getName() + ":" + jar.length() + ":" + jar.lastModified();
+        }
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        // not a local file
+      }
+    }
+    return UNVERSIONED_CODE;
+  }
+
   @Override
   public String toString() {
     return getClass().getSimpleName();
@@ -21,8 +21,8 @@ package org.sonar.batch.cpd;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import net.sourceforge.pmd.cpd.Tokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.CoreProperties;
@@ -34,7 +34,7 @@ import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.config.Settings;
 import org.sonar.api.resources.Project;
-import org.sonar.api.utils.SonarException;
+import org.sonar.batch.cpd.index.BlockCache;
 import org.sonar.batch.cpd.index.IndexFactory;
 import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
 import org.sonar.duplications.DuplicationPredicates;
@@ -44,23 +44,12 @@ import org.sonar.duplications.internal.pmd.TokenizerBridge;
 
 import javax.annotation.Nullable;
 
-import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 public class DefaultCpdEngine extends CpdEngine {
 
   private static final Logger LOG = LoggerFactory.getLogger(DefaultCpdEngine.class);
 
-  /**
-   * Limit of time to analyse one file (in seconds).
-   */
-  private static final int TIMEOUT = 5 * 60;
-
   private final IndexFactory indexFactory;
   private final CpdMappings mappings;
   private final FileSystem fs;
@@ -115,38 +104,32 @@ public class DefaultCpdEngine extends CpdEngine {
   private void runCpdAnalysis(String languageKey, SensorContext context, List<InputFile> sourceFiles, SonarDuplicationsIndex index) {
     Predicate<CloneGroup> minimumTokensPredicate = DuplicationPredicates.numberOfUnitsNotLessThan(getMinimumTokens(languageKey));
 
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    JavaCpdEngine.detect(index, context, sourceFiles, minimumTokensPredicate, JavaCpdEngine.getDetectionThreads(settings, index));
+  }
+
+  private void populateIndex(String languageKey, List<InputFile> sourceFiles, CpdMapping mapping, SonarDuplicationsIndex index) {
+    int blockSize = getBlockSize(languageKey);
+    Tokenizer tokenizer = mapping.getTokenizer();
+    TokenizerBridge bridge = new TokenizerBridge(tokenizer, fs.encoding().name(), blockSize);
+    String fingerprint = blockCacheFingerprint(mapping.getClass().getName() + "-" + blockSize, mapping.getClass(), tokenizer.getClass(), TokenizerBridge.class);
+    BlockCache blockCache = BlockCache.load(blockCacheFile(fs, languageKey), fingerprint);
     try {
       for (InputFile inputFile : sourceFiles) {
-        LOG.debug("Detection of duplications for {}", inputFile);
         String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
-        Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
-
-        Iterable<CloneGroup> filtered;
-        try {
-          List<CloneGroup> duplications = executorService.submit(new JavaCpdEngine.Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-          filtered = Iterables.filter(duplications, minimumTokensPredicate);
-        } catch (TimeoutException e) {
-          filtered = null;
-          LOG.warn("Timeout during detection of duplications for " + inputFile, e);
-        } catch (InterruptedException | ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+        String fileHash = ((DefaultInputFile) inputFile).hash();
+        List<Block> blocks2 = blockCache.get(resourceEffectiveKey, fileHash);
+        if (blocks2 == null) {
+          LOG.debug("Populating index from {}", inputFile);
+          blocks2 = bridge.chunk(resourceEffectiveKey, inputFile.file());
+        } else {
+          LOG.debug("Populating index from blocks of previous analysis for {}", inputFile);
         }
-
-        JavaCpdEngine.save(context, inputFile, filtered);
+        index.insert(inputFile, blocks2);
+        blockCache.put(resourceEffectiveKey, fileHash, blocks2);
       }
+      blockCache.save();
     } finally {
-      executorService.shutdown();
-    }
-  }
-
-  private void populateIndex(String languageKey, List<InputFile> sourceFiles, CpdMapping mapping, SonarDuplicationsIndex index) {
-    TokenizerBridge bridge = new TokenizerBridge(mapping.getTokenizer(), fs.encoding().name(), getBlockSize(languageKey));
-    for (InputFile inputFile : sourceFiles) {
-      LOG.debug("Populating index from {}", inputFile);
-      String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
-      List<Block> blocks2 = bridge.chunk(resourceEffectiveKey, inputFile.file());
-      index.insert(inputFile, blocks2);
+      blockCache.close();
     }
   }
 
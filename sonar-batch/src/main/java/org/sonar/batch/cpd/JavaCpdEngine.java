@@ -20,9 +20,13 @@
 
 package org.sonar.batch.cpd;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import org.apache.commons.io.IOUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.CoreProperties;
@@ -38,8 +42,10 @@ import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
 import org.sonar.api.resources.Project;
 import org.sonar.api.utils.SonarException;
+import org.sonar.batch.cpd.index.BlockCache;
 import org.sonar.batch.cpd.index.IndexFactory;
 import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.BlockChunker;
 import org.sonar.duplications.detector.suffixtree.SuffixTreeCloneDetectionAlgorithm;
@@ -54,11 +60,11 @@ import org.sonar.duplications.token.TokenChunker;
 
 import javax.annotation.Nullable;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
+import java.io.File;
 import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -66,6 +72,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -73,6 +80,11 @@ public class JavaCpdEngine extends CpdEngine {
 
   private static final Logger LOG = LoggerFactory.getLogger(JavaCpdEngine.class);
 
+  /**
+   * Number of threads used to index and detect duplications. By default the number of processors minus one.
+   */
+  public static final String THREADS_PROPERTY = "sonar.cpd.threads";
+
   private static final int BLOCK_SIZE = 10;
 
   /**
@@ -87,16 +99,18 @@ public class JavaCpdEngine extends CpdEngine {
   private final FileSystem fs;
   private final Settings settings;
   private final Project project;
+  private final InputFileContents fileContents;
 
-  public JavaCpdEngine(@Nullable Project project, IndexFactory indexFactory, FileSystem fs, Settings settings) {
+  public JavaCpdEngine(@Nullable Project project, IndexFactory indexFactory, FileSystem fs, Settings settings, InputFileContents fileContents) {
     this.project = project;
     this.indexFactory = indexFactory;
     this.fs = fs;
     this.settings = settings;
+    this.fileContents = fileContents;
   }
 
-  public JavaCpdEngine(IndexFactory indexFactory, FileSystem fs, Settings settings) {
-    this(null, indexFactory, fs, settings);
+  public JavaCpdEngine(IndexFactory indexFactory, FileSystem fs, Settings settings, InputFileContents fileContents) {
+    this(null, indexFactory, fs, settings, fileContents);
   }
 
   @Override
@@ -121,64 +135,184 @@ public class JavaCpdEngine extends CpdEngine {
     detect(index, context, sourceFiles);
   }
 
-  private SonarDuplicationsIndex createIndex(@Nullable Project project, String language, Iterable<InputFile> sourceFiles) {
+  /**
+   * Files are tokenized and chunked on a pool of threads, while blocks are inserted in the index by the calling thread,
+   * in the order of files.
+   */
+  @VisibleForTesting
+  SonarDuplicationsIndex createIndex(@Nullable Project project, String language, List<InputFile> sourceFiles) {
     final SonarDuplicationsIndex index = indexFactory.create(project, language);
+    File blockCacheFile = blockCacheFile(fs, language);
+    BlockCache blockCache = BlockCache.load(blockCacheFile, blockCacheFingerprint("java-" + BLOCK_SIZE, BlockChunker.class, JavaCpdEngine.class));
+
+    int threads = getThreads(settings);
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+      .setNameFormat("cpd-index-%d")
+      .setDaemon(true)
+      .build());
+    ThreadLocal<Chunkers> chunkers = new ThreadLocal<Chunkers>() {
+      @Override
+      protected Chunkers initialValue() {
+        return new Chunkers();
+      }
+    };
+    try {
+      Deque<Future<List<Block>>> pendingFiles = new ArrayDeque<>();
+      Deque<InputFile> pendingInputFiles = new ArrayDeque<>();
+      for (InputFile inputFile : sourceFiles) {
+        if (pendingFiles.size() >= 2 * threads) {
+          insertNext(index, blockCache, pendingInputFiles, pendingFiles);
+        }
+        pendingInputFiles.add(inputFile);
+        pendingFiles.add(executorService.submit(new ChunkTask(inputFile, fileContents, chunkers, blockCache)));
+      }
+      while (!pendingFiles.isEmpty()) {
+        insertNext(index, blockCache, pendingInputFiles, pendingFiles);
+      }
+      blockCache.save();
+    } finally {
+      executorService.shutdownNow();
+      blockCache.close();
+    }
+
+    return index;
+  }
 
-    TokenChunker tokenChunker = JavaTokenProducer.build();
-    StatementChunker statementChunker = JavaStatementBuilder.build();
-    BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+  private static void insertNext(SonarDuplicationsIndex index, BlockCache blockCache, Deque<InputFile> pendingInputFiles, Deque<Future<List<Block>>> pendingFiles) {
+    InputFile inputFile = pendingInputFiles.remove();
+    try {
+      List<Block> blocks = pendingFiles.remove().get();
+      index.insert(inputFile, blocks);
+      blockCache.put(((DefaultInputFile) inputFile).key(), ((DefaultInputFile) inputFile).hash(), blocks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SonarException("Interrupted while populating index from " + inputFile, e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new SonarException("Fail to populate index from " + inputFile, e.getCause());
+    }
+  }
 
-    for (InputFile inputFile : sourceFiles) {
-      LOG.debug("Populating index from {}", inputFile);
-      String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+  /**
+   * Chunkers are not thread-safe, so each thread has its own instances
+   */
+  private static class Chunkers {
+    private final TokenChunker tokenChunker = JavaTokenProducer.build();
+    private final StatementChunker statementChunker = JavaStatementBuilder.build();
+    private final BlockChunker blockChunker = new BlockChunker(BLOCK_SIZE);
+  }
 
-      List<Statement> statements;
+  private static class ChunkTask implements Callable<List<Block>> {
+    private final InputFile inputFile;
+    private final InputFileContents fileContents;
+    private final ThreadLocal<Chunkers> chunkers;
+    private final BlockCache blockCache;
+
+    ChunkTask(InputFile inputFile, InputFileContents fileContents, ThreadLocal<Chunkers> chunkers, BlockCache blockCache) {
+      this.inputFile = inputFile;
+      this.fileContents = fileContents;
+      this.chunkers = chunkers;
+      this.blockCache = blockCache;
+    }
 
-      Reader reader = null;
-      try {
-        reader = new InputStreamReader(new FileInputStream(inputFile.file()), fs.encoding());
-        statements = statementChunker.chunk(tokenChunker.chunk(reader));
-      } catch (FileNotFoundException e) {
-        throw new SonarException("Cannot find file " + inputFile.file(), e);
-      } finally {
-        IOUtils.closeQuietly(reader);
+    @Override
+    public List<Block> call() {
+      String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
+      List<Block> previousBlocks = blockCache.get(resourceEffectiveKey, ((DefaultInputFile) inputFile).hash());
+      if (previousBlocks != null) {
+        LOG.debug("Populating index from blocks of previous analysis for {}", inputFile);
+        return previousBlocks;
       }
+      LOG.debug("Populating index from {}", inputFile);
+      Chunkers threadChunkers = chunkers.get();
 
-      List<Block> blocks = blockChunker.chunk(resourceEffectiveKey, statements);
-      index.insert(inputFile, blocks);
-    }
+      Reader reader = fileContents.newReader((DefaultInputFile) inputFile);
+      List<Statement> statements = threadChunkers.statementChunker.chunk(threadChunkers.tokenChunker.chunk(reader));
 
-    return index;
+      return threadChunkers.blockChunker.chunk(resourceEffectiveKey, statements);
+    }
   }
 
   private void detect(SonarDuplicationsIndex index, org.sonar.api.batch.sensor.SensorContext context, List<InputFile> sourceFiles) {
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    detect(index, context, sourceFiles, Predicates.<CloneGroup>alwaysTrue(), getDetectionThreads(settings, index));
+  }
+
+  /**
+   * Number of threads used to detect duplications. Detection is sequential when duplications are searched
+   * in other projects.
+   */
+  static int getDetectionThreads(Settings settings, SonarDuplicationsIndex index) {
+    if (index.isCrossProject()) {
+      return 1;
+    }
+    return getThreads(settings);
+  }
+
+  static int getThreads(Settings settings) {
+    int threads = settings.getInt(THREADS_PROPERTY);
+    if (threads <= 0) {
+      threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+    return threads;
+  }
+
+  /**
+   * Detects duplications of files on a pool of threads. Results are saved by the calling thread, in the order of files.
+   * As there are never more pending files than threads, the detection of a file starts as soon as it is submitted,
+   * so that the timeout still applies to each file.
+   */
+  static void detect(SonarDuplicationsIndex index, org.sonar.api.batch.sensor.SensorContext context, List<InputFile> sourceFiles,
+    Predicate<CloneGroup> filter, int threads) {
+    ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+      .setNameFormat("cpd-detection-%d")
+      .setDaemon(true)
+      .build());
     try {
+      Deque<Detection> pendingDetections = new ArrayDeque<>();
       for (InputFile inputFile : sourceFiles) {
+        if (pendingDetections.size() >= threads) {
+          saveNext(context, pendingDetections, filter);
+        }
         LOG.debug("Detection of duplications for {}", inputFile);
         String resourceEffectiveKey = ((DefaultInputFile) inputFile).key();
-
         Collection<Block> fileBlocks = index.getByInputFile(inputFile, resourceEffectiveKey);
-
-        List<CloneGroup> clones;
-        try {
-          clones = executorService.submit(new Task(index, fileBlocks)).get(TIMEOUT, TimeUnit.SECONDS);
-        } catch (TimeoutException e) {
-          clones = null;
-          LOG.warn("Timeout during detection of duplications for " + inputFile, e);
-        } catch (InterruptedException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        } catch (ExecutionException e) {
-          throw new SonarException("Fail during detection of duplication for " + inputFile, e);
-        }
-
-        save(context, inputFile, clones);
+        pendingDetections.add(new Detection(inputFile, executorService.submit(new Task(index, fileBlocks))));
+      }
+      while (!pendingDetections.isEmpty()) {
+        saveNext(context, pendingDetections, filter);
       }
     } finally {
       executorService.shutdown();
     }
   }
 
+  private static void saveNext(org.sonar.api.batch.sensor.SensorContext context, Deque<Detection> pendingDetections, Predicate<CloneGroup> filter) {
+    Detection detection = pendingDetections.remove();
+    InputFile inputFile = detection.inputFile;
+    Iterable<CloneGroup> clones;
+    try {
+      clones = Iterables.filter(detection.clones.get(TIMEOUT, TimeUnit.SECONDS), filter);
+    } catch (TimeoutException e) {
+      detection.clones.cancel(true);
+      clones = null;
+      LOG.warn("Timeout during detection of duplications for " + inputFile, e);
+    } catch (InterruptedException | ExecutionException e) {
+      throw new SonarException("Fail during detection of duplication for " + inputFile, e);
+    }
+
+    save(context, inputFile, clones);
+  }
+
+  private static class Detection {
+    private final InputFile inputFile;
+    private final Future<List<CloneGroup>> clones;
+
+    Detection(InputFile inputFile, Future<List<CloneGroup>> clones) {
+      this.inputFile = inputFile;
+      this.clones = clones;
+    }
+  }
+
   static class Task implements Callable<List<CloneGroup>> {
     private final CloneIndex index;
     private final Collection<Block> fileBlocks;
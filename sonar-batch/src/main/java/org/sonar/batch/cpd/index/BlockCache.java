@@ -0,0 +1,234 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.cpd.index;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Blocks of files computed by a previous analysis, stored in the working directory. Blocks only depend on
+ * the content of files and on the code that computes them, so they are reused when the hash of a file did not
+ * change and when the fingerprint of the code is the same.
+ * <p/>
+ * Previous blocks are loaded once and then read-only, so they can be read by several threads. New blocks must be
+ * added by a single thread. They are written to a temporary file as soon as they are added, so that they are not
+ * kept in memory, and this file replaces the previous one when the cache is saved.
+ *
+ * @since 5.2
+ */
+public class BlockCache implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BlockCache.class);
+
+  private static final int VERSION = 2;
+
+  private final File file;
+  private final File tempFile;
+  private final String fingerprint;
+  private final Map<String, FileBlocks> previousBlocks;
+  private DataOutputStream output;
+  private boolean writeFailed = false;
+
+  private BlockCache(File file, String fingerprint, Map<String, FileBlocks> previousBlocks) {
+    this.file = file;
+    this.tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+    this.fingerprint = fingerprint;
+    this.previousBlocks = previousBlocks;
+  }
+
+  /**
+   * @param fingerprint identifies the way blocks are computed (engine, version of code, size of blocks...). Blocks computed differently are ignored.
+   */
+  public static BlockCache load(File file, String fingerprint) {
+    if (!file.isFile()) {
+      return new BlockCache(file, fingerprint, Collections.<String, FileBlocks>emptyMap());
+    }
+    DataInputStream input = null;
+    try {
+      input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      if (input.readInt() != VERSION || !fingerprint.equals(input.readUTF())) {
+        return new BlockCache(file, fingerprint, Collections.<String, FileBlocks>emptyMap());
+      }
+      Map<String, FileBlocks> blocksByResource = new HashMap<>();
+      while (input.readBoolean()) {
+        FileBlocks fileBlocks = FileBlocks.read(input);
+        blocksByResource.put(fileBlocks.resourceKey, fileBlocks);
+      }
+      return new BlockCache(file, fingerprint, blocksByResource);
+    } catch (IOException e) {
+      // the cache is only an optimization
+      LOG.warn("Fail to read blocks of previous analysis from " + file, e);
+      return new BlockCache(file, fingerprint, Collections.<String, FileBlocks>emptyMap());
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  /**
+   * Blocks of the previous analysis, if the file did not change since then
+   */
+  @CheckForNull
+  public List<Block> get(String resourceKey, @Nullable String fileHash) {
+    FileBlocks fileBlocks = previousBlocks.get(resourceKey);
+    if (fileHash == null || fileBlocks == null || !fileHash.equals(fileBlocks.fileHash)) {
+      return null;
+    }
+    return fileBlocks.blocks;
+  }
+
+  /**
+   * Blocks to be stored for the next analysis. Files that are not registered are dropped from the cache.
+   */
+  public void put(String resourceKey, @Nullable String fileHash, List<Block> blocks) {
+    if (fileHash != null && !writeFailed) {
+      try {
+        DataOutputStream out = output();
+        out.writeBoolean(true);
+        new FileBlocks(resourceKey, fileHash, blocks).write(out);
+      } catch (IOException e) {
+        onWriteFailure(e);
+      }
+    }
+  }
+
+  /**
+   * Replaces the blocks of previous analysis by the blocks registered with {@link #put(String, String, List)}
+   */
+  public void save() {
+    if (writeFailed) {
+      return;
+    }
+    try {
+      DataOutputStream out = output();
+      out.writeBoolean(false);
+      out.close();
+      output = null;
+      FileUtils.deleteQuietly(file);
+      FileUtils.moveFile(tempFile, file);
+    } catch (IOException e) {
+      onWriteFailure(e);
+    }
+  }
+
+  /**
+   * Drops the new blocks if the cache has not been saved, for example when analysis fails
+   */
+  @Override
+  public void close() {
+    if (output != null) {
+      IOUtils.closeQuietly(output);
+      output = null;
+      FileUtils.deleteQuietly(tempFile);
+    }
+  }
+
+  private DataOutputStream output() throws IOException {
+    if (output == null) {
+      FileUtils.forceMkdir(tempFile.getParentFile());
+      output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+      output.writeInt(VERSION);
+      output.writeUTF(fingerprint);
+    }
+    return output;
+  }
+
+  private void onWriteFailure(IOException e) {
+    LOG.warn("Fail to store blocks in " + file, e);
+    writeFailed = true;
+    IOUtils.closeQuietly(output);
+    output = null;
+    FileUtils.deleteQuietly(tempFile);
+  }
+
+  private static class FileBlocks {
+    private final String resourceKey;
+    private final String fileHash;
+    private final List<Block> blocks;
+
+    FileBlocks(String resourceKey, String fileHash, List<Block> blocks) {
+      this.resourceKey = resourceKey;
+      this.fileHash = fileHash;
+      this.blocks = blocks;
+    }
+
+    void write(DataOutputStream output) throws IOException {
+      output.writeUTF(resourceKey);
+      output.writeUTF(fileHash);
+      output.writeInt(blocks.size());
+      for (Block block : blocks) {
+        int[] hash = block.getBlockHash().toIntArray();
+        output.writeByte(hash.length);
+        for (int value : hash) {
+          output.writeInt(value);
+        }
+        output.writeInt(block.getIndexInFile());
+        output.writeInt(block.getStartLine());
+        output.writeInt(block.getEndLine());
+        output.writeInt(block.getStartUnit());
+        output.writeInt(block.getEndUnit());
+      }
+    }
+
+    static FileBlocks read(DataInputStream input) throws IOException {
+      String resourceKey = input.readUTF();
+      String fileHash = input.readUTF();
+      int nbBlocks = input.readInt();
+      List<Block> blocks = new ArrayList<>(nbBlocks);
+      Block.Builder builder = Block.builder().setResourceId(resourceKey);
+      for (int i = 0; i < nbBlocks; i++) {
+        int[] hash = new int[input.readByte()];
+        for (int j = 0; j < hash.length; j++) {
+          hash[j] = input.readInt();
+        }
+        builder.setBlockHash(new ByteArray(hash))
+          .setIndexInFile(input.readInt());
+        int startLine = input.readInt();
+        int endLine = input.readInt();
+        builder.setLines(startLine, endLine);
+        int startUnit = input.readInt();
+        int endUnit = input.readInt();
+        blocks.add(builder.setUnit(startUnit, endUnit).build());
+      }
+      return new FileBlocks(resourceKey, fileHash, blocks);
+    }
+  }
+}
@@ -43,6 +43,14 @@ public class SonarDuplicationsIndex extends AbstractCloneIndex {
     this.db = db;
   }
 
+  /**
+   * Whether duplications are also searched in other projects. In this case the index must not be queried
+   * concurrently, as blocks of other projects are loaded file by file.
+   */
+  public boolean isCrossProject() {
+    return db != null;
+  }
+
   public void insert(InputFile inputFile, Collection<Block> blocks) {
     for (Block block : blocks) {
       mem.insert(block);
@@ -0,0 +1,65 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import javax.annotation.CheckForNull;
+
+import java.util.Set;
+
+/**
+ * Storage of the entries of a {@link Cache}. Keys are arrays of one or several parts, the first parts
+ * being considered as groups of the next ones.
+ *
+ * @since 5.2
+ */
+interface CacheStorage<V> {
+
+  void put(Object[] key, V value);
+
+  @CheckForNull
+  V get(Object[] key);
+
+  boolean containsKey(Object[] key);
+
+  boolean remove(Object[] key);
+
+  /**
+   * Removes the given key and all the keys it is a prefix of
+   */
+  void clear(Object[] prefix);
+
+  void clear();
+
+  /**
+   * Distinct values of the part that directly follows the given prefix
+   */
+  Set<Object> keySet(Object[] prefix);
+
+  /**
+   * Lazy-loading values of the keys starting with the given prefix
+   */
+  Iterable<V> values(Object[] prefix);
+
+  /**
+   * Lazy-loading entries of the keys starting with the given prefix
+   */
+  Iterable<Cache.Entry<V>> entries(Object[] prefix);
+
+}
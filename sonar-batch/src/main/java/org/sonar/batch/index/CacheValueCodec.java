@@ -0,0 +1,65 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.base.Supplier;
+import com.persistit.Persistit;
+import com.persistit.Value;
+
+import java.util.Arrays;
+
+/**
+ * Encodes values of caches into bytes with the Persistit format, so that the value coders
+ * registered with {@link Caches#registerValueCoder(Class, com.persistit.encoding.ValueCoder)} are used.
+ *
+ * @since 5.2
+ */
+class CacheValueCodec {
+
+  private final ThreadLocal<Value> values;
+
+  /**
+   * @param persistit supplies the instance of Persistit when the first value is encoded or decoded by a thread
+   */
+  CacheValueCodec(final Supplier<Persistit> persistit) {
+    this.values = new ThreadLocal<Value>() {
+      @Override
+      protected Value initialValue() {
+        Value value = new Value(persistit.get());
+        value.setMaximumSize(Value.MAXIMUM_SIZE);
+        return value;
+      }
+    };
+  }
+
+  byte[] encode(Object object) {
+    Value value = values.get();
+    value.clear();
+    value.put(object);
+    return Arrays.copyOf(value.getEncodedBytes(), value.getEncodedSize());
+  }
+
+  Object decode(byte[] bytes) {
+    Value value = values.get();
+    value.clear();
+    value.putEncodedBytes(bytes, 0, bytes.length);
+    return value.get();
+  }
+}
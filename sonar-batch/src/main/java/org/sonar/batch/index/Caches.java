@@ -20,78 +20,189 @@
 package org.sonar.batch.index;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import com.persistit.Exchange;
 import com.persistit.Persistit;
-import com.persistit.Value;
 import com.persistit.Volume;
 import com.persistit.encoding.CoderManager;
 import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
 import com.persistit.logging.Slf4jAdapter;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchSide;
+import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.TempFolder;
+import org.sonar.batch.bootstrap.BootstrapProperties;
+
+import javax.annotation.Nullable;
 
 import java.io.File;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
 /**
- * Factory of caches
+ * Factory of caches. The storage of caches is selected by the property {@link #STORAGE_PROP_KEY}.
+ * Caches can be used concurrently by several threads, whatever the storage.
  *
  * @since 3.6
  */
 @BatchSide
 public class Caches implements Startable {
 
+  /**
+   * @since 5.2
+   */
+  public static final String STORAGE_PROP_KEY = "sonar.batch.cache.storage";
+
+  /**
+   * @since 5.2
+   */
+  public enum Storage {
+    /**
+     * Persistit B-tree in temporary files. Default mode.
+     */
+    PERSISTIT,
+    /**
+     * Values kept on heap, without encoding. Fastest mode, for small projects.
+     */
+    HEAP,
+    /**
+     * Keys kept on heap, values encoded in a memory-mapped file. For big projects. Values are encoded with
+     * the Persistit format, so a small instance of Persistit is started when the first value is encoded. Its
+     * journal and its only volume, which holds the class index of value coders, are temporary files.
+     * Space of overwritten and removed values is not reclaimed before the end of analysis (see {@link MappedLog}).
+     */
+    MMAP
+  }
+
   private final Set<String> cacheNames = Sets.newHashSet();
+  private final Storage storage;
   private File tempDir;
   private Persistit persistit;
   private Volume volume;
+  private MappedLog mappedLog;
+  private CacheValueCodec codec;
   private final TempFolder tempFolder;
+  private final Map<Class<?>, ValueCoder> valueCoders = Maps.newLinkedHashMap();
+
+  public Caches(TempFolder tempFolder, BootstrapProperties bootstrapProperties) {
+    this(tempFolder, storage(bootstrapProperties.property(STORAGE_PROP_KEY)));
+  }
 
   public Caches(TempFolder tempFolder) {
+    this(tempFolder, Storage.PERSISTIT);
+  }
+
+  Caches(TempFolder tempFolder, Storage storage) {
     this.tempFolder = tempFolder;
-    initPersistit();
+    this.storage = storage;
+    tempDir = tempFolder.newDir("caches");
+    if (storage == Storage.PERSISTIT) {
+      initPersistit();
+      initVolume();
+    } else if (storage == Storage.MMAP) {
+      mappedLog = new MappedLog(new File(tempDir, "values.log"));
+      codec = new CacheValueCodec(new Supplier<Persistit>() {
+        @Override
+        public Persistit get() {
+          return persistitForValueCoders();
+        }
+      });
+    }
+  }
+
+  private static Storage storage(@Nullable String value) {
+    if (StringUtils.isBlank(value)) {
+      return Storage.PERSISTIT;
+    }
+    try {
+      return Storage.valueOf(value.trim().toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException e) {
+      throw MessageException.of(String.format("Unsupported value of property %s: %s. Supported values are: %s",
+        STORAGE_PROP_KEY, value, StringUtils.join(Storage.values(), ", ").toLowerCase(Locale.ENGLISH)));
+    }
   }
 
   private void initPersistit() {
+    Properties props = new Properties();
+    props.setProperty("tmpvoldir", "${datapath}");
+    props.setProperty("volume.1", "${datapath}/persistit,create,pageSize:8192,initialPages:10,extensionPages:100,maximumPages:25000");
+    startPersistit(props);
+  }
+
+  /**
+   * Value coders rely on the class index of Persistit, which is stored in the system volume. No cache is
+   * stored in Persistit, so this volume is sized for the handles of a few classes and no temporary volume
+   * is used.
+   */
+  private void initPersistitForValueCoders() {
+    Properties props = new Properties();
+    props.setProperty("volume.1", "${datapath}/classes,create,pageSize:8192,initialPages:1,extensionPages:1,maximumPages:100");
+    startPersistit(props);
+  }
+
+  private void startPersistit(Properties props) {
     try {
-      tempDir = tempFolder.newDir("caches");
       persistit = new Persistit();
       persistit.setPersistitLogger(new Slf4jAdapter(LoggerFactory.getLogger("PERSISTIT")));
-      Properties props = new Properties();
       props.setProperty("datapath", tempDir.getAbsolutePath());
       props.setProperty("logpath", "${datapath}/log");
       props.setProperty("logfile", "${logpath}/persistit_${timestamp}.log");
       props.setProperty("buffer.count.8192", "10");
       props.setProperty("journalpath", "${datapath}/journal");
-      props.setProperty("tmpvoldir", "${datapath}");
-      props.setProperty("volume.1", "${datapath}/persistit,create,pageSize:8192,initialPages:10,extensionPages:100,maximumPages:25000");
       persistit.setProperties(props);
       persistit.initialize();
-      volume = persistit.createTemporaryVolume();
+      for (Map.Entry<Class<?>, ValueCoder> entry : valueCoders.entrySet()) {
+        persistit.getCoderManager().registerValueCoder(entry.getKey(), entry.getValue());
+      }
 
     } catch (Exception e) {
       throw new IllegalStateException("Fail to start caches", e);
     }
   }
 
-  public void registerValueCoder(Class<?> clazz, ValueCoder coder) {
-    CoderManager cm = persistit.getCoderManager();
-    cm.registerValueCoder(clazz, coder);
+  private void initVolume() {
+    try {
+      volume = persistit.createTemporaryVolume();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to start caches", e);
+    }
   }
 
-  public <V> Cache<V> createCache(String cacheName) {
-    Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
+  private synchronized Persistit persistitForValueCoders() {
+    Preconditions.checkState(tempDir != null, "Caches are not initialized");
+    if (persistit == null) {
+      initPersistitForValueCoders();
+    }
+    return persistit;
+  }
+
+  public Storage getStorage() {
+    return storage;
+  }
+
+  /**
+   * Coders are not used when values are stored on heap
+   */
+  public synchronized void registerValueCoder(Class<?> clazz, ValueCoder coder) {
+    valueCoders.put(clazz, coder);
+    if (persistit != null) {
+      CoderManager cm = persistit.getCoderManager();
+      cm.registerValueCoder(clazz, coder);
+    }
+  }
+
+  public synchronized <V> Cache<V> createCache(String cacheName) {
+    Preconditions.checkState(tempDir != null, "Caches are not initialized");
     Preconditions.checkState(!cacheNames.contains(cacheName), "Cache is already created: " + cacheName);
     try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Cache<V> cache = new Cache<>(cacheName, exchange);
+      Cache<V> cache = new Cache<>(cacheName, this.<V>createStorage(cacheName));
       cacheNames.add(cacheName);
       return cache;
     } catch (Exception e) {
@@ -99,13 +210,30 @@ public class Caches implements Startable {
     }
   }
 
+  private <V> CacheStorage<V> createStorage(String cacheName) throws PersistitException {
+    switch (storage) {
+      case HEAP:
+        return new HeapCacheStorage<>();
+      case MMAP:
+        return new MappedCacheStorage<>(mappedLog, codec);
+      default:
+        Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
+        return new PersistitCacheStorage<>(persistit, volume, cacheName);
+    }
+  }
+
   @Override
   public void start() {
     // already started in constructor
   }
 
   @Override
-  public void stop() {
+  public synchronized void stop() {
+    if (mappedLog != null) {
+      mappedLog.close();
+      mappedLog = null;
+      codec = null;
+    }
     if (persistit != null) {
       try {
         persistit.close(false);
@@ -118,6 +246,7 @@ public class Caches implements Startable {
     FileUtils.deleteQuietly(tempDir);
     tempDir = null;
     cacheNames.clear();
+    valueCoders.clear();
   }
 
   File tempDir() {
@@ -0,0 +1,45 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+/**
+ * Storage keeping values on heap, without any encoding. Values are stored by reference, so they must not be
+ * modified once put in the cache. Intended for small projects.
+ *
+ * @since 5.2
+ */
+class HeapCacheStorage<V> extends SortedMapCacheStorage<V, Object> {
+
+  /**
+   * Sorted maps do not accept null values
+   */
+  private static final Object NULL = new Object();
+
+  @Override
+  Object store(V value) {
+    return value == null ? NULL : value;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  V load(Object stored) {
+    return stored == NULL ? null : (V) stored;
+  }
+}
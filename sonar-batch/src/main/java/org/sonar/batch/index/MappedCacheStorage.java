@@ -0,0 +1,48 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+/**
+ * Storage keeping keys on heap and values encoded in a memory-mapped {@link MappedLog}, so that big caches
+ * do not consume heap.
+ *
+ * @since 5.2
+ */
+class MappedCacheStorage<V> extends SortedMapCacheStorage<V, Long> {
+
+  private final MappedLog log;
+  private final CacheValueCodec codec;
+
+  MappedCacheStorage(MappedLog log, CacheValueCodec codec) {
+    this.log = log;
+    this.codec = codec;
+  }
+
+  @Override
+  Long store(V value) {
+    return log.append(codec.encode(value));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  V load(Long address) {
+    return (V) codec.decode(log.read(address));
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only log of records stored in a memory-mapped file. The file is mapped by regions,
+ * a record never overlapping two regions.
+ * <p/>
+ * Records are never overwritten nor compacted: putting a new value for an existing key appends a new
+ * record, and the space of overwritten or removed values is released only when the log is closed.
+ * The size of file is then the total size of all the values stored during analysis, which suits
+ * caches whose values are written once, like measures and issues.
+ * <p/>
+ * The address of a record is made of the index of its region (high 32 bits) and of its offset
+ * in the region (low 32 bits).
+ *
+ * @since 5.2
+ */
+class MappedLog implements Closeable {
+
+  static final int DEFAULT_REGION_SIZE = 64 * 1024 * 1024;
+  private static final int LENGTH_SIZE = 4;
+
+  private final File file;
+  private final int regionSize;
+  private final RandomAccessFile randomAccessFile;
+  private final List<MappedByteBuffer> regions = new CopyOnWriteArrayList<>();
+  private long mappedSize = 0L;
+  private int writeOffset = 0;
+
+  MappedLog(File file) {
+    this(file, DEFAULT_REGION_SIZE);
+  }
+
+  MappedLog(File file, int regionSize) {
+    this.file = file;
+    this.regionSize = regionSize;
+    try {
+      this.randomAccessFile = new RandomAccessFile(file, "rw");
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to create cache file " + file, e);
+    }
+  }
+
+  /**
+   * @return the address of the record
+   */
+  synchronized long append(byte[] bytes) {
+    int recordSize = LENGTH_SIZE + bytes.length;
+    if (regions.isEmpty() || writeOffset + recordSize > regions.get(regions.size() - 1).capacity()) {
+      mapRegion(Math.max(regionSize, recordSize));
+    }
+    int regionIndex = regions.size() - 1;
+    ByteBuffer buffer = regions.get(regionIndex).duplicate();
+    buffer.position(writeOffset);
+    buffer.putInt(bytes.length);
+    buffer.put(bytes);
+    long address = ((long) regionIndex << 32) | writeOffset;
+    writeOffset += recordSize;
+    return address;
+  }
+
+  byte[] read(long address) {
+    int regionIndex = (int) (address >>> 32);
+    int offset = (int) address;
+    ByteBuffer buffer = regions.get(regionIndex).duplicate();
+    buffer.position(offset);
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return bytes;
+  }
+
+  private void mapRegion(int size) {
+    try {
+      regions.add(randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, mappedSize, size));
+      mappedSize += size;
+      writeOffset = 0;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to extend cache file " + file, e);
+    }
+  }
+
+  long mappedSize() {
+    return mappedSize;
+  }
+
+  @Override
+  public void close() {
+    regions.clear();
+    IOUtils.closeQuietly(randomAccessFile);
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import com.google.common.collect.Sets;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Storage whose keys are kept in a sorted map on heap. Subclasses define how values are stored.
+ * Keys are sorted part by part, a key being lower than all the keys it is a prefix of.
+ *
+ * @param <V> the type of values of the cache
+ * @param <S> the type of stored values
+ * @since 5.2
+ */
+abstract class SortedMapCacheStorage<V, S> implements CacheStorage<V> {
+
+  static final Comparator<Object[]> KEY_COMPARATOR = new KeyComparator();
+
+  private final ConcurrentNavigableMap<Object[], S> map = new ConcurrentSkipListMap<>(KEY_COMPARATOR);
+
+  abstract S store(V value);
+
+  abstract V load(S stored);
+
+  @Override
+  public void put(Object[] key, V value) {
+    map.put(key.clone(), store(value));
+  }
+
+  @Override
+  @CheckForNull
+  public V get(Object[] key) {
+    S stored = map.get(key);
+    return stored == null ? null : load(stored);
+  }
+
+  @Override
+  public boolean containsKey(Object[] key) {
+    return map.containsKey(key);
+  }
+
+  @Override
+  public boolean remove(Object[] key) {
+    return map.remove(key) != null;
+  }
+
+  @Override
+  public void clear(Object[] prefix) {
+    map.remove(prefix);
+    Iterator<Object[]> keys = subMap(prefix).keySet().iterator();
+    while (keys.hasNext()) {
+      keys.next();
+      keys.remove();
+    }
+  }
+
+  @Override
+  public void clear() {
+    map.clear();
+  }
+
+  @Override
+  public Set<Object> keySet(Object[] prefix) {
+    Set<Object> keys = Sets.newLinkedHashSet();
+    for (Object[] key : subMap(prefix).keySet()) {
+      keys.add(key[prefix.length]);
+    }
+    return keys;
+  }
+
+  @Override
+  public Iterable<V> values(final Object[] prefix) {
+    return new Iterable<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        return new ValueIterator(subMap(prefix).values().iterator());
+      }
+    };
+  }
+
+  @Override
+  public Iterable<Cache.Entry<V>> entries(final Object[] prefix) {
+    return new Iterable<Cache.Entry<V>>() {
+      @Override
+      public Iterator<Cache.Entry<V>> iterator() {
+        return new EntryIterator(subMap(prefix).entrySet().iterator());
+      }
+    };
+  }
+
+  /**
+   * Entries whose keys strictly start with the given prefix
+   */
+  private ConcurrentNavigableMap<Object[], S> subMap(Object[] prefix) {
+    if (prefix.length == 0) {
+      return map;
+    }
+    Object[] upperBound = new Object[prefix.length + 1];
+    System.arraycopy(prefix, 0, upperBound, 0, prefix.length);
+    upperBound[prefix.length] = KeyComparator.AFTER;
+    return map.subMap(prefix, false, upperBound, false);
+  }
+
+  private class ValueIterator implements Iterator<V> {
+    private final Iterator<S> delegate;
+
+    ValueIterator(Iterator<S> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return delegate.hasNext();
+    }
+
+    @Override
+    public V next() {
+      return load(delegate.next());
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
+  private class EntryIterator implements Iterator<Cache.Entry<V>> {
+    private final Iterator<Map.Entry<Object[], S>> delegate;
+
+    EntryIterator(Iterator<Map.Entry<Object[], S>> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return delegate.hasNext();
+    }
+
+    @Override
+    public Cache.Entry<V> next() {
+      Map.Entry<Object[], S> entry = delegate.next();
+      if (entry == null) {
+        throw new NoSuchElementException();
+      }
+      return new Cache.Entry<>(entry.getKey().clone(), load(entry.getValue()));
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
+  /**
+   * Compares keys part by part. Null parts are lower than any other part. Parts of same type are compared
+   * by their natural order, so they must be {@link Comparable}. Parts of different types are ordered by
+   * the name of their class.
+   */
+  static class KeyComparator implements Comparator<Object[]> {
+
+    /**
+     * Marker greater than any key part, used to define the upper bound of a group
+     */
+    static final Object AFTER = new Object();
+
+    @Override
+    public int compare(Object[] o1, Object[] o2) {
+      int length = Math.min(o1.length, o2.length);
+      for (int i = 0; i < length; i++) {
+        int result = compareParts(o1[i], o2[i]);
+        if (result != 0) {
+          return result;
+        }
+      }
+      return Integer.compare(o1.length, o2.length);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareParts(@Nullable Object part1, @Nullable Object part2) {
+      if (part1 == part2) {
+        return 0;
+      }
+      if (part1 == AFTER || part2 == null) {
+        return 1;
+      }
+      if (part2 == AFTER || part1 == null) {
+        return -1;
+      }
+      Class<?> class1 = part1.getClass();
+      Class<?> class2 = part2.getClass();
+      if (class1 != class2) {
+        return class1.getName().compareTo(class2.getName());
+      }
+      return ((Comparable) checkComparable(part1)).compareTo(part2);
+    }
+
+    private static Object checkComparable(Object part) {
+      if (!(part instanceof Comparable)) {
+        throw new IllegalArgumentException("Part of cache key must be comparable: " + part.getClass().getName());
+      }
+      return part;
+    }
+  }
+}
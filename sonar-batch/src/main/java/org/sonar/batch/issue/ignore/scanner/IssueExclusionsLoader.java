@@ -27,6 +27,7 @@ import org.sonar.api.resources.Project;
 import org.sonar.api.utils.SonarException;
 import org.sonar.batch.issue.ignore.pattern.IssueExclusionPatternInitializer;
 import org.sonar.batch.issue.ignore.pattern.IssueInclusionPatternInitializer;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 
 import java.nio.charset.Charset;
 
@@ -36,14 +37,16 @@ public final class IssueExclusionsLoader {
   private final IssueExclusionPatternInitializer exclusionPatternInitializer;
   private final IssueInclusionPatternInitializer inclusionPatternInitializer;
   private final FileSystem fileSystem;
+  private final InputFileContents fileContents;
 
   public IssueExclusionsLoader(IssueExclusionsRegexpScanner regexpScanner, IssueExclusionPatternInitializer exclusionPatternInitializer,
     IssueInclusionPatternInitializer inclusionPatternInitializer,
-    FileSystem fileSystem) {
+    FileSystem fileSystem, InputFileContents fileContents) {
     this.regexpScanner = regexpScanner;
     this.exclusionPatternInitializer = exclusionPatternInitializer;
     this.inclusionPatternInitializer = inclusionPatternInitializer;
     this.fileSystem = fileSystem;
+    this.fileContents = fileContents;
   }
 
   public boolean shouldExecuteOnProject(Project project) {
@@ -65,7 +68,7 @@ public final class IssueExclusionsLoader {
           inclusionPatternInitializer.initializePatternsForPath(path, componentEffectiveKey);
           exclusionPatternInitializer.initializePatternsForPath(path, componentEffectiveKey);
           if (exclusionPatternInitializer.hasFileContentPattern()) {
-            regexpScanner.scan(componentEffectiveKey, inputFile.file(), sourcesEncoding);
+            regexpScanner.scan(componentEffectiveKey, fileContents.readLines((DefaultInputFile) inputFile));
           }
         }
       } catch (Exception e) {
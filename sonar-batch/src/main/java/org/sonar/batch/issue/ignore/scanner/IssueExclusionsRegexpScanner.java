@@ -22,7 +22,6 @@ package org.sonar.batch.issue.ignore.scanner;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,9 +30,6 @@ import org.sonar.batch.issue.ignore.pattern.IssueExclusionPatternInitializer;
 import org.sonar.batch.issue.ignore.pattern.IssuePattern;
 import org.sonar.batch.issue.ignore.pattern.LineRange;
 
-import java.io.File;
-import java.io.IOException;
-import java.nio.charset.Charset;
 import java.util.List;
 import java.util.Set;
 
@@ -78,11 +74,10 @@ public class IssueExclusionsRegexpScanner {
     currentLineExclusion = null;
   }
 
-  public void scan(String resource, File file, Charset sourcesEncoding) throws IOException {
+  public void scan(String resource, List<String> lines) {
     LOG.debug("Scanning {}", resource);
     init();
 
-    List<String> lines = FileUtils.readLines(file, sourcesEncoding.name());
     int lineIndex = 0;
     for (String line : lines) {
       lineIndex++;
@@ -30,6 +30,7 @@ import org.sonar.api.batch.fs.internal.DefaultInputFile;
 
 import javax.annotation.Nullable;
 
+import java.io.Reader;
 import java.util.Collection;
 
 /**
@@ -55,16 +56,16 @@ public final class FileHashes {
     return new FileHashes(hashes, linesByHash);
   }
 
-  public static FileHashes create(DefaultInputFile f) {
+  /**
+   * Hashes of the lines of file, whose decoded content is read from reader
+   */
+  public static FileHashes create(DefaultInputFile f, Reader reader) {
     final byte[][] hashes = new byte[f.lines()][];
-    FileMetadata.computeLineHashesForIssueTracking(f, new LineHashConsumer() {
-
-      @Override
-      public void consume(int lineIdx, @Nullable byte[] hash) {
-        hashes[lineIdx - 1] = hash;
-      }
-    });
+    FileMetadata.computeLineHashesForIssueTracking(reader, new HashCollector(hashes));
+    return create(hashes);
+  }
 
+  private static FileHashes create(byte[][] hashes) {
     int size = hashes.length;
     Multimap<String, Integer> linesByHash = LinkedHashMultimap.create();
     String[] hexHashes = new String[size];
@@ -89,4 +90,17 @@ public final class FileHashes {
     // indices in array are shifted one line before
     return (String) ObjectUtils.defaultIfNull(hashes[line - 1], "");
   }
+
+  private static class HashCollector implements LineHashConsumer {
+    private final byte[][] hashes;
+
+    HashCollector(byte[][] hashes) {
+      this.hashes = hashes;
+    }
+
+    @Override
+    public void consume(int lineIdx, @Nullable byte[] hash) {
+      hashes[lineIdx - 1] = hash;
+    }
+  }
 }
@@ -49,6 +49,7 @@ import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.utils.Duration;
 import org.sonar.api.utils.KeyValueFormat;
 import org.sonar.batch.issue.IssueCache;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 import org.sonar.batch.scan.filesystem.InputPathCache;
 import org.sonar.core.issue.IssueUpdater;
 import org.sonar.core.issue.db.IssueChangeDto;
@@ -77,6 +78,7 @@ public class IssueTrackingDecorator implements Decorator {
   private final RuleFinder ruleFinder;
   private final InputPathCache inputPathCache;
   private final Project project;
+  private final InputFileContents fileContents;
 
   public IssueTrackingDecorator(IssueCache issueCache, InitialOpenIssuesStack initialOpenIssues, IssueTracking tracking,
     ServerLineHashesLoader lastLineHashes,
@@ -85,8 +87,9 @@ public class IssueTrackingDecorator implements Decorator {
     Project project,
     ResourcePerspectives perspectives,
     RulesProfile rulesProfile,
-    RuleFinder ruleFinder, InputPathCache inputPathCache) {
+    RuleFinder ruleFinder, InputPathCache inputPathCache, InputFileContents fileContents) {
     this.issueCache = issueCache;
+    this.fileContents = fileContents;
     this.initialOpenIssues = initialOpenIssues;
     this.tracking = tracking;
     this.lastLineHashes = lastLineHashes;
@@ -133,7 +136,7 @@ public class IssueTrackingDecorator implements Decorator {
       if (file == null) {
         throw new IllegalStateException("File " + resource + " was not found in InputPath cache");
       }
-      sourceHashHolder = new SourceHashHolder((DefaultInputFile) file, lastLineHashes);
+      sourceHashHolder = new SourceHashHolder((DefaultInputFile) file, lastLineHashes, fileContents);
     }
 
     IssueTrackingResult trackingResult = tracking.track(sourceHashHolder, dbOpenIssues, issues);
@@ -22,6 +22,7 @@ package org.sonar.batch.issue.tracking;
 import com.google.common.collect.ImmutableSet;
 import org.sonar.api.batch.fs.InputFile.Status;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 
 import javax.annotation.CheckForNull;
 
@@ -30,19 +31,21 @@ import java.util.Collection;
 public class SourceHashHolder {
 
   private final ServerLineHashesLoader lastSnapshots;
+  private final InputFileContents fileContents;
 
   private FileHashes hashedReference;
   private FileHashes hashedSource;
   private DefaultInputFile inputFile;
 
-  public SourceHashHolder(DefaultInputFile inputFile, ServerLineHashesLoader lastSnapshots) {
+  public SourceHashHolder(DefaultInputFile inputFile, ServerLineHashesLoader lastSnapshots, InputFileContents fileContents) {
     this.inputFile = inputFile;
     this.lastSnapshots = lastSnapshots;
+    this.fileContents = fileContents;
   }
 
   private void initHashes() {
     if (hashedSource == null) {
-      hashedSource = FileHashes.create(inputFile);
+      hashedSource = FileHashes.create(inputFile, fileContents.newReader(inputFile));
       Status status = inputFile.status();
       if (status == Status.ADDED) {
         hashedReference = null;
@@ -22,6 +22,7 @@ package org.sonar.batch.report;
 import com.github.kevinsawicki.http.HttpRequest;
 import com.google.common.annotations.VisibleForTesting;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,11 +36,13 @@ import org.sonar.api.utils.ZipUtils;
 import org.sonar.batch.bootstrap.DefaultAnalysisMode;
 import org.sonar.batch.bootstrap.ServerClient;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.ReportFormat;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Locale;
 
 @BatchSide
 public class ReportPublisher implements Startable {
@@ -47,6 +50,11 @@ public class ReportPublisher implements Startable {
   private static final Logger LOG = LoggerFactory.getLogger(ReportPublisher.class);
   public static final String KEEP_REPORT_PROP_KEY = "sonar.batch.keepReport";
 
+  /**
+   * Layout of the generated report, see {@link ReportFormat}. Value is case-insensitive.
+   */
+  public static final String REPORT_FORMAT_PROP_KEY = "sonar.batch.reportFormat";
+
   private final ServerClient serverClient;
   private final Server server;
   private final Settings settings;
@@ -73,11 +81,17 @@ public class ReportPublisher implements Startable {
   @Override
   public void start() {
     reportDir = new File(projectReactor.getRoot().getWorkDir(), "batch-report");
-    writer = new BatchReportWriter(reportDir);
+    writer = new BatchReportWriter(reportDir, reportFormat());
+  }
+
+  private ReportFormat reportFormat() {
+    String format = settings.getString(REPORT_FORMAT_PROP_KEY);
+    return StringUtils.isBlank(format) ? ReportFormat.FILES : ReportFormat.valueOf(format.trim().toUpperCase(Locale.ENGLISH));
   }
 
   @Override
   public void stop() {
+    writer.close();
     if (!settings.getBoolean(KEEP_REPORT_PROP_KEY)) {
       FileUtils.deleteQuietly(reportDir);
     } else {
@@ -110,6 +124,7 @@ public class ReportPublisher implements Startable {
       for (ReportPublisherStep publisher : publishers) {
         publisher.publish(writer);
       }
+      writer.close();
       long stopTime = System.currentTimeMillis();
       LOG.info("Analysis reports generated in " + (stopTime - startTime) + "ms, dir size=" + FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir)));
 
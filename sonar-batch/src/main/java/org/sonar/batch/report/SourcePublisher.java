@@ -19,28 +19,26 @@
  */
 package org.sonar.batch.report;
 
-import org.apache.commons.io.ByteOrderMark;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.input.BOMInputStream;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.batch.index.BatchResource;
 import org.sonar.batch.index.ResourceCache;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 public class SourcePublisher implements ReportPublisherStep {
 
   private final ResourceCache resourceCache;
+  private final InputFileContents fileContents;
 
-  public SourcePublisher(ResourceCache resourceCache) {
+  public SourcePublisher(ResourceCache resourceCache, InputFileContents fileContents) {
     this.resourceCache = resourceCache;
+    this.fileContents = fileContents;
   }
 
   @Override
@@ -51,11 +49,9 @@ public class SourcePublisher implements ReportPublisherStep {
       }
 
       DefaultInputFile inputFile = (DefaultInputFile) resource.inputPath();
-      File iofile = writer.getSourceFile(resource.batchId());
       int line = 0;
-      try (FileOutputStream output = new FileOutputStream(iofile); BOMInputStream bomIn = new BOMInputStream(new FileInputStream(inputFile.file()),
-        ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE);
-        BufferedReader reader = new BufferedReader(new InputStreamReader(bomIn, inputFile.charset()))) {
+      try (OutputStream output = writer.newSourceOutput(resource.batchId());
+        BufferedReader reader = new BufferedReader(fileContents.newReader(inputFile))) {
         String lineStr = reader.readLine();
         while (lineStr != null) {
           IOUtils.write(lineStr, output, StandardCharsets.UTF_8);
@@ -68,6 +64,8 @@ public class SourcePublisher implements ReportPublisherStep {
       } catch (IOException e) {
         throw new IllegalStateException("Unable to store file source in the report", e);
       }
+      // publication of sources is the last step that needs the content of file
+      fileContents.evict(inputFile);
     }
   }
 }
@@ -46,9 +46,10 @@ class InputFileBuilder {
   private final DefaultAnalysisMode analysisMode;
   private final Settings settings;
   private final FileMetadata fileMetadata;
+  private final InputFileContents fileContents;
 
-  InputFileBuilder(String moduleKey, PathResolver pathResolver, LanguageDetection langDetection,
-    StatusDetection statusDetection, DefaultModuleFileSystem fs, DefaultAnalysisMode analysisMode, Settings settings, FileMetadata fileMetadata) {
+  InputFileBuilder(String moduleKey, PathResolver pathResolver, LanguageDetection langDetection, StatusDetection statusDetection,
+    DefaultModuleFileSystem fs, DefaultAnalysisMode analysisMode, Settings settings, FileMetadata fileMetadata, InputFileContents fileContents) {
     this.moduleKey = moduleKey;
     this.pathResolver = pathResolver;
     this.langDetection = langDetection;
@@ -57,6 +58,7 @@ class InputFileBuilder {
     this.analysisMode = analysisMode;
     this.settings = settings;
     this.fileMetadata = fileMetadata;
+    this.fileContents = fileContents;
   }
 
   String moduleKey() {
@@ -104,10 +106,12 @@ class InputFileBuilder {
     }
     inputFile.setLanguage(lang);
 
-    inputFile.initMetadata(fileMetadata.readMetadata(inputFile.file(), fs.encoding()));
+    // file is read and decoded only once, then its content is shared through InputFileContents
+    inputFile.initMetadata(fileMetadata.readMetadata(fileContents.newReader(inputFile), inputFile.file(), fs.encoding()));
 
     inputFile.setStatus(statusDetection.status(inputFile.moduleKey(), inputFile.relativePath(), inputFile.hash()));
     if (analysisMode.isIncremental() && inputFile.status() == InputFile.Status.SAME) {
+      fileContents.evict(inputFile);
       return null;
     }
     return inputFile;
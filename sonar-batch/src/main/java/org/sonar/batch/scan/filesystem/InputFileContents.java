@@ -0,0 +1,137 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import org.apache.commons.io.ByteOrderMark;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BOMInputStream;
+import org.sonar.api.BatchSide;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decoded content of the source files. Files are read from disk and decoded once when they are indexed,
+ * then their content is shared by all the components that need it: metadata, exclusion of issues,
+ * duplications, highlighting, issue tracking and publication of sources. This cache is shared amongst
+ * all project modules and it can be accessed concurrently.
+ * <p/>
+ * Memory used by cache is bounded. When it's full, the content of the other files is read from disk
+ * on each request. Contents are released as soon as sources are published in the analysis report.
+ * Byte order marks are removed from contents.
+ */
+@BatchSide
+public class InputFileContents {
+
+  /**
+   * Maximum memory used by cache, in megabytes. Zero disables the cache.
+   */
+  public static final String PROPERTY_MAX_SIZE = "sonar.batch.fileContentCacheSizeInMb";
+  static final int DEFAULT_MAX_SIZE_IN_MB = 64;
+
+  private final ConcurrentMap<String, String> contentsByKey = new ConcurrentHashMap<>();
+  private final long maxSizeInChars;
+  private final AtomicLong sizeInChars = new AtomicLong(0L);
+
+  public InputFileContents(Settings settings) {
+    this(1024L * 1024L * (settings.hasKey(PROPERTY_MAX_SIZE) ? settings.getInt(PROPERTY_MAX_SIZE) : DEFAULT_MAX_SIZE_IN_MB));
+  }
+
+  InputFileContents(long maxSizeInBytes) {
+    if (maxSizeInBytes < 0L) {
+      throw new IllegalArgumentException("Size of cache of file contents must be positive: " + maxSizeInBytes);
+    }
+    // a char is encoded in two bytes
+    this.maxSizeInChars = maxSizeInBytes / 2L;
+  }
+
+  /**
+   * Content of file, kept in memory if cache is not full
+   */
+  public String read(DefaultInputFile inputFile) {
+    String key = inputFile.key();
+    String content = contentsByKey.get(key);
+    if (content == null) {
+      content = readFromDisk(inputFile);
+      if (sizeInChars.addAndGet(content.length()) <= maxSizeInChars) {
+        String concurrentContent = contentsByKey.putIfAbsent(key, content);
+        if (concurrentContent != null) {
+          sizeInChars.addAndGet(-content.length());
+          content = concurrentContent;
+        }
+      } else {
+        sizeInChars.addAndGet(-content.length());
+      }
+    }
+    return content;
+  }
+
+  public Reader newReader(DefaultInputFile inputFile) {
+    return new StringReader(read(inputFile));
+  }
+
+  /**
+   * Lines of file, as returned by {@link java.io.BufferedReader#readLine()}
+   */
+  public List<String> readLines(DefaultInputFile inputFile) {
+    try {
+      return IOUtils.readLines(newReader(inputFile));
+    } catch (IOException e) {
+      throw new IllegalStateException("Should never occur as content is in memory", e);
+    }
+  }
+
+  /**
+   * Releases the memory used by the content of file, for example when it is excluded from analysis
+   */
+  public void evict(DefaultInputFile inputFile) {
+    String content = contentsByKey.remove(inputFile.key());
+    if (content != null) {
+      sizeInChars.addAndGet(-content.length());
+    }
+  }
+
+  public int size() {
+    return contentsByKey.size();
+  }
+
+  public void stop() {
+    contentsByKey.clear();
+    sizeInChars.set(0L);
+  }
+
+  private static String readFromDisk(DefaultInputFile inputFile) {
+    try (Reader reader = new InputStreamReader(new BOMInputStream(new FileInputStream(inputFile.file()),
+      ByteOrderMark.UTF_8, ByteOrderMark.UTF_16LE, ByteOrderMark.UTF_16BE, ByteOrderMark.UTF_32LE, ByteOrderMark.UTF_32BE), inputFile.charset())) {
+      return IOUtils.toString(reader);
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", inputFile.absolutePath(), inputFile.charset()), e);
+    }
+  }
+}
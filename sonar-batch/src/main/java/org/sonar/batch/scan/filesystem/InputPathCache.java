@@ -29,16 +29,19 @@ import org.sonar.batch.index.BatchResource;
 
 import javax.annotation.CheckForNull;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Cache of all files and dirs. This cache is shared amongst all project modules. Inclusion and
- * exclusion patterns are already applied.
+ * exclusion patterns are already applied. It can be updated concurrently, for example by the threads
+ * indexing files.
  */
 @BatchSide
 public class InputPathCache {
@@ -47,7 +50,7 @@ public class InputPathCache {
   private final Map<String, SortedMap<String, InputDir>> inputDirCache = new LinkedHashMap<>();
 
   public Iterable<InputFile> allFiles() {
-    return Iterables.concat(Iterables.transform(inputFileCache.values(), new Function<Map<String, InputFile>, Collection<InputFile>>() {
+    return Iterables.concat(Iterables.transform(modules(inputFileCache), new Function<Map<String, InputFile>, Collection<InputFile>>() {
       @Override
       public Collection<InputFile> apply(Map<String, InputFile> input) {
         return input.values();
@@ -56,7 +59,7 @@ public class InputPathCache {
   }
 
   public Iterable<InputDir> allDirs() {
-    return Iterables.concat(Iterables.transform(inputDirCache.values(), new Function<Map<String, InputDir>, Collection<InputDir>>() {
+    return Iterables.concat(Iterables.transform(modules(inputDirCache), new Function<Map<String, InputDir>, Collection<InputDir>>() {
       @Override
       public Collection<InputDir> apply(Map<String, InputDir> input) {
         return input.values();
@@ -65,67 +68,67 @@ public class InputPathCache {
   }
 
   public Iterable<InputFile> filesByModule(String moduleKey) {
-    if (inputFileCache.containsKey(moduleKey)) {
-      return inputFileCache.get(moduleKey).values();
+    SortedMap<String, InputFile> files = module(inputFileCache, moduleKey, false);
+    if (files != null) {
+      return files.values();
     }
     return Collections.emptyList();
   }
 
   public Iterable<InputDir> dirsByModule(String moduleKey) {
-    if (inputDirCache.containsKey(moduleKey)) {
-      return inputDirCache.get(moduleKey).values();
+    SortedMap<String, InputDir> dirs = module(inputDirCache, moduleKey, false);
+    if (dirs != null) {
+      return dirs.values();
     }
     return Collections.emptyList();
   }
 
-  public InputPathCache removeModule(String moduleKey) {
+  public synchronized InputPathCache removeModule(String moduleKey) {
     inputFileCache.remove(moduleKey);
     inputDirCache.remove(moduleKey);
     return this;
   }
 
   public InputPathCache remove(String moduleKey, InputFile inputFile) {
-    if (inputFileCache.containsKey(moduleKey)) {
-      inputFileCache.get(moduleKey).remove(inputFile.relativePath());
+    SortedMap<String, InputFile> files = module(inputFileCache, moduleKey, false);
+    if (files != null) {
+      files.remove(inputFile.relativePath());
     }
     return this;
   }
 
   public InputPathCache remove(String moduleKey, InputDir inputDir) {
-    if (inputDirCache.containsKey(moduleKey)) {
-      inputDirCache.get(moduleKey).remove(inputDir.relativePath());
+    SortedMap<String, InputDir> dirs = module(inputDirCache, moduleKey, false);
+    if (dirs != null) {
+      dirs.remove(inputDir.relativePath());
     }
     return this;
   }
 
   public InputPathCache put(String moduleKey, InputFile inputFile) {
-    if (!inputFileCache.containsKey(moduleKey)) {
-      inputFileCache.put(moduleKey, new TreeMap<String, InputFile>());
-    }
-    inputFileCache.get(moduleKey).put(inputFile.relativePath(), inputFile);
+    module(inputFileCache, moduleKey, true).put(inputFile.relativePath(), inputFile);
     return this;
   }
 
   public InputPathCache put(String moduleKey, InputDir inputDir) {
-    if (!inputDirCache.containsKey(moduleKey)) {
-      inputDirCache.put(moduleKey, new TreeMap<String, InputDir>());
-    }
-    inputDirCache.get(moduleKey).put(inputDir.relativePath(), inputDir);
+    module(inputDirCache, moduleKey, true).put(inputDir.relativePath(), inputDir);
     return this;
   }
 
   @CheckForNull
   public InputFile getFile(String moduleKey, String relativePath) {
-    if (inputFileCache.containsKey(moduleKey)) {
-      return inputFileCache.get(moduleKey).get(relativePath);
+    SortedMap<String, InputFile> files = module(inputFileCache, moduleKey, false);
+    if (files != null) {
+      return files.get(relativePath);
     }
     return null;
   }
 
   @CheckForNull
   public InputDir getDir(String moduleKey, String relativePath) {
-    if (inputDirCache.containsKey(moduleKey)) {
-      return inputDirCache.get(moduleKey).get(relativePath);
+    SortedMap<String, InputDir> dirs = module(inputDirCache, moduleKey, false);
+    if (dirs != null) {
+      return dirs.get(relativePath);
     }
     return null;
   }
@@ -140,4 +143,21 @@ public class InputPathCache {
     return null;
   }
 
+  /**
+   * Paths of modules are kept in concurrent maps, so only the access to the maps of modules must be synchronized.
+   */
+  @CheckForNull
+  private synchronized <T> SortedMap<String, T> module(Map<String, SortedMap<String, T>> cache, String moduleKey, boolean create) {
+    SortedMap<String, T> paths = cache.get(moduleKey);
+    if (paths == null && create) {
+      paths = new ConcurrentSkipListMap<>();
+      cache.put(moduleKey, paths);
+    }
+    return paths;
+  }
+
+  private synchronized <T> List<SortedMap<String, T>> modules(Map<String, SortedMap<String, T>> cache) {
+    return new ArrayList<>(cache.values());
+  }
+
 }
@@ -19,17 +19,15 @@
  */
 package org.sonar.batch.scan.report;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchSide;
-import org.sonar.api.batch.fs.FileSystem;
-import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.batch.index.BatchResource;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 import org.sonar.batch.scan.filesystem.InputPathCache;
 
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -39,11 +37,11 @@ public class SourceProvider {
 
   private static final Logger LOG = LoggerFactory.getLogger(SourceProvider.class);
   private final InputPathCache inputPathCache;
-  private final FileSystem fs;
+  private final InputFileContents fileContents;
 
-  public SourceProvider(InputPathCache inputPathCache, FileSystem fs) {
+  public SourceProvider(InputPathCache inputPathCache, InputFileContents fileContents) {
     this.inputPathCache = inputPathCache;
-    this.fs = fs;
+    this.fileContents = fileContents;
   }
 
   public List<String> getEscapedSource(BatchResource component) {
@@ -52,14 +50,14 @@ public class SourceProvider {
       return Collections.emptyList();
     }
     try {
-      InputFile inputFile = (InputFile) inputPathCache.getInputPath(component);
-      List<String> lines = FileUtils.readLines(inputFile.file(), fs.encoding());
+      DefaultInputFile inputFile = (DefaultInputFile) inputPathCache.getInputPath(component);
+      List<String> lines = fileContents.readLines(inputFile);
       List<String> escapedLines = new ArrayList<>(lines.size());
       for (String line : lines) {
         escapedLines.add(StringEscapeUtils.escapeHtml(line));
       }
       return escapedLines;
-    } catch (IOException e) {
+    } catch (IllegalStateException e) {
       LOG.warn("Unable to read source code of resource {}", component, e);
       return Collections.emptyList();
     }
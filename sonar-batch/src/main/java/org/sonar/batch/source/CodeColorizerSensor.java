@@ -22,12 +22,15 @@ package org.sonar.batch.source;
 import org.sonar.api.batch.Phase;
 import org.sonar.api.batch.fs.FileSystem;
 import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.sensor.Sensor;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.SensorDescriptor;
 import org.sonar.batch.index.ResourceCache;
-import org.sonar.batch.protocol.output.BatchReportReader;
+import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.protocol.output.FileStructure;
 import org.sonar.batch.report.ReportPublisher;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 import org.sonar.colorizer.CodeColorizer;
 
 /**
@@ -39,11 +42,13 @@ public final class CodeColorizerSensor implements Sensor {
   private final ReportPublisher reportPublisher;
   private final ResourceCache resourceCache;
   private final CodeColorizers codeColorizers;
+  private final InputFileContents fileContents;
 
-  public CodeColorizerSensor(ReportPublisher reportPublisher, ResourceCache resourceCache, CodeColorizers codeColorizers) {
+  public CodeColorizerSensor(ReportPublisher reportPublisher, ResourceCache resourceCache, CodeColorizers codeColorizers, InputFileContents fileContents) {
     this.reportPublisher = reportPublisher;
     this.resourceCache = resourceCache;
     this.codeColorizers = codeColorizers;
+    this.fileContents = fileContents;
   }
 
   @Override
@@ -55,14 +60,14 @@ public final class CodeColorizerSensor implements Sensor {
   @Override
   public void execute(final SensorContext context) {
     FileSystem fs = context.fileSystem();
+    BatchReportWriter writer = reportPublisher.getWriter();
     for (InputFile f : fs.inputFiles(fs.predicates().all())) {
-      BatchReportReader reader = new BatchReportReader(reportPublisher.getReportDir());
       int batchId = resourceCache.get(f).batchId();
       String language = f.language();
-      if (reader.hasSyntaxHighlighting(batchId) || language == null) {
+      if (writer.hasComponentData(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, batchId) || language == null) {
         continue;
       }
-      codeColorizers.toSyntaxHighlighting(f.file(), fs.encoding(), language, context.newHighlighting().onFile(f));
+      codeColorizers.toSyntaxHighlighting((DefaultInputFile) f, fileContents, language, context.newHighlighting().onFile(f));
     }
   }
 
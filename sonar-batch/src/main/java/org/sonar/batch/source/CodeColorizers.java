@@ -20,24 +20,19 @@
 package org.sonar.batch.source;
 
 import com.google.common.collect.Lists;
-import org.apache.commons.io.input.BOMInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.BatchSide;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.sensor.highlighting.NewHighlighting;
 import org.sonar.api.web.CodeColorizerFormat;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 import org.sonar.colorizer.CodeColorizer;
 import org.sonar.colorizer.Tokenizer;
 
 import javax.annotation.CheckForNull;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -68,26 +63,32 @@ public class CodeColorizers {
     this(Lists.<CodeColorizerFormat>newArrayList());
   }
 
+  /**
+   * Highlights the file, which is read from the cache of decoded contents
+   */
+  public void toSyntaxHighlighting(DefaultInputFile inputFile, InputFileContents fileContents, String language, NewHighlighting highlighting) {
+    List<Tokenizer> tokenizers = getTokenizers(language);
+    if (tokenizers != null) {
+      try {
+        new HighlightingRenderer().render(fileContents.newReader(inputFile), tokenizers, highlighting);
+      } catch (Exception e) {
+        LOG.warn("Unable to perform colorization of file " + inputFile.file(), e);
+      }
+    }
+  }
+
   @CheckForNull
-  public void toSyntaxHighlighting(File file, Charset charset, String language, NewHighlighting highlighting) {
+  private List<Tokenizer> getTokenizers(String language) {
     CodeColorizerFormat format = byLang.get(language);
-    List<Tokenizer> tokenizers;
     if (format == null) {
       // Workaround for Java test code since Java plugin only provides highlighting for main source and no colorizer
       // TODO can be dropped when Java plugin embed its own CodeColorizerFormat of (better) provides highlighting for tests
       // See SONARJAVA-830
       if ("java".equals(language)) {
-        tokenizers = CodeColorizer.Format.JAVA.getTokenizers();
-      } else {
-        return;
+        return CodeColorizer.Format.JAVA.getTokenizers();
       }
-    } else {
-      tokenizers = format.getTokenizers();
-    }
-    try (Reader reader = new BufferedReader(new InputStreamReader(new BOMInputStream(new FileInputStream(file)), charset))) {
-      new HighlightingRenderer().render(reader, tokenizers, highlighting);
-    } catch (Exception e) {
-      LOG.warn("Unable to perform colorization of file " + file, e);
+      return null;
     }
+    return format.getTokenizers();
   }
 }
@@ -19,12 +19,19 @@
  */
 package org.sonar.batch.cpd;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
+import org.mockito.Mockito;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.sonar.api.batch.fs.InputFile;
+import org.sonar.api.batch.fs.internal.DefaultFileSystem;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.sensor.SensorContext;
 import org.sonar.api.batch.sensor.duplication.NewDuplication;
@@ -32,16 +39,33 @@ import org.sonar.api.batch.sensor.duplication.internal.DefaultDuplication;
 import org.sonar.api.batch.sensor.internal.SensorStorage;
 import org.sonar.api.batch.sensor.measure.Measure;
 import org.sonar.api.batch.sensor.measure.internal.DefaultMeasure;
+import org.sonar.api.config.Settings;
 import org.sonar.api.measures.CoreMetrics;
+import org.sonar.batch.cpd.index.DbDuplicationsIndex;
+import org.sonar.batch.cpd.index.IndexFactory;
+import org.sonar.batch.cpd.index.SonarDuplicationsIndex;
+import org.sonar.batch.scan.filesystem.InputFileContents;
+import org.sonar.duplications.block.Block;
 import org.sonar.duplications.index.CloneGroup;
 import org.sonar.duplications.index.ClonePart;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -51,7 +75,12 @@ public class JavaCpdEngineTest {
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   SensorContext context = mock(SensorContext.class);
+  File baseDir;
+  File workDir;
   DefaultInputFile inputFile;
   private SensorStorage storage = mock(SensorStorage.class);
 
@@ -71,6 +100,8 @@ public class JavaCpdEngineTest {
     });
     inputFile = (DefaultInputFile) new DefaultInputFile("foo", "src/main/java/Foo.java").setLines(300);
     inputFile.setModuleBaseDir(temp.newFolder().toPath());
+    baseDir = temp.newFolder();
+    workDir = temp.newFolder();
   }
 
   @SuppressWarnings("unchecked")
@@ -145,6 +176,123 @@ public class JavaCpdEngineTest {
       .isDuplicatedBy("key3", 15, 214));
   }
 
+  @Test
+  public void number_of_detection_threads_is_configurable() {
+    Settings settings = new Settings();
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex();
+    assertThat(JavaCpdEngine.getDetectionThreads(settings, index)).isGreaterThanOrEqualTo(1);
+
+    settings.setProperty(JavaCpdEngine.THREADS_PROPERTY, 3);
+    assertThat(JavaCpdEngine.getDetectionThreads(settings, index)).isEqualTo(3);
+  }
+
+  @Test
+  public void cross_project_detection_is_sequential() {
+    Settings settings = new Settings();
+    settings.setProperty(JavaCpdEngine.THREADS_PROPERTY, 3);
+
+    assertThat(JavaCpdEngine.getDetectionThreads(settings, new SonarDuplicationsIndex(mock(DbDuplicationsIndex.class)))).isEqualTo(1);
+  }
+
+  @Test
+  public void insert_blocks_in_order_of_files_when_chunking_on_several_threads() throws Exception {
+    List<InputFile> files = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      files.add(javaFile("src/Foo" + i + ".java", i));
+    }
+    SonarDuplicationsIndex index = spy(new SonarDuplicationsIndex());
+
+    newEngine(index, new InputFileContents(new Settings()), 4).createIndex(null, "java", files);
+
+    InOrder inOrder = inOrder(index);
+    for (InputFile file : files) {
+      inOrder.verify(index).insert(eq(file), argThat(new ArgumentMatcher<Collection<Block>>() {
+        @Override
+        public boolean matches(Object argument) {
+          return !((Collection<?>) argument).isEmpty();
+        }
+      }));
+    }
+    assertThat(index.getByInputFile(files.get(7), "foo:src/Foo7.java")).isNotEmpty();
+  }
+
+  @Test
+  public void propagate_failure_of_chunking() throws Exception {
+    List<InputFile> files = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      files.add(javaFile("src/Foo" + i + ".java", i));
+    }
+    InputFileContents fileContents = spy(new InputFileContents(new Settings()));
+    doThrow(new IllegalStateException("Fail to read Foo5")).when(fileContents).newReader((DefaultInputFile) files.get(5));
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Fail to read Foo5");
+
+    newEngine(new SonarDuplicationsIndex(), fileContents, 4).createIndex(null, "java", files);
+  }
+
+  @Test
+  public void chunk_content_of_files_read_during_indexing() throws Exception {
+    DefaultInputFile file = javaFile("src/Foo.java", 1);
+    InputFileContents fileContents = new InputFileContents(new Settings());
+    fileContents.read(file);
+
+    // file is not read again from disk
+    assertThat(file.file().delete()).isTrue();
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex();
+    newEngine(index, fileContents, 1).createIndex(null, "java", Arrays.<InputFile>asList(file));
+
+    assertThat(index.getByInputFile(file, "foo:src/Foo.java")).isNotEmpty();
+  }
+
+  @Test
+  public void reuse_blocks_of_unchanged_files_computed_by_previous_analysis() throws Exception {
+    DefaultInputFile unchanged = javaFile("src/Unchanged.java", 1).setHash("h1");
+    DefaultInputFile changed = javaFile("src/Changed.java", 2).setHash("h2");
+    List<InputFile> files = Arrays.<InputFile>asList(unchanged, changed);
+    newEngine(new SonarDuplicationsIndex(), new InputFileContents(new Settings()), 2).createIndex(null, "java", files);
+
+    changed.setHash("h3");
+    InputFileContents fileContents = spy(new InputFileContents(new Settings()));
+    SonarDuplicationsIndex index = new SonarDuplicationsIndex();
+    newEngine(index, fileContents, 2).createIndex(null, "java", files);
+
+    verify(fileContents, never()).newReader(unchanged);
+    verify(fileContents).newReader(changed);
+    assertThat(index.getByInputFile(unchanged, "foo:src/Unchanged.java")).isNotEmpty();
+    assertThat(index.getByInputFile(changed, "foo:src/Changed.java")).isNotEmpty();
+  }
+
+  @Test
+  public void fingerprint_of_blocks_identifies_jar_files_of_code() {
+    assertThat(CpdEngine.blockCacheFingerprint("java-10", Test.class)).startsWith("java-10|junit").contains(".jar:");
+    assertThat(CpdEngine.blockCacheFingerprint("java-10", Test.class)).isNotEqualTo(CpdEngine.blockCacheFingerprint("java-10", Mockito.class));
+  }
+
+  private JavaCpdEngine newEngine(SonarDuplicationsIndex index, InputFileContents fileContents, int threads) throws IOException {
+    IndexFactory indexFactory = mock(IndexFactory.class);
+    when(indexFactory.create(null, "java")).thenReturn(index);
+    Settings settings = new Settings();
+    settings.setProperty(JavaCpdEngine.THREADS_PROPERTY, threads);
+    DefaultFileSystem fs = new DefaultFileSystem(baseDir);
+    fs.setWorkDir(workDir);
+    return new JavaCpdEngine(indexFactory, fs, settings, fileContents);
+  }
+
+  private DefaultInputFile javaFile(String relativePath, int index) throws IOException {
+    StringBuilder source = new StringBuilder("class Foo" + index + " {\n");
+    for (int i = 0; i < 20; i++) {
+      source.append("  void method").append(i).append("() {\n    int a = ").append(index * i).append(";\n  }\n");
+    }
+    source.append("}\n");
+    FileUtils.write(new File(baseDir, relativePath), source.toString(), StandardCharsets.UTF_8);
+    DefaultInputFile file = new DefaultInputFile("foo", relativePath);
+    file.setModuleBaseDir(baseDir.toPath());
+    file.setCharset(StandardCharsets.UTF_8);
+    file.setLanguage("java");
+    return file;
+  }
+
   private CloneGroup newCloneGroup(ClonePart... parts) {
     return CloneGroup.builder().setLength(0).setOrigin(parts[0]).setParts(Arrays.asList(parts)).build();
   }
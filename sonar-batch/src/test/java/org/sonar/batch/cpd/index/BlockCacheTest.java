@@ -0,0 +1,136 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.cpd.index;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.duplications.block.Block;
+import org.sonar.duplications.block.ByteArray;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlockCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File file;
+
+  @Before
+  public void prepare() throws Exception {
+    file = new File(temp.newFolder(), "cpd/blocks-java.dat");
+  }
+
+  @Test
+  public void empty_if_no_previous_analysis() {
+    BlockCache cache = BlockCache.load(file, "java-10");
+
+    assertThat(cache.get("foo:Bar.java", "abc")).isNull();
+  }
+
+  @Test
+  public void reuse_blocks_of_unchanged_files() {
+    List<Block> blocks = Arrays.asList(block("foo:Bar.java", 0, 1, 5), block("foo:Bar.java", 1, 2, 6));
+    BlockCache cache = BlockCache.load(file, "java-10");
+    cache.put("foo:Bar.java", "abc", blocks);
+    cache.save();
+
+    cache = BlockCache.load(file, "java-10");
+    assertThat(cache.get("foo:Bar.java", "abc")).containsExactlyElementsOf(blocks);
+    Block block = cache.get("foo:Bar.java", "abc").get(1);
+    assertThat(block.getResourceId()).isEqualTo("foo:Bar.java");
+    assertThat(block.getStartLine()).isEqualTo(2);
+    assertThat(block.getEndLine()).isEqualTo(6);
+    assertThat(block.getStartUnit()).isEqualTo(10);
+    assertThat(block.getEndUnit()).isEqualTo(20);
+  }
+
+  @Test
+  public void ignore_blocks_of_changed_files() {
+    BlockCache cache = BlockCache.load(file, "java-10");
+    cache.put("foo:Bar.java", "abc", Arrays.asList(block("foo:Bar.java", 0, 1, 5)));
+    cache.save();
+
+    cache = BlockCache.load(file, "java-10");
+    assertThat(cache.get("foo:Bar.java", "def")).isNull();
+    assertThat(cache.get("foo:Bar.java", null)).isNull();
+    assertThat(cache.get("foo:Other.java", "abc")).isNull();
+  }
+
+  @Test
+  public void ignore_blocks_computed_differently() {
+    BlockCache cache = BlockCache.load(file, "java-10");
+    cache.put("foo:Bar.java", "abc", Arrays.asList(block("foo:Bar.java", 0, 1, 5)));
+    cache.save();
+
+    assertThat(BlockCache.load(file, "java-20").get("foo:Bar.java", "abc")).isNull();
+  }
+
+  @Test
+  public void drop_files_not_registered_again() {
+    BlockCache cache = BlockCache.load(file, "java-10");
+    cache.put("foo:Bar.java", "abc", Arrays.asList(block("foo:Bar.java", 0, 1, 5)));
+    cache.save();
+
+    BlockCache.load(file, "java-10").save();
+
+    assertThat(BlockCache.load(file, "java-10").get("foo:Bar.java", "abc")).isNull();
+  }
+
+  @Test
+  public void keep_blocks_of_previous_analysis_if_not_saved() {
+    BlockCache cache = BlockCache.load(file, "java-10");
+    cache.put("foo:Bar.java", "abc", Arrays.asList(block("foo:Bar.java", 0, 1, 5)));
+    cache.save();
+
+    cache = BlockCache.load(file, "java-10");
+    cache.put("foo:Other.java", "def", Arrays.asList(block("foo:Other.java", 0, 1, 5)));
+    cache.close();
+
+    cache = BlockCache.load(file, "java-10");
+    assertThat(cache.get("foo:Bar.java", "abc")).hasSize(1);
+    assertThat(cache.get("foo:Other.java", "def")).isNull();
+    assertThat(file.getParentFile().list()).containsOnly(file.getName());
+  }
+
+  @Test
+  public void ignore_corrupted_file() throws Exception {
+    FileUtils.write(file, "not a cache");
+
+    assertThat(BlockCache.load(file, "java-10").get("foo:Bar.java", "abc")).isNull();
+  }
+
+  private static Block block(String resourceId, int indexInFile, int startLine, int endLine) {
+    return Block.builder()
+      .setResourceId(resourceId)
+      .setBlockHash(new ByteArray(new int[] {indexInFile, 42}))
+      .setIndexInFile(indexInFile)
+      .setLines(startLine, endLine)
+      .setUnit(10, 20)
+      .build();
+  }
+}
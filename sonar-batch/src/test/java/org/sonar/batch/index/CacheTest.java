@@ -25,20 +25,46 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
 import org.sonar.batch.index.Cache.Entry;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
+@RunWith(Parameterized.class)
 public class CacheTest {
 
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
 
+  @Parameterized.Parameters(name = "{0}")
+  public static Collection<Object[]> storages() {
+    List<Object[]> storages = new ArrayList<>();
+    for (Caches.Storage storage : Caches.Storage.values()) {
+      storages.add(new Object[] {storage});
+    }
+    return storages;
+  }
+
+  private final Caches.Storage storage;
+
   Caches caches;
 
+  public CacheTest(Caches.Storage storage) {
+    this.storage = storage;
+  }
+
   @Before
   public void start() {
-    caches = CachesTest.createCacheOnTemp(temp);
+    caches = CachesTest.createCacheOnTemp(temp, storage);
     caches.start();
   }
 
@@ -243,6 +269,36 @@ public class CacheTest {
     assertThat(cache.values()).isEmpty();
   }
 
+  @Test
+  public void concurrent_writers_and_readers() throws Exception {
+    final Cache<String> cache = caches.createCache("concurrent");
+    final int nbThreads = 4;
+    final int nbEntries = 500;
+    ExecutorService executor = Executors.newFixedThreadPool(nbThreads);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int thread = 0; thread < nbThreads; thread++) {
+      final String group = "thread" + thread;
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int i = 0; i < nbEntries; i++) {
+            cache.put(group, i, group + "-" + i);
+            assertThat(cache.get(group, i)).isEqualTo(group + "-" + i);
+          }
+          return null;
+        }
+      }));
+    }
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(cache.keySet()).hasSize(nbThreads);
+    assertThat(cache.values()).hasSize(nbThreads * nbEntries);
+    assertThat(cache.values("thread2")).hasSize(nbEntries);
+  }
+
   @Test
   public void empty_cache() {
     Cache<String> cache = caches.createCache("empty");
@@ -20,12 +20,16 @@
 package org.sonar.batch.index;
 
 import com.google.common.collect.ImmutableMap;
+import com.persistit.Value;
+import com.persistit.encoding.CoderContext;
+import com.persistit.encoding.ValueCoder;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.CoreProperties;
+import org.sonar.api.utils.MessageException;
 import org.sonar.batch.bootstrap.BootstrapProperties;
 import org.sonar.batch.bootstrap.TempFolderProvider;
 
@@ -42,9 +46,13 @@ public class CachesTest {
   public static TemporaryFolder temp = new TemporaryFolder();
 
   public static Caches createCacheOnTemp(TemporaryFolder temp) {
+    return createCacheOnTemp(temp, Caches.Storage.PERSISTIT);
+  }
+
+  public static Caches createCacheOnTemp(TemporaryFolder temp, Caches.Storage storage) {
     try {
       BootstrapProperties bootstrapProps = new BootstrapProperties(ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, temp.newFolder().getAbsolutePath()));
-      return new Caches(new TempFolderProvider().provide(bootstrapProps));
+      return new Caches(new TempFolderProvider().provide(bootstrapProps), storage);
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
@@ -95,6 +103,91 @@ public class CachesTest {
     }
   }
 
+  @Test
+  public void select_storage_by_property() throws Exception {
+    File workDir = temp.newFolder();
+    Caches heapCaches = new Caches(new TempFolderProvider().provide(new BootstrapProperties(ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, workDir.getAbsolutePath()))),
+      new BootstrapProperties(ImmutableMap.of(Caches.STORAGE_PROP_KEY, "heap")));
+    try {
+      assertThat(heapCaches.getStorage()).isEqualTo(Caches.Storage.HEAP);
+      // Persistit is not started when values are kept on heap
+      assertThat(heapCaches.persistit()).isNull();
+    } finally {
+      heapCaches.stop();
+    }
+  }
+
+  @Test
+  public void persistit_is_the_default_storage() {
+    assertThat(caches.getStorage()).isEqualTo(Caches.Storage.PERSISTIT);
+  }
+
+  @Test
+  public void fail_if_unknown_storage() throws Exception {
+    File workDir = temp.newFolder();
+    try {
+      new Caches(new TempFolderProvider().provide(new BootstrapProperties(ImmutableMap.of(CoreProperties.WORKING_DIRECTORY, workDir.getAbsolutePath()))),
+        new BootstrapProperties(ImmutableMap.of(Caches.STORAGE_PROP_KEY, "unknown")));
+      fail();
+    } catch (MessageException e) {
+      assertThat(e).hasMessage("Unsupported value of property sonar.batch.cache.storage: unknown. Supported values are: persistit, heap, mmap");
+    }
+  }
+
+  @Test
+  public void mmap_storage_encodes_values() {
+    Caches mappedCaches = createCacheOnTemp(temp, Caches.Storage.MMAP);
+    try {
+      Cache<Element> cache = mappedCaches.createCache("elements");
+      cache.put("foo", new Element());
+      assertThat(cache.get("foo")).isInstanceOf(Element.class);
+      assertThat(cache.get("bar")).isNull();
+    } finally {
+      mappedCaches.stop();
+    }
+  }
+
+  @Test
+  public void mmap_storage_starts_persistit_when_first_value_is_encoded() {
+    Caches mappedCaches = createCacheOnTemp(temp, Caches.Storage.MMAP);
+    try {
+      mappedCaches.registerValueCoder(Name.class, new NameValueCoder());
+      Cache<Name> cache = mappedCaches.createCache("names");
+      assertThat(mappedCaches.persistit()).isNull();
+
+      cache.put("foo", new Name("bar"));
+
+      assertThat(mappedCaches.persistit().isInitialized()).isTrue();
+      // no volume for caches, only the one of class index
+      assertThat(new File(mappedCaches.tempDir(), "persistit")).doesNotExist();
+      assertThat(new File(mappedCaches.tempDir(), "classes")).isFile();
+      // coder registered before the start of Persistit is used
+      assertThat(cache.get("foo").value).isEqualTo("bar");
+    } finally {
+      mappedCaches.stop();
+    }
+  }
+
+  static class Name {
+    final String value;
+
+    Name(String value) {
+      this.value = value;
+    }
+  }
+
+  static class NameValueCoder implements ValueCoder {
+    @Override
+    public void put(Value value, Object object, CoderContext context) {
+      value.putString(((Name) object).value);
+    }
+
+    @Override
+    public Object get(Value value, Class<?> clazz, CoderContext context) {
+      return new Name(value.getString());
+    }
+  }
+
   static class Element implements Serializable {
 
   }
@@ -0,0 +1,83 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MappedLogTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  MappedLog log;
+
+  @Before
+  public void setUp() throws Exception {
+    log = new MappedLog(temp.newFile(), 16);
+  }
+
+  @After
+  public void tearDown() {
+    log.close();
+  }
+
+  @Test
+  public void append_and_read_records() {
+    long first = log.append("foo".getBytes());
+    long second = log.append("bar".getBytes());
+
+    assertThat(new String(log.read(first))).isEqualTo("foo");
+    assertThat(new String(log.read(second))).isEqualTo("bar");
+    assertThat(log.mappedSize()).isEqualTo(16L);
+  }
+
+  @Test
+  public void map_new_region_when_record_does_not_fit() {
+    long first = log.append("0123456789".getBytes());
+    long second = log.append("abcdef".getBytes());
+
+    assertThat(new String(log.read(first))).isEqualTo("0123456789");
+    assertThat(new String(log.read(second))).isEqualTo("abcdef");
+    assertThat(log.mappedSize()).isEqualTo(32L);
+  }
+
+  @Test
+  public void map_dedicated_region_for_big_records() {
+    byte[] bigRecord = new byte[100];
+    bigRecord[99] = 42;
+    long address = log.append(bigRecord);
+
+    assertThat(log.read(address)).isEqualTo(bigRecord);
+    assertThat(log.mappedSize()).isEqualTo(104L);
+  }
+
+  @Test
+  public void append_empty_record() {
+    long address = log.append(new byte[0]);
+
+    assertThat(log.read(address)).isEmpty();
+  }
+}
@@ -0,0 +1,64 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.index;
+
+import org.junit.Test;
+
+import java.util.Comparator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SortedMapCacheStorageTest {
+
+  Comparator<Object[]> comparator = SortedMapCacheStorage.KEY_COMPARATOR;
+
+  @Test
+  public void compare_parts_by_natural_order() {
+    assertThat(comparator.compare(new Object[] {"a", 2}, new Object[] {"a", 10})).isNegative();
+    assertThat(comparator.compare(new Object[] {"b"}, new Object[] {"a", 10})).isPositive();
+    assertThat(comparator.compare(new Object[] {"a", 2}, new Object[] {"a", 2})).isZero();
+  }
+
+  @Test
+  public void prefix_is_lower_than_longer_keys() {
+    assertThat(comparator.compare(new Object[] {"a"}, new Object[] {"a", 1})).isNegative();
+    assertThat(comparator.compare(new Object[] {"a", SortedMapCacheStorage.KeyComparator.AFTER}, new Object[] {"a", "z"})).isPositive();
+  }
+
+  @Test
+  public void null_parts_are_lower_than_other_parts() {
+    assertThat(comparator.compare(new Object[] {"a", null}, new Object[] {"a", 1})).isNegative();
+    assertThat(comparator.compare(new Object[] {"a", 1}, new Object[] {"a", null})).isPositive();
+    assertThat(comparator.compare(new Object[] {"a", null}, new Object[] {"a", null})).isZero();
+    assertThat(comparator.compare(new Object[] {null}, new Object[] {SortedMapCacheStorage.KeyComparator.AFTER})).isNegative();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_part_is_not_comparable() {
+    comparator.compare(new Object[] {new NotComparable()}, new Object[] {new NotComparable()});
+  }
+
+  static class NotComparable {
+    @Override
+    public String toString() {
+      return "same";
+    }
+  }
+}
@@ -34,13 +34,15 @@ import org.sonar.api.utils.SonarException;
 import org.sonar.batch.issue.ignore.pattern.IssueExclusionPatternInitializer;
 import org.sonar.batch.issue.ignore.pattern.IssueInclusionPatternInitializer;
 import org.sonar.batch.issue.ignore.pattern.PatternMatcher;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
@@ -65,6 +67,9 @@ public class IssueExclusionsLoaderTest {
   @Mock
   private PatternMatcher patternMatcher;
 
+  @Mock
+  private InputFileContents fileContents;
+
   private DefaultFileSystem fs;
   private IssueExclusionsLoader scanner;
   private File baseDir;
@@ -74,7 +79,7 @@ public class IssueExclusionsLoaderTest {
     baseDir = temp.newFolder();
     fs = new DefaultFileSystem(baseDir.toPath()).setEncoding(UTF_8);
     MockitoAnnotations.initMocks(this);
-    scanner = new IssueExclusionsLoader(regexpScanner, exclusionPatternInitializer, inclusionPatternInitializer, fs);
+    scanner = new IssueExclusionsLoader(regexpScanner, exclusionPatternInitializer, inclusionPatternInitializer, fs, fileContents);
   }
 
   @Test
@@ -104,12 +109,16 @@ public class IssueExclusionsLoaderTest {
 
   @Test
   public void shouldAnalyzeProject() throws IOException {
-    File javaFile1 = new File(baseDir, "src/main/java/Foo.java");
-    fs.add(new DefaultInputFile("polop", "src/main/java/Foo.java")
-      .setType(InputFile.Type.MAIN));
-    File javaTestFile1 = new File(baseDir, "src/test/java/FooTest.java");
-    fs.add(new DefaultInputFile("polop", "src/test/java/FooTest.java")
-      .setType(InputFile.Type.TEST));
+    DefaultInputFile javaFile1 = new DefaultInputFile("polop", "src/main/java/Foo.java")
+      .setType(InputFile.Type.MAIN);
+    fs.add(javaFile1);
+    DefaultInputFile javaTestFile1 = new DefaultInputFile("polop", "src/test/java/FooTest.java")
+      .setType(InputFile.Type.TEST);
+    fs.add(javaTestFile1);
+    List<String> javaLines = Arrays.asList("class Foo {}");
+    List<String> javaTestLines = Arrays.asList("class FooTest {}");
+    when(fileContents.readLines(javaFile1)).thenReturn(javaLines);
+    when(fileContents.readLines(javaTestFile1)).thenReturn(javaTestLines);
 
     when(exclusionPatternInitializer.hasFileContentPattern()).thenReturn(true);
 
@@ -119,8 +128,8 @@ public class IssueExclusionsLoaderTest {
     verify(inclusionPatternInitializer).initializePatternsForPath("src/test/java/FooTest.java", "polop:src/test/java/FooTest.java");
     verify(exclusionPatternInitializer).initializePatternsForPath("src/main/java/Foo.java", "polop:src/main/java/Foo.java");
     verify(exclusionPatternInitializer).initializePatternsForPath("src/test/java/FooTest.java", "polop:src/test/java/FooTest.java");
-    verify(regexpScanner).scan("polop:src/main/java/Foo.java", javaFile1, UTF_8);
-    verify(regexpScanner).scan("polop:src/test/java/FooTest.java", javaTestFile1, UTF_8);
+    verify(regexpScanner).scan("polop:src/main/java/Foo.java", javaLines);
+    verify(regexpScanner).scan("polop:src/test/java/FooTest.java", javaTestLines);
   }
 
   @Test
@@ -144,12 +153,12 @@ public class IssueExclusionsLoaderTest {
 
   @Test
   public void shouldReportFailure() throws IOException {
-    File phpFile1 = new File(baseDir, "src/Foo.php");
-    fs.add(new DefaultInputFile("polop", "src/Foo.php")
-      .setType(InputFile.Type.MAIN));
+    DefaultInputFile phpFile1 = new DefaultInputFile("polop", "src/Foo.php")
+      .setType(InputFile.Type.MAIN);
+    fs.add(phpFile1);
 
     when(exclusionPatternInitializer.hasFileContentPattern()).thenReturn(true);
-    doThrow(new IOException("BUG")).when(regexpScanner).scan("polop:src/Foo.php", phpFile1, UTF_8);
+    when(fileContents.readLines(phpFile1)).thenThrow(new IllegalStateException("BUG"));
 
     thrown.expect(SonarException.class);
     thrown.expectMessage("Unable to read the source file");
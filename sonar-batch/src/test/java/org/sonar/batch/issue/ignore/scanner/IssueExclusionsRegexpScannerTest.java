@@ -31,8 +31,9 @@ import org.sonar.batch.issue.ignore.pattern.IssuePattern;
 import org.sonar.batch.issue.ignore.pattern.LineRange;
 import org.sonar.batch.issue.ignore.pattern.PatternMatcher;
 
-import java.io.File;
+import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -79,16 +80,14 @@ public class IssueExclusionsRegexpScannerTest {
 
   @Test
   public void shouldDoNothing() throws Exception {
-    regexpScanner.scan(javaFile, new File(Resources.getResource(
-      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-no-regexp.txt").toURI()), UTF_8);
+    regexpScanner.scan(javaFile, lines("file-with-no-regexp.txt"));
 
     verifyNoMoreInteractions(patternsInitializer);
   }
 
   @Test
   public void shouldAddPatternToExcludeFile() throws Exception {
-    regexpScanner.scan(javaFile, new File(Resources.getResource(
-      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-single-regexp.txt").toURI()), UTF_8);
+    regexpScanner.scan(javaFile, lines("file-with-single-regexp.txt"));
 
     verify(patternsInitializer).getPatternMatcher();
     verify(patternMatcher, times(1)).addPatternToExcludeResource(javaFile);
@@ -97,8 +96,7 @@ public class IssueExclusionsRegexpScannerTest {
 
   @Test
   public void shouldAddPatternToExcludeFileEvenIfAlsoDoubleRegexps() throws Exception {
-    regexpScanner.scan(javaFile, new File(Resources.getResource(
-      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-single-regexp-and-double-regexp.txt").toURI()), UTF_8);
+    regexpScanner.scan(javaFile, lines("file-with-single-regexp-and-double-regexp.txt"));
 
     verify(patternsInitializer).getPatternMatcher();
     verify(patternMatcher, times(1)).addPatternToExcludeResource(javaFile);
@@ -107,8 +105,7 @@ public class IssueExclusionsRegexpScannerTest {
 
   @Test
   public void shouldAddPatternToExcludeLines() throws Exception {
-    regexpScanner.scan(javaFile, new File(Resources.getResource(
-      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-double-regexp.txt").toURI()), UTF_8);
+    regexpScanner.scan(javaFile, lines("file-with-double-regexp.txt"));
 
     Set<LineRange> lineRanges = Sets.newHashSet();
     lineRanges.add(new LineRange(21, 25));
@@ -119,8 +116,7 @@ public class IssueExclusionsRegexpScannerTest {
 
   @Test
   public void shouldAddPatternToExcludeLinesTillTheEnd() throws Exception {
-    regexpScanner.scan(javaFile, new File(Resources.getResource(
-      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-double-regexp-unfinished.txt").toURI()), UTF_8);
+    regexpScanner.scan(javaFile, lines("file-with-double-regexp-unfinished.txt"));
 
     Set<LineRange> lineRanges = Sets.newHashSet();
     lineRanges.add(new LineRange(21, 34));
@@ -131,8 +127,7 @@ public class IssueExclusionsRegexpScannerTest {
 
   @Test
   public void shouldAddPatternToExcludeSeveralLineRanges() throws Exception {
-    regexpScanner.scan(javaFile, new File(Resources.getResource(
-      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-double-regexp-twice.txt").toURI()), UTF_8);
+    regexpScanner.scan(javaFile, lines("file-with-double-regexp-twice.txt"));
 
     Set<LineRange> lineRanges = Sets.newHashSet();
     lineRanges.add(new LineRange(21, 25));
@@ -144,8 +139,7 @@ public class IssueExclusionsRegexpScannerTest {
 
   @Test
   public void shouldAddPatternToExcludeLinesWithWrongOrder() throws Exception {
-    regexpScanner.scan(javaFile, new File(Resources.getResource(
-      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-double-regexp-wrong-order.txt").toURI()), UTF_8);
+    regexpScanner.scan(javaFile, lines("file-with-double-regexp-wrong-order.txt"));
 
     Set<LineRange> lineRanges = Sets.newHashSet();
     lineRanges.add(new LineRange(25, 35));
@@ -156,8 +150,7 @@ public class IssueExclusionsRegexpScannerTest {
 
   @Test
   public void shouldAddPatternToExcludeLinesWithMess() throws Exception {
-    regexpScanner.scan(javaFile, new File(Resources.getResource(
-      "org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/file-with-double-regexp-mess.txt").toURI()), UTF_8);
+    regexpScanner.scan(javaFile, lines("file-with-double-regexp-mess.txt"));
 
     Set<LineRange> lineRanges = Sets.newHashSet();
     lineRanges.add(new LineRange(21, 29));
@@ -166,4 +159,8 @@ public class IssueExclusionsRegexpScannerTest {
     verifyNoMoreInteractions(patternsInitializer);
   }
 
+  private static List<String> lines(String fileName) throws IOException {
+    return Resources.readLines(Resources.getResource("org/sonar/batch/issue/ignore/scanner/IssueExclusionsRegexpScannerTest/" + fileName), UTF_8);
+  }
+
 }
@@ -43,6 +43,7 @@ import org.sonar.api.rules.RuleFinder;
 import org.sonar.api.utils.Duration;
 import org.sonar.api.utils.System2;
 import org.sonar.batch.issue.IssueCache;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 import org.sonar.batch.scan.filesystem.InputPathCache;
 import org.sonar.core.issue.IssueUpdater;
 import org.sonar.core.issue.db.IssueChangeDto;
@@ -90,6 +91,7 @@ public class IssueTrackingDecoratorTest {
   RulesProfile profile = mock(RulesProfile.class);
   RuleFinder ruleFinder = mock(RuleFinder.class);
   InputPathCache inputPathCache = mock(InputPathCache.class);
+  InputFileContents fileContents = mock(InputFileContents.class);
 
   @Before
   public void init() {
@@ -105,7 +107,8 @@ public class IssueTrackingDecoratorTest {
       perspectives,
       profile,
       ruleFinder,
-      inputPathCache);
+      inputPathCache,
+      fileContents);
   }
 
   @Test
@@ -19,17 +19,14 @@
  */
 package org.sonar.batch.issue.tracking;
 
-import org.apache.commons.io.FileUtils;
 import org.junit.Before;
-import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 
-import java.io.File;
-import java.nio.charset.StandardCharsets;
+import java.io.StringReader;
 
 import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -39,38 +36,31 @@ import static org.mockito.Mockito.when;
 
 public class SourceHashHolderTest {
 
-  @Rule
-  public TemporaryFolder temp = new TemporaryFolder();
-
   SourceHashHolder sourceHashHolder;
 
   ServerLineHashesLoader lastSnapshots;
+  InputFileContents fileContents;
   DefaultInputFile file;
 
-  private File ioFile;
-
   @Before
   public void setUp() throws Exception {
     lastSnapshots = mock(ServerLineHashesLoader.class);
+    fileContents = mock(InputFileContents.class);
     file = mock(DefaultInputFile.class);
-    ioFile = temp.newFile();
-    when(file.file()).thenReturn(ioFile);
-    when(file.path()).thenReturn(ioFile.toPath());
     when(file.lines()).thenReturn(1);
-    when(file.charset()).thenReturn(StandardCharsets.UTF_8);
 
-    sourceHashHolder = new SourceHashHolder(file, lastSnapshots);
+    sourceHashHolder = new SourceHashHolder(file, lastSnapshots, fileContents);
   }
 
   @Test
   public void should_lazy_load_line_hashes() throws Exception {
     final String source = "source";
-    FileUtils.write(ioFile, source + "\n", StandardCharsets.UTF_8);
+    when(fileContents.newReader(file)).thenReturn(new StringReader(source + "\n"));
     when(file.lines()).thenReturn(2);
 
     assertThat(sourceHashHolder.getHashedSource().getHash(1)).isEqualTo(md5Hex(source));
     assertThat(sourceHashHolder.getHashedSource().getHash(2)).isEqualTo("");
-    verify(file).key();
+    verify(fileContents).newReader(file);
     verify(file).status();
 
     assertThat(sourceHashHolder.getHashedSource().getHash(1)).isEqualTo(md5Hex(source));
@@ -80,7 +70,7 @@ public class SourceHashHolderTest {
   public void should_lazy_load_reference_hashes_when_status_changed() throws Exception {
     final String source = "source";
     String key = "foo:src/Foo.java";
-    FileUtils.write(ioFile, source, StandardCharsets.UTF_8);
+    when(fileContents.newReader(file)).thenReturn(new StringReader(source));
     when(file.key()).thenReturn(key);
     when(file.status()).thenReturn(InputFile.Status.CHANGED);
     when(lastSnapshots.getLineHashes(key)).thenReturn(new String[] {md5Hex(source)});
@@ -96,7 +86,7 @@ public class SourceHashHolderTest {
   public void should_not_load_reference_hashes_when_status_same() throws Exception {
     final String source = "source";
     String key = "foo:src/Foo.java";
-    FileUtils.write(ioFile, source, StandardCharsets.UTF_8);
+    when(fileContents.newReader(file)).thenReturn(new StringReader(source));
     when(file.key()).thenReturn(key);
     when(file.status()).thenReturn(InputFile.Status.SAME);
 
@@ -108,7 +98,7 @@ public class SourceHashHolderTest {
   public void no_reference_hashes_when_status_added() throws Exception {
     final String source = "source";
     String key = "foo:src/Foo.java";
-    FileUtils.write(ioFile, source, StandardCharsets.UTF_8);
+    when(fileContents.newReader(file)).thenReturn(new StringReader(source));
     when(file.key()).thenReturn(key);
     when(file.status()).thenReturn(InputFile.Status.ADDED);
 
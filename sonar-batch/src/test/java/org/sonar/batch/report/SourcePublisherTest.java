@@ -25,11 +25,13 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
 import org.sonar.api.database.model.Snapshot;
 import org.sonar.api.resources.Project;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.batch.index.ResourceCache;
 import org.sonar.batch.protocol.output.BatchReportWriter;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 
 import java.io.File;
 import java.io.IOException;
@@ -45,8 +47,12 @@ public class SourcePublisherTest {
 
   private SourcePublisher publisher;
 
+  private InputFileContents fileContents;
+
   private File sourceFile;
 
+  private DefaultInputFile inputFile;
+
   private BatchReportWriter writer;
 
   private org.sonar.api.resources.File sampleFile;
@@ -60,9 +66,10 @@ public class SourcePublisherTest {
     resourceCache.add(p, null).setSnapshot(new Snapshot().setId(2));
     File baseDir = temp.newFolder();
     sourceFile = new File(baseDir, "src/Foo.php");
-    resourceCache.add(sampleFile, null).setInputPath(
-      new DefaultInputFile("foo", "src/Foo.php").setLines(5).setModuleBaseDir(baseDir.toPath()).setCharset(StandardCharsets.ISO_8859_1));
-    publisher = new SourcePublisher(resourceCache);
+    inputFile = new DefaultInputFile("foo", "src/Foo.php").setLines(5).setModuleBaseDir(baseDir.toPath()).setCharset(StandardCharsets.ISO_8859_1);
+    resourceCache.add(sampleFile, null).setInputPath(inputFile);
+    fileContents = new InputFileContents(new Settings());
+    publisher = new SourcePublisher(resourceCache, fileContents);
     File outputDir = temp.newFolder();
     writer = new BatchReportWriter(outputDir);
   }
@@ -117,4 +124,16 @@ public class SourcePublisherTest {
     File out = writer.getSourceFile(2);
     assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("\n2\n3\n4\n5");
   }
+
+  @Test
+  public void releaseContentOfPublishedFiles() throws Exception {
+    FileUtils.write(sourceFile, "1\n2\n3\n4\n5", StandardCharsets.ISO_8859_1);
+    fileContents.read(inputFile);
+
+    publisher.publish(writer);
+
+    assertThat(fileContents.size()).isEqualTo(0);
+    File out = writer.getSourceFile(2);
+    assertThat(FileUtils.readFileToString(out, StandardCharsets.UTF_8)).isEqualTo("1\n2\n3\n4\n5");
+  }
 }
@@ -66,8 +66,9 @@ public class InputFileBuilderTest {
     when(statusDetection.status("foo", "src/main/java/foo/Bar.java", "6c1d64c0b3555892fe7273e954f6fb5a"))
       .thenReturn(InputFile.Status.ADDED);
 
+    InputFileContents fileContents = new InputFileContents(new Settings());
     InputFileBuilder builder = new InputFileBuilder("struts", new PathResolver(),
-      langDetection, statusDetection, fs, analysisMode, new Settings(), new FileMetadata());
+      langDetection, statusDetection, fs, analysisMode, new Settings(), new FileMetadata(), fileContents);
     DefaultInputFile inputFile = builder.create(srcFile);
     builder.completeAndComputeMetadata(inputFile, InputFile.Type.MAIN);
 
@@ -78,6 +79,8 @@ public class InputFileBuilderTest {
     assertThat(inputFile.key()).isEqualTo("struts:src/main/java/foo/Bar.java");
     assertThat(inputFile.relativePath()).isEqualTo("src/main/java/foo/Bar.java");
     assertThat(inputFile.lines()).isEqualTo(1);
+    // content is kept in memory for the other consumers
+    assertThat(fileContents.size()).isEqualTo(1);
   }
 
   @Test
@@ -90,7 +93,7 @@ public class InputFileBuilderTest {
     when(fs.baseDir()).thenReturn(basedir);
 
     InputFileBuilder builder = new InputFileBuilder("struts", new PathResolver(),
-      langDetection, statusDetection, fs, analysisMode, new Settings(), new FileMetadata());
+      langDetection, statusDetection, fs, analysisMode, new Settings(), new FileMetadata(), new InputFileContents(new Settings()));
     DefaultInputFile inputFile = builder.create(srcFile);
 
     assertThat(inputFile).isNull();
@@ -110,7 +113,7 @@ public class InputFileBuilderTest {
     when(langDetection.language(any(InputFile.class))).thenReturn(null);
 
     InputFileBuilder builder = new InputFileBuilder("struts", new PathResolver(),
-      langDetection, statusDetection, fs, analysisMode, new Settings(), new FileMetadata());
+      langDetection, statusDetection, fs, analysisMode, new Settings(), new FileMetadata(), new InputFileContents(new Settings()));
     DefaultInputFile inputFile = builder.create(srcFile);
     inputFile = builder.completeAndComputeMetadata(inputFile, InputFile.Type.MAIN);
 
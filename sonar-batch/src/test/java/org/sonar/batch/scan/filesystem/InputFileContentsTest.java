@@ -0,0 +1,101 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.batch.scan.filesystem;
+
+import com.google.common.base.Charsets;
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.config.Settings;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InputFileContentsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void read_file_once() throws Exception {
+    DefaultInputFile inputFile = createInputFile("foo\nbar");
+    InputFileContents contents = new InputFileContents(new Settings());
+
+    assertThat(contents.read(inputFile)).isEqualTo("foo\nbar");
+    assertThat(contents.size()).isEqualTo(1);
+
+    // content is not read again from disk
+    FileUtils.write(inputFile.file(), "changed", "UTF-8");
+    assertThat(contents.read(inputFile)).isEqualTo("foo\nbar");
+    assertThat(contents.readLines(inputFile)).containsExactly("foo", "bar");
+  }
+
+  @Test
+  public void do_not_cache_when_full() throws Exception {
+    DefaultInputFile inputFile = createInputFile("foo\nbar");
+    InputFileContents contents = new InputFileContents(0L);
+
+    assertThat(contents.read(inputFile)).isEqualTo("foo\nbar");
+    assertThat(contents.size()).isEqualTo(0);
+
+    FileUtils.write(inputFile.file(), "changed", "UTF-8");
+    assertThat(contents.read(inputFile)).isEqualTo("changed");
+  }
+
+  @Test
+  public void evict() throws Exception {
+    DefaultInputFile inputFile = createInputFile("foo");
+    InputFileContents contents = new InputFileContents(new Settings());
+    contents.read(inputFile);
+
+    contents.evict(inputFile);
+    assertThat(contents.size()).isEqualTo(0);
+
+    contents.read(inputFile);
+    contents.stop();
+    assertThat(contents.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void remove_byte_order_mark() throws Exception {
+    DefaultInputFile inputFile = createInputFile("\uFEFFfoo");
+
+    assertThat(new InputFileContents(new Settings()).read(inputFile)).isEqualTo("foo");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_negative_size() {
+    new InputFileContents(-1L);
+  }
+
+  private DefaultInputFile createInputFile(String content) throws IOException {
+    File baseDir = temp.newFolder();
+    File file = new File(baseDir, "src/Foo.java");
+    FileUtils.write(file, content, "UTF-8");
+    DefaultInputFile inputFile = new DefaultInputFile("foo", "src/Foo.java");
+    inputFile.setModuleBaseDir(baseDir.toPath());
+    inputFile.setCharset(Charsets.UTF_8);
+    return inputFile;
+  }
+}
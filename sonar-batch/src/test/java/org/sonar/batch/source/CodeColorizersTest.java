@@ -24,9 +24,12 @@ import org.apache.commons.io.FileUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.sensor.highlighting.NewHighlighting;
 import org.sonar.api.batch.sensor.highlighting.TypeOfText;
+import org.sonar.api.config.Settings;
 import org.sonar.api.web.CodeColorizerFormat;
+import org.sonar.batch.scan.filesystem.InputFileContents;
 import org.sonar.colorizer.CDocTokenizer;
 import org.sonar.colorizer.CppDocTokenizer;
 import org.sonar.colorizer.JavadocTokenizer;
@@ -47,13 +50,29 @@ public class CodeColorizersTest {
   @Rule
   public TemporaryFolder temp = new TemporaryFolder();
 
+  InputFileContents fileContents = new InputFileContents(new Settings());
+
   @Test
   public void testConvertToHighlighting() throws Exception {
     CodeColorizers codeColorizers = new CodeColorizers(Arrays.<CodeColorizerFormat>asList(new JavaScriptColorizerFormat()));
-    File jsFile = new File(this.getClass().getResource("CodeColorizersTest/Person.js").toURI());
+    DefaultInputFile jsFile = inputFile(FileUtils.readFileToString(resource("Person.js"), "UTF-8"));
     NewHighlighting highlighting = mock(NewHighlighting.class);
 
-    codeColorizers.toSyntaxHighlighting(jsFile, StandardCharsets.UTF_8, "js", highlighting);
+    codeColorizers.toSyntaxHighlighting(jsFile, fileContents, "js", highlighting);
+
+    verifyForJs(highlighting);
+  }
+
+  @Test
+  public void testConvertToHighlightingFromCachedContent() throws Exception {
+    CodeColorizers codeColorizers = new CodeColorizers(Arrays.<CodeColorizerFormat>asList(new JavaScriptColorizerFormat()));
+    DefaultInputFile jsFile = inputFile(FileUtils.readFileToString(resource("Person.js"), "UTF-8"));
+    fileContents.read(jsFile);
+
+    // file is not read again from disk
+    FileUtils.write(jsFile.file(), "changed", "UTF-8");
+    NewHighlighting highlighting = mock(NewHighlighting.class);
+    codeColorizers.toSyntaxHighlighting(jsFile, fileContents, "js", highlighting);
 
     verifyForJs(highlighting);
   }
@@ -74,14 +93,10 @@ public class CodeColorizersTest {
   @Test
   public void testConvertToHighlightingIgnoreBOM() throws Exception {
     CodeColorizers codeColorizers = new CodeColorizers(Arrays.<CodeColorizerFormat>asList(new JavaScriptColorizerFormat()));
-
-    File fileWithBom = temp.newFile();
-    FileUtils.write(fileWithBom, "\uFEFF", "UTF-8");
-    File jsFile = new File(this.getClass().getResource("CodeColorizersTest/Person.js").toURI());
-    FileUtils.write(fileWithBom, FileUtils.readFileToString(jsFile), "UTF-8", true);
+    DefaultInputFile fileWithBom = inputFile("\uFEFF" + FileUtils.readFileToString(resource("Person.js"), "UTF-8"));
 
     NewHighlighting highlighting = mock(NewHighlighting.class);
-    codeColorizers.toSyntaxHighlighting(fileWithBom, StandardCharsets.UTF_8, "js", highlighting);
+    codeColorizers.toSyntaxHighlighting(fileWithBom, fileContents, "js", highlighting);
 
     verifyForJs(highlighting);
   }
@@ -90,10 +105,10 @@ public class CodeColorizersTest {
   public void shouldSupportJavaIfNotProvidedByJavaPluginForBackwardCompatibility() throws Exception {
     CodeColorizers codeColorizers = new CodeColorizers(Arrays.<CodeColorizerFormat>asList());
 
-    File javaFile = new File(this.getClass().getResource("CodeColorizersTest/Person.java").toURI());
+    DefaultInputFile javaFile = inputFile(FileUtils.readFileToString(resource("Person.java"), "UTF-8"));
 
     NewHighlighting highlighting = mock(NewHighlighting.class);
-    codeColorizers.toSyntaxHighlighting(javaFile, StandardCharsets.UTF_8, "java", highlighting);
+    codeColorizers.toSyntaxHighlighting(javaFile, fileContents, "java", highlighting);
 
     verify(highlighting).highlight(0, 4, TypeOfText.STRUCTURED_COMMENT);
     verify(highlighting).highlight(5, 11, TypeOfText.STRUCTURED_COMMENT);
@@ -111,6 +126,19 @@ public class CodeColorizersTest {
 
   }
 
+  private File resource(String name) throws Exception {
+    return new File(this.getClass().getResource("CodeColorizersTest/" + name).toURI());
+  }
+
+  private DefaultInputFile inputFile(String content) throws Exception {
+    File baseDir = temp.newFolder();
+    FileUtils.write(new File(baseDir, "src/Person"), content, "UTF-8");
+    DefaultInputFile inputFile = new DefaultInputFile("foo", "src/Person");
+    inputFile.setModuleBaseDir(baseDir.toPath());
+    inputFile.setCharset(StandardCharsets.UTF_8);
+    return inputFile;
+  }
+
   public static class JavaScriptColorizerFormat extends CodeColorizerFormat {
 
     public JavaScriptColorizerFormat() {
@@ -130,7 +130,7 @@ public class ComponentContainer {
     } finally {
       removeChild();
       if (parent != null) {
-        parent.removeChild();
+        parent.removeChild(this);
       }
     }
     return this;
@@ -221,7 +221,7 @@ public class ComponentContainer {
     return pico.getComponents(tClass);
   }
 
-  public ComponentContainer removeChild() {
+  public synchronized ComponentContainer removeChild() {
     if (child != null) {
       pico.removeChildContainer(child.pico);
       child = null;
@@ -229,7 +229,21 @@ public class ComponentContainer {
     return this;
   }
 
-  public ComponentContainer createChild() {
+  /**
+   * Removes the given child container. Unlike {@link #removeChild()}, it supports
+   * several children living at the same time, for example when they are created
+   * by concurrent threads.
+   * @since 5.2
+   */
+  public synchronized ComponentContainer removeChild(ComponentContainer childToBeRemoved) {
+    pico.removeChildContainer(childToBeRemoved.pico);
+    if (child == childToBeRemoved) {
+      child = null;
+    }
+    return this;
+  }
+
+  public synchronized ComponentContainer createChild() {
     return new ComponentContainer(this);
   }
 
@@ -160,6 +160,9 @@ class PurgeCommands {
 
   @VisibleForTesting
   protected void deleteSnapshots(final List<Long> snapshotIds) {
+    if (snapshotIds.isEmpty()) {
+      return;
+    }
 
     List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
 
@@ -197,6 +200,10 @@ class PurgeCommands {
 
   @VisibleForTesting
   protected void purgeSnapshots(final List<Long> snapshotIds) {
+    if (snapshotIds.isEmpty()) {
+      return;
+    }
+
     // note that events are not deleted
     List<List<Long>> snapshotIdsPartition = Lists.partition(snapshotIds, MAX_SNAPSHOTS_PER_QUERY);
 
@@ -37,6 +37,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 
 import static org.sonar.api.utils.DateUtils.dateToLong;
@@ -73,11 +74,10 @@ public class PurgeDao implements DaoComponent {
     PurgeMapper mapper = session.getMapper(PurgeMapper.class);
     PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
     List<ResourceDto> projects = getProjects(conf.rootProjectIdUuid().getId(), session);
-    for (ResourceDto project : projects) {
-      LOG.debug("-> Clean " + project.getLongName() + " [id=" + project.getId() + "]");
-      deleteAbortedBuilds(project, commands);
-      purge(project, conf.scopesWithoutHistoricalData(), commands);
-    }
+    // Snapshots of all the modules are purged together, so that each table is cleaned
+    // by a single series of batched statements instead of one series per snapshot.
+    deleteAbortedBuilds(projects, commands);
+    purge(projects, conf.scopesWithoutHistoricalData(), commands);
     for (ResourceDto project : projects) {
       disableOrphanResources(project, session, mapper, purgeListener);
     }
@@ -86,19 +86,27 @@ public class PurgeDao implements DaoComponent {
 
   private void deleteOldClosedIssues(PurgeConfiguration conf, PurgeMapper mapper) {
     Date toDate = conf.maxLiveDateOfClosedIssues();
+    profiler.start("deleteOldClosedIssueChanges (issue_changes)");
     mapper.deleteOldClosedIssueChanges(conf.rootProjectIdUuid().getUuid(), dateToLong(toDate));
+    profiler.stop();
+    profiler.start("deleteOldClosedIssues (issues)");
     mapper.deleteOldClosedIssues(conf.rootProjectIdUuid().getUuid(), dateToLong(toDate));
+    profiler.stop();
   }
 
-  private void deleteAbortedBuilds(ResourceDto project, PurgeCommands commands) {
-    if (hasAbortedBuilds(project.getId(), commands)) {
-      LOG.debug("<- Delete aborted builds");
-      PurgeSnapshotQuery query = PurgeSnapshotQuery.create()
-        .setIslast(false)
-        .setStatus(new String[] {"U"})
-        .setRootProjectId(project.getId());
-      commands.deleteSnapshots(query);
+  private void deleteAbortedBuilds(List<ResourceDto> projects, PurgeCommands commands) {
+    List<Long> abortedSnapshotIds = new ArrayList<>();
+    for (ResourceDto project : projects) {
+      if (hasAbortedBuilds(project.getId(), commands)) {
+        LOG.debug("<- Delete aborted builds of " + project.getLongName() + " [id=" + project.getId() + "]");
+        PurgeSnapshotQuery query = PurgeSnapshotQuery.create()
+          .setIslast(false)
+          .setStatus(new String[] {"U"})
+          .setRootProjectId(project.getId());
+        abortedSnapshotIds.addAll(commands.selectSnapshotIds(query));
+      }
     }
+    commands.deleteSnapshots(abortedSnapshotIds);
   }
 
   private boolean hasAbortedBuilds(Long projectId, PurgeCommands commands) {
@@ -109,29 +117,43 @@ public class PurgeDao implements DaoComponent {
     return !commands.selectSnapshotIds(query).isEmpty();
   }
 
-  private void purge(ResourceDto project, String[] scopesWithoutHistoricalData, PurgeCommands purgeCommands) {
-    List<Long> projectSnapshotIds = purgeCommands.selectSnapshotIds(
-      PurgeSnapshotQuery.create()
-        .setResourceId(project.getId())
-        .setIslast(false)
-        .setNotPurged(true)
-      );
-    for (final Long projectSnapshotId : projectSnapshotIds) {
-      LOG.debug("<- Clean snapshot " + projectSnapshotId);
-      if (!ArrayUtils.isEmpty(scopesWithoutHistoricalData)) {
-        PurgeSnapshotQuery query = PurgeSnapshotQuery.create()
+  private void purge(List<ResourceDto> projects, String[] scopesWithoutHistoricalData, PurgeCommands purgeCommands) {
+    List<Long> projectSnapshotIds = new ArrayList<>();
+    for (ResourceDto project : projects) {
+      LOG.debug("-> Clean " + project.getLongName() + " [id=" + project.getId() + "]");
+      projectSnapshotIds.addAll(purgeCommands.selectSnapshotIds(
+        PurgeSnapshotQuery.create()
+          .setResourceId(project.getId())
+          .setIslast(false)
+          .setNotPurged(true)
+        ));
+    }
+    if (projectSnapshotIds.isEmpty()) {
+      return;
+    }
+    LOG.debug("<- Clean snapshots " + projectSnapshotIds);
+
+    if (!ArrayUtils.isEmpty(scopesWithoutHistoricalData)) {
+      List<Long> snapshotIdsToDelete = new ArrayList<>();
+      for (Long projectSnapshotId : projectSnapshotIds) {
+        snapshotIdsToDelete.addAll(purgeCommands.selectSnapshotIds(PurgeSnapshotQuery.create()
           .setIslast(false)
           .setScopes(scopesWithoutHistoricalData)
-          .setRootSnapshotId(projectSnapshotId);
-        purgeCommands.deleteSnapshots(query);
+          .setRootSnapshotId(projectSnapshotId)));
       }
+      purgeCommands.deleteSnapshots(snapshotIdsToDelete);
+    }
 
-      PurgeSnapshotQuery query = PurgeSnapshotQuery.create().setRootSnapshotId(projectSnapshotId).setNotPurged(true);
-      purgeCommands.purgeSnapshots(query);
-
-      // must be executed at the end for reentrance
-      purgeCommands.purgeSnapshots(PurgeSnapshotQuery.create().setId(projectSnapshotId).setNotPurged(true));
+    List<Long> snapshotIdsToPurge = new ArrayList<>();
+    for (Long projectSnapshotId : projectSnapshotIds) {
+      snapshotIdsToPurge.addAll(purgeCommands.selectSnapshotIds(PurgeSnapshotQuery.create().setRootSnapshotId(projectSnapshotId).setNotPurged(true)));
     }
+    // snapshots of modules are purged with the root snapshots
+    snapshotIdsToPurge.removeAll(new HashSet<>(projectSnapshotIds));
+    purgeCommands.purgeSnapshots(snapshotIdsToPurge);
+
+    // must be executed at the end for reentrance
+    purgeCommands.purgeSnapshots(projectSnapshotIds);
   }
 
   private void disableOrphanResources(final ResourceDto project, final SqlSession session, final PurgeMapper purgeMapper, final PurgeListener purgeListener) {
@@ -146,12 +168,14 @@ public class PurgeDao implements DaoComponent {
       }
     });
 
+    profiler.start("disableResource (projects)");
     for (IdUuidPair componentIdUuid : componentIdUuids) {
       disableResource(componentIdUuid, purgeMapper);
       purgeListener.onComponentDisabling(componentIdUuid.getUuid());
     }
 
     session.commit();
+    profiler.stop();
   }
 
   public List<PurgeableSnapshotDto> selectPurgeableSnapshots(long resourceId) {
@@ -89,8 +89,29 @@ public class FileSourceDto {
   }
 
   public static FileSourceDb.Data decodeSourceData(byte[] binaryData) {
+    if (SourceDataChunks.isChunked(binaryData)) {
+      return SourceDataChunks.decode(binaryData, 1, Integer.MAX_VALUE);
+    }
     // stream is always closed
-    return decodeSourceData(new ByteArrayInputStream(binaryData));
+    return decodeLegacySourceData(new ByteArrayInputStream(binaryData));
+  }
+
+  /**
+   * Decompress and deserialize the lines between {@code fromLine} and {@code toLine} (both inclusive) of content
+   * of column FILE_SOURCES.BINARY_DATA. Only the chunks containing these lines are decompressed, except
+   * for data persisted before chunks were introduced.
+   */
+  public static FileSourceDb.Data decodeSourceData(byte[] binaryData, int fromLine, int toLine) {
+    if (SourceDataChunks.isChunked(binaryData)) {
+      return SourceDataChunks.decode(binaryData, fromLine, toLine);
+    }
+    FileSourceDb.Data.Builder result = FileSourceDb.Data.newBuilder();
+    for (FileSourceDb.Line line : decodeLegacySourceData(new ByteArrayInputStream(binaryData)).getLinesList()) {
+      if (line.getLine() >= fromLine && line.getLine() <= toLine) {
+        result.addLines(line);
+      }
+    }
+    return result.build();
   }
 
   /**
@@ -98,6 +119,19 @@ public class FileSourceDto {
    * The parameter "input" is always closed by this method.
    */
   public static FileSourceDb.Data decodeSourceData(InputStream binaryInput) {
+    try {
+      return decodeSourceData(IOUtils.toByteArray(binaryInput));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to decompress and deserialize source data", e);
+    } finally {
+      IOUtils.closeQuietly(binaryInput);
+    }
+  }
+
+  /**
+   * Format used before chunks were introduced : a LZ4 block stream of the whole message
+   */
+  private static FileSourceDb.Data decodeLegacySourceData(InputStream binaryInput) {
     LZ4BlockInputStream lz4Input = null;
     try {
       lz4Input = new LZ4BlockInputStream(binaryInput);
@@ -111,20 +145,11 @@ public class FileSourceDto {
 
   /**
    * Serialize and compress protobuf message {@link org.sonar.server.source.db.FileSourceDb.Data}
-   * in the column BINARY_DATA.
+   * in the column BINARY_DATA. Lines are compressed by chunks, so that ranges of lines can be decoded
+   * independently (see {@link #decodeSourceData(byte[], int, int)}).
    */
   public static byte[] encodeSourceData(FileSourceDb.Data data) {
-    ByteArrayOutputStream byteOutput = new ByteArrayOutputStream();
-    LZ4BlockOutputStream compressedOutput = new LZ4BlockOutputStream(byteOutput);
-    try {
-      data.writeTo(compressedOutput);
-      compressedOutput.close();
-      return byteOutput.toByteArray();
-    } catch (IOException e) {
-      throw new IllegalStateException("Fail to serialize and compress source data", e);
-    } finally {
-      IOUtils.closeQuietly(compressedOutput);
-    }
+    return SourceDataChunks.encode(data, SourceDataChunks.DEFAULT_LINES_PER_CHUNK);
   }
 
   public static List<Test> decodeTestData(byte[] binaryData) {
@@ -199,6 +224,13 @@ public class FileSourceDto {
     return decodeSourceData(binaryData);
   }
 
+  /**
+   * Lines between {@code fromLine} and {@code toLine} (both inclusive) of {@link #getSourceData()}
+   */
+  public FileSourceDb.Data getSourceData(int fromLine, int toLine) {
+    return decodeSourceData(binaryData, fromLine, toLine);
+  }
+
   public FileSourceDto setSourceData(FileSourceDb.Data data) {
     this.dataType = Type.SOURCE;
     this.binaryData = encodeSourceData(data);
@@ -0,0 +1,152 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.db;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.sonar.server.source.db.FileSourceDb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Format of column FILE_SOURCES.BINARY_DATA of type SOURCE, where lines are split into chunks that
+ * are compressed independently, so that a range of lines can be read without decompressing
+ * and parsing the whole file :
+ * <pre>
+ *   magic number (4 bytes) "SQC1"
+ *   number of lines per chunk (int)
+ *   number of chunks (int)
+ *   for each chunk : first line (int), last line (int), offset of compressed data (int), compressed size (int), uncompressed size (int)
+ *   for each chunk : LZ4-compressed protobuf message {@link FileSourceDb.Data} containing the lines of the chunk
+ * </pre>
+ * Offsets are relative to the end of the chunk index.
+ */
+final class SourceDataChunks {
+
+  static final int DEFAULT_LINES_PER_CHUNK = 500;
+
+  private static final byte[] MAGIC = {'S', 'Q', 'C', '1'};
+  private static final int HEADER_SIZE = MAGIC.length + 8;
+  private static final int CHUNK_INDEX_ENTRY_SIZE = 20;
+
+  private SourceDataChunks() {
+    // only static methods
+  }
+
+  /**
+   * Is the binary data encoded by {@link #encode(FileSourceDb.Data, int)} ? If false, then
+   * data has the legacy format : a LZ4 block stream of the whole message.
+   */
+  static boolean isChunked(byte[] binaryData) {
+    if (binaryData.length < HEADER_SIZE) {
+      return false;
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (binaryData[i] != MAGIC[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static byte[] encode(FileSourceDb.Data data, int linesPerChunk) {
+    if (linesPerChunk <= 0) {
+      throw new IllegalArgumentException("Number of lines per chunk must be strictly positive: " + linesPerChunk);
+    }
+    LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+    List<FileSourceDb.Line> lines = data.getLinesList();
+    int chunks = (lines.size() + linesPerChunk - 1) / linesPerChunk;
+
+    ByteArrayOutputStream index = new ByteArrayOutputStream(HEADER_SIZE + chunks * CHUNK_INDEX_ENTRY_SIZE);
+    ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    try {
+      DataOutputStream indexOutput = new DataOutputStream(index);
+      indexOutput.write(MAGIC);
+      indexOutput.writeInt(linesPerChunk);
+      indexOutput.writeInt(chunks);
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        List<FileSourceDb.Line> chunkLines = lines.subList(chunk * linesPerChunk, Math.min(lines.size(), (chunk + 1) * linesPerChunk));
+        byte[] serialized = FileSourceDb.Data.newBuilder().addAllLines(chunkLines).build().toByteArray();
+        byte[] compressed = compressor.compress(serialized);
+        indexOutput.writeInt(chunkLines.get(0).getLine());
+        indexOutput.writeInt(chunkLines.get(chunkLines.size() - 1).getLine());
+        indexOutput.writeInt(payload.size());
+        indexOutput.writeInt(compressed.length);
+        indexOutput.writeInt(serialized.length);
+        payload.write(compressed);
+      }
+      indexOutput.flush();
+      payload.writeTo(index);
+      return index.toByteArray();
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to serialize and compress source data", e);
+    }
+  }
+
+  /**
+   * Decodes the lines between {@code fromLine} and {@code toLine} (both inclusive). Chunks that do not
+   * contain any of these lines are not decompressed.
+   */
+  static FileSourceDb.Data decode(byte[] binaryData, int fromLine, int toLine) {
+    LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+    ByteBuffer buffer = ByteBuffer.wrap(binaryData);
+    buffer.position(MAGIC.length);
+    // number of lines per chunk is not needed to read chunks
+    buffer.getInt();
+    int chunks = buffer.getInt();
+    int payloadOffset = HEADER_SIZE + chunks * CHUNK_INDEX_ENTRY_SIZE;
+
+    FileSourceDb.Data.Builder result = FileSourceDb.Data.newBuilder();
+    try {
+      for (int chunk = 0; chunk < chunks; chunk++) {
+        int firstLine = buffer.getInt();
+        int lastLine = buffer.getInt();
+        int offset = buffer.getInt();
+        // compressed size is implied by the decompressor
+        buffer.getInt();
+        int uncompressedSize = buffer.getInt();
+        if (lastLine < fromLine || firstLine > toLine) {
+          continue;
+        }
+        byte[] serialized = new byte[uncompressedSize];
+        decompressor.decompress(binaryData, payloadOffset + offset, serialized, 0, uncompressedSize);
+        FileSourceDb.Data chunkData = FileSourceDb.Data.parseFrom(serialized);
+        if (firstLine >= fromLine && lastLine <= toLine) {
+          result.addAllLines(chunkData.getLinesList());
+        } else {
+          for (FileSourceDb.Line line : chunkData.getLinesList()) {
+            if (line.getLine() >= fromLine && line.getLine() <= toLine) {
+              result.addLines(line);
+            }
+          }
+        }
+      }
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException("Fail to decompress and deserialize source data", e);
+    }
+    return result.build();
+  }
+}
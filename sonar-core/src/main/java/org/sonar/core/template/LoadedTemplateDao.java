@@ -26,6 +26,8 @@ import org.sonar.core.persistence.DaoComponent;
 import org.sonar.core.persistence.DbSession;
 import org.sonar.core.persistence.MyBatis;
 
+import java.util.List;
+
 @BatchSide
 @ServerSide
 public class LoadedTemplateDao implements DaoComponent {
@@ -49,6 +51,10 @@ public class LoadedTemplateDao implements DaoComponent {
     return session.getMapper(LoadedTemplateMapper.class).countByTypeAndKey(type, key);
   }
 
+  public List<LoadedTemplateDto> selectByType(DbSession session, String type) {
+    return session.getMapper(LoadedTemplateMapper.class).selectByType(type);
+  }
+
   public void insert(LoadedTemplateDto loadedTemplateDto) {
     SqlSession session = mybatis.openSession(false);
     try {
@@ -138,6 +138,22 @@ public class ComponentContainerTest {
     assertThat(parent.getChild()).isNull();
   }
 
+  @Test
+  public void remove_given_child_when_several_children() {
+    ComponentContainer parent = new ComponentContainer();
+    parent.startComponents();
+
+    ComponentContainer child1 = parent.createChild();
+    ComponentContainer child2 = parent.createChild();
+    assertThat(parent.getChild()).isSameAs(child2);
+
+    parent.removeChild(child1);
+    assertThat(parent.getChild()).isSameAs(child2);
+
+    parent.removeChild(child2);
+    assertThat(parent.getChild()).isNull();
+  }
+
   @Test
   public void shouldForwardStartAndStopToDescendants() {
     ComponentContainer grandParent = new ComponentContainer();
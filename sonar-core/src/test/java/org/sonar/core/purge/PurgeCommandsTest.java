@@ -25,9 +25,12 @@ import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
 import org.sonar.core.persistence.MyBatis;
 
+import java.util.Collections;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 public class PurgeCommandsTest extends AbstractDaoTestCase {
 
@@ -68,6 +71,18 @@ public class PurgeCommandsTest extends AbstractDaoTestCase {
     // The goal of this test is only to check that the query do no fail, not to check result
   }
 
+  @Test
+  public void do_not_execute_statements_when_no_snapshots() {
+    SqlSession session = mock(SqlSession.class);
+    PurgeMapper mapper = mock(PurgeMapper.class);
+
+    PurgeCommands commands = new PurgeCommands(session, mapper, profiler);
+    commands.deleteSnapshots(Collections.<Long>emptyList());
+    commands.purgeSnapshots(Collections.<Long>emptyList());
+
+    verifyZeroInteractions(session, mapper);
+  }
+
   /**
    * Test that all related data is purged.
    */
@@ -78,6 +78,13 @@ public class PurgeDaoTest extends AbstractDaoTestCase {
     checkTables("shouldPurgeProject", "projects", "snapshots");
   }
 
+  @Test
+  public void purge_project_and_its_modules() {
+    setupData("purge_project_and_its_modules");
+    sut.purge(newConfigurationWith30Days(), PurgeListener.EMPTY);
+    checkTables("purge_project_and_its_modules", "projects", "snapshots");
+  }
+
   private PurgeConfiguration newConfigurationWith30Days() {
     return new PurgeConfiguration(new IdUuidPair(1L, "1"), new String[0], 30);
   }
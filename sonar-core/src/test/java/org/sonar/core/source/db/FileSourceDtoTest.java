@@ -20,9 +20,12 @@
 
 package org.sonar.core.source.db;
 
+import net.jpountz.lz4.LZ4BlockOutputStream;
 import org.junit.Test;
 import org.sonar.server.source.db.FileSourceDb;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.List;
 
@@ -47,4 +50,47 @@ public class FileSourceDtoTest {
     assertThat(sut.getTestData()).hasSize(2);
     assertThat(sut.getTestData().get(0).getName()).isEqualTo("name#1");
   }
+
+  @Test
+  public void encode_and_decode_source_data() {
+    FileSourceDto sut = new FileSourceDto().setSourceData(newData(1200));
+
+    assertThat(sut.getSourceData().getLinesCount()).isEqualTo(1200);
+    assertThat(sut.getSourceData().getLines(1199).getSource()).isEqualTo("line 1200");
+    assertThat(FileSourceDto.decodeSourceData(new ByteArrayInputStream(sut.getBinaryData())).getLinesCount()).isEqualTo(1200);
+  }
+
+  @Test
+  public void decode_range_of_lines() {
+    FileSourceDto sut = new FileSourceDto().setSourceData(newData(1200));
+
+    FileSourceDb.Data range = sut.getSourceData(499, 502);
+    assertThat(range.getLinesCount()).isEqualTo(4);
+    assertThat(range.getLines(0).getLine()).isEqualTo(499);
+    assertThat(range.getLines(3).getLine()).isEqualTo(502);
+    assertThat(sut.getSourceData(1300, 1400).getLinesCount()).isZero();
+  }
+
+  @Test
+  public void decode_data_persisted_before_chunks() throws Exception {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    LZ4BlockOutputStream lz4Output = new LZ4BlockOutputStream(bytes);
+    newData(10).writeTo(lz4Output);
+    lz4Output.close();
+
+    FileSourceDto sut = new FileSourceDto().setBinaryData(bytes.toByteArray());
+    assertThat(sut.getSourceData().getLinesCount()).isEqualTo(10);
+    assertThat(FileSourceDto.decodeSourceData(new ByteArrayInputStream(bytes.toByteArray())).getLinesCount()).isEqualTo(10);
+    FileSourceDb.Data range = sut.getSourceData(3, 4);
+    assertThat(range.getLinesCount()).isEqualTo(2);
+    assertThat(range.getLines(0).getSource()).isEqualTo("line 3");
+  }
+
+  private static FileSourceDb.Data newData(int lines) {
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int line = 1; line <= lines; line++) {
+      data.addLinesBuilder().setLine(line).setSource("line " + line).setScmAuthor("simon");
+    }
+    return data.build();
+  }
 }
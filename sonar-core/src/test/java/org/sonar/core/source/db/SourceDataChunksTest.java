@@ -0,0 +1,77 @@
+/*
+ * SonarQube, open source software quality management tool.
+ * Copyright (C) 2008-2014 SonarSource
+ * mailto:contact AT sonarsource DOT com
+ *
+ * SonarQube is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * SonarQube is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.core.source.db;
+
+import org.junit.Test;
+import org.sonar.server.source.db.FileSourceDb;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceDataChunksTest {
+
+  @Test
+  public void encode_and_decode_chunks() {
+    FileSourceDb.Data data = newData(25);
+    byte[] binaryData = SourceDataChunks.encode(data, 10);
+
+    assertThat(SourceDataChunks.isChunked(binaryData)).isTrue();
+    assertThat(SourceDataChunks.decode(binaryData, 1, Integer.MAX_VALUE)).isEqualTo(data);
+  }
+
+  @Test
+  public void decode_range_overlapping_chunks() {
+    byte[] binaryData = SourceDataChunks.encode(newData(25), 10);
+
+    FileSourceDb.Data range = SourceDataChunks.decode(binaryData, 9, 21);
+    assertThat(range.getLinesCount()).isEqualTo(13);
+    assertThat(range.getLines(0).getSource()).isEqualTo("line 9");
+    assertThat(range.getLines(12).getSource()).isEqualTo("line 21");
+
+    assertThat(SourceDataChunks.decode(binaryData, 25, 25).getLines(0).getSource()).isEqualTo("line 25");
+    assertThat(SourceDataChunks.decode(binaryData, 26, 30).getLinesCount()).isZero();
+  }
+
+  @Test
+  public void encode_empty_data() {
+    byte[] binaryData = SourceDataChunks.encode(FileSourceDb.Data.getDefaultInstance(), 10);
+
+    assertThat(SourceDataChunks.isChunked(binaryData)).isTrue();
+    assertThat(SourceDataChunks.decode(binaryData, 1, Integer.MAX_VALUE).getLinesCount()).isZero();
+  }
+
+  @Test
+  public void legacy_format_is_not_chunked() {
+    assertThat(SourceDataChunks.isChunked("LZ4Block...........".getBytes())).isFalse();
+    assertThat(SourceDataChunks.isChunked(new byte[0])).isFalse();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void fail_if_bad_number_of_lines_per_chunk() {
+    SourceDataChunks.encode(newData(3), 0);
+  }
+
+  private static FileSourceDb.Data newData(int lines) {
+    FileSourceDb.Data.Builder data = FileSourceDb.Data.newBuilder();
+    for (int line = 1; line <= lines; line++) {
+      data.addLinesBuilder().setLine(line).setSource("line " + line).setHighlighting("0,4,k");
+    }
+    return data.build();
+  }
+}
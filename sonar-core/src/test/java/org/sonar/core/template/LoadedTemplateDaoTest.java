@@ -22,6 +22,9 @@ package org.sonar.core.template;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonar.core.persistence.AbstractDaoTestCase;
+import org.sonar.core.persistence.DbSession;
+
+import java.util.List;
 
 import static org.hamcrest.Matchers.is;
 import static org.junit.Assert.assertThat;
@@ -43,6 +46,21 @@ public class LoadedTemplateDaoTest extends AbstractDaoTestCase {
     assertThat(dao.countByTypeAndKey("PROFILE", "HOTSPOTS"), is(0));
   }
 
+  @Test
+  public void select_by_type() {
+    setupData("shouldCountByTypeAndKey");
+    DbSession session = getMyBatis().openSession(false);
+    try {
+      List<LoadedTemplateDto> templates = dao.selectByType(session, "DASHBOARD");
+      assertThat(templates.size(), is(1));
+      assertThat(templates.get(0).getKey(), is("HOTSPOTS"));
+      assertThat(templates.get(0).getType(), is("DASHBOARD"));
+      assertThat(dao.selectByType(session, "PROFILE").isEmpty(), is(true));
+    } finally {
+      session.close();
+    }
+  }
+
   @Test
   public void shouldInsert() {
     setupData("shouldInsert");
@@ -24,7 +24,13 @@ import org.junit.Test;
 import org.sonar.duplications.block.Block;
 import org.sonar.duplications.block.ByteArray;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.sameInstance;
@@ -60,6 +66,33 @@ public class PackedMemoryCloneIndexTest {
     assertThat(index.getByResourceId("does not exist").size(), is(0));
   }
 
+  @Test
+  public void should_support_concurrent_queries() throws Exception {
+    for (int i = 0; i < 1000; i++) {
+      index.insert(newBlock("resource" + (i % 10), i % 100));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (int thread = 0; thread < 4; thread++) {
+      results.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          for (int i = 0; i < 100; i++) {
+            if (index.getBySequenceHash(new ByteArray((long) i)).size() != 10 || index.getByResourceId("resource" + (i % 10)).size() != 100) {
+              return false;
+            }
+          }
+          return true;
+        }
+      }));
+    }
+    for (Future<Boolean> result : results) {
+      assertThat(result.get(), is(true));
+    }
+    executor.shutdown();
+  }
+
   /**
    * When: query by a hash value.
    * Expected: all blocks should have same hash, which presented in the form of the same object.
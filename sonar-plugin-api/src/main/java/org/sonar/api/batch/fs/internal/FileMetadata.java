@@ -19,7 +19,6 @@
  */
 package org.sonar.api.batch.fs.internal;
 
-import com.google.common.primitives.Ints;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.ByteOrderMark;
@@ -41,8 +40,7 @@ import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Computes hash of files. Ends of Lines are ignored, so files with
@@ -128,24 +126,23 @@ public class FileMetadata {
 
   private static class FileHashComputer extends CharHandler {
     private MessageDigest globalMd5Digest = DigestUtils.getMd5Digest();
-    private StringBuilder sb = new StringBuilder();
+    private final Utf8Buffer buffer = new Utf8Buffer();
 
     @Override
     protected void handleIgnoreEoL(char c) {
-      sb.append(c);
+      buffer.append(c);
     }
 
     @Override
     protected void newLine() {
-      sb.append(LINE_FEED);
-      globalMd5Digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
-      sb.setLength(0);
+      buffer.append(LINE_FEED);
+      buffer.updateAndReset(globalMd5Digest);
     }
 
     @Override
     protected void eof() {
-      if (sb.length() > 0) {
-        globalMd5Digest.update(sb.toString().getBytes(StandardCharsets.UTF_8));
+      if (!buffer.isEmpty()) {
+        buffer.updateAndReset(globalMd5Digest);
       }
     }
 
@@ -157,7 +154,7 @@ public class FileMetadata {
 
   private static class LineHashComputer extends CharHandler {
     private final MessageDigest lineMd5Digest = DigestUtils.getMd5Digest();
-    private final StringBuilder sb = new StringBuilder();
+    private final Utf8Buffer buffer = new Utf8Buffer();
     private final LineHashConsumer consumer;
     private int line = 1;
 
@@ -168,35 +165,111 @@ public class FileMetadata {
     @Override
     protected void handleIgnoreEoL(char c) {
       if (!Character.isWhitespace(c)) {
-        sb.append(c);
+        buffer.append(c);
       }
     }
 
     @Override
     protected void newLine() {
-      consumer.consume(line, sb.length() > 0 ? lineMd5Digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) : null);
-      sb.setLength(0);
+      consumer.consume(line, hashAndReset());
       line++;
     }
 
     @Override
     protected void eof() {
       if (this.line > 0) {
-        consumer.consume(line, sb.length() > 0 ? lineMd5Digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)) : null);
+        consumer.consume(line, hashAndReset());
       }
     }
 
+    @CheckForNull
+    private byte[] hashAndReset() {
+      if (buffer.isEmpty()) {
+        return null;
+      }
+      buffer.updateAndReset(lineMd5Digest);
+      return lineMd5Digest.digest();
+    }
+
+  }
+
+  /**
+   * Encodes chars to UTF-8 in a reusable array, in order to feed digests without creating
+   * intermediate strings. Output is the same as {@link String#getBytes(Charset)}, including
+   * the replacement of malformed surrogates by '?'.
+   */
+  private static class Utf8Buffer {
+    private static final byte REPLACEMENT = (byte) '?';
+
+    private byte[] bytes = new byte[256];
+    private int length = 0;
+    private char highSurrogate = 0;
+
+    void append(char c) {
+      if (highSurrogate != 0) {
+        char high = highSurrogate;
+        highSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          appendCodePoint(Character.toCodePoint(high, c));
+          return;
+        }
+        appendByte(REPLACEMENT);
+      }
+      if (Character.isHighSurrogate(c)) {
+        highSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        appendByte(REPLACEMENT);
+      } else {
+        appendCodePoint(c);
+      }
+    }
+
+    boolean isEmpty() {
+      return length == 0 && highSurrogate == 0;
+    }
+
+    void updateAndReset(MessageDigest digest) {
+      if (highSurrogate != 0) {
+        highSurrogate = 0;
+        appendByte(REPLACEMENT);
+      }
+      digest.update(bytes, 0, length);
+      length = 0;
+    }
+
+    private void appendCodePoint(int codePoint) {
+      if (codePoint < 0x80) {
+        appendByte((byte) codePoint);
+      } else if (codePoint < 0x800) {
+        appendByte((byte) (0xc0 | (codePoint >> 6)));
+        appendByte((byte) (0x80 | (codePoint & 0x3f)));
+      } else if (codePoint < 0x10000) {
+        appendByte((byte) (0xe0 | (codePoint >> 12)));
+        appendByte((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+        appendByte((byte) (0x80 | (codePoint & 0x3f)));
+      } else {
+        appendByte((byte) (0xf0 | (codePoint >> 18)));
+        appendByte((byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+        appendByte((byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+        appendByte((byte) (0x80 | (codePoint & 0x3f)));
+      }
+    }
+
+    private void appendByte(byte b) {
+      if (length == bytes.length) {
+        bytes = Arrays.copyOf(bytes, length * 2);
+      }
+      bytes[length] = b;
+      length++;
+    }
   }
 
   private static class LineOffsetCounter extends CharHandler {
     private int currentOriginalOffset = 0;
-    private List<Integer> originalLineOffsets = new ArrayList<>();
+    private int[] originalLineOffsets = new int[64];
+    private int lines = 1;
     private int lastValidOffset = 0;
 
-    public LineOffsetCounter() {
-      originalLineOffsets.add(0);
-    }
-
     @Override
     protected void handleAll(char c) {
       currentOriginalOffset++;
@@ -204,7 +277,11 @@ public class FileMetadata {
 
     @Override
     protected void newLine() {
-      originalLineOffsets.add(currentOriginalOffset);
+      if (lines == originalLineOffsets.length) {
+        originalLineOffsets = Arrays.copyOf(originalLineOffsets, lines * 2);
+      }
+      originalLineOffsets[lines] = currentOriginalOffset;
+      lines++;
     }
 
     @Override
@@ -212,8 +289,8 @@ public class FileMetadata {
       lastValidOffset = currentOriginalOffset;
     }
 
-    public List<Integer> getOriginalLineOffsets() {
-      return originalLineOffsets;
+    public int[] getOriginalLineOffsets() {
+      return Arrays.copyOf(originalLineOffsets, lines);
     }
 
     public int getLastValidOffset() {
@@ -239,7 +316,15 @@ public class FileMetadata {
    * For testing purpose
    */
   public Metadata readMetadata(Reader reader) {
-    LineCounter lineCounter = new LineCounter(new File("fromString"), StandardCharsets.UTF_16);
+    return readMetadata(reader, new File("fromString"), StandardCharsets.UTF_16);
+  }
+
+  /**
+   * Same as {@link #readMetadata(File, Charset)} when the content of file is already decoded, for example
+   * in memory. File and encoding are used only in logs.
+   */
+  public Metadata readMetadata(Reader reader, File file, Charset encoding) {
+    LineCounter lineCounter = new LineCounter(file, encoding);
     FileHashComputer fileHashComputer = new FileHashComputer();
     LineOffsetCounter lineOffsetCounter = new LineOffsetCounter();
     try {
@@ -306,11 +391,11 @@ public class FileMetadata {
     final int[] originalLineOffsets;
     final int lastValidOffset;
 
-    private Metadata(int lines, int nonBlankLines, String hash, List<Integer> originalLineOffsets, int lastValidOffset) {
+    private Metadata(int lines, int nonBlankLines, String hash, int[] originalLineOffsets, int lastValidOffset) {
       this.lines = lines;
       this.nonBlankLines = nonBlankLines;
       this.hash = hash;
-      this.originalLineOffsets = Ints.toArray(originalLineOffsets);
+      this.originalLineOffsets = originalLineOffsets;
       this.lastValidOffset = lastValidOffset;
     }
   }
@@ -327,4 +412,16 @@ public class FileMetadata {
   public static void computeLineHashesForIssueTracking(DefaultInputFile f, LineHashConsumer consumer) {
     readFile(f.file(), f.charset(), new LineHashComputer(consumer));
   }
+
+  /**
+   * Same as {@link #computeLineHashesForIssueTracking(DefaultInputFile, LineHashConsumer)} when the content
+   * of file is already decoded
+   */
+  public static void computeLineHashesForIssueTracking(Reader reader, LineHashConsumer consumer) {
+    try {
+      read(reader, new LineHashComputer(consumer));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to compute line hashes", e);
+    }
+  }
 }
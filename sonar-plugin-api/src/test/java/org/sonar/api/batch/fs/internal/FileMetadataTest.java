@@ -21,6 +21,7 @@ package org.sonar.api.batch.fs.internal;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -32,8 +33,11 @@ import org.sonar.api.utils.log.LoggerLevel;
 import javax.annotation.Nullable;
 
 import java.io.File;
+import java.io.StringReader;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.apache.commons.codec.digest.DigestUtils.md5Hex;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -226,6 +230,40 @@ public class FileMetadataTest {
     });
   }
 
+  @Test
+  public void non_ascii_line_hashes_are_computed_on_utf_8_bytes() throws Exception {
+    // malformed surrogates can't be written to disk, they are replaced by '?' as in String#getBytes()
+    String content = "\u00E7a\n\uD83D\uDE00 \u20AC\n\uD800\nb\uDC00c\uD83D\n\uD83D";
+    final String[] lines = {"\u00E7a", "\uD83D\uDE00\u20AC", "\uD800", "b\uDC00c\uD83D", "\uD83D"};
+    final List<Integer> consumedLines = new ArrayList<>();
+
+    FileMetadata.computeLineHashesForIssueTracking(new StringReader(content), new LineHashConsumer() {
+
+      @Override
+      public void consume(int lineIdx, @Nullable byte[] hash) {
+        assertThat(Hex.encodeHexString(hash)).isEqualTo(md5Hex(lines[lineIdx - 1].getBytes(StandardCharsets.UTF_8)));
+        consumedLines.add(lineIdx);
+      }
+    });
+    assertThat(consumedLines).containsExactly(1, 2, 3, 4, 5);
+
+    FileMetadata.Metadata metadata = new FileMetadata().readMetadata(new StringReader(content));
+    assertThat(metadata.hash).isEqualTo(md5Hex(content.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Test
+  public void read_offsets_of_many_lines() throws Exception {
+    File tempFile = temp.newFile();
+    FileUtils.write(tempFile, StringUtils.repeat("foo\n", 1000), StandardCharsets.UTF_8, true);
+
+    FileMetadata.Metadata metadata = new FileMetadata().readMetadata(tempFile, StandardCharsets.UTF_8);
+    assertThat(metadata.lines).isEqualTo(1001);
+    assertThat(metadata.originalLineOffsets).hasSize(1001);
+    assertThat(metadata.originalLineOffsets[0]).isEqualTo(0);
+    assertThat(metadata.originalLineOffsets[1000]).isEqualTo(4000);
+    assertThat(metadata.lastValidOffset).isEqualTo(4000);
+  }
+
   @Test
   public void dont_fail_on_empty_file() throws Exception {
     File tempFile = temp.newFile();